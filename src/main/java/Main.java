@@ -1,15 +1,26 @@
 import command.*;
+import controller.BinarySnapshot;
+import controller.CommandJournal;
 import controller.Context;
 import controller.Controller;
+import controller.SnapshotChain;
+import external.ConsoleNotificationSink;
+import external.MockPaymentSystem;
 import view.ConsoleView;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Parameter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -22,6 +33,15 @@ import java.util.stream.Collectors;
 
 public class Main {
     private static final Scanner scanner = new Scanner(System.in);
+    private static final Path AUTO_SAVE_FILE = Path.of("AutoSave.ser");
+    private static final Path JOURNAL_FILE = Path.of("AutoSave.journal");
+    private static final Path LEGACY_AUTO_SAVE_FILE = Path.of("AutoSave.ser.legacy");
+
+    private enum LogStatus {
+        AUTO_SAVE_CHECKPOINT_FAILED,
+        NOTIFICATION_DELIVERY_FAILED,
+        APP_FAILED,
+    }
 
     private static int getInteger() {
         int input = scanner.nextInt();
@@ -66,8 +86,11 @@ public class Main {
     private static <T> T commandFromUserInput(Class<T> commandType) throws InvocationTargetException, InstantiationException, IllegalAccessException {
         // Below cast warning is safe to ignore because the constructor is guaranteed to be type T
         // Its return value is generic because the constructors array could, in theory, be modified after getting them
+        // Commands with several constructors take optional tuning parameters in the longer ones, which are not asked for
         @SuppressWarnings("unchecked")
-        Constructor<T> constructor = (Constructor<T>) commandType.getDeclaredConstructors()[0];
+        Constructor<T> constructor = (Constructor<T>) Arrays.stream(commandType.getDeclaredConstructors())
+                .min(Comparator.comparingInt(Constructor::getParameterCount))
+                .orElseThrow();
         Parameter[] params = constructor.getParameters();
         Object[] args = new Object[params.length];
 
@@ -147,49 +170,69 @@ public class Main {
         }
     }
 
-    //saves all Serializable parts of Context into files every 5 minutes.
-    //old files are not overwritten; files are timestamped.
+    //the app state is restored from the latest snapshots and the journal of the commands run since then, so the
+    //journal is folded into a new snapshot every 5 minutes, which only holds what changed since the previous one.
+    //commands only wait while the changes are captured, and the snapshot is written in the background.
+    //old files are not overwritten; every full snapshot is also kept as a timestamped generation.
 
-    private static Timer scheduleAutoSaves(Context context) {
-        Timer autoSaveTimer = new Timer();
-        TimerTask autoSaveTask = new TimerTask() {
-            @Override
-            public void run() {
-                FileOutputStream fileOut = null;
-                try {
-                    fileOut = new FileOutputStream("AutoSave.ser");
-                } catch (FileNotFoundException e) {
-                    throw new RuntimeException(e);
-                }
-                ObjectOutputStream out = null;
-                try {
-                    out = new ObjectOutputStream(fileOut);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+    private static Context readAutoSave(SnapshotChain chain) throws IOException {
+        if (Files.exists(AUTO_SAVE_FILE)) {
+            boolean isBinarySnapshot;
+            try (FileChannel channel = FileChannel.open(AUTO_SAVE_FILE, StandardOpenOption.READ)) {
+                isBinarySnapshot = BinarySnapshot.isBinarySnapshot(channel);
+            }
+            if (!isBinarySnapshot) {
+                migrateLegacyAutoSave();
+            }
+        }
+        return chain.load();
+    }
 
+    //auto-saves of older versions were serialized by Java, like the saves LoadAppStateCommand still reads.
+    //they are converted into a binary snapshot in place, so that they are restored like any other auto-save rather
+    //than replaced by the first checkpoint, and the original file is kept next to it.
+    //an auto-save that cannot be read stops the app from starting, so that it is never overwritten.
 
-                try {
-                    out.writeObject(context);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+    private static void migrateLegacyAutoSave() throws IOException {
+        Context legacy;
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(Files.newInputStream(AUTO_SAVE_FILE)))) {
+            legacy = (Context) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Cannot read the auto-save of an older version: " + AUTO_SAVE_FILE, e);
+        }
+        Files.copy(AUTO_SAVE_FILE, LEGACY_AUTO_SAVE_FILE, StandardCopyOption.REPLACE_EXISTING);
+        Path tempFile = AUTO_SAVE_FILE.resolveSibling(AUTO_SAVE_FILE.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+            BinarySnapshot.write(legacy, out);
+        }
+        Files.move(tempFile, AUTO_SAVE_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-                try {
-                    out.close();
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+    private static Timer scheduleCheckpoints(Context context, CommandJournal journal, SnapshotChain chain,
+                                             ConsoleView view) {
+        Timer checkpointTimer = new Timer();
+        TimerTask checkpointTask = new TimerTask() {
+            @Override
+            public void run() {
+                if (journal.isEmpty()) {
+                    return;
                 }
                 try {
-                    fileOut.close();
+                    journal.checkpoint(context, chain);
                 } catch (IOException e) {
-                    throw new RuntimeException(e);
+                    // the journal is left as it is, so nothing is lost, and the checkpoint is tried again next time
+                    view.displayFailure(
+                            "Main.scheduleCheckpoints",
+                            LogStatus.AUTO_SAVE_CHECKPOINT_FAILED,
+                            Map.of("error", e.toString())
+                    );
                 }
             }
         };
         long fiveMinutes = 5 * 60 * 1000;
-        autoSaveTimer.scheduleAtFixedRate(autoSaveTask, 0L, fiveMinutes);
-        return autoSaveTimer;
+        checkpointTimer.scheduleAtFixedRate(checkpointTask, fiveMinutes, fiveMinutes);
+        return checkpointTimer;
     }
 
     /**
@@ -200,19 +243,44 @@ public class Main {
      * will be the topic of next year's Computer Security course.
      */
     public static void main(String[] args) {
-        try (Context context = new Context(
-                "The University of Edinburgh, School of Informatics",
-                "10 Crichton Street, Edinburgh EH8 9AB, United Kingdom",
-                "epay@ed.ac.uk",
-                "Nec temere nec timide"
-        )) {
-            ConsoleView view = new ConsoleView();
-            Controller controller = new Controller(context, view);
-            Timer autoSaveTimer = scheduleAutoSaves(context);
-            goToMainMenu(controller, view);
-            autoSaveTimer.cancel();
+        ConsoleView view = new ConsoleView();
+        try {
+            SnapshotChain chain = new SnapshotChain(AUTO_SAVE_FILE);
+            Context restored = readAutoSave(chain);
+            try (Context context = restored != null
+                    ? new Context(restored, new MockPaymentSystem(), new ConsoleNotificationSink())
+                    : new Context(
+                            "The University of Edinburgh, School of Informatics",
+                            "10 Crichton Street, Edinburgh EH8 9AB, United Kingdom",
+                            "epay@ed.ac.uk",
+                            "Nec temere nec timide"
+                    )) {
+                // the changes replayed from the journal belong in the next snapshot too, so they are tracked as well
+                chain.track(context);
+                context.getNotificationDispatcher().setFailureHandler((notifications, e) -> view.displayFailure(
+                        "Main.main",
+                        LogStatus.NOTIFICATION_DELIVERY_FAILED,
+                        Map.of("numNotifications", notifications.size(),
+                                "error", e.toString())
+                ));
+                try (CommandJournal journal = CommandJournal.open(JOURNAL_FILE, context, true)) {
+                    // refunds of cancelled events that were cut short when the app last stopped are tried again
+                    CancelEventCommand.resumePendingRefunds(context);
+                    Controller controller = new Controller(context, view);
+                    Timer checkpointTimer = scheduleCheckpoints(context, journal, chain, view);
+                    goToMainMenu(controller, view);
+                    checkpointTimer.cancel();
+                    if (!journal.isEmpty()) {
+                        journal.checkpoint(context, chain);
+                    }
+                }
+            }
         } catch (Exception e) {
-            e.printStackTrace();
+            view.displayFailure(
+                    "Main.main",
+                    LogStatus.APP_FAILED,
+                    Map.of("error", e.toString())
+            );
         }
     }
 }
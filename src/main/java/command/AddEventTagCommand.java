@@ -39,7 +39,7 @@ public class AddEventTagCommand implements ICommand<EventTag> {
     @Override
     public void execute(Context context, IView view) {
 
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
         if (!(currentUser instanceof Staff)) {
             view.displayFailure("AddEventTagCommand",
                     AddEventTagCommand.LogStatus.ADD_EVENT_TAG_USER_NOT_STAFF,
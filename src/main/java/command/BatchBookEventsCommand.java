@@ -0,0 +1,264 @@
+package command;
+
+import controller.Context;
+import model.*;
+import view.IView;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link BatchBookEventsCommand} allows {@link model.Consumer Consumers}, e.g. group organisers, to book tickets for
+ * several {@link Event}s at once, paying for all of them in a single payment. Either all the requested bookings are
+ * made, or none of them are. The command applies for the currently logged-in user.
+ */
+public class BatchBookEventsCommand implements ICommand<List<Booking>> {
+    private final List<BookingRequest> bookingRequests;
+    private final Duration holdTimeout;
+    private List<Booking> bookingsResult;
+
+    /**
+     * {@link BookingRequest} is one line of a batch booking: a number of tickets for one event
+     */
+    public static class BookingRequest {
+        private final long eventNumber;
+        private final int numTicketsRequested;
+
+        /**
+         * @param eventNumber         identifier of the {@link Event} to book
+         * @param numTicketsRequested number of tickets to book
+         */
+        public BookingRequest(long eventNumber, int numTicketsRequested) {
+            this.eventNumber = eventNumber;
+            this.numTicketsRequested = numTicketsRequested;
+        }
+
+        public long getEventNumber() {
+            return eventNumber;
+        }
+
+        public int getNumTicketsRequested() {
+            return numTicketsRequested;
+        }
+    }
+
+    /**
+     * @param bookingRequests bookings to make, in order
+     */
+    public BatchBookEventsCommand(List<BookingRequest> bookingRequests) {
+        this(bookingRequests, BookEventCommand.DEFAULT_HOLD_TIMEOUT);
+    }
+
+    /**
+     * @param bookingRequests bookings to make, in order
+     * @param holdTimeout     how long the tickets are held while the payment is processed, after which the
+     *                        bookings fail and the payment is refunded
+     */
+    public BatchBookEventsCommand(List<BookingRequest> bookingRequests, Duration holdTimeout) {
+        this.bookingRequests = List.copyOf(bookingRequests);
+        this.holdTimeout = holdTimeout;
+    }
+
+    /**
+     * @param context object that provides access to global application state
+     * @param view    allows passing information to the user interface
+     * @verifies.that currently logged-in user is a Consumer
+     * @verifies.that at least one booking is requested
+     * @verifies.that every event number corresponds to an existing event
+     * @verifies.that every event is active
+     * @verifies.that every number of requested tickets is not less than 1
+     * @verifies.that none of the events has ended yet
+     * @verifies.that the requested number of tickets are still available for every event
+     * @verifies.that if the total price is greater than 0, the payment is successful before creating the bookings
+     * @verifies.that the events are still active and the tickets are still held once the payment went through,
+     * refunding the payment otherwise
+     */
+    @Override
+    public void execute(Context context, IView view) {
+        User currentUser = context.getSession().getCurrentUser();
+        if (!(currentUser instanceof Consumer)) {
+            view.displayFailure(
+                    "BatchBookEventsCommand",
+                    LogStatus.BATCH_BOOK_EVENTS_USER_NOT_CONSUMER,
+                    Map.of("currentUser", currentUser != null ? currentUser : "none")
+            );
+            bookingsResult = null;
+            return;
+        }
+
+        Consumer consumer = (Consumer) currentUser;
+
+        if (bookingRequests.isEmpty()) {
+            view.displayFailure(
+                    "BatchBookEventsCommand",
+                    LogStatus.BATCH_BOOK_EVENTS_NO_BOOKINGS_REQUESTED,
+                    Map.of("numBookingsRequested", 0)
+            );
+            bookingsResult = null;
+            return;
+        }
+
+        // All the requests are checked before any tickets are taken, so that nothing needs undoing for invalid ones
+        LocalDateTime now = LocalDateTime.now();
+        List<Event> events = new ArrayList<>(bookingRequests.size());
+        for (BookingRequest request : bookingRequests) {
+            LogStatus invalidStatus = validate(context, request, now, events);
+            if (invalidStatus != null) {
+                view.displayFailure(
+                        "BatchBookEventsCommand",
+                        invalidStatus,
+                        Map.of("eventNumber", request.eventNumber,
+                                "numTicketsRequested", request.numTicketsRequested)
+                );
+                bookingsResult = null;
+                return;
+            }
+        }
+
+        List<TicketHold> holds = new ArrayList<>(bookingRequests.size());
+        // Each booking is a separate item of the payment, so that cancelling it refunds exactly its own amount
+        List<Double> itemAmounts = new ArrayList<>(bookingRequests.size());
+        int amountToPay = 0;
+        for (int i = 0; i < bookingRequests.size(); i++) {
+            BookingRequest request = bookingRequests.get(i);
+            Event event = events.get(i);
+            TicketHold hold = event.holdTickets(request.numTicketsRequested, holdTimeout);
+            if (hold == null) {
+                holds.forEach(TicketHold::release);
+                view.displayFailure(
+                        "BatchBookEventsCommand",
+                        LogStatus.BATCH_BOOK_EVENTS_NOT_ENOUGH_TICKETS_LEFT,
+                        Map.of("eventNumber", request.eventNumber,
+                                "numTicketsRequested", request.numTicketsRequested,
+                                "numTicketsLeft", event.getNumTicketsLeft())
+                );
+                bookingsResult = null;
+                return;
+            }
+            holds.add(hold);
+            int itemAmount = request.numTicketsRequested * event.getTicketPriceInPence();
+            if (itemAmount > 0) {
+                itemAmounts.add((double) itemAmount);
+            }
+            amountToPay += itemAmount;
+        }
+
+        if (amountToPay > 0) {
+            int totalAmount = amountToPay;
+            boolean paymentSucceeded = context.callOutsideCommandLock(() ->
+                    context.getPaymentSystem().processPayment(
+                            consumer.getEmail(),
+                            context.getOrgEmail(),
+                            itemAmounts
+                    ));
+
+            if (!paymentSucceeded) {
+                holds.forEach(TicketHold::release);
+                view.displayFailure(
+                        "BatchBookEventsCommand",
+                        LogStatus.BATCH_BOOK_EVENTS_PAYMENT_FAILED,
+                        Map.of("numBookingsRequested", bookingRequests.size(),
+                                "amountToPay", totalAmount)
+                );
+                bookingsResult = null;
+                return;
+            }
+        }
+
+        // The events may have been cancelled, or the holds may have run out, while the payment was processed
+        for (int i = 0; i < holds.size(); i++) {
+            LogStatus failedStatus = events.get(i).getStatus() != EventStatus.ACTIVE
+                    ? LogStatus.BATCH_BOOK_EVENTS_EVENT_NOT_ACTIVE
+                    : holds.get(i).confirm() ? null : LogStatus.BATCH_BOOK_EVENTS_HOLD_EXPIRED;
+            if (failedStatus != null) {
+                for (int j = 0; j < holds.size(); j++) {
+                    TicketHold hold = holds.get(j);
+                    if (j < i) {
+                        hold.getEvent().returnTickets(hold.getNumTickets());
+                    } else {
+                        hold.release();
+                    }
+                }
+                refund(context, consumer, itemAmounts);
+                view.displayFailure(
+                        "BatchBookEventsCommand",
+                        failedStatus,
+                        Map.of("eventNumber", bookingRequests.get(i).eventNumber,
+                                "numTicketsRequested", bookingRequests.get(i).numTicketsRequested)
+                );
+                bookingsResult = null;
+                return;
+            }
+        }
+
+        List<Booking> bookings = new ArrayList<>(bookingRequests.size());
+        for (int i = 0; i < bookingRequests.size(); i++) {
+            Booking booking = context.getBookingState().createBooking(consumer, events.get(i),
+                    bookingRequests.get(i).numTicketsRequested);
+            consumer.addBooking(booking);
+            bookings.add(booking);
+        }
+        view.displaySuccess(
+                "BatchBookEventsCommand",
+                LogStatus.BATCH_BOOK_EVENTS_SUCCESS,
+                Map.of("numBookings", bookings.size(),
+                        "amountPaid", amountToPay)
+        );
+        bookingsResult = bookings;
+    }
+
+    // Returns the reason the request cannot be booked, or null if it can, in which case its event is added to events
+    private static LogStatus validate(Context context, BookingRequest request, LocalDateTime now, List<Event> events) {
+        Event event = context.getEventState().findEventByNumber(request.eventNumber);
+        if (event == null) {
+            return LogStatus.BATCH_BOOK_EVENTS_EVENT_NOT_FOUND;
+        }
+        if (event.getStatus() != EventStatus.ACTIVE) {
+            return LogStatus.BATCH_BOOK_EVENTS_EVENT_NOT_ACTIVE;
+        }
+        if (request.numTicketsRequested < 1) {
+            return LogStatus.BATCH_BOOK_EVENTS_INVALID_NUM_TICKETS;
+        }
+        if (event.getEndDateTime().isBefore(now)) {
+            return LogStatus.BATCH_BOOK_EVENTS_ALREADY_OVER;
+        }
+        events.add(event);
+        return null;
+    }
+
+    private static void refund(Context context, Consumer consumer, List<Double> itemAmounts) {
+        if (itemAmounts.isEmpty()) {
+            return;
+        }
+        context.callOutsideCommandLock(() -> {
+            for (double itemAmount : itemAmounts) {
+                context.getPaymentSystem().processRefund(consumer.getEmail(), context.getOrgEmail(), itemAmount);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return The bookings made, in the order they were requested, if successful and null otherwise
+     */
+    @Override
+    public List<Booking> getResult() {
+        return bookingsResult;
+    }
+
+    private enum LogStatus {
+        BATCH_BOOK_EVENTS_SUCCESS,
+        BATCH_BOOK_EVENTS_USER_NOT_CONSUMER,
+        BATCH_BOOK_EVENTS_NO_BOOKINGS_REQUESTED,
+        BATCH_BOOK_EVENTS_EVENT_NOT_FOUND,
+        BATCH_BOOK_EVENTS_EVENT_NOT_ACTIVE,
+        BATCH_BOOK_EVENTS_INVALID_NUM_TICKETS,
+        BATCH_BOOK_EVENTS_ALREADY_OVER,
+        BATCH_BOOK_EVENTS_NOT_ENOUGH_TICKETS_LEFT,
+        BATCH_BOOK_EVENTS_PAYMENT_FAILED,
+        BATCH_BOOK_EVENTS_HOLD_EXPIRED,
+    }
+}
@@ -4,6 +4,7 @@ import controller.Context;
 import model.*;
 import view.IView;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Map;
 
@@ -12,8 +13,14 @@ import java.util.Map;
  * {@link Event}. The command applies for the currently logged-in user.
  */
 public class BookEventCommand implements ICommand<Booking> {
+    /**
+     * How long the requested tickets are held for the consumer while their payment is processed
+     */
+    public static final Duration DEFAULT_HOLD_TIMEOUT = Duration.ofMinutes(5);
+
     private final long eventNumber;
     private final int numTicketsRequested;
+    private final Duration holdTimeout;
     private Booking bookingResult;
 
     /**
@@ -21,8 +28,19 @@ public class BookEventCommand implements ICommand<Booking> {
      * @param numTicketsRequested number of tickets to book
      */
     public BookEventCommand(long eventNumber, int numTicketsRequested) {
+        this(eventNumber, numTicketsRequested, DEFAULT_HOLD_TIMEOUT);
+    }
+
+    /**
+     * @param eventNumber         identifier of the {@link Event} to book
+     * @param numTicketsRequested number of tickets to book
+     * @param holdTimeout         how long the tickets are held while the payment is processed, after which the
+     *                            booking fails and the payment is refunded
+     */
+    public BookEventCommand(long eventNumber, int numTicketsRequested, Duration holdTimeout) {
         this.eventNumber = eventNumber;
         this.numTicketsRequested = numTicketsRequested;
+        this.holdTimeout = holdTimeout;
     }
 
     /**
@@ -35,10 +53,12 @@ public class BookEventCommand implements ICommand<Booking> {
      * @verifies.that the selected event has not ended yet
      * @verifies.that the requested number of tickets are still available
      * @verifies.that if the ticket price is greater than 0, the payment is successful before creating the booking
+     * @verifies.that the event is still active and the tickets are still held once the payment went through,
+     * refunding the payment otherwise
      */
     @Override
     public void execute(Context context, IView view) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
         if (!(currentUser instanceof Consumer)) {
             view.displayFailure("BookEventCommand",
                     LogStatus.BOOK_EVENT_USER_NOT_CONSUMER,
@@ -93,44 +113,72 @@ public class BookEventCommand implements ICommand<Booking> {
             return;
         }
 
-        int numTicketsLeft = event.getNumTicketsLeft();
-        if (numTicketsLeft < numTicketsRequested) {
+        // The tickets are held while the payment is processed. The payment is made outside the command lock, so
+        // other sessions can book in the meantime, and the hold keeps them from taking the same tickets
+        TicketHold hold = event.holdTickets(numTicketsRequested, holdTimeout);
+        if (hold == null) {
             view.displayFailure(
                     "BookEventCommand",
                     LogStatus.BOOK_EVENT_NOT_ENOUGH_TICKETS_LEFT,
                     Map.of("eventNumber", eventNumber,
                             "numTicketsRequested", numTicketsRequested,
-                            "numTicketsLeft", numTicketsLeft)
+                            "numTicketsLeft", event.getNumTicketsLeft())
             );
             bookingResult = null;
             return;
         }
 
+        // Only the payment is made outside the command lock. The hold is settled once the lock is held again, together
+        // with creating the booking, so that a command recording its changes in between never sees booked tickets
+        // without their booking
         int ticketPrice = event.getTicketPriceInPence();
-        if (ticketPrice > 0) {
-            int amountToPay = numTicketsRequested * ticketPrice;
-            boolean paymentSucceeded = context.getPaymentSystem().processPayment(
-                    consumer.getEmail(),
-                    context.getOrgEmail(),
-                    amountToPay
+        int amountToPay = numTicketsRequested * ticketPrice;
+        boolean paid = ticketPrice <= 0 || context.callOutsideCommandLock(() ->
+                context.getPaymentSystem().submitPayment(consumer.getEmail(), context.getOrgEmail(), amountToPay)
+                        .handle((successful, error) -> Boolean.TRUE.equals(successful))
+                        .join());
+
+        if (!paid) {
+            hold.release();
+            view.displayFailure(
+                    "BookEventCommand",
+                    LogStatus.BOOK_EVENT_PAYMENT_FAILED,
+                    Map.of("eventNumber", eventNumber,
+                            "numTicketsRequested", numTicketsRequested,
+                            "ticketPrice", ticketPrice)
+            );
+            bookingResult = null;
+            return;
+        }
+
+        // The event may have been cancelled while the payment was processed
+        if (event.getStatus() != EventStatus.ACTIVE) {
+            hold.release();
+            refund(context, consumer, amountToPay);
+            view.displayFailure(
+                    "BookEventCommand",
+                    LogStatus.BOOK_EVENT_EVENT_NOT_ACTIVE,
+                    Map.of("eventNumber", eventNumber)
             );
+            bookingResult = null;
+            return;
+        }
 
-            if (!paymentSucceeded) {
-                view.displayFailure(
-                        "BookEventCommand",
-                        LogStatus.BOOK_EVENT_PAYMENT_FAILED,
-                        Map.of("eventNumber", eventNumber,
-                                "numTicketsRequested", numTicketsRequested,
-                                "ticketPrice", ticketPrice)
-                );
-                bookingResult = null;
-                return;
-            }
+        if (!hold.confirm()) {
+            refund(context, consumer, amountToPay);
+            view.displayFailure(
+                    "BookEventCommand",
+                    LogStatus.BOOK_EVENT_HOLD_EXPIRED,
+                    Map.of("eventNumber", eventNumber,
+                            "numTicketsRequested", numTicketsRequested,
+                            "holdExpiryDateTime", hold.getExpiryDateTime())
+            );
+            bookingResult = null;
+            return;
         }
 
         Booking booking = context.getBookingState().createBooking(consumer, event, numTicketsRequested);
         consumer.addBooking(booking);
-        event.setNumTicketsLeft(numTicketsLeft - numTicketsRequested);
         view.displaySuccess(
                 "BookEventCommand",
                 LogStatus.BOOK_EVENT_SUCCESS,
@@ -140,6 +188,16 @@ public class BookEventCommand implements ICommand<Booking> {
         bookingResult = booking;
     }
 
+    private static void refund(Context context, Consumer consumer, int amountPaid) {
+        if (amountPaid > 0) {
+            context.callOutsideCommandLock(() -> context.getPaymentSystem().processRefund(
+                    consumer.getEmail(),
+                    context.getOrgEmail(),
+                    amountPaid
+            ));
+        }
+    }
+
     /**
      * @return A unique booking number corresponding to a {@link Booking} if successful and null otherwise
      */
@@ -157,5 +215,6 @@ public class BookEventCommand implements ICommand<Booking> {
         BOOK_EVENT_INVALID_NUM_TICKETS,
         BOOK_EVENT_NOT_ENOUGH_TICKETS_LEFT,
         BOOK_EVENT_PAYMENT_FAILED,
+        BOOK_EVENT_HOLD_EXPIRED,
     }
 }
@@ -35,7 +35,7 @@ public class CancelBookingCommand implements ICommand<Boolean> {
      */
     @Override
     public void execute(Context context, IView view) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
         if (!(currentUser instanceof Consumer)) {
             view.displayFailure(
                     "CancelBookingCommand",
@@ -109,7 +109,7 @@ public class CancelBookingCommand implements ICommand<Boolean> {
         }
 
         booking.cancelByConsumer();
-        event.setNumTicketsLeft(event.getNumTicketsLeft() + booking.getNumTickets());
+        event.returnTickets(booking.getNumTickets());
 
         view.displaySuccess(
                 "CancelBookingCommand",
@@ -1,21 +1,82 @@
 package command;
 
 import controller.Context;
+import external.Notification;
 import model.*;
 import view.IView;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * {@link CancelEventCommand} allows {@link Staff} members to cancel a previously added
  * {@link Event}. This cancels and refunds all bookings linked to the event.
  */
 public class CancelEventCommand implements ICommand<Boolean> {
+    /**
+     * Maximum number of refunds processed at the same time, unless configured otherwise
+     */
+    public static final int DEFAULT_MAX_PARALLEL_REFUNDS = 8;
+    /**
+     * Number of times a refund is tried before it is recorded as failed
+     */
+    public static final int MAX_REFUND_ATTEMPTS = 3;
+    private static final Duration REFUND_RETRY_BACKOFF = Duration.ofMillis(20);
+    private static final AtomicInteger REFUND_THREAD_COUNT = new AtomicInteger();
+    // Shared by the refunds of all cancelled events, each of which only runs maxParallelRefunds of them at a time
+    private static final ExecutorService REFUND_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "event-refund-" + REFUND_THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final long eventNumber;
     private final String organiserMessage;
+    private final int maxParallelRefunds;
     private Boolean successResult;
+    private CompletableFuture<RefundSummary> refundSummary;
+
+    /**
+     * {@link RefundSummary} records the outcome of refunding every booking of a cancelled event
+     */
+    public static class RefundSummary {
+        private final Map<Booking, Boolean> refundedByBooking;
+        private final Duration elapsed;
+
+        /**
+         * @param refundedByBooking whether the refund succeeded, for each refunded booking
+         * @param elapsed           time taken to process all the refunds
+         */
+        public RefundSummary(Map<Booking, Boolean> refundedByBooking, Duration elapsed) {
+            this.refundedByBooking = Collections.unmodifiableMap(new LinkedHashMap<>(refundedByBooking));
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * @return Whether the refund succeeded, for each booking that had to be refunded, in the order of the bookings
+         */
+        public Map<Booking, Boolean> getRefundedByBooking() {
+            return refundedByBooking;
+        }
+
+        public int getNumRefunded() {
+            return (int) refundedByBooking.values().stream().filter(refunded -> refunded).count();
+        }
+
+        public int getNumFailed() {
+            return refundedByBooking.size() - getNumRefunded();
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+    }
 
     /**
      * @param eventNumber      identifier of the {@link Event} to cancel
@@ -23,8 +84,22 @@ public class CancelEventCommand implements ICommand<Boolean> {
      *                         {@link Booking}s for the event
      */
     public CancelEventCommand(long eventNumber, String organiserMessage) {
+        this(eventNumber, organiserMessage, DEFAULT_MAX_PARALLEL_REFUNDS);
+    }
+
+    /**
+     * @param eventNumber        identifier of the {@link Event} to cancel
+     * @param organiserMessage   message from the organiser to the {@link Consumer}s who had
+     *                           {@link Booking}s for the event
+     * @param maxParallelRefunds maximum number of this event's refunds processed at the same time
+     */
+    public CancelEventCommand(long eventNumber, String organiserMessage, int maxParallelRefunds) {
+        if (maxParallelRefunds < 1) {
+            throw new IllegalArgumentException("maxParallelRefunds must be at least 1");
+        }
         this.eventNumber = eventNumber;
         this.organiserMessage = organiserMessage;
+        this.maxParallelRefunds = maxParallelRefunds;
     }
 
     /**
@@ -35,10 +110,14 @@ public class CancelEventCommand implements ICommand<Boolean> {
      * @verifies.that the event is active
      * @verifies.that the event has not already started
      * @verifies.that the organiser message is not blank
+     * @verifies.that the bookings are only refunded, and their bookers only notified, once the cancellation has been
+     * recorded
+     * @verifies.that every refund is retried a few times before it is recorded as failed
+     * @verifies.that the staff member is sent how many refunds went through, how many failed, and how long they took
      */
     @Override
     public void execute(Context context, IView view) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
 
         if (!(currentUser instanceof Staff)) {
             view.displayFailure(
@@ -48,6 +127,7 @@ public class CancelEventCommand implements ICommand<Boolean> {
                             "currentUser", currentUser != null ? currentUser : "none")
             );
             successResult = false;
+            refundSummary = null;
             return;
         }
 
@@ -60,6 +140,7 @@ public class CancelEventCommand implements ICommand<Boolean> {
                     Map.of("eventNumber", eventNumber)
             );
             successResult = false;
+            refundSummary = null;
             return;
         }
 
@@ -70,6 +151,7 @@ public class CancelEventCommand implements ICommand<Boolean> {
                     Map.of("eventNumber", eventNumber)
             );
             successResult = false;
+            refundSummary = null;
             return;
         }
 
@@ -80,6 +162,7 @@ public class CancelEventCommand implements ICommand<Boolean> {
                     Map.of("eventNumber", eventNumber)
             );
             successResult = false;
+            refundSummary = null;
             return;
         }
 
@@ -90,35 +173,150 @@ public class CancelEventCommand implements ICommand<Boolean> {
                     Map.of("organiserMessage", String.valueOf(organiserMessage))
             );
             successResult = false;
+            refundSummary = null;
             return;
         }
 
-        event.cancel();
+        context.getEventState().cancelEvent(event);
         List<Booking> eventBookings = context.getBookingState().findBookingsByEventNumber(eventNumber);
 
+        Set<Consumer> bookers = new LinkedHashSet<>();
+        List<Booking> bookingsToRefund = new ArrayList<>();
         for (Booking booking : eventBookings) {
             if (booking.getStatus() == BookingStatus.Active) {
                 booking.cancelByProvider();
-                booking.getBooker().notify(organiserMessage);
-
+                bookers.add(booking.getBooker());
                 if (event.getTicketPriceInPence() > 0) {
-                    context.getPaymentSystem().processRefund(
-                            booking.getBooker().getEmail(),
-                            context.getOrgEmail(),
-                            booking.getNumTickets() * event.getTicketPriceInPence()
-                    );
+                    // Recorded with the cancellation, so that a refund cut short by a crash is tried again on restart
+                    booking.setRefundStatus(RefundStatus.Pending);
+                    bookingsToRefund.add(booking);
                 }
             }
         }
 
+        // Consumers are only notified and refunded once the cancellation has been recorded, so that none of it happens
+        // for a cancellation lost in a crash. Both are done in the background, so that cancelling a big event does not
+        // wait for them. The staff member is sent a summary of the refunds once they have all been processed.
+        Staff staff = (Staff) currentUser;
+        CompletableFuture<RefundSummary> refunds = new CompletableFuture<>();
+        context.afterCommand(() -> {
+            for (Consumer booker : bookers) {
+                context.getNotificationDispatcher().send(
+                        new Notification(booker.getEmail(), booker.getPhoneNumber(), organiserMessage));
+            }
+            refundAll(context, bookingsToRefund, maxParallelRefunds).whenComplete((summary, error) -> {
+                if (error != null) {
+                    refunds.completeExceptionally(error);
+                    return;
+                }
+                if (!bookingsToRefund.isEmpty()) {
+                    context.getNotificationDispatcher().send(new Notification(staff.getEmail(), null,
+                            describeRefunds(summary)));
+                }
+                refunds.complete(summary);
+            });
+        });
+        refundSummary = refunds;
+
         view.displaySuccess(
                 "CancelEventCommand",
                 LogStatus.CANCEL_EVENT_SUCCESS,
-                Map.of("eventNumber", eventNumber)
+                Map.of("eventNumber", eventNumber,
+                        "numRefundsPending", bookingsToRefund.size())
         );
         successResult = true;
     }
 
+    /**
+     * Refund the bookings whose refunds are still pending, e.g. because the application stopped before they were
+     * processed. The refunds are tried again under the same idempotency keys, so that a booking whose refund already
+     * went through is not refunded twice.
+     *
+     * @param context object that provides access to global application state
+     * @return A future completed with the outcome of the refunds once it has been recorded in the bookings
+     */
+    public static CompletableFuture<RefundSummary> resumePendingRefunds(Context context) {
+        List<Booking> pendingBookings = new ArrayList<>();
+        // Read from the live states, as the read snapshot may have been published before they were restored, e.g.
+        // before the command journal was replayed
+        context.runLocked(() -> {
+            for (Booking booking : context.getBookingState().getAllBookings()) {
+                if (booking.getRefundStatus() == RefundStatus.Pending) {
+                    pendingBookings.add(booking);
+                }
+            }
+        });
+        return refundAll(context, pendingBookings, DEFAULT_MAX_PARALLEL_REFUNDS);
+    }
+
+    // Refunds the bookings on the shared refund executor, with at most maxParallelRefunds of them at a time, and records
+    // the outcome of each in the booking like a command's changes, so that it survives a crash
+    private static CompletableFuture<RefundSummary> refundAll(Context context, List<Booking> bookings,
+                                                              int maxParallelRefunds) {
+        long startNanos = System.nanoTime();
+        AtomicInteger nextBooking = new AtomicInteger();
+        AtomicReferenceArray<Boolean> refunded = new AtomicReferenceArray<>(bookings.size());
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(maxParallelRefunds, bookings.size()); i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                for (int index = nextBooking.getAndIncrement(); index < bookings.size();
+                     index = nextBooking.getAndIncrement()) {
+                    Booking booking = bookings.get(index);
+                    boolean successful = refundWithRetries(context, booking);
+                    context.runLocked(() -> booking.setRefundStatus(
+                            successful ? RefundStatus.Refunded : RefundStatus.Failed));
+                    refunded.set(index, successful);
+                }
+            }, REFUND_EXECUTOR));
+        }
+        return CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<Booking, Boolean> refundedByBooking = new LinkedHashMap<>();
+            for (int i = 0; i < bookings.size(); i++) {
+                refundedByBooking.put(bookings.get(i), refunded.get(i));
+            }
+            return new RefundSummary(refundedByBooking, Duration.ofNanos(System.nanoTime() - startNanos));
+        });
+    }
+
+    private String describeRefunds(RefundSummary summary) {
+        return "Refunds for cancelled event " + eventNumber + ": " + summary.getNumRefunded() + " refunded, "
+                + summary.getNumFailed() + " failed, in " + summary.getElapsed().toMillis() + " ms";
+    }
+
+    // Identifies the refund of a booking to the payment system, so that it is processed at most once however often it
+    // is tried
+    private static String refundKey(Booking booking) {
+        return "refund-event-" + booking.getEvent().getEventNumber() + "-booking-" + booking.getBookingNumber();
+    }
+
+    // Every try is made under the booking's idempotency key, so trying again can never refund the booking twice, not
+    // even after a try that threw, whose outcome is unknown
+    private static boolean refundWithRetries(Context context, Booking booking) {
+        for (int attempt = 1; attempt <= MAX_REFUND_ATTEMPTS; attempt++) {
+            try {
+                if (context.getPaymentSystem().processRefund(
+                        booking.getBooker().getEmail(),
+                        context.getOrgEmail(),
+                        booking.getNumTickets() * booking.getEvent().getTicketPriceInPence(),
+                        refundKey(booking)
+                )) {
+                    return true;
+                }
+            } catch (RuntimeException e) {
+                // Tried again like a refund that failed
+            }
+            if (attempt < MAX_REFUND_ATTEMPTS) {
+                try {
+                    Thread.sleep(REFUND_RETRY_BACKOFF.toMillis() * attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * @return True if successful and false otherwise
      */
@@ -127,6 +325,14 @@ public class CancelEventCommand implements ICommand<Boolean> {
         return successResult;
     }
 
+    /**
+     * @return A future completed with the outcome of the refunds of the cancelled event's bookings once they have been
+     * processed and recorded, and the staff member has been sent a summary of them, if successful, and null otherwise
+     */
+    public CompletableFuture<RefundSummary> getRefundSummary() {
+        return refundSummary;
+    }
+
     private enum LogStatus {
         CANCEL_EVENT_SUCCESS,
         CANCEL_EVENT_MESSAGE_MUST_NOT_BE_BLANK,
@@ -78,7 +78,7 @@ public class CreateEventCommand implements ICommand<Event> {
      */
     @Override
     public void execute(Context context, IView view) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
 
         if (!(currentUser instanceof Staff)) {
             view.displayFailure(
@@ -114,11 +114,9 @@ public class CreateEventCommand implements ICommand<Event> {
         // Use case 3.6:
         // If all the fields were correctly provided and an event with the
         // same name did not already exist for some or all of the same dates and times
-        boolean isEventTitleAndTimeClash = context.getEventState().getAllEvents().stream()
-                .anyMatch(otherEvent -> otherEvent.getTitle().equals(title)
-                        && otherEvent.getStartDateTime().equals(startDateTime)
-                        && otherEvent.getEndDateTime().equals(endDateTime)
-                );
+        boolean isEventTitleAndTimeClash = !context.getEventState()
+                .findEventsByTitleAndTime(title, startDateTime, endDateTime)
+                .isEmpty();
         if (isEventTitleAndTimeClash) {
             view.displayFailure(
                     "CreateEventCommand",
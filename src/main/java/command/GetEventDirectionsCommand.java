@@ -21,7 +21,7 @@ import java.util.Map;
  * directions, including distance for each step.
  */
 
-public class GetEventDirectionsCommand implements ICommand<String[]> {
+public class GetEventDirectionsCommand implements IReadOnlyCommand<String[]> {
     private String[] directionsResult;
     private final long eventNumber;
     private final TransportMode transportMode;
@@ -71,7 +71,7 @@ public class GetEventDirectionsCommand implements ICommand<String[]> {
 
         // venue address check
         // user is consumer
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
         if (!(currentUser instanceof Consumer)){
             view.displayFailure(
                     "GetEventDirectionsCommand",
@@ -0,0 +1,11 @@
+package command;
+
+/**
+ * {@link IReadOnlyCommand} is implemented by commands that only read the application state, such as listings. The
+ * {@link controller.Controller} runs them against a read snapshot of the state (see
+ * {@link controller.Context#getReadSnapshot()}) instead of waiting for the command lock, so they never wait for
+ * commands that change the state, and never hold those up either.
+ * Read-only commands must not change the state they are given, as those changes would only affect the snapshot.
+ */
+public interface IReadOnlyCommand<T> extends ICommand<T> {
+}
@@ -13,7 +13,7 @@ import java.util.Map;
  * {@link ListConsumerBookingsCommand} allows a logged-in {@link Consumer} to get a list of all their own
  * {@link Booking}s.
  */
-public class ListConsumerBookingsCommand implements ICommand<List<Booking>> {
+public class ListConsumerBookingsCommand implements IReadOnlyCommand<List<Booking>> {
     private List<Booking> bookingListResult;
 
     /**
@@ -24,7 +24,7 @@ public class ListConsumerBookingsCommand implements ICommand<List<Booking>> {
      */
     @Override
     public void execute(Context context, IView view) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
 
         if (!(currentUser instanceof Consumer)) {
             view.displayFailure(
@@ -14,7 +14,7 @@ import java.util.Map;
  * {@link ListEventBookingsCommand} allows an event organiser ({@link Staff})
  * to get a list of all {@link Booking}s for a chosen {@link Event}.
  */
-public class ListEventBookingsCommand implements ICommand<List<Booking>> {
+public class ListEventBookingsCommand implements IReadOnlyCommand<List<Booking>> {
     private final long eventNumber;
     private List<Booking> bookingListResult;
 
@@ -35,7 +35,7 @@ public class ListEventBookingsCommand implements ICommand<List<Booking>> {
      */
     @Override
     public void execute(Context context, IView view) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
 
         if (!(currentUser instanceof Staff)) {
             view.displayFailure(
@@ -9,6 +9,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import com.graphhopper.ResponsePath;
 
 
@@ -41,7 +42,7 @@ public class ListEventMaxDistanceCommand extends ListEventsCommand{
 
     //Checks whether a specific event is within the range the user has inputted
     private Double eventDistance(Context context, Event event, TransportMode transportMode){
-        Consumer consumer = (Consumer) context.getUserState().getCurrentUser();
+        Consumer consumer = (Consumer) context.getSession().getCurrentUser();
         String eventAddress = event.getVenueAddress();
         if (!(eventAddress == null || eventAddress.isEmpty())) {
             ResponsePath path = context.getMapSystem().routeBetweenPoints(
@@ -65,7 +66,7 @@ public class ListEventMaxDistanceCommand extends ListEventsCommand{
      */
     @Override
     public void execute(Context context, IView view) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
         if (!(currentUser instanceof Consumer)) {
             view.displayFailure(
                     "CreateEventCommand",
@@ -89,13 +90,18 @@ public class ListEventMaxDistanceCommand extends ListEventsCommand{
         }
 
 
-        List<Event> eventsFittingPreferences = context.getEventState().getAllEvents().stream()
-                .filter(event -> eventSatisfiesPreferences(context.getEventState().getPossibleTags(), consumer.getPreferences(), event))
-                .filter(event -> eventDistance(context, event, transportMode)<= maxDistance)
-                .sorted(Comparator.comparingDouble(event -> eventDistance(context, event, transportMode)))
+        // Cheap filters go first, so that routes are only computed for events that could be listed
+        List<Event> candidates = findMatchingEvents(context.getEventState(), consumer.getPreferences());
+        // Routing is slow and only reads the map, so it is done outside the command lock, and only once per event
+        double[] distances = context.callOutsideCommandLock(() -> candidates.stream()
+                .mapToDouble(event -> eventDistance(context, event, transportMode))
+                .toArray());
+        eventListResult = IntStream.range(0, candidates.size())
+                .filter(i -> distances[i] <= maxDistance)
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> distances[i]))
+                .map(candidates::get)
                 .collect(Collectors.toList());
-
-        eventListResult = filterEvents(eventsFittingPreferences, activeEventsOnly, searchDate);
         view.displaySuccess(
                 "ListEventMaxDistanceCommand",
                 LogStatus.LIST_EVENT_DISTANCE_SUCCESS,
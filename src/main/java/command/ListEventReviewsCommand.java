@@ -7,13 +7,12 @@ import view.IView;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * {@link ListEventReviewsCommand} allows {@link User}s to read reviews of a given event.
  */
 
-public class ListEventReviewsCommand implements ICommand<List<Review>> {
+public class ListEventReviewsCommand implements IReadOnlyCommand<List<Review>> {
 
     private final List<Review> reviewsResult;
     private final String eventTitle;
@@ -34,15 +33,7 @@ public class ListEventReviewsCommand implements ICommand<List<Review>> {
      */
     @Override
     public void execute(Context context, IView view) {
-        List<Event> events = context.getEventState()
-                            .getAllEvents()
-                            .stream()
-                            .filter(event -> event.getTitle().equals(eventTitle))
-                            .collect(Collectors.toList());
-
-        for (Event event:events) {
-            reviewsResult.addAll(event.getReviews());
-        }
+        reviewsResult.addAll(context.getEventState().findReviewsByEventTitle(eventTitle));
 
         view.displaySuccess("ListEventReviewsCommand",
                             LogStatus.LIST_EVENT_REVIEWS_SUCCESS,
@@ -2,20 +2,18 @@ package command;
 
 import controller.Context;
 import model.*;
+import state.IEventState;
 import view.IView;
 
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * {@link ListEventsCommand} allows anyone to get a list of {@link Event}s available on the system.
  * Optionally, users can specify a particular {@link LocalDate} to look up events for.
  */
-public class ListEventsCommand implements ICommand<List<Event>> {
+public class ListEventsCommand implements IReadOnlyCommand<List<Event>> {
     protected final boolean userEventsOnly;
     protected final boolean activeEventsOnly;
     protected final LocalDate searchDate;
@@ -36,37 +34,15 @@ public class ListEventsCommand implements ICommand<List<Event>> {
         this.searchDate = searchDate;
     }
 
-    protected static boolean eventSatisfiesPreferences(Map<String, EventTag> possibleEventTags, EventTagCollection preferences,  Event event) {
-
-        EventTagCollection eventTags = event.getTags();
-
-        // Checks if any of the preferences are not satisfied
-        for (String tag:preferences.getTagNames())
-        {
-            if (!eventTags.getTagNames().contains(tag))
-                if (!preferences.getValueFor(tag).equals(possibleEventTags.get(tag).defaultValue))
-                    return false;
-            if (!Objects.equals(eventTags.getValueFor(tag), preferences.getValueFor(tag))){
-                return false;
-            }
-        }
-        // returns true if no tags have different values
-        return true;
-    }
-
-    protected List<Event> filterEvents(List<Event> events, boolean activeEventsOnly, LocalDate searchDate) {
-        Stream<Event> filteredEvents = events.stream();
-        if (activeEventsOnly) {
-            filteredEvents = filteredEvents.filter(event -> event.getStatus() == EventStatus.ACTIVE);
-        }
-        if (searchDate != null) {
-            filteredEvents = filteredEvents.filter(event ->
-                            event.getStartDateTime().toLocalDate().equals(searchDate)
-                            || event.getEndDateTime().toLocalDate().isAfter(searchDate)
-                            || (searchDate.isBefore(event.getStartDateTime().toLocalDate())
-                            || searchDate.isBefore(event.getEndDateTime().toLocalDate())));
-        }
-        return filteredEvents.collect(Collectors.toList());
+    /**
+     * @param eventState  event state to look up events in
+     * @param preferences tag values that the events must have, or null to not filter events by tags
+     * @return {@link Event}s matching {@link #searchDate}, preferences and {@link #activeEventsOnly}, looked up through
+     * the event state's indexes (see {@link IEventState#findEvents(LocalDate, EventTagCollection, EventStatus)}), so
+     * that active-only listings never visit cancelled events
+     */
+    protected List<Event> findMatchingEvents(IEventState eventState, EventTagCollection preferences) {
+        return eventState.findEvents(searchDate, preferences, activeEventsOnly ? EventStatus.ACTIVE : null);
     }
 
     /**
@@ -78,7 +54,7 @@ public class ListEventsCommand implements ICommand<List<Event>> {
     public void execute(Context context, IView view) {
 
         if (!userEventsOnly) {
-            eventListResult = filterEvents(context.getEventState().getAllEvents(), activeEventsOnly, searchDate);
+            eventListResult = findMatchingEvents(context.getEventState(), null);
             view.displaySuccess(
                     "ListEventsCommand",
                     LogStatus.LIST_EVENTS_SUCCESS,
@@ -90,7 +66,7 @@ public class ListEventsCommand implements ICommand<List<Event>> {
             return;
         }
 
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
 
         if (currentUser == null) {
             view.displayFailure(
@@ -103,7 +79,7 @@ public class ListEventsCommand implements ICommand<List<Event>> {
         }
 
         if (currentUser instanceof Staff) {
-            eventListResult = filterEvents(context.getEventState().getAllEvents(), activeEventsOnly, searchDate);
+            eventListResult = findMatchingEvents(context.getEventState(), null);
             view.displaySuccess(
                     "ListEventsCommand",
                     LogStatus.LIST_EVENTS_SUCCESS,
@@ -117,11 +93,7 @@ public class ListEventsCommand implements ICommand<List<Event>> {
 
         if (currentUser instanceof Consumer) {
             Consumer consumer = (Consumer) currentUser;
-            List<Event> eventsFittingPreferences = context.getEventState().getAllEvents().stream()
-                    .filter(event -> eventSatisfiesPreferences(context.getEventState().getPossibleTags(), consumer.getPreferences(), event))
-                    .collect(Collectors.toList());
-
-            eventListResult = filterEvents(eventsFittingPreferences, activeEventsOnly, searchDate);
+            eventListResult = findMatchingEvents(context.getEventState(), consumer.getPreferences());
             view.displaySuccess(
                     "ListEventsCommand",
                     LogStatus.LIST_EVENTS_SUCCESS,
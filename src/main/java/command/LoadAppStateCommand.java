@@ -1,17 +1,20 @@
 package command;
 
+import controller.BinarySnapshot;
 import controller.Context;
 import model.*;
 import view.IView;
 
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Stream;
 
 /**
  * {@link LoadAppStateCommand} allows staff users to load in an app state by providing the file name they wish to load
@@ -43,7 +46,7 @@ public class LoadAppStateCommand implements ICommand<Boolean> {
      */
     @Override
     public void execute(Context context, IView view) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
 
         if (!(currentUser instanceof Staff)) {
             view.displayFailure(
@@ -58,12 +61,21 @@ public class LoadAppStateCommand implements ICommand<Boolean> {
             return;
         }
 
-        //Deserializing file
+        //Deserializing file, either in the binary format written by SaveAppStateCommand, which is mapped into memory
+        //and decoded from there, or serialized by Java as older versions did
         try {
             fileIn = new FileInputStream(filename);
-            in = new ObjectInputStream(fileIn);
-
-            importContext = (Context) in.readObject();
+            try {
+                FileChannel channel = fileIn.getChannel();
+                if (BinarySnapshot.isBinarySnapshot(channel)) {
+                    importContext = BinarySnapshot.read(channel);
+                } else {
+                    in = new ObjectInputStream(new BufferedInputStream(fileIn));
+                    importContext = (Context) in.readObject();
+                }
+            } finally {
+                fileIn.close();
+            }
         }
         catch (FileNotFoundException e) {
             view.displayFailure(
@@ -79,14 +91,6 @@ public class LoadAppStateCommand implements ICommand<Boolean> {
             throw new RuntimeException(e);
         }
 
-        try {
-            in.close();
-            fileIn.close();
-        }
-        catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
 
         //Verification Stage of the execute method.
         Map<String, EventTag> importTags = importContext.getEventState().getPossibleTags();
@@ -142,15 +146,12 @@ public class LoadAppStateCommand implements ICommand<Boolean> {
         }
 
         List<Event> importEvents = importContext.getEventState().getAllEvents();
-        List<Event> currentEvents = context.getEventState().getAllEvents();
         for ( Event event : importEvents) {
 
-            Stream<Event> filteredEvents = currentEvents.stream();
-            filteredEvents = filteredEvents.filter(currentEvent -> currentEvent.getTitle().equals(event.getTitle())
-                    && currentEvent.getStartDateTime().equals(event.getStartDateTime())
-                    && currentEvent.getEndDateTime().equals(event.getEndDateTime()));
+            List<Event> filteredEvents = context.getEventState().findEventsByTitleAndTime(
+                    event.getTitle(), event.getStartDateTime(), event.getEndDateTime());
 
-            boolean isEventTitleAndTimeClash = filteredEvents.anyMatch(filteredEvent -> !filteredEvent.equals(event));
+            boolean isEventTitleAndTimeClash = filteredEvents.stream().anyMatch(filteredEvent -> !filteredEvent.equals(event));
 
             if (isEventTitleAndTimeClash)
             {
@@ -166,8 +167,10 @@ public class LoadAppStateCommand implements ICommand<Boolean> {
         }
 
         List<Booking> importBookings = importContext.getBookingState().getAllBookings();
-        List<Booking> currentBookings = context.getBookingState().getAllBookings();
         for (Booking booking : importBookings) {
+            // Clashing bookings are for an equal event, so they have the same event number
+            List<Booking> currentBookings = context.getBookingState()
+                    .findBookingsByEventNumber(booking.getEvent().getEventNumber());
             boolean clashingBookings = currentBookings.stream().anyMatch(currentBooking -> currentBooking.getEvent().equals(booking.getEvent())
                     && currentBooking.getBooker().equals(booking.getBooker())
                     && currentBooking.getBookingDateTime().equals(booking.getBookingDateTime())
@@ -197,12 +200,25 @@ public class LoadAppStateCommand implements ICommand<Boolean> {
         for (String userEmail : importUsers.keySet()) {
             if (!context.getUserState().getAllUsers().containsKey(userEmail)) {
                 User user = importUsers.get(userEmail);
+                // Imported consumers are added without their bookings, which are added below as bookings of this state
+                if (user instanceof Consumer) {
+                    Consumer consumer = (Consumer) user;
+                    user = Consumer.restore(consumer.getName(), consumer.getEmail(), consumer.getPhoneNumber(),
+                            consumer.getAddress(), consumer.getPasswordHash(), consumer.getPreferences());
+                }
                 context.getUserState().addUser(user);
             }
         }
 
+        // Imported events are added under new numbers, so imported bookings are moved onto the event of this state
+        // they are merged into, and get new numbers as well, rather than referring to numbers of the imported state
+        Map<Event, Event> mergedEvents = new IdentityHashMap<>();
         for (Event event : importEvents) {
-            if (!context.getEventState().getAllEvents().contains(event))
+            // Equal events have the same title and times, so only those need to be compared
+            List<Event> equalEvents = context.getEventState().findEventsByTitleAndTime(
+                    event.getTitle(), event.getStartDateTime(), event.getEndDateTime());
+            int equalEventIndex = equalEvents.indexOf(event);
+            Event mergedEvent = equalEventIndex >= 0 ? equalEvents.get(equalEventIndex) :
             context.getEventState().createEvent(
                     event.getTitle(),
                     event.getType(),
@@ -213,10 +229,13 @@ public class LoadAppStateCommand implements ICommand<Boolean> {
                     event.getStartDateTime(),
                     event.getEndDateTime(),
                     event.getTags());
+            mergedEvents.put(event, mergedEvent);
         }
 
         for (Booking booking : importBookings) {
-            context.getBookingState().addBooking(booking);
+            Consumer booker = (Consumer) context.getUserState().getAllUsers().get(booking.getBooker().getEmail());
+            Event event = mergedEvents.get(booking.getEvent());
+            booker.addBooking(context.getBookingState().importBooking(booking, booker, event));
         }
 
         view.displaySuccess(
@@ -58,7 +58,7 @@ public class LoginCommand implements ICommand<User> {
             return;
         }
 
-        context.getUserState().setCurrentUser(user);
+        context.getSession().setCurrentUser(user);
         view.displaySuccess(
                 "LoginCommand",
                 LogStatus.USER_LOGIN_SUCCESS,
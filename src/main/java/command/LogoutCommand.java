@@ -14,7 +14,7 @@ public class LogoutCommand implements ICommand<Void> {
      */
     @Override
     public void execute(Context context, IView view) {
-        if (context.getUserState().getCurrentUser() == null) {
+        if (context.getSession().getCurrentUser() == null) {
             view.displayFailure(
                     "LogoutCommand",
                     LogStatus.USER_LOGOUT_NOT_LOGGED_IN
@@ -22,7 +22,7 @@ public class LogoutCommand implements ICommand<Void> {
             return;
         }
 
-        context.getUserState().setCurrentUser(null);
+        context.getSession().setCurrentUser(null);
         view.displaySuccess(
                 "LogoutCommand",
                 LogStatus.USER_LOGOUT_SUCCESS
@@ -48,7 +48,7 @@ public class RegisterConsumerCommand implements ICommand<Consumer> {
      */
     @Override
     public void execute(Context context, IView view) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
         if (currentUser != null) {
             view.displayFailure(
                     "RegisterConsumerCommand",
@@ -134,7 +134,7 @@ public class RegisterConsumerCommand implements ICommand<Consumer> {
                         "password", "***")
         );
         newConsumerResult = consumer;
-        context.getUserState().setCurrentUser(consumer);
+        context.getSession().setCurrentUser(consumer);
         view.displaySuccess(
                 "RegisterConsumerCommand",
                 LogStatus.USER_LOGIN_SUCCESS,
@@ -40,7 +40,7 @@ public class RegisterStaffCommand implements ICommand<Staff> {
      */
     @Override
     public void execute(Context context, IView view) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
         if (currentUser != null) {
             view.displayFailure(
                     "RegisterConsumerCommand",
@@ -94,7 +94,7 @@ public class RegisterStaffCommand implements ICommand<Staff> {
                         "password", "***")
         );
 
-        context.getUserState().setCurrentUser(staff);
+        context.getSession().setCurrentUser(staff);
         view.displaySuccess(
                 "RegisterStaffCommand",
                 LogStatus.USER_LOGIN_SUCCESS,
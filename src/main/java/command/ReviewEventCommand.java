@@ -66,7 +66,7 @@ public class ReviewEventCommand implements ICommand<Review> {
         }
 
         //the current user is a logged-in Consumer
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
 
         if (!(currentUser instanceof Consumer)) {
             view.displayFailure("ReviewEventCommand",
@@ -1,5 +1,6 @@
 package command;
 
+import controller.BinarySnapshot;
 import controller.Context;
 import model.Staff;
 import model.User;
@@ -30,7 +31,7 @@ public class SaveAppStateCommand implements ICommand<Boolean> {
      */
     @Override
     public void execute(Context context, IView view) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
 
         if (!(currentUser instanceof Staff)) {
             view.displayFailure(
@@ -46,34 +47,9 @@ public class SaveAppStateCommand implements ICommand<Boolean> {
         }
 
 
-        FileOutputStream fileOut = null;
-        try {
-            fileOut = new FileOutputStream(filename);
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
-        }
-        ObjectOutputStream out = null;
-        try {
-            out = new ObjectOutputStream(fileOut);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-
-        try {
-            out.writeObject(context);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-
-        try {
-            out.close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        try {
-            fileOut.close();
+        // The compact binary format is much smaller and faster to write than Java serialization, see BinarySnapshot
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename))) {
+            BinarySnapshot.write(context, out);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -80,7 +80,7 @@ public class UpdateConsumerProfileCommand extends UpdateProfileCommand {
             return;
         }
 
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
 
         if (!(currentUser instanceof Consumer)) {
             view.displayFailure(
@@ -22,7 +22,7 @@ public abstract class UpdateProfileCommand implements ICommand<Boolean> {
      * @return True/false based on whether the profile update is valid
      */
     protected boolean isProfileUpdateInvalid(Context context, IView view, String oldPassword, String newEmail) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
 
         if (currentUser == null) {
             view.displayFailure(
@@ -59,7 +59,7 @@ public abstract class UpdateProfileCommand implements ICommand<Boolean> {
      * @param newEmail new email address for the current user
      */
     protected void changeUserEmail(Context context, String newEmail) {
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
         String oldEmail = currentUser.getEmail();
         if (oldEmail.equals(newEmail)) {
             // Email hasn't changed, no need to do anything
@@ -67,7 +67,7 @@ public abstract class UpdateProfileCommand implements ICommand<Boolean> {
         }
 
         currentUser.setEmail(newEmail);
-        context.getUserState().getAllUsers().remove(oldEmail);
+        context.getUserState().removeUser(oldEmail);
         context.getUserState().addUser(currentUser);
     }
 
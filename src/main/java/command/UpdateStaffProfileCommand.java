@@ -57,7 +57,7 @@ public class UpdateStaffProfileCommand extends UpdateProfileCommand {
             return;
         }
 
-        User currentUser = context.getUserState().getCurrentUser();
+        User currentUser = context.getSession().getCurrentUser();
 
         if (!(currentUser instanceof Staff)) {
             view.displayFailure(
@@ -0,0 +1,732 @@
+package controller;
+
+import model.*;
+import state.BookingState;
+import state.EventState;
+import state.UserState;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * {@link BinarySnapshot} is a compact binary format for saving the app state of a {@link Context}, used instead of
+ * Java serialization, which writes class descriptors and boxed values, and follows object references recursively.
+ * <ul>
+ *     <li>Every distinct string is written once, to a string table, and referred to by its index in the table</li>
+ *     <li>Users, events and bookings are written to tables as well, and refer to each other by their index</li>
+ *     <li>Numbers are written as variable-length integers, taking one byte for values below 128</li>
+ *     <li>Date-times are written as seconds since the epoch, relative to the previous date-time of the same kind, and
+ *     nanoseconds</li>
+ * </ul>
+ * The entities in each table are the ones in the context's states, in order, followed by any entity that is only
+ * referred to by another one, e.g. a booking in a consumer's list of bookings that is not part of the booking state.
+ * These are restored as well, but not added to the states.
+ * <p>
+ * Snapshots can be read from a file with {@link #read(FileChannel)}, which maps the file into memory and decodes it
+ * straight from the mapping, instead of copying it into a buffer on the heap first.
+ * <p>
+ * Snapshots written as checkpoints of a {@link CommandJournal} carry the number of the checkpoint, so that the journal
+ * can tell which of its entries are part of the snapshot already.
+ */
+public final class BinarySnapshot {
+    private static final byte[] MAGIC = {'E', 'V', 'S', 'N'};
+    // Version 2 added the checkpoint number, and version 3 the refund status of bookings
+    private static final int VERSION = 3;
+    // String index 0 stands for null
+    private static final int NULL_STRING = 0;
+    private static final int STAFF = 0;
+    private static final int CONSUMER = 1;
+    /**
+     * Maximum number of bytes of a file mapped at once, unless configured otherwise. A single mapping cannot be larger
+     * than 2 GiB, so larger files are read through several mappings, one after another.
+     */
+    public static final int DEFAULT_MAP_WINDOW_SIZE = 1 << 30;
+
+    private BinarySnapshot() {
+    }
+
+    /**
+     * @param header first bytes of a file
+     * @return True if the bytes start like a binary snapshot
+     */
+    public static boolean isBinarySnapshot(byte[] header) {
+        return header.length >= MAGIC.length && Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC);
+    }
+
+    /**
+     * @param channel channel of a file, whose position is left unchanged
+     * @return True if the file starts like a binary snapshot
+     * @throws IOException if reading the file fails
+     */
+    public static boolean isBinarySnapshot(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length);
+        while (header.hasRemaining()) {
+            // Reading at an absolute position leaves the channel's position unchanged
+            if (channel.read(header, header.position()) < 0) {
+                break;
+            }
+        }
+        return isBinarySnapshot(Arrays.copyOf(header.array(), header.position()));
+    }
+
+    /**
+     * Write the app state of a context. The states must not change while they are written, e.g. by holding the
+     * command lock.
+     *
+     * @param context context whose organisation details and states to write
+     * @param out     stream to write to, which is not closed
+     * @throws IOException if writing to the stream fails
+     */
+    public static void write(Context context, OutputStream out) throws IOException {
+        write(context, out, 0);
+    }
+
+    /**
+     * Write the app state of a context like {@link #write(Context, OutputStream)}, as a checkpoint of a
+     * {@link CommandJournal}
+     *
+     * @param context          context whose organisation details and states to write
+     * @param out              stream to write to, which is not closed
+     * @param checkpointNumber number of the checkpoint, or 0 if the snapshot is not a checkpoint
+     * @throws IOException if writing to the stream fails
+     */
+    static void write(Context context, OutputStream out, long checkpointNumber) throws IOException {
+        new Writer(context, checkpointNumber).writeTo(out);
+    }
+
+    /**
+     * Read a context written by {@link #write(Context, OutputStream)}. Like a deserialized context, the returned one
+     * has no payment, map or notification systems, and is only meant to read the restored states from.
+     *
+     * @param buffer buffer holding the snapshot, from its current position
+     * @return The restored context
+     * @throws IOException if the buffer does not hold a valid snapshot
+     */
+    public static Context read(ByteBuffer buffer) throws IOException {
+        return read(new Input(buffer));
+    }
+
+    /**
+     * Read a context written by {@link #write(Context, OutputStream)} to a file, like {@link #read(ByteBuffer)}, by
+     * mapping the file into memory
+     *
+     * @param channel channel of the file holding the snapshot from its start, which is not closed
+     * @return The restored context
+     * @throws IOException if the file cannot be mapped, or does not hold a valid snapshot
+     */
+    public static Context read(FileChannel channel) throws IOException {
+        return read(channel, DEFAULT_MAP_WINDOW_SIZE);
+    }
+
+    /**
+     * Read a context written by {@link #write(Context, OutputStream)} to a file, like {@link #read(FileChannel)}, but
+     * mapping at most the given number of bytes at once
+     *
+     * @param channel       channel of the file holding the snapshot from its start, which is not closed
+     * @param mapWindowSize maximum number of bytes mapped at once
+     * @return The restored context
+     * @throws IOException if the file cannot be mapped, or does not hold a valid snapshot
+     */
+    public static Context read(FileChannel channel, int mapWindowSize) throws IOException {
+        if (mapWindowSize < 1) {
+            throw new IllegalArgumentException("mapWindowSize must be at least 1");
+        }
+        return read(new Input(channel, channel.size(), mapWindowSize));
+    }
+
+    private static Context read(Input input) throws IOException {
+        try {
+            return new Reader(input).read();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt app state snapshot", e);
+        }
+    }
+
+    // Growable byte array with variable-length integer encoding, also used by CommandJournal
+    static class Bytes {
+        private byte[] bytes = new byte[1024];
+        private int size;
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] values) {
+            ensureCapacity(values.length);
+            System.arraycopy(values, 0, bytes, size, values.length);
+            size += values.length;
+        }
+
+        // Unsigned LEB128: 7 bits per byte, lowest first, with the high bit set on all but the last byte
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        // Zigzag encoding maps small negative numbers to small unsigned ones: 0, -1, 1, -2... to 0, 1, 2, 3...
+        void writeSignedVarLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+
+        int size() {
+            return size;
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(bytes, 0, size);
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    private static class Writer {
+        private final Context context;
+        private final Bytes body = new Bytes();
+        private final Map<String, Integer> stringIndexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final Map<User, Integer> userIndexes = new IdentityHashMap<>();
+        private final List<User> users = new ArrayList<>();
+        private final Map<Event, Integer> eventIndexes = new IdentityHashMap<>();
+        private final List<Event> events = new ArrayList<>();
+        private final Map<Booking, Integer> bookingIndexes = new IdentityHashMap<>();
+        private final List<Booking> bookings = new ArrayList<>();
+        private final long checkpointNumber;
+        private long previousEpochSecond;
+
+        private Writer(Context context, long checkpointNumber) {
+            this.context = context;
+            this.checkpointNumber = checkpointNumber;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            // Entities of the states come first, so that the reader can tell them from the ones only referred to
+            context.getUserState().getAllUsers().values().forEach(user -> add(user, userIndexes, users));
+            context.getEventState().getAllEvents().forEach(event -> add(event, eventIndexes, events));
+            context.getBookingState().getAllBookings().forEach(booking -> add(booking, bookingIndexes, bookings));
+            int numStateUsers = users.size();
+            int numStateEvents = events.size();
+            int numStateBookings = bookings.size();
+            addReferencedEntities();
+
+            writeString(context.getOrgName());
+            writeString(context.getOrgAddress());
+            writeString(context.getOrgEmail());
+            writeString(context.getOrgSecret());
+            writePossibleTags(context.getEventState().getPossibleTags());
+            writeUsers(numStateUsers);
+            writeEvents(numStateEvents);
+            writeBookings(numStateBookings);
+            writeConsumerBookings();
+
+            Bytes header = new Bytes();
+            header.writeBytes(MAGIC);
+            header.writeVarLong(VERSION);
+            header.writeVarLong(checkpointNumber);
+            header.writeVarLong(strings.size());
+            for (String string : strings) {
+                byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+                header.writeVarLong(utf8.length);
+                header.writeBytes(utf8);
+            }
+            header.writeTo(out);
+            body.writeTo(out);
+        }
+
+        private static <T> boolean add(T entity, Map<T, Integer> indexes, List<T> entities) {
+            if (indexes.containsKey(entity)) {
+                return false;
+            }
+            indexes.put(entity, entities.size());
+            entities.add(entity);
+            return true;
+        }
+
+        // Adds the entities referred to by the ones added so far, and by those in turn, until there are no new ones
+        private void addReferencedEntities() {
+            int userCursor = 0, eventCursor = 0, bookingCursor = 0;
+            while (userCursor < users.size() || eventCursor < events.size() || bookingCursor < bookings.size()) {
+                for (; userCursor < users.size(); userCursor++) {
+                    User user = users.get(userCursor);
+                    if (user instanceof Consumer) {
+                        ((Consumer) user).getBookings().forEach(booking -> add(booking, bookingIndexes, bookings));
+                    }
+                }
+                for (; eventCursor < events.size(); eventCursor++) {
+                    for (Review review : events.get(eventCursor).getReviews()) {
+                        add(review.getAuthor(), userIndexes, users);
+                    }
+                }
+                for (; bookingCursor < bookings.size(); bookingCursor++) {
+                    Booking booking = bookings.get(bookingCursor);
+                    add(booking.getBooker(), userIndexes, users);
+                    add(booking.getEvent(), eventIndexes, events);
+                }
+            }
+        }
+
+        private void writeString(String string) {
+            if (string == null) {
+                body.writeVarLong(NULL_STRING);
+                return;
+            }
+            Integer index = stringIndexes.get(string);
+            if (index == null) {
+                strings.add(string);
+                index = strings.size();
+                stringIndexes.put(string, index);
+            }
+            body.writeVarLong(index);
+        }
+
+        private void writeDateTime(LocalDateTime dateTime) {
+            long epochSecond = dateTime.toEpochSecond(ZoneOffset.UTC);
+            body.writeSignedVarLong(epochSecond - previousEpochSecond);
+            body.writeVarLong(dateTime.getNano());
+            previousEpochSecond = epochSecond;
+        }
+
+        private void writeTags(EventTagCollection tags) {
+            Set<String> tagNames = tags.getTagNames();
+            body.writeVarLong(tagNames.size());
+            for (String tagName : tagNames) {
+                writeString(tagName);
+                writeString(tags.getValueFor(tagName));
+            }
+        }
+
+        private void writePossibleTags(Map<String, EventTag> possibleTags) {
+            body.writeVarLong(possibleTags.size());
+            for (Map.Entry<String, EventTag> entry : possibleTags.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue().defaultValue);
+                body.writeVarLong(entry.getValue().values.size());
+                for (String value : entry.getValue().values) {
+                    writeString(value);
+                }
+            }
+        }
+
+        private void writeUsers(int numStateUsers) {
+            body.writeVarLong(numStateUsers);
+            body.writeVarLong(users.size() - numStateUsers);
+            for (User user : users) {
+                writeString(user.getEmail());
+                writeString(user.getPasswordHash());
+                if (user instanceof Consumer) {
+                    Consumer consumer = (Consumer) user;
+                    body.writeByte(CONSUMER);
+                    writeString(consumer.getName());
+                    writeString(consumer.getPhoneNumber());
+                    writeString(consumer.getAddress());
+                    writeTags(consumer.getPreferences());
+                } else {
+                    body.writeByte(STAFF);
+                }
+            }
+        }
+
+        private void writeEvents(int numStateEvents) {
+            body.writeVarLong(numStateEvents);
+            body.writeVarLong(events.size() - numStateEvents);
+            for (Event event : events) {
+                body.writeSignedVarLong(event.getEventNumber());
+                writeString(event.getTitle());
+                body.writeVarLong(event.getType().ordinal());
+                body.writeVarLong(event.getStatus().ordinal());
+                body.writeSignedVarLong(event.getNumTicketsCap());
+                // Tickets held for bookings in progress are not booked yet, and the holds are not saved
+                body.writeSignedVarLong(event.getNumTicketsLeft() + event.getNumTicketsReserved());
+                body.writeSignedVarLong(event.getTicketPriceInPence());
+                writeString(event.getVenueAddress());
+                writeString(event.getDescription());
+                writeDateTime(event.getStartDateTime());
+                writeDateTime(event.getEndDateTime());
+                writeTags(event.getTags());
+                List<Review> reviews = event.getReviews();
+                body.writeVarLong(reviews.size());
+                for (Review review : reviews) {
+                    body.writeVarLong(userIndexes.get(review.getAuthor()));
+                    writeDateTime(review.getCreationDateTime());
+                    writeString(review.getContent());
+                }
+            }
+        }
+
+        private void writeBookings(int numStateBookings) {
+            body.writeVarLong(numStateBookings);
+            body.writeVarLong(bookings.size() - numStateBookings);
+            for (Booking booking : bookings) {
+                body.writeSignedVarLong(booking.getBookingNumber());
+                body.writeVarLong(userIndexes.get(booking.getBooker()));
+                body.writeVarLong(eventIndexes.get(booking.getEvent()));
+                body.writeSignedVarLong(booking.getNumTickets());
+                body.writeVarLong(booking.getStatus().ordinal());
+                writeDateTime(booking.getBookingDateTime());
+                // 0 stands for a booking that does not have to be refunded
+                RefundStatus refundStatus = booking.getRefundStatus();
+                body.writeVarLong(refundStatus == null ? 0 : refundStatus.ordinal() + 1);
+            }
+        }
+
+        // A consumer's bookings are usually made one after another, so each is written relative to the previous one
+        private void writeConsumerBookings() {
+            for (User user : users) {
+                if (user instanceof Consumer) {
+                    List<Booking> consumerBookings = ((Consumer) user).getBookings();
+                    body.writeVarLong(consumerBookings.size());
+                    long previousIndex = 0;
+                    for (Booking booking : consumerBookings) {
+                        int index = bookingIndexes.get(booking);
+                        body.writeSignedVarLong(index - previousIndex);
+                        previousIndex = index;
+                    }
+                }
+            }
+        }
+    }
+
+    // Bytes read from a buffer, or from a file mapped into memory one window at a time, also used by CommandJournal
+    static class Input {
+        private final FileChannel channel;
+        private final long fileSize;
+        private final int mapWindowSize;
+        private ByteBuffer window;
+        // Offset in the file just past the current window
+        private long windowEnd;
+
+        Input(ByteBuffer buffer) {
+            this.channel = null;
+            this.fileSize = 0;
+            this.mapWindowSize = 0;
+            this.window = buffer;
+        }
+
+        Input(FileChannel channel, long fileSize, int mapWindowSize) {
+            this.channel = channel;
+            this.fileSize = fileSize;
+            this.mapWindowSize = mapWindowSize;
+            this.window = ByteBuffer.allocate(0);
+        }
+
+        private void mapNextWindow() {
+            if (channel == null || windowEnd >= fileSize) {
+                throw new BufferUnderflowException();
+            }
+            long size = Math.min(mapWindowSize, fileSize - windowEnd);
+            try {
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowEnd, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            windowEnd += size;
+        }
+
+        byte get() {
+            if (!window.hasRemaining()) {
+                mapNextWindow();
+            }
+            return window.get();
+        }
+
+        void get(byte[] bytes) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!window.hasRemaining()) {
+                    mapNextWindow();
+                }
+                int length = Math.min(window.remaining(), bytes.length - offset);
+                window.get(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        long getVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Variable-length integer is too long");
+        }
+
+        long getSignedVarLong() {
+            long value = getVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long remaining() {
+            return window.remaining() + (channel == null ? 0 : fileSize - windowEnd);
+        }
+
+        String getString(int length) {
+            if (window.hasArray() && window.remaining() >= length) {
+                // Decoded straight from the buffer's array, without copying the bytes first
+                String string = new String(window.array(), window.arrayOffset() + window.position(), length,
+                        StandardCharsets.UTF_8);
+                window.position(window.position() + length);
+                return string;
+            }
+            byte[] utf8 = new byte[length];
+            get(utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class Reader {
+        private final Input input;
+        private String[] strings;
+        private User[] users;
+        private Event[] events;
+        private Booking[] bookings;
+        private long previousEpochSecond;
+        private long version;
+
+        private Reader(Input input) {
+            this.input = input;
+        }
+
+        Context read() throws IOException {
+            byte[] magic = new byte[MAGIC.length];
+            input.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not an app state snapshot");
+            }
+            version = readVarLong();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported app state snapshot version " + version);
+            }
+            long checkpointNumber = version >= 2 ? readVarLong() : 0;
+            readStrings();
+
+            String orgName = readString();
+            String orgAddress = readString();
+            String orgEmail = readString();
+            String orgSecret = readString();
+            UserState userState = new UserState();
+            EventState eventState = new EventState();
+            BookingState bookingState = new BookingState();
+            readPossibleTags(eventState);
+            readUsers(userState);
+            readEvents(eventState);
+            readBookings(bookingState);
+            readConsumerBookings();
+            return new Context(orgName, orgAddress, orgEmail, orgSecret, userState, eventState, bookingState,
+                    checkpointNumber);
+        }
+
+        long readVarLong() {
+            return input.getVarLong();
+        }
+
+        long readSignedVarLong() {
+            return input.getSignedVarLong();
+        }
+
+        private int readCount() {
+            long count = readVarLong();
+            if (count < 0 || count > Integer.MAX_VALUE || count > input.remaining()) {
+                // Every entry takes at least one byte, so a count beyond what is left is corrupt
+                throw new IllegalArgumentException("Invalid count " + count);
+            }
+            return (int) count;
+        }
+
+        private int readIndex(int size) {
+            long index = readVarLong();
+            if (index < 0 || index >= size) {
+                throw new IllegalArgumentException("Invalid reference " + index);
+            }
+            return (int) index;
+        }
+
+        private void readStrings() {
+            int numStrings = readCount();
+            strings = new String[numStrings + 1];
+            for (int i = 1; i <= numStrings; i++) {
+                strings[i] = input.getString(readCount());
+            }
+        }
+
+        private String readString() {
+            return strings[readIndex(strings.length)];
+        }
+
+        private LocalDateTime readDateTime() {
+            long epochSecond = previousEpochSecond + readSignedVarLong();
+            previousEpochSecond = epochSecond;
+            return LocalDateTime.ofEpochSecond(epochSecond, (int) readVarLong(), ZoneOffset.UTC);
+        }
+
+        private EventTagCollection readTags() {
+            int numTags = readCount();
+            if (numTags == 0) {
+                return new EventTagCollection();
+            }
+            Map<String, String> tags = new HashMap<>();
+            for (int i = 0; i < numTags; i++) {
+                tags.put(readString(), readString());
+            }
+            return new EventTagCollection(tags);
+        }
+
+        private static <T extends Enum<T>> T readEnum(T[] values, long ordinal) {
+            if (ordinal < 0 || ordinal >= values.length) {
+                throw new IllegalArgumentException("Invalid " + values.getClass().getComponentType().getSimpleName()
+                        + " " + ordinal);
+            }
+            return values[(int) ordinal];
+        }
+
+        private void readPossibleTags(EventState eventState) {
+            int numTags = readCount();
+            for (int i = 0; i < numTags; i++) {
+                String tagName = readString();
+                String defaultValue = readString();
+                int numValues = readCount();
+                Set<String> values = new HashSet<>();
+                for (int j = 0; j < numValues; j++) {
+                    values.add(readString());
+                }
+                eventState.createEventTag(tagName, values, defaultValue);
+            }
+        }
+
+        private void readUsers(UserState userState) {
+            int numStateUsers = readCount();
+            users = new User[numStateUsers + readCount()];
+            for (int i = 0; i < users.length; i++) {
+                String email = readString();
+                String passwordHash = readString();
+                int kind = input.get();
+                if (kind == CONSUMER) {
+                    users[i] = Consumer.restore(readString(), email, readString(), readString(), passwordHash,
+                            readTags());
+                } else if (kind == STAFF) {
+                    users[i] = Staff.restore(email, passwordHash);
+                } else {
+                    throw new IllegalArgumentException("Invalid user kind " + kind);
+                }
+                if (i < numStateUsers) {
+                    userState.addUser(users[i]);
+                }
+            }
+        }
+
+        private void readEvents(EventState eventState) {
+            int numStateEvents = readCount();
+            events = new Event[numStateEvents + readCount()];
+            for (int i = 0; i < events.length; i++) {
+                long eventNumber = readSignedVarLong();
+                String title = readString();
+                EventType type = readEnum(EventType.values(), readVarLong());
+                EventStatus status = readEnum(EventStatus.values(), readVarLong());
+                int numTicketsCap = (int) readSignedVarLong();
+                int numTicketsLeft = (int) readSignedVarLong();
+                int ticketPriceInPence = (int) readSignedVarLong();
+                String venueAddress = readString();
+                String description = readString();
+                LocalDateTime startDateTime = readDateTime();
+                LocalDateTime endDateTime = readDateTime();
+                EventTagCollection tags = readTags();
+                Event event;
+                if (i < numStateEvents) {
+                    event = eventState.restoreEvent(eventNumber, title, type, numTicketsCap, ticketPriceInPence,
+                            venueAddress, description, startDateTime, endDateTime, tags, status, numTicketsLeft);
+                } else {
+                    event = new Event(eventNumber, title, type, numTicketsCap, ticketPriceInPence, venueAddress,
+                            description, startDateTime, endDateTime, tags);
+                    event.setNumTicketsLeft(numTicketsLeft);
+                    if (status == EventStatus.CANCELLED) {
+                        event.cancel();
+                    }
+                }
+                int numReviews = readCount();
+                for (int j = 0; j < numReviews; j++) {
+                    User author = users[readIndex(users.length)];
+                    if (!(author instanceof Consumer)) {
+                        throw new IllegalArgumentException("Review author is not a consumer");
+                    }
+                    event.addReview(new Review((Consumer) author, event, readDateTime(), readString()));
+                }
+                events[i] = event;
+            }
+        }
+
+        private void readBookings(BookingState bookingState) {
+            int numStateBookings = readCount();
+            bookings = new Booking[numStateBookings + readCount()];
+            for (int i = 0; i < bookings.length; i++) {
+                long bookingNumber = readSignedVarLong();
+                User booker = users[readIndex(users.length)];
+                if (!(booker instanceof Consumer)) {
+                    throw new IllegalArgumentException("Booker is not a consumer");
+                }
+                Event event = events[readIndex(events.length)];
+                int numTickets = (int) readSignedVarLong();
+                BookingStatus status = readEnum(BookingStatus.values(), readVarLong());
+                Booking booking = new Booking(bookingNumber, (Consumer) booker, event, numTickets, readDateTime());
+                if (status == BookingStatus.CancelledByConsumer) {
+                    booking.cancelByConsumer();
+                } else if (status == BookingStatus.CancelledByProvider) {
+                    booking.cancelByProvider();
+                }
+                long refundStatus = version >= 3 ? readVarLong() : 0;
+                if (refundStatus != 0) {
+                    booking.setRefundStatus(readEnum(RefundStatus.values(), refundStatus - 1));
+                }
+                if (i < numStateBookings) {
+                    bookingState.restoreBooking(booking);
+                }
+                bookings[i] = booking;
+            }
+        }
+
+        private void readConsumerBookings() {
+            for (User user : users) {
+                if (user instanceof Consumer) {
+                    int numBookings = readCount();
+                    List<Booking> consumerBookings = new ArrayList<>(numBookings);
+                    long index = 0;
+                    for (int i = 0; i < numBookings; i++) {
+                        index += readSignedVarLong();
+                        if (index < 0 || index >= bookings.length) {
+                            throw new IllegalArgumentException("Invalid booking reference " + index);
+                        }
+                        consumerBookings.add(bookings[(int) index]);
+                    }
+                    ((Consumer) user).addBookings(consumerBookings);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package controller;
+
+import model.*;
+import state.BookingState;
+import state.EventState;
+import state.IUserState;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * {@link ChangeCodec} encodes the changes taken from the states' {@link ChangeTracker}s, as they are written to a
+ * {@link CommandJournal} or a delta of a {@link SnapshotChain}, and applies encoded changes to the states of a context.
+ * Every change is written as a byte telling its kind, followed by its fields. Numbers are written as variable-length
+ * integers like in {@link BinarySnapshot}, and so are the lengths of strings, which are written in UTF-8.
+ */
+final class ChangeCodec {
+    private static final int TAG_CREATED = 0;
+    private static final int USER_RENAMED = 1;
+    private static final int USER_REMOVED = 2;
+    private static final int STAFF = 3;
+    private static final int CONSUMER = 4;
+    private static final int EVENT = 5;
+    private static final int BOOKING = 6;
+    private static final int REVIEW = 7;
+    private static final int REFUND_STATUS = 8;
+
+    private ChangeCodec() {
+    }
+
+    /**
+     * Encode changes, preceded by their number
+     *
+     * @param changes changes taken from the states' change trackers, in the order they were made
+     * @param out     bytes to append the encoded changes to
+     * @throws IllegalArgumentException if a change is of a kind that cannot be recorded
+     */
+    static void write(List<Object> changes, BinarySnapshot.Bytes out) {
+        out.writeVarLong(changes.size());
+        for (Object change : changes) {
+            writeChange(out, change);
+        }
+    }
+
+    private static void writeString(BinarySnapshot.Bytes out, String string) {
+        if (string == null) {
+            out.writeVarLong(0);
+            return;
+        }
+        byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+        out.writeVarLong(utf8.length + 1L);
+        out.writeBytes(utf8);
+    }
+
+    private static void writeDateTime(BinarySnapshot.Bytes out, LocalDateTime dateTime) {
+        out.writeSignedVarLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+        out.writeVarLong(dateTime.getNano());
+    }
+
+    private static void writeTags(BinarySnapshot.Bytes out, EventTagCollection tags) {
+        Set<String> tagNames = tags.getTagNames();
+        out.writeVarLong(tagNames.size());
+        for (String tagName : tagNames) {
+            writeString(out, tagName);
+            writeString(out, tags.getValueFor(tagName));
+        }
+    }
+
+    private static void writeChange(BinarySnapshot.Bytes out, Object change) {
+        if (change instanceof ChangeTracker.TagCreated) {
+            ChangeTracker.TagCreated tagCreated = (ChangeTracker.TagCreated) change;
+            out.writeByte(TAG_CREATED);
+            writeString(out, tagCreated.getTagName());
+            writeString(out, tagCreated.getTag().defaultValue);
+            out.writeVarLong(tagCreated.getTag().values.size());
+            for (String value : tagCreated.getTag().values) {
+                writeString(out, value);
+            }
+        } else if (change instanceof ChangeTracker.UserRenamed) {
+            ChangeTracker.UserRenamed userRenamed = (ChangeTracker.UserRenamed) change;
+            out.writeByte(USER_RENAMED);
+            writeString(out, userRenamed.getOldEmail());
+            writeString(out, userRenamed.getNewEmail());
+        } else if (change instanceof ChangeTracker.UserRemoved) {
+            out.writeByte(USER_REMOVED);
+            writeString(out, ((ChangeTracker.UserRemoved) change).getEmail());
+        } else if (change instanceof Consumer) {
+            Consumer consumer = (Consumer) change;
+            out.writeByte(CONSUMER);
+            writeString(out, consumer.getEmail());
+            writeString(out, consumer.getPasswordHash());
+            writeString(out, consumer.getName());
+            writeString(out, consumer.getPhoneNumber());
+            writeString(out, consumer.getAddress());
+            writeTags(out, consumer.getPreferences());
+        } else if (change instanceof Staff) {
+            Staff staff = (Staff) change;
+            out.writeByte(STAFF);
+            writeString(out, staff.getEmail());
+            writeString(out, staff.getPasswordHash());
+        } else if (change instanceof Event) {
+            Event event = (Event) change;
+            out.writeByte(EVENT);
+            out.writeSignedVarLong(event.getEventNumber());
+            writeString(out, event.getTitle());
+            out.writeVarLong(event.getType().ordinal());
+            out.writeVarLong(event.getStatus().ordinal());
+            out.writeSignedVarLong(event.getNumTicketsCap());
+            // Tickets held for bookings in progress are not booked yet, and the holds do not survive a restart
+            out.writeSignedVarLong(event.getNumTicketsLeft() + event.getNumTicketsReserved());
+            out.writeSignedVarLong(event.getTicketPriceInPence());
+            writeString(out, event.getVenueAddress());
+            writeString(out, event.getDescription());
+            writeDateTime(out, event.getStartDateTime());
+            writeDateTime(out, event.getEndDateTime());
+            writeTags(out, event.getTags());
+        } else if (change instanceof Booking) {
+            Booking booking = (Booking) change;
+            out.writeByte(BOOKING);
+            out.writeSignedVarLong(booking.getBookingNumber());
+            writeString(out, booking.getBooker().getEmail());
+            out.writeSignedVarLong(booking.getEvent().getEventNumber());
+            out.writeSignedVarLong(booking.getNumTickets());
+            out.writeVarLong(booking.getStatus().ordinal());
+            writeDateTime(out, booking.getBookingDateTime());
+        } else if (change instanceof Review) {
+            Review review = (Review) change;
+            out.writeByte(REVIEW);
+            out.writeSignedVarLong(review.getEvent().getEventNumber());
+            writeString(out, review.getAuthor().getEmail());
+            writeDateTime(out, review.getCreationDateTime());
+            writeString(out, review.getContent());
+        } else if (change instanceof ChangeTracker.RefundStatusChanged) {
+            ChangeTracker.RefundStatusChanged refundStatusChanged = (ChangeTracker.RefundStatusChanged) change;
+            out.writeByte(REFUND_STATUS);
+            out.writeSignedVarLong(refundStatusChanged.getBooking().getBookingNumber());
+            out.writeVarLong(refundStatusChanged.getRefundStatus().ordinal());
+        } else {
+            throw new IllegalArgumentException("Cannot record change " + change);
+        }
+    }
+
+    private static String readString(BinarySnapshot.Input input) {
+        long length = input.getVarLong();
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length - 1 > input.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + (length - 1));
+        }
+        return input.getString((int) (length - 1));
+    }
+
+    private static LocalDateTime readDateTime(BinarySnapshot.Input input) {
+        long epochSecond = input.getSignedVarLong();
+        return LocalDateTime.ofEpochSecond(epochSecond, (int) input.getVarLong(), ZoneOffset.UTC);
+    }
+
+    private static EventTagCollection readTags(BinarySnapshot.Input input) {
+        long numTags = input.getVarLong();
+        if (numTags == 0) {
+            return new EventTagCollection();
+        }
+        Map<String, String> tags = new HashMap<>();
+        for (long i = 0; i < numTags; i++) {
+            tags.put(readString(input), readString(input));
+        }
+        return new EventTagCollection(tags);
+    }
+
+    private static <T extends Enum<T>> T readEnum(T[] values, long ordinal) {
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IllegalArgumentException("Invalid " + values.getClass().getComponentType().getSimpleName()
+                    + " " + ordinal);
+        }
+        return values[(int) ordinal];
+    }
+
+    /**
+     * Apply encoded changes to the states of a context. Users, events and bookings are set to their recorded values,
+     * and events and bookings the states do not have yet are restored under their recorded numbers. Bookings and
+     * reviews must refer to users and events the states have, as merged bookings are recorded under the numbers they
+     * get in this state (see {@link state.IBookingState#importBooking}).
+     *
+     * @param input   encoded changes
+     * @param context context whose states to change
+     * @throws java.nio.BufferUnderflowException if the input ends before the changes do
+     * @throws IllegalArgumentException          if the input is not a valid encoding of changes, or refers to users,
+     *                                           events or bookings the states do not have
+     */
+    static void apply(BinarySnapshot.Input input, Context context) {
+        IUserState userState = context.getUserState();
+        // Restoring events and bookings under their recorded numbers is up to the implementations
+        EventState eventState = (EventState) context.getEventState();
+        BookingState bookingState = (BookingState) context.getBookingState();
+        // Users removed before being renamed, so that the rename keeps the bookings and reviews referring to them
+        Map<String, User> removedUsers = new HashMap<>();
+        long numChanges = input.getVarLong();
+        for (long i = 0; i < numChanges; i++) {
+            int kind = input.get();
+            switch (kind) {
+                case TAG_CREATED: {
+                    String tagName = readString(input);
+                    String defaultValue = readString(input);
+                    long numValues = input.getVarLong();
+                    Set<String> values = new HashSet<>();
+                    for (long j = 0; j < numValues; j++) {
+                        values.add(readString(input));
+                    }
+                    eventState.createEventTag(tagName, values, defaultValue);
+                    break;
+                }
+                case USER_RENAMED: {
+                    String oldEmail = readString(input);
+                    String newEmail = readString(input);
+                    User user = userState.getAllUsers().get(oldEmail);
+                    if (user == null) {
+                        user = removedUsers.remove(oldEmail);
+                    }
+                    // Not there yet if it was added and renamed by the same change, in which case it is recorded
+                    // under its new email address afterwards
+                    if (user != null) {
+                        userState.removeUser(oldEmail);
+                        user.setEmail(newEmail);
+                        userState.addUser(user);
+                    }
+                    break;
+                }
+                case USER_REMOVED: {
+                    String email = readString(input);
+                    User user = userState.getAllUsers().get(email);
+                    if (user != null) {
+                        removedUsers.put(email, user);
+                        userState.removeUser(email);
+                    }
+                    break;
+                }
+                case STAFF: {
+                    String email = readString(input);
+                    String passwordHash = readString(input);
+                    User user = userState.getAllUsers().get(email);
+                    if (user instanceof Staff) {
+                        user.restorePasswordHash(passwordHash);
+                    } else {
+                        userState.addUser(Staff.restore(email, passwordHash));
+                    }
+                    break;
+                }
+                case CONSUMER: {
+                    String email = readString(input);
+                    String passwordHash = readString(input);
+                    String name = readString(input);
+                    String phoneNumber = readString(input);
+                    String address = readString(input);
+                    EventTagCollection preferences = readTags(input);
+                    User user = userState.getAllUsers().get(email);
+                    // Bookings and reviews refer to the consumer, so an existing one is updated rather than replaced
+                    if (user instanceof Consumer) {
+                        Consumer consumer = (Consumer) user;
+                        consumer.restorePasswordHash(passwordHash);
+                        consumer.setName(name);
+                        consumer.setPhoneNumber(phoneNumber);
+                        consumer.setAddress(address);
+                        consumer.setPreferences(preferences);
+                    } else {
+                        userState.addUser(Consumer.restore(name, email, phoneNumber, address, passwordHash,
+                                preferences));
+                    }
+                    break;
+                }
+                case EVENT: {
+                    long eventNumber = input.getSignedVarLong();
+                    String title = readString(input);
+                    EventType type = readEnum(EventType.values(), input.getVarLong());
+                    EventStatus status = readEnum(EventStatus.values(), input.getVarLong());
+                    int numTicketsCap = (int) input.getSignedVarLong();
+                    int numTicketsLeft = (int) input.getSignedVarLong();
+                    int ticketPriceInPence = (int) input.getSignedVarLong();
+                    String venueAddress = readString(input);
+                    String description = readString(input);
+                    LocalDateTime startDateTime = readDateTime(input);
+                    LocalDateTime endDateTime = readDateTime(input);
+                    EventTagCollection tags = readTags(input);
+                    Event event = eventState.findEventByNumber(eventNumber);
+                    if (event == null) {
+                        eventState.restoreEvent(eventNumber, title, type, numTicketsCap, ticketPriceInPence,
+                                venueAddress, description, startDateTime, endDateTime, tags, status, numTicketsLeft);
+                    } else {
+                        event.setNumTicketsLeft(numTicketsLeft);
+                        if (status == EventStatus.CANCELLED && event.getStatus() != EventStatus.CANCELLED) {
+                            eventState.cancelEvent(event);
+                        }
+                    }
+                    break;
+                }
+                case BOOKING: {
+                    long bookingNumber = input.getSignedVarLong();
+                    String bookerEmail = readString(input);
+                    long eventNumber = input.getSignedVarLong();
+                    int numTickets = (int) input.getSignedVarLong();
+                    BookingStatus status = readEnum(BookingStatus.values(), input.getVarLong());
+                    LocalDateTime bookingDateTime = readDateTime(input);
+                    Booking booking = bookingState.findBookingByNumber(bookingNumber);
+                    if (booking == null) {
+                        User booker = userState.getAllUsers().get(bookerEmail);
+                        Event event = eventState.findEventByNumber(eventNumber);
+                        if (!(booker instanceof Consumer) || event == null) {
+                            throw new IllegalArgumentException("Booking " + bookingNumber + " of unknown consumer "
+                                    + bookerEmail + " or event " + eventNumber);
+                        }
+                        booking = new Booking(bookingNumber, (Consumer) booker, event, numTickets, bookingDateTime);
+                        bookingState.restoreBooking(booking);
+                        ((Consumer) booker).addBooking(booking);
+                    } else if (booking.getEvent().getEventNumber() != eventNumber) {
+                        throw new IllegalArgumentException("Booking " + bookingNumber + " is for event "
+                                + booking.getEvent().getEventNumber() + " rather than " + eventNumber);
+                    }
+                    if (status == BookingStatus.CancelledByConsumer && booking.getStatus() == BookingStatus.Active) {
+                        booking.cancelByConsumer();
+                    } else if (status == BookingStatus.CancelledByProvider
+                            && booking.getStatus() == BookingStatus.Active) {
+                        booking.cancelByProvider();
+                    }
+                    break;
+                }
+                case REVIEW: {
+                    long eventNumber = input.getSignedVarLong();
+                    String authorEmail = readString(input);
+                    LocalDateTime creationDateTime = readDateTime(input);
+                    String content = readString(input);
+                    Event event = eventState.findEventByNumber(eventNumber);
+                    User author = userState.getAllUsers().get(authorEmail);
+                    if (event == null || !(author instanceof Consumer)) {
+                        throw new IllegalArgumentException("Review of unknown event " + eventNumber
+                                + " or consumer " + authorEmail);
+                    }
+                    event.addReview(new Review((Consumer) author, event, creationDateTime, content));
+                    break;
+                }
+                case REFUND_STATUS: {
+                    long bookingNumber = input.getSignedVarLong();
+                    RefundStatus refundStatus = readEnum(RefundStatus.values(), input.getVarLong());
+                    Booking booking = bookingState.findBookingByNumber(bookingNumber);
+                    if (booking == null) {
+                        throw new IllegalArgumentException("Refund of unknown booking " + bookingNumber);
+                    }
+                    booking.setRefundStatus(refundStatus);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Invalid change kind " + kind);
+            }
+        }
+    }
+}
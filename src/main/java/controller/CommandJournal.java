@@ -0,0 +1,447 @@
+package controller;
+
+import model.*;
+import state.BookingState;
+import state.EventState;
+import state.IUserState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * {@link CommandJournal} is an append-only file that records the effect of every command that changes the app state,
+ * before the command returns. Together with a snapshot of the app state written by {@link BinarySnapshot}, it lets
+ * the app state be recovered after a crash without losing any completed command, while each command only costs a
+ * write proportional to what it changed, rather than to the whole app state.
+ * <p>
+ * The effects are the changes reported to the states' {@link ChangeTracker}s: every added or changed user, event
+ * and booking is recorded as it is at the end of the command, and every added review, event tag, removed user and
+ * changed email address as it came. Each command's changes are written as one entry, which is checksummed, so that an
+ * entry only partly written by a crash is recognised and dropped on recovery.
+ * <p>
+ * A {@link #checkpoint checkpoint} saves a snapshot of the app state into a {@link SnapshotChain} and drops the
+ * journal entries it holds. The journal starts with the number of the checkpoint its entries follow, which the
+ * snapshot carries as well, so that entries left behind by a crash between writing the snapshot and dropping them are
+ * recognised as part of the snapshot, and are dropped instead of being replayed twice.
+ * <p>
+ * A checkpoint does not empty the journal while commands wait for the snapshot to be written, unless the chain has no
+ * base yet. Instead, the journal file is moved aside as a segment named after the checkpoint its entries follow, e.g.
+ * {@code AutoSave.journal.41}, and a new journal file is started, which commands go on appending to while the
+ * snapshot is written. The segment is deleted once the snapshot has been written, and replayed before the journal
+ * file if a crash happens before that.
+ */
+public class CommandJournal implements Closeable {
+    private static final int MAGIC = 0x45564A4E; // "EVJN"
+    // The journal starts with its magic number and the number of the checkpoint its entries follow
+    private static final int HEADER_SIZE = 12;
+    // Every entry starts with the length of its body and the CRC-32 checksum of its body
+    private static final int ENTRY_HEADER_SIZE = 8;
+
+    private final Path file;
+    private final boolean forceToDisk;
+    private final BinarySnapshot.Bytes body;
+    private final CRC32 checksum;
+    // Checkpoints are taken one at a time, while commands go on running for most of it
+    private final ReentrantLock checkpointLock;
+    private FileChannel channel;
+    private StateChangeLog changeLog;
+    private long size;
+    private long checkpointNumber;
+    private int numEntriesReplayed;
+
+    private CommandJournal(Path file, boolean forceToDisk) {
+        this.file = file;
+        this.forceToDisk = forceToDisk;
+        this.body = new BinarySnapshot.Bytes();
+        this.checksum = new CRC32();
+        this.checkpointLock = new ReentrantLock();
+    }
+
+    /**
+     * Open the journal of a context, creating the file if there is none. The effects recorded in the segments left by
+     * earlier checkpoints and in the file are replayed into the context's states first, unless they are part of the
+     * snapshot the context was restored from already, and any entry left incomplete by a crash is dropped. From then
+     * on, the changes to the context's states are recorded in the journal once every command that changes them has
+     * run.
+     *
+     * @param file        journal file
+     * @param context     context whose changes to record, restored from the latest checkpoint if there is one
+     * @param forceToDisk whether to wait for every entry to reach the disk before the command returns, so that it
+     *                    survives a power failure, and not only a crash of the application
+     * @return The open journal
+     * @throws IOException if the file cannot be read or written, or if its entries follow a later checkpoint than
+     *                     the one the context was restored from
+     */
+    public static CommandJournal open(Path file, Context context, boolean forceToDisk) throws IOException {
+        CommandJournal journal = new CommandJournal(file, forceToDisk);
+        // Left by a crash while starting a new journal file, so it holds no entries yet
+        Files.deleteIfExists(journal.getTempFile());
+        long restoredCheckpointNumber = journal.replaySegments(context);
+        journal.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            journal.replay(context, restoredCheckpointNumber);
+        } catch (IOException | RuntimeException e) {
+            journal.channel.close();
+            throw e;
+        }
+        journal.changeLog = new StateChangeLog(context);
+        context.startJournal(journal);
+        return journal;
+    }
+
+    /**
+     * @return Number of entries replayed when the journal was opened
+     */
+    public int getNumEntriesReplayed() {
+        return numEntriesReplayed;
+    }
+
+    /**
+     * @return Number of the latest checkpoint, which the entries in the journal follow
+     */
+    public synchronized long getCheckpointNumber() {
+        return checkpointNumber;
+    }
+
+    /**
+     * @return Size of the journal file in bytes
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return True if no changes have been recorded since the latest checkpoint
+     */
+    public synchronized boolean isEmpty() {
+        return size == HEADER_SIZE;
+    }
+
+    private Path getTempFile() {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    private Path getSegmentFile(long segmentCheckpointNumber) {
+        return file.resolveSibling(file.getFileName() + "." + segmentCheckpointNumber);
+    }
+
+    /**
+     * @return The segments left by checkpoints, ordered by the number of the checkpoint their entries follow
+     */
+    private List<Path> getSegmentFiles() throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(segment -> getSegmentCheckpointNumber(segment) >= 0)
+                    .sorted(Comparator.comparingLong(this::getSegmentCheckpointNumber))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return The number of the checkpoint the entries of a segment follow, or -1 if the file is not a segment
+     */
+    private long getSegmentCheckpointNumber(Path segment) {
+        String prefix = file.getFileName() + ".";
+        String name = segment.getFileName().toString();
+        if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() - prefix.length() > 18
+                || !name.substring(prefix.length()).chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        return Long.parseLong(name.substring(prefix.length()));
+    }
+
+    /**
+     * Replay the segments whose entries follow the checkpoint the context was restored from, or a later one, and
+     * delete the ones that are part of it already
+     *
+     * @return The number of the checkpoint the journal file's entries have to follow
+     */
+    private long replaySegments(Context context) throws IOException {
+        long restoredCheckpointNumber = context.getRestoredCheckpointNumber();
+        for (Path segment : getSegmentFiles()) {
+            long segmentCheckpointNumber = getSegmentCheckpointNumber(segment);
+            if (segmentCheckpointNumber < restoredCheckpointNumber) {
+                // The snapshot that holds its entries was written, but the application stopped before deleting it
+                Files.delete(segment);
+                continue;
+            }
+            if (segmentCheckpointNumber > restoredCheckpointNumber) {
+                throw new IOException("Command journal segment follows checkpoint " + segmentCheckpointNumber
+                        + ", but the app state was restored from checkpoint " + restoredCheckpointNumber);
+            }
+            try (FileChannel segmentChannel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                if (segmentChannel.size() >= HEADER_SIZE) {
+                    if (readHeader(segmentChannel) != segmentCheckpointNumber) {
+                        throw new IOException("Command journal segment does not match its name: " + segment);
+                    }
+                    replayEntries(segmentChannel, context);
+                }
+            }
+            // Every checkpoint follows the one before it, and its journal file was started with its number
+            restoredCheckpointNumber = segmentCheckpointNumber + 1;
+        }
+        return restoredCheckpointNumber;
+    }
+
+    /**
+     * @return The number of the checkpoint the entries in a journal file follow
+     */
+    private static long readHeader(FileChannel journalChannel) throws IOException {
+        ByteBuffer journalHeader = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(journalChannel, journalHeader, 0);
+        if (journalHeader.getInt() != MAGIC) {
+            throw new IOException("Not a command journal");
+        }
+        return journalHeader.getLong();
+    }
+
+    private void replay(Context context, long restoredCheckpointNumber) throws IOException {
+        long fileSize = channel.size();
+        // A journal too short for its header was only just created
+        if (fileSize < HEADER_SIZE) {
+            reset(restoredCheckpointNumber);
+            return;
+        }
+        checkpointNumber = readHeader(channel);
+        if (checkpointNumber > restoredCheckpointNumber) {
+            throw new IOException("Command journal follows checkpoint " + checkpointNumber
+                    + ", but the app state was restored from checkpoint " + restoredCheckpointNumber);
+        }
+        if (checkpointNumber < restoredCheckpointNumber) {
+            // The checkpoint was written, but the application stopped before emptying the journal
+            reset(restoredCheckpointNumber);
+            return;
+        }
+
+        long position = replayEntries(channel, context);
+        // Whatever follows the last complete entry was cut short by a crash, and new entries are appended in its place
+        if (position < fileSize) {
+            channel.truncate(position);
+        }
+        channel.position(position);
+        size = position;
+    }
+
+    /**
+     * Replay the entries of a journal file, up to the first one left incomplete by a crash
+     *
+     * @return The position after the last complete entry
+     */
+    private long replayEntries(FileChannel journalChannel, Context context) throws IOException {
+        long fileSize = journalChannel.size();
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+        long position = HEADER_SIZE;
+        while (position + ENTRY_HEADER_SIZE <= fileSize) {
+            header.clear();
+            readFully(journalChannel, header, position);
+            int length = header.getInt(0);
+            long expectedChecksum = header.getInt(4) & 0xFFFFFFFFL;
+            if (length < 0 || position + ENTRY_HEADER_SIZE + length > fileSize) {
+                break;
+            }
+            ByteBuffer entry = ByteBuffer.allocate(length);
+            readFully(journalChannel, entry, position + ENTRY_HEADER_SIZE);
+            checksum.reset();
+            checksum.update(entry.array(), 0, length);
+            if (checksum.getValue() != expectedChecksum) {
+                break;
+            }
+            try {
+                ChangeCodec.apply(new BinarySnapshot.Input(entry), context);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new IOException("Corrupt command journal entry at offset " + position, e);
+            }
+            numEntriesReplayed++;
+            position += ENTRY_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    /**
+     * Empty the journal, as its entries are part of the given checkpoint
+     */
+    private void reset(long newCheckpointNumber) throws IOException {
+        // The entries are removed before the header changes, so that a crash in between cannot leave entries that
+        // seem to follow the new checkpoint
+        channel.truncate(HEADER_SIZE);
+        channel.force(true);
+        writeHeader(channel, newCheckpointNumber);
+        channel.force(true);
+        checkpointNumber = newCheckpointNumber;
+        size = HEADER_SIZE;
+    }
+
+    private static void writeHeader(FileChannel journalChannel, long newCheckpointNumber) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putLong(newCheckpointNumber).flip();
+        while (header.hasRemaining()) {
+            journalChannel.write(header, header.position());
+        }
+        journalChannel.position(HEADER_SIZE);
+    }
+
+    /**
+     * Move the journal file aside as a segment, and start a new, empty one that follows the given checkpoint, so that
+     * commands can go on appending entries while the checkpoint is written. A crash leaves either the journal file as
+     * it was, or the segment, which is replayed before the new journal file.
+     */
+    private void rotate(long newCheckpointNumber) throws IOException {
+        Path tempFile = getTempFile();
+        Path segmentFile = getSegmentFile(checkpointNumber);
+        FileChannel newChannel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            writeHeader(newChannel, newCheckpointNumber);
+            if (forceToDisk) {
+                newChannel.force(true);
+            }
+            Files.move(file, segmentFile, StandardCopyOption.ATOMIC_MOVE);
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // The entries go on being appended to the journal file as it was
+                Files.move(segmentFile, file, StandardCopyOption.ATOMIC_MOVE);
+                throw e;
+            }
+            if (forceToDisk) {
+                // Both moves are in the same directory, so forcing it once makes them both durable, before any entry
+                // is appended to the new journal file
+                DirectorySync.forceDirectoryOf(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            newChannel.close();
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        channel.close();
+        channel = newChannel;
+        checkpointNumber = newCheckpointNumber;
+        size = HEADER_SIZE;
+    }
+
+    /**
+     * Delete the segments whose entries are part of the given checkpoint, now that its snapshot has been written
+     */
+    private void deleteSegmentsBefore(long writtenCheckpointNumber) throws IOException {
+        for (Path segment : getSegmentFiles()) {
+            if (getSegmentCheckpointNumber(segment) < writtenCheckpointNumber) {
+                Files.delete(segment);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel journalChannel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (journalChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Command journal ended unexpectedly");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Append the changes made to the states since they were last recorded as one entry, if there are any
+     *
+     * @throws IOException if writing to the file fails
+     */
+    synchronized void recordChanges() throws IOException {
+        List<Object> changes = changeLog.takeChanges();
+        if (changes.isEmpty()) {
+            return;
+        }
+        body.clear();
+        ChangeCodec.write(changes, body);
+        checksum.reset();
+        checksum.update(body.toByteBuffer());
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+        header.putInt(body.size()).putInt((int) checksum.getValue()).flip();
+        ByteBuffer[] entry = {header, body.toByteBuffer()};
+        long entrySize = ENTRY_HEADER_SIZE + body.size();
+        try {
+            long written = 0;
+            while (written < entrySize) {
+                written += channel.write(entry);
+            }
+            if (forceToDisk) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            // A partly written entry would hide the entries appended after it from recovery
+            try {
+                channel.truncate(size);
+                channel.position(size);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+            }
+            throw e;
+        }
+        size += entrySize;
+    }
+
+    /**
+     * Save a context's app state as the next snapshot of a chain, and drop the journal entries it holds. Only the
+     * users, events and bookings that changed since the previous snapshot of the chain are written, as a delta.
+     * Commands only wait while the changes are captured and a new journal file is started, and go on running while
+     * the delta is written, or while the chain is compacted. Only if the chain has no base yet, or does not track the
+     * context, the whole app state is written as a new base while commands wait.
+     *
+     * @param context context whose changes the journal records, and whose states the chain tracks
+     * @param chain   chain the context was restored from, if it was restored
+     * @throws IOException if writing the snapshot or starting a new journal file fails, which leaves the entries that
+     *                     follow the latest snapshot written in the journal
+     */
+    public void checkpoint(Context context, SnapshotChain chain) throws IOException {
+        checkpointLock.lock();
+        try {
+            long newCheckpointNumber;
+            SnapshotChain.Delta delta = null;
+            ReentrantLock commandLock = context.getCommandLock();
+            commandLock.lock();
+            try {
+                context.recordChanges();
+                synchronized (this) {
+                    newCheckpointNumber = checkpointNumber + 1;
+                    if (chain.canCapture()) {
+                        rotate(newCheckpointNumber);
+                        delta = chain.capture(newCheckpointNumber);
+                    } else {
+                        chain.save(context, newCheckpointNumber);
+                        reset(newCheckpointNumber);
+                    }
+                }
+            } finally {
+                commandLock.unlock();
+            }
+            if (delta != null) {
+                chain.write(delta);
+            }
+            deleteSegmentsBefore(newCheckpointNumber);
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (changeLog != null) {
+            changeLog.stop();
+        }
+        channel.close();
+    }
+}
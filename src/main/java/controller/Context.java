@@ -1,14 +1,19 @@
 package controller;
 
-import external.MapSystem;
-import external.MockPaymentSystem;
-import external.OfflineMapSystem;
-import external.PaymentSystem;
+import external.*;
 import state.*;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * {@link Context} is a wrapper around the entire app state. It keeps references to the internal states:
@@ -23,9 +28,24 @@ public class Context implements AutoCloseable, Serializable {
     private final String orgSecret;
     private transient final PaymentSystem paymentSystem;
     private transient final MapSystem mapSystem;
+    private transient final NotificationDispatcher notificationDispatcher;
+    // External systems this context created, and so closes in close. Copies and session contexts may share the
+    // systems of another context, which stay open until that context is closed
+    private transient List<AutoCloseable> ownedSystems;
     private final IUserState userState;
     private final IEventState eventState;
     private final IBookingState bookingState;
+    private final Session session;
+    // Commands of different sessions share the same state, so they are run one at a time while holding this lock
+    private final ReentrantLock commandLock;
+    // Latest snapshot of the states, replaced after every command that may change them, see getReadSnapshot
+    private transient AtomicReference<Context> readSnapshot;
+    // Journal the changes made by commands are recorded in, if any, see startJournal
+    private transient AtomicReference<CommandJournal> journal;
+    // Actions to run once the changes of the running command have been recorded, see afterCommand
+    private transient List<Runnable> afterCommandActions;
+    // Number of the journal checkpoint the states were restored from, or 0 if they were not restored from one
+    private transient final long restoredCheckpointNumber;
 
     /**
      * Initialises all the state members with default constructors of the concrete implementations:
@@ -37,19 +57,62 @@ public class Context implements AutoCloseable, Serializable {
      * @param orgSecret Secret passcode only known to organisation staff, required for registering new Staff accounts
      */
     public Context(String orgName, String orgAddress, String orgEmail, String orgSecret) {
+        this(orgName, orgAddress, orgEmail, orgSecret, new MockPaymentSystem());
+    }
+
+    /**
+     * Initialises all the state members like {@link #Context(String, String, String, String)}, but uses the given
+     * payment system instead of a {@link MockPaymentSystem}
+     *
+     * @param orgName Name of the organisation that owns this application instance
+     * @param orgAddress Address of the organisation that owns this application instance
+     * @param orgEmail Email address of the organisation, used for payment transactions
+     * @param orgSecret Secret passcode only known to organisation staff, required for registering new Staff accounts
+     * @param paymentSystem Payment system used for the organisation's transactions
+     */
+    public Context(String orgName, String orgAddress, String orgEmail, String orgSecret, PaymentSystem paymentSystem) {
+        this(orgName, orgAddress, orgEmail, orgSecret, paymentSystem, new ConsoleNotificationSink());
+    }
+
+    /**
+     * Initialises all the state members like {@link #Context(String, String, String, String)}, but uses the given
+     * payment system and notification sink instead of a {@link MockPaymentSystem} and a
+     * {@link ConsoleNotificationSink}
+     *
+     * @param orgName Name of the organisation that owns this application instance
+     * @param orgAddress Address of the organisation that owns this application instance
+     * @param orgEmail Email address of the organisation, used for payment transactions
+     * @param orgSecret Secret passcode only known to organisation staff, required for registering new Staff accounts
+     * @param paymentSystem Payment system used for the organisation's transactions
+     * @param notificationSink System that delivers notifications to consumers
+     */
+    public Context(String orgName, String orgAddress, String orgEmail, String orgSecret, PaymentSystem paymentSystem,
+                   NotificationSink notificationSink) {
         this.orgName = orgName;
         this.orgAddress = orgAddress;
         this.orgEmail = orgEmail;
         this.orgSecret = orgSecret;
-        this.paymentSystem = new MockPaymentSystem();
+        this.paymentSystem = paymentSystem;
         this.mapSystem = new OfflineMapSystem();
+        this.notificationDispatcher = new NotificationDispatcher(notificationSink);
+        this.ownedSystems = ownedSystems(notificationDispatcher, paymentSystem, mapSystem);
         this.userState = new UserState();
         this.eventState = new EventState();
         this.bookingState = new BookingState();
+        this.session = new Session();
+        this.commandLock = new ReentrantLock();
+        this.readSnapshot = new AtomicReference<>();
+        this.journal = new AtomicReference<>();
+        this.afterCommandActions = new ArrayList<>();
+        this.restoredCheckpointNumber = 0;
+        publishReadSnapshot();
     }
 
     /**
-     * Copy constructor, makes a deep copy of another {@link Context}.
+     * Copy constructor, makes a copy of another {@link Context}. The states keep their data in persistent data
+     * structures, so copying them takes constant time regardless of how much they hold, and the copy and the original
+     * only pay for the parts either of them changes afterwards. This makes copies cheap enough to use as snapshots,
+     * e.g. for saving or trying out commands without affecting the original.
      *
      * @param other context to copy
      */
@@ -59,11 +122,266 @@ public class Context implements AutoCloseable, Serializable {
         orgAddress = other.orgAddress;
         orgEmail = other.orgEmail;
         orgSecret = other.orgSecret;
-        paymentSystem = new MockPaymentSystem((MockPaymentSystem) other.paymentSystem);
+        boolean copiesPaymentSystem = other.paymentSystem instanceof MockPaymentSystem;
+        paymentSystem = copiesPaymentSystem
+                ? new MockPaymentSystem((MockPaymentSystem) other.paymentSystem)
+                : other.paymentSystem;
         mapSystem = new OfflineMapSystem();
+        // Notifications sent by the copy reach the same consumers, so they go through the same dispatcher, which is
+        // left for the original to close
+        notificationDispatcher = other.notificationDispatcher;
+        ownedSystems = ownedSystems(null, copiesPaymentSystem ? paymentSystem : null, mapSystem);
         userState = new UserState(other.userState);
         eventState = new EventState(other.eventState);
         bookingState = new BookingState(other.bookingState);
+        session = new Session(other.session);
+        commandLock = new ReentrantLock();
+        readSnapshot = new AtomicReference<>();
+        journal = new AtomicReference<>();
+        afterCommandActions = new ArrayList<>();
+        restoredCheckpointNumber = other.restoredCheckpointNumber;
+        publishReadSnapshot();
+    }
+
+    /**
+     * Create a context which shares its external systems, command lock, read snapshot and journal with another context,
+     * but has the given states and session
+     *
+     * @param shared       context to share external systems with
+     * @param userState    user state of the new context
+     * @param eventState   event state of the new context
+     * @param bookingState booking state of the new context
+     * @param session      session whose logged-in user commands will see
+     */
+    private Context(Context shared, IUserState userState, IEventState eventState, IBookingState bookingState,
+                    Session session) {
+        orgName = shared.orgName;
+        orgAddress = shared.orgAddress;
+        orgEmail = shared.orgEmail;
+        orgSecret = shared.orgSecret;
+        paymentSystem = shared.paymentSystem;
+        mapSystem = shared.mapSystem;
+        notificationDispatcher = shared.notificationDispatcher;
+        ownedSystems = List.of();
+        this.userState = userState;
+        this.eventState = eventState;
+        this.bookingState = bookingState;
+        this.session = session;
+        commandLock = shared.commandLock;
+        readSnapshot = shared.readSnapshot;
+        journal = shared.journal;
+        afterCommandActions = shared.afterCommandActions;
+        restoredCheckpointNumber = shared.restoredCheckpointNumber;
+    }
+
+    /**
+     * Create a context around restored states, e.g. read by {@link BinarySnapshot}. Like a deserialized context, it has
+     * no external systems.
+     *
+     * @param orgName          Name of the organisation that owns this application instance
+     * @param orgAddress       Address of the organisation that owns this application instance
+     * @param orgEmail         Email address of the organisation, used for payment transactions
+     * @param orgSecret        Secret passcode only known to organisation staff
+     * @param userState        restored user state
+     * @param eventState       restored event state
+     * @param bookingState     restored booking state
+     * @param checkpointNumber number of the journal checkpoint the states were restored from, or 0 if none
+     */
+    Context(String orgName, String orgAddress, String orgEmail, String orgSecret, IUserState userState,
+            IEventState eventState, IBookingState bookingState, long checkpointNumber) {
+        this.orgName = orgName;
+        this.orgAddress = orgAddress;
+        this.orgEmail = orgEmail;
+        this.orgSecret = orgSecret;
+        this.paymentSystem = null;
+        this.mapSystem = null;
+        this.notificationDispatcher = null;
+        this.ownedSystems = List.of();
+        this.userState = userState;
+        this.eventState = eventState;
+        this.bookingState = bookingState;
+        this.session = new Session();
+        this.commandLock = new ReentrantLock();
+        this.readSnapshot = new AtomicReference<>();
+        this.journal = new AtomicReference<>();
+        this.afterCommandActions = new ArrayList<>();
+        this.restoredCheckpointNumber = checkpointNumber;
+        publishReadSnapshot();
+    }
+
+    /**
+     * Create a context around the states of a restored context, e.g. read by {@link BinarySnapshot}, which uses the
+     * given external systems like {@link #Context(String, String, String, String, PaymentSystem, NotificationSink)}
+     *
+     * @param restored         context to take the organisation details and states from
+     * @param paymentSystem    Payment system used for the organisation's transactions
+     * @param notificationSink System that delivers notifications to consumers
+     */
+    public Context(Context restored, PaymentSystem paymentSystem, NotificationSink notificationSink) {
+        orgName = restored.orgName;
+        orgAddress = restored.orgAddress;
+        orgEmail = restored.orgEmail;
+        orgSecret = restored.orgSecret;
+        this.paymentSystem = paymentSystem;
+        mapSystem = new OfflineMapSystem();
+        notificationDispatcher = new NotificationDispatcher(notificationSink);
+        ownedSystems = ownedSystems(notificationDispatcher, paymentSystem, mapSystem);
+        userState = restored.userState;
+        eventState = restored.eventState;
+        bookingState = restored.bookingState;
+        session = new Session();
+        commandLock = new ReentrantLock();
+        readSnapshot = new AtomicReference<>();
+        journal = new AtomicReference<>();
+        afterCommandActions = new ArrayList<>();
+        restoredCheckpointNumber = restored.restoredCheckpointNumber;
+        publishReadSnapshot();
+    }
+
+    // The systems to close in close, in order, leaving out the ones that are missing
+    private static List<AutoCloseable> ownedSystems(NotificationDispatcher notificationDispatcher,
+                                                    PaymentSystem paymentSystem, MapSystem mapSystem) {
+        List<AutoCloseable> systems = new ArrayList<>(3);
+        if (notificationDispatcher != null) {
+            systems.add(notificationDispatcher);
+        }
+        if (paymentSystem != null) {
+            systems.add(paymentSystem);
+        }
+        if (mapSystem != null) {
+            systems.add(mapSystem::close);
+        }
+        return systems;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // Like a restored context, a deserialized one has no external systems
+        ownedSystems = List.of();
+        readSnapshot = new AtomicReference<>();
+        journal = new AtomicReference<>();
+        afterCommandActions = new ArrayList<>();
+        publishReadSnapshot();
+    }
+
+    /**
+     * @param session session to run commands in
+     * @return A context that shares all state and external systems with this one, but whose
+     * {@link #getSession()} is the given session
+     */
+    public Context forSession(Session session) {
+        return new Context(this, userState, eventState, bookingState, session);
+    }
+
+    /**
+     * Publish a snapshot of the current states for {@link #getReadSnapshot()} to return. Must only be called while
+     * holding the command lock, or while no other thread can be changing the states, so that the snapshot is
+     * consistent. Copying the states takes constant time, as they keep their data in persistent data structures.
+     */
+    void publishReadSnapshot() {
+        readSnapshot.set(new Context(this, new UserState(userState), new EventState(eventState),
+                new BookingState(bookingState), session));
+    }
+
+    /**
+     * Record the changes to the states in the given journal from now on, see {@link CommandJournal#open}
+     *
+     * @param journal journal to record changes in
+     */
+    void startJournal(CommandJournal journal) {
+        this.journal.set(journal);
+    }
+
+    /**
+     * @return Number of the journal checkpoint the states were restored from, or 0 if they were not restored from one
+     */
+    long getRestoredCheckpointNumber() {
+        return restoredCheckpointNumber;
+    }
+
+    /**
+     * @return The journal the changes to the states are recorded in, or null if they are not recorded
+     */
+    public CommandJournal getJournal() {
+        return journal.get();
+    }
+
+    /**
+     * Record the changes made to the states since they were last recorded in the journal, if there is one. Must only
+     * be called while holding the command lock, so that the changes of different commands are not mixed up.
+     *
+     * @throws UncheckedIOException if writing to the journal fails
+     */
+    void recordChanges() {
+        CommandJournal commandJournal = journal.get();
+        if (commandJournal == null) {
+            return;
+        }
+        try {
+            commandJournal.recordChanges();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Make a change to the states the way commands do: while holding the command lock, after which the change is
+     * recorded in the journal, if there is one, and published for {@link #getReadSnapshot()}. The actions the change
+     * asked for through {@link #afterCommand} are run once it has been recorded, outside the command lock, unless the
+     * change or recording it failed. Besides running commands, this records the outcome of work that commands leave
+     * running in the background.
+     *
+     * @param change change to make
+     * @throws UncheckedIOException if writing to the journal fails
+     */
+    public void runLocked(Runnable change) {
+        List<Runnable> actions;
+        commandLock.lock();
+        try {
+            change.run();
+        } finally {
+            try {
+                // The changes are recorded before the lock is given up, so that they survive a crash from then on
+                recordChanges();
+            } finally {
+                publishReadSnapshot();
+                actions = new ArrayList<>(afterCommandActions);
+                afterCommandActions.clear();
+                commandLock.unlock();
+            }
+        }
+        actions.forEach(Runnable::run);
+    }
+
+    /**
+     * Run an action once the changes of the running command have been recorded in the journal and published, outside
+     * the command lock, e.g. to start work that must not happen unless the command's changes survive a crash, such as
+     * refunding or notifying consumers. Called without holding the command lock, e.g. by a command executed directly
+     * rather than through {@link #runLocked}, there is no command whose changes to wait for, so the action is run at
+     * once rather than left for an unrelated later command.
+     *
+     * @param action action to run
+     */
+    public void afterCommand(Runnable action) {
+        if (!commandLock.isHeldByCurrentThread()) {
+            action.run();
+            return;
+        }
+        afterCommandActions.add(action);
+    }
+
+    /**
+     * Get a snapshot of the states to read from without taking the command lock. It is the snapshot published when
+     * the last command that may have changed the states finished, or when this context was created, so reading it
+     * never waits for, or holds up, a command. It never changes afterwards, so it can be iterated without locks while
+     * commands go on changing the states. Only the collections in the states are snapshotted: the events, bookings
+     * and users in them are the live ones.
+     *
+     * @return A context for this context's session, whose states are a consistent snapshot of this context's states
+     */
+    public Context getReadSnapshot() {
+        Context snapshot = readSnapshot.get();
+        return snapshot.session == session ? snapshot : snapshot.forSession(session);
     }
 
     public String getOrgName() { return orgName; }
@@ -80,6 +398,10 @@ public class Context implements AutoCloseable, Serializable {
         return paymentSystem;
     }
 
+    public NotificationDispatcher getNotificationDispatcher() {
+        return notificationDispatcher;
+    }
+
     public IUserState getUserState() {
         return userState;
     }
@@ -92,19 +414,55 @@ public class Context implements AutoCloseable, Serializable {
         return eventState;
     }
 
+    /**
+     * @return The session commands run with this context belong to, which keeps track of the logged-in user
+     */
+    public Session getSession() {
+        return session;
+    }
+
     public MapSystem getMapSystem(){return mapSystem;}
 
+    ReentrantLock getCommandLock() {
+        return commandLock;
+    }
+
+    /**
+     * Make a call that waits on an external system, such as a payment, without holding up the commands of other
+     * sessions. If the calling command holds the command lock, it is given up for the duration of the call, so the
+     * command must not rely on any state it read before the call staying the same afterwards.
+     *
+     * @param call call to make
+     * @param <T> type of the call's result
+     * @return The call's result
+     */
+    public <T> T callOutsideCommandLock(Supplier<T> call) {
+        int holdCount = commandLock.getHoldCount();
+        for (int i = 0; i < holdCount; i++) {
+            commandLock.unlock();
+        }
+        try {
+            return call.get();
+        } finally {
+            for (int i = 0; i < holdCount; i++) {
+                commandLock.lock();
+            }
+        }
+    }
+
 
 
 
     /**
      * Closes this resource, relinquishing any underlying resources.
      * This method is invoked automatically on objects managed by the
-     * {@code try}-with-resources statement.
+     * {@code try}-with-resources statement. Only the external systems this context created are closed, so closing a
+     * copy or a session context leaves the systems it shares with another context open.
      */
     @Override
     public void close() throws Exception {
-        paymentSystem.close();
-        mapSystem.close();
+        for (AutoCloseable system : ownedSystems) {
+            system.close();
+        }
     }
 }
@@ -1,14 +1,31 @@
 package controller;
 
 import command.ICommand;
+import command.IReadOnlyCommand;
 import view.IView;
 
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
 /**
  * {@link Controller} is the main external interface of this application. It allows executing commands.
  */
 public class Controller {
+    /**
+     * Maximum number of commands run through {@link #runCommandAsync} that can be in progress at the same time, unless
+     * configured otherwise
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_COMMANDS = 16;
+
     private final Context context;
     private final IView view;
+    private final int maxConcurrentCommands;
+    // Each asynchronous command holds a permit from submission until it has finished running
+    private final Semaphore asyncCommandPermits;
+    private ExecutorService asyncCommandExecutor;
+    private boolean isShutdown;
 
     /**
      * The {@link Controller} keeps a reference to a {@link Context} object providing access to application state
@@ -18,8 +35,33 @@ public class Controller {
      * @param view View class that handles interactions with the user interface
      */
     public Controller(Context context, IView view) {
+        this(context, view, DEFAULT_MAX_CONCURRENT_COMMANDS);
+    }
+
+    /**
+     * Create a {@link Controller} like {@link #Controller(Context, IView)}, with a limit on the number of commands run
+     * through {@link #runCommandAsync} that can be in progress at the same time
+     *
+     * @param context Encapsulating class for application state and external systems
+     * @param view View class that handles interactions with the user interface
+     * @param maxConcurrentCommands maximum number of asynchronous commands in progress at the same time
+     */
+    public Controller(Context context, IView view, int maxConcurrentCommands) {
+        if (maxConcurrentCommands < 1) {
+            throw new IllegalArgumentException("maxConcurrentCommands must be at least 1");
+        }
         this.context = context;
         this.view = view;
+        this.maxConcurrentCommands = maxConcurrentCommands;
+        this.asyncCommandPermits = new Semaphore(maxConcurrentCommands);
+        // The states may have been set up directly rather than through commands, and read-only commands only see
+        // the snapshot published when a command last finished, so the states as handed over are published here
+        context.getCommandLock().lock();
+        try {
+            context.publishReadSnapshot();
+        } finally {
+            context.getCommandLock().unlock();
+        }
     }
 
     /**
@@ -29,6 +71,144 @@ public class Controller {
      * @param command command to run
      */
     public void runCommand(ICommand<?> command) {
-        command.execute(context, view);
+        runLocked(context, command);
+    }
+
+    /**
+     * Open a new {@link Session}, with no user logged in, for a client to run commands in
+     *
+     * @return The new session
+     */
+    public Session openSession() {
+        return new Session();
+    }
+
+    /**
+     * This method runs a given command in a session, by calling its {@link ICommand#execute(Context, IView)} method
+     * with a {@link Context} that shares all application state with the {@link Controller}'s one, but resolves the
+     * logged-in user from the session. Several sessions can have different users logged in at the same time, and can
+     * run commands from different threads.
+     *
+     * @param session session to run the command in
+     * @param command command to run
+     */
+    public void runCommand(Session session, ICommand<?> command) {
+        Context sessionContext = context.forSession(session);
+        runLocked(sessionContext, command);
+    }
+
+    /**
+     * Run a given command in a session like {@link #runCommand(Session, ICommand)}, but on a thread of the
+     * {@link Controller}'s own, so that callers can go on with other work, e.g. run cheap commands while a slow one
+     * such as routing is in progress.
+     *
+     * @param session session to run the command in
+     * @param command command to run
+     * @param <T> command result type
+     * @return A future completed with the command's result once it has run. It fails with a
+     * {@link RejectedExecutionException} if the maximum number of concurrent commands are already in progress.
+     */
+    public <T> CompletableFuture<T> runCommandAsync(Session session, ICommand<T> command) {
+        return runCommandAsync(session, command, null);
+    }
+
+    /**
+     * Run a given command in a session asynchronously like {@link #runCommandAsync(Session, ICommand)}, giving up on
+     * its result after a timeout. A command that has not started running by then is skipped. A command that has
+     * already started is left to finish, as stopping it half-way could leave the application state inconsistent,
+     * but its result is no longer reported through the future.
+     *
+     * @param session session to run the command in
+     * @param command command to run
+     * @param timeout how long to wait for the result, or null to wait as long as it takes
+     * @param <T> command result type
+     * @return A future completed with the command's result once it has run. It fails with a {@link TimeoutException}
+     * if the command has not finished within the timeout, or with a {@link RejectedExecutionException} if the
+     * maximum number of concurrent commands are already in progress.
+     */
+    public <T> CompletableFuture<T> runCommandAsync(Session session, ICommand<T> command, Duration timeout) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!asyncCommandPermits.tryAcquire()) {
+            result.completeExceptionally(new RejectedExecutionException(
+                    "Already running " + maxConcurrentCommands + " commands"));
+            return result;
+        }
+        if (timeout != null) {
+            result.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        Context sessionContext = context.forSession(session);
+        try {
+            getAsyncCommandExecutor().execute(() -> {
+                try {
+                    runLocked(sessionContext, command, result);
+                } finally {
+                    asyncCommandPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            asyncCommandPermits.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private synchronized ExecutorService getAsyncCommandExecutor() {
+        if (isShutdown) {
+            throw new RejectedExecutionException("Controller has been shut down");
+        }
+        if (asyncCommandExecutor == null) {
+            // One thread per permit, so that a command never waits for a thread, only for the command lock
+            AtomicInteger threadCount = new AtomicInteger();
+            asyncCommandExecutor = Executors.newFixedThreadPool(maxConcurrentCommands, runnable -> {
+                Thread thread = new Thread(runnable, "controller-command-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return asyncCommandExecutor;
+    }
+
+    /**
+     * Stop the threads running asynchronous commands once the commands already submitted have finished. Commands
+     * submitted afterwards through {@link #runCommandAsync} fail with a {@link RejectedExecutionException}.
+     */
+    public synchronized void shutdown() {
+        isShutdown = true;
+        if (asyncCommandExecutor != null) {
+            asyncCommandExecutor.shutdown();
+        }
+    }
+
+    private <T> void runLocked(Context commandContext, ICommand<T> command, CompletableFuture<T> result) {
+        try {
+            // The future is already done if the command timed out while waiting for its turn
+            runLocked(commandContext, command, () -> !result.isDone());
+            result.complete(command.getResult());
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void runLocked(Context commandContext, ICommand<?> command) {
+        runLocked(commandContext, command, () -> true);
+    }
+
+    private void runLocked(Context commandContext, ICommand<?> command, BooleanSupplier stillWanted) {
+        // Read-only commands never change the state, so they read a snapshot of it instead of waiting for their turn
+        if (command instanceof IReadOnlyCommand) {
+            if (stillWanted.getAsBoolean()) {
+                command.execute(commandContext.getReadSnapshot(), view);
+            }
+            return;
+        }
+
+        // Commands of different sessions share the same state, so they are run one at a time, and the command's
+        // changes are recorded before it returns, so that they survive a crash from then on
+        commandContext.runLocked(() -> {
+            if (stillWanted.getAsBoolean()) {
+                command.execute(commandContext, view);
+            }
+        });
     }
 }
@@ -0,0 +1,36 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link DirectorySync} forces the entries of a directory to disk. Forcing a file only makes its contents durable, so a
+ * file moved into place, e.g. a snapshot replacing the previous one, can still be missing, or be the previous one,
+ * after a crash, unless the directory it was moved into is forced as well.
+ */
+final class DirectorySync {
+    private DirectorySync() {
+    }
+
+    /**
+     * Force the entries of the directory a file is in to disk, so that the file moved or created there is still there
+     * after a crash. Does nothing on platforms where directories cannot be opened, e.g. Windows.
+     *
+     * @param file file whose directory to force
+     * @throws IOException if forcing the directory fails
+     */
+    static void forceDirectoryOf(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package controller;
+
+import model.User;
+
+import java.io.Serializable;
+
+/**
+ * {@link Session} represents one client's interaction with the application. It keeps track of the {@link User} logged
+ * in through it, so that many users can be logged in to the same {@link Context} at the same time.
+ * Commands run in a session (see {@link Controller#runCommand(Session, command.ICommand)}) find it through
+ * {@link Context#getSession()}.
+ */
+public class Session implements Serializable {
+    private volatile User currentUser;
+
+    /**
+     * Create a new session with no user logged in
+     */
+    public Session() {
+        currentUser = null;
+    }
+
+    /**
+     * Copy constructor, creates a session with the same user logged in as another session
+     *
+     * @param other session to copy
+     */
+    public Session(Session other) {
+        currentUser = other.currentUser;
+    }
+
+    /**
+     * @return The user logged in through this session if there is one, or null otherwise
+     */
+    public User getCurrentUser() {
+        return currentUser;
+    }
+
+    /**
+     * Set the user logged in through this session
+     *
+     * @param user user to log in, or null to log out
+     */
+    public void setCurrentUser(User user) {
+        this.currentUser = user;
+    }
+}
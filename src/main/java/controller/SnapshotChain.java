@@ -0,0 +1,459 @@
+package controller;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * {@link SnapshotChain} saves the app state as a base snapshot written by {@link BinarySnapshot}, followed by a chain of
+ * delta snapshots. Each delta only holds the users, events and bookings that changed since the previous snapshot of the
+ * chain, as reported to the states' {@link model.ChangeTracker}s, so saving an app state of which little changed only
+ * costs a write proportional to what changed. Once the chain grows long, or its deltas add up to the size of the
+ * base, it is compacted: the whole app state is written as a new base, and the deltas are deleted.
+ * <p>
+ * The deltas are kept next to the base file, named after it, e.g. {@code AutoSave.ser.delta1}. Every snapshot of the
+ * chain is written to a temporary file first, and then replaces the previous one at once, so a crash leaves the chain
+ * as it was before or after the snapshot. Every snapshot is a checkpoint of a {@link CommandJournal}, and carries the
+ * number of the checkpoint, so that deltas left behind by a crash during compaction are recognised as part of the new
+ * base.
+ * <p>
+ * A delta can be {@link #capture captured} while commands wait, which only costs encoding what changed, and then
+ * {@link #write written} while commands go on changing the app state. Once a written delta makes the chain due to be
+ * compacted, the new base is folded from the files of the chain rather than from the live app state, so compaction
+ * never holds up commands either. Every base is also kept as a timestamped generation, e.g.
+ * {@code AutoSave.ser.20261018-120000-42} for checkpoint 42, of which the latest few are kept. Generations are only
+ * kept when a new base is written, i.e. when the chain is compacted, which is at most every {@code maxDeltas}
+ * checkpoints, rather than at every checkpoint: a generation of a delta would cost writing the whole app state, which
+ * is what deltas avoid. The checkpoints in between can be recovered from the base and its deltas.
+ */
+public class SnapshotChain {
+    private static final int MAGIC = 0x4556444C; // "EVDL"
+    private static final int VERSION = 1;
+    // Magic, version, checkpoint numbers of the base and of the delta, length and CRC-32 checksum of the body
+    private static final int DELTA_HEADER_SIZE = 32;
+    /**
+     * Number of deltas after which the chain is compacted, unless configured otherwise
+     */
+    public static final int DEFAULT_MAX_DELTAS = 16;
+    /**
+     * Number of generations of the base kept, unless configured otherwise. A generation is kept every time the chain
+     * is compacted, rather than at every checkpoint.
+     */
+    public static final int DEFAULT_GENERATIONS = 5;
+    private static final DateTimeFormatter GENERATION_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path baseFile;
+    private final int maxDeltas;
+    private final int generations;
+    // Changes made since the latest snapshot of the chain was captured, see track
+    private final AtomicReference<StateChangeLog> changeLog;
+    // Deltas captured, but not written yet, oldest first
+    private final List<Delta> pendingDeltas;
+    // Only ever set, and read by capturing while the chain may be writing, so it is volatile rather than guarded
+    private volatile boolean baseExists;
+    private long baseCheckpointNumber;
+    private long checkpointNumber;
+    private int numDeltas;
+    private long baseSize;
+    private long deltasSize;
+
+    /**
+     * The changes captured for a delta, encoded while commands wait, to be written while they do not
+     */
+    static final class Delta {
+        private final long checkpointNumber;
+        private final BinarySnapshot.Bytes body;
+
+        private Delta(long checkpointNumber, BinarySnapshot.Bytes body) {
+            this.checkpointNumber = checkpointNumber;
+            this.body = body;
+        }
+    }
+
+    /**
+     * @param baseFile file of the base snapshot, which the delta files are named after
+     */
+    public SnapshotChain(Path baseFile) {
+        this(baseFile, DEFAULT_MAX_DELTAS);
+    }
+
+    /**
+     * @param baseFile  file of the base snapshot, which the delta files are named after
+     * @param maxDeltas number of deltas after which the chain is compacted
+     */
+    public SnapshotChain(Path baseFile, int maxDeltas) {
+        this(baseFile, maxDeltas, DEFAULT_GENERATIONS);
+    }
+
+    /**
+     * @param baseFile    file of the base snapshot, which the delta and generation files are named after
+     * @param maxDeltas   number of deltas after which the chain is compacted
+     * @param generations number of generations of the base to keep besides the base itself, one for every time a
+     *                    new base is written
+     */
+    public SnapshotChain(Path baseFile, int maxDeltas, int generations) {
+        if (maxDeltas < 0) {
+            throw new IllegalArgumentException("maxDeltas must not be negative");
+        }
+        if (generations < 0) {
+            throw new IllegalArgumentException("generations must not be negative");
+        }
+        this.baseFile = baseFile;
+        this.maxDeltas = maxDeltas;
+        this.generations = generations;
+        this.changeLog = new AtomicReference<>();
+        this.pendingDeltas = new ArrayList<>();
+    }
+
+    /**
+     * @param index index of the delta in the chain, starting from 1
+     * @return The file the delta is kept in
+     */
+    public Path getDeltaFile(int index) {
+        return baseFile.resolveSibling(baseFile.getFileName() + ".delta" + index);
+    }
+
+    /**
+     * @return The generations of the base kept, oldest first
+     * @throws IOException if the directory of the base file cannot be listed
+     */
+    public List<Path> getGenerationFiles() throws IOException {
+        String prefix = baseFile.getFileName() + ".";
+        Path directory = baseFile.toAbsolutePath().getParent();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> getGenerationCheckpointNumber(prefix, file) >= 0)
+                    .sorted(Comparator.comparingLong(file -> getGenerationCheckpointNumber(prefix, file)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return The checkpoint number of a generation file, or -1 if the file is not one
+     */
+    private static long getGenerationCheckpointNumber(String prefix, Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(prefix)) {
+            return -1;
+        }
+        String[] parts = name.substring(prefix.length()).split("-");
+        if (parts.length != 3 || parts[2].isEmpty() || !(parts[0] + parts[1] + parts[2]).chars()
+                .allMatch(Character::isDigit)) {
+            return -1;
+        }
+        return Long.parseLong(parts[2]);
+    }
+
+    /**
+     * @return Number of deltas that follow the base
+     */
+    public synchronized int getNumDeltas() {
+        return numDeltas;
+    }
+
+    /**
+     * @return Number of the latest checkpoint written to or loaded from the chain, or 0 if there is none
+     */
+    public synchronized long getCheckpointNumber() {
+        return checkpointNumber;
+    }
+
+    /**
+     * Read the base snapshot and apply the deltas that follow it, in order. Deltas left behind by a crash during
+     * compaction are deleted.
+     *
+     * @return The restored context, like {@link BinarySnapshot#read(FileChannel)}, or null if there is no base
+     * snapshot
+     * @throws IOException if the base snapshot or a delta cannot be read, or is not valid
+     */
+    public synchronized Context load() throws IOException {
+        if (!Files.exists(baseFile)) {
+            deleteDeltasFrom(1);
+            return null;
+        }
+        Context base = readChain();
+        return new Context(base.getOrgName(), base.getOrgAddress(), base.getOrgEmail(), base.getOrgSecret(),
+                base.getUserState(), base.getEventState(), base.getBookingState(), checkpointNumber);
+    }
+
+    /**
+     * Read the base snapshot and apply the deltas that follow it, and delete the deltas left behind by a crash during
+     * compaction
+     *
+     * @return The context read from the base snapshot, with the deltas applied to its states
+     */
+    private Context readChain() throws IOException {
+        Context base;
+        try (FileChannel channel = FileChannel.open(baseFile, StandardOpenOption.READ)) {
+            base = BinarySnapshot.read(channel);
+            baseSize = channel.size();
+        }
+        baseExists = true;
+        baseCheckpointNumber = base.getRestoredCheckpointNumber();
+        checkpointNumber = baseCheckpointNumber;
+        numDeltas = 0;
+        deltasSize = 0;
+        while (Files.exists(getDeltaFile(numDeltas + 1))) {
+            Path deltaFile = getDeltaFile(numDeltas + 1);
+            ByteBuffer delta = ByteBuffer.wrap(Files.readAllBytes(deltaFile));
+            if (delta.remaining() < DELTA_HEADER_SIZE || delta.getInt() != MAGIC) {
+                throw new IOException("Not a delta snapshot: " + deltaFile);
+            }
+            int version = delta.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported delta snapshot version " + version + ": " + deltaFile);
+            }
+            long deltaBaseCheckpointNumber = delta.getLong();
+            long deltaCheckpointNumber = delta.getLong();
+            if (deltaBaseCheckpointNumber != baseCheckpointNumber) {
+                // Part of the base already, as the crash happened after writing the base, but before deleting them
+                break;
+            }
+            if (deltaCheckpointNumber <= checkpointNumber) {
+                throw new IOException("Delta snapshot out of order: " + deltaFile);
+            }
+            int length = delta.getInt();
+            long expectedChecksum = delta.getInt() & 0xFFFFFFFFL;
+            if (length != delta.remaining()) {
+                throw new IOException("Corrupt delta snapshot: " + deltaFile);
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(delta.duplicate());
+            if (checksum.getValue() != expectedChecksum) {
+                throw new IOException("Corrupt delta snapshot: " + deltaFile);
+            }
+            try {
+                ChangeCodec.apply(new BinarySnapshot.Input(delta), base);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new IOException("Corrupt delta snapshot: " + deltaFile, e);
+            }
+            checkpointNumber = deltaCheckpointNumber;
+            numDeltas++;
+            deltasSize += DELTA_HEADER_SIZE + length;
+        }
+        deleteDeltasFrom(numDeltas + 1);
+        return base;
+    }
+
+    /**
+     * Fold a base snapshot and the deltas that follow it into a new base snapshot, and delete the deltas. The new base
+     * keeps the checkpoint number of the latest delta, as it holds the same app state.
+     *
+     * @param baseFile file of the base snapshot, which the delta files are named after
+     * @throws IOException if the snapshots cannot be read or written
+     */
+    public static void compact(Path baseFile) throws IOException {
+        SnapshotChain chain = new SnapshotChain(baseFile);
+        Context context = chain.load();
+        if (context != null && chain.numDeltas > 0) {
+            chain.writeBase(context, chain.checkpointNumber);
+        }
+    }
+
+    /**
+     * Start keeping track of the users, events and bookings of a context that change, so that the next snapshot of
+     * the chain can be a delta. Must be called before the context's states change after they were loaded, e.g.
+     * before replaying a {@link CommandJournal}, as the delta would miss the changes made before.
+     *
+     * @param context context whose states to keep track of
+     */
+    public void track(Context context) {
+        StateChangeLog previous = changeLog.getAndSet(new StateChangeLog(context));
+        if (previous != null) {
+            previous.stop();
+        }
+    }
+
+    /**
+     * @return True if there is a base that deltas can follow, and the changes to the app state are tracked, so that
+     * the next snapshot can be a delta
+     */
+    boolean canCapture() {
+        return baseExists && changeLog.get() != null;
+    }
+
+    /**
+     * Take the changes made since the previous delta was captured, and encode them as the next delta of the chain.
+     * Must only be called while holding the command lock, so that the delta is a consistent view of the app state, and
+     * only if {@link #canCapture()}. Does not wait for the chain to finish writing other snapshots.
+     *
+     * @param newCheckpointNumber checkpoint number of the delta
+     * @return The delta, to be written by {@link #write}
+     */
+    Delta capture(long newCheckpointNumber) {
+        BinarySnapshot.Bytes body = new BinarySnapshot.Bytes();
+        ChangeCodec.write(changeLog.get().takeChanges(), body);
+        return new Delta(newCheckpointNumber, body);
+    }
+
+    /**
+     * Write a captured delta, after any captured earlier that could not be written, and compact the chain if it is
+     * due. Commands do not need to wait for it, as neither reads the live app state. If writing a delta fails, it is
+     * written again the next time a delta is written, or dropped once the whole app state is written as a new base by
+     * {@link #save}.
+     *
+     * @param delta delta captured by {@link #capture}
+     * @throws IOException if writing a delta fails, or if compacting the chain fails, which leaves the chain as it was
+     */
+    synchronized void write(Delta delta) throws IOException {
+        pendingDeltas.add(delta);
+        while (!pendingDeltas.isEmpty()) {
+            writeDelta(pendingDeltas.get(0));
+            pendingDeltas.remove(0);
+        }
+        if (isCompactionDue()) {
+            writeBase(readChain(), checkpointNumber);
+        }
+    }
+
+    private boolean isCompactionDue() {
+        return numDeltas >= maxDeltas || deltasSize >= baseSize;
+    }
+
+    /**
+     * Save the app state of a context as the next snapshot of the chain, which is a delta unless the chain is due to
+     * be compacted. Commands wait until the snapshot has been written.
+     *
+     * @param context context whose states are tracked, see {@link #track}
+     * @return The checkpoint number of the snapshot
+     * @throws IOException if writing the snapshot fails
+     */
+    public long save(Context context) throws IOException {
+        ReentrantLock commandLock = context.getCommandLock();
+        commandLock.lock();
+        try {
+            synchronized (this) {
+                return save(context, checkpointNumber + 1);
+            }
+        } finally {
+            commandLock.unlock();
+        }
+    }
+
+    /**
+     * Save the app state of a context as the next snapshot of the chain. Must only be called while holding the command
+     * lock.
+     *
+     * @param context             context whose states are tracked, see {@link #track}
+     * @param newCheckpointNumber checkpoint number of the snapshot
+     * @return The checkpoint number of the snapshot
+     * @throws IOException if writing the snapshot fails
+     */
+    synchronized long save(Context context, long newCheckpointNumber) throws IOException {
+        if (!canCapture() || !pendingDeltas.isEmpty() || isCompactionDue()) {
+            writeBase(context, newCheckpointNumber);
+            // The base holds every change made so far, as commands wait until it has been written
+            StateChangeLog log = changeLog.get();
+            if (log != null) {
+                log.takeChanges();
+            }
+            pendingDeltas.clear();
+        } else {
+            writeDelta(capture(newCheckpointNumber));
+        }
+        return newCheckpointNumber;
+    }
+
+    private void writeBase(Context context, long newCheckpointNumber) throws IOException {
+        Path tempFile = baseFile.resolveSibling(baseFile.getFileName() + ".tmp");
+        long newBaseSize;
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            BinarySnapshot.write(context, out, newCheckpointNumber);
+            out.flush();
+            channel.force(true);
+            newBaseSize = channel.size();
+        }
+        if (generations > 0) {
+            keepGeneration(tempFile, newCheckpointNumber);
+        }
+        Files.move(tempFile, baseFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // The deltas are only deleted once the new base is sure to replace the old one after a crash
+        DirectorySync.forceDirectoryOf(baseFile);
+        baseSize = newBaseSize;
+        baseExists = true;
+        baseCheckpointNumber = newCheckpointNumber;
+        checkpointNumber = newCheckpointNumber;
+        // The last ones first, so that a crash leaves the first ones, which are recognised as part of the new base
+        for (int i = numDeltas; i >= 1; i--) {
+            Files.deleteIfExists(getDeltaFile(i));
+        }
+        numDeltas = 0;
+        deltasSize = 0;
+    }
+
+    /**
+     * Keep a new base, which is complete on disk already, as the latest generation, and delete the oldest ones
+     */
+    private void keepGeneration(Path newBase, long newCheckpointNumber) throws IOException {
+        Path generationFile = baseFile.resolveSibling(baseFile.getFileName() + "."
+                + LocalDateTime.now().format(GENERATION_TIME_FORMAT) + "-" + newCheckpointNumber);
+        Files.deleteIfExists(generationFile);
+        try {
+            // The base is replaced rather than changed in place, so the link keeps this generation as it is
+            Files.createLink(generationFile, newBase);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(newBase, generationFile);
+        }
+        List<Path> generationFiles = getGenerationFiles();
+        for (int i = 0; i < generationFiles.size() - generations; i++) {
+            Files.delete(generationFiles.get(i));
+        }
+    }
+
+    private void writeDelta(Delta delta) throws IOException {
+        if (delta.checkpointNumber <= checkpointNumber) {
+            throw new IllegalArgumentException("Delta snapshot out of order: checkpoint " + delta.checkpointNumber
+                    + " follows checkpoint " + checkpointNumber);
+        }
+        BinarySnapshot.Bytes body = delta.body;
+        Path deltaFile = getDeltaFile(numDeltas + 1);
+        Path tempFile = deltaFile.resolveSibling(deltaFile.getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+        checksum.update(body.toByteBuffer());
+        ByteBuffer header = ByteBuffer.allocate(DELTA_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(baseCheckpointNumber).putLong(delta.checkpointNumber)
+                .putInt(body.size()).putInt((int) checksum.getValue()).flip();
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] buffers = {header, body.toByteBuffer()};
+            long deltaSize = DELTA_HEADER_SIZE + body.size();
+            long written = 0;
+            while (written < deltaSize) {
+                written += channel.write(buffers);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile, deltaFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // The journal segment the delta holds is deleted once it has been written
+        DirectorySync.forceDirectoryOf(deltaFile);
+        checkpointNumber = delta.checkpointNumber;
+        numDeltas++;
+        deltasSize += DELTA_HEADER_SIZE + body.size();
+    }
+
+    private void deleteDeltasFrom(int index) throws IOException {
+        int i = index;
+        while (Files.deleteIfExists(getDeltaFile(i))) {
+            i++;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package controller;
+
+import model.ChangeTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link StateChangeLog} logs the changes reported to the {@link ChangeTracker}s of all three states of a
+ * {@link Context}, for one party that records them, e.g. a {@link CommandJournal}.
+ */
+class StateChangeLog {
+    private final Context context;
+    private final ChangeTracker.ChangeLog userChanges;
+    private final ChangeTracker.ChangeLog eventChanges;
+    private final ChangeTracker.ChangeLog bookingChanges;
+
+    /**
+     * Start logging the changes to the states of a context from now on
+     *
+     * @param context context whose states' changes to log
+     */
+    StateChangeLog(Context context) {
+        this.context = context;
+        userChanges = context.getUserState().getChangeTracker().startLog();
+        eventChanges = context.getEventState().getChangeTracker().startLog();
+        bookingChanges = context.getBookingState().getChangeTracker().startLog();
+    }
+
+    /**
+     * Take the changes logged so far, leaving none behind. Users come before the events and bookings that may refer
+     * to them.
+     *
+     * @return The changes to the users, then to the events, then to the bookings, or an empty list if there are none
+     */
+    List<Object> takeChanges() {
+        List<Object> changes = new ArrayList<>(userChanges.takeChanges());
+        changes.addAll(eventChanges.takeChanges());
+        changes.addAll(bookingChanges.takeChanges());
+        return changes;
+    }
+
+    /**
+     * Stop logging changes
+     */
+    void stop() {
+        context.getUserState().getChangeTracker().stopLog(userChanges);
+        context.getEventState().getChangeTracker().stopLog(eventChanges);
+        context.getBookingState().getChangeTracker().stopLog(bookingChanges);
+    }
+}
@@ -0,0 +1,110 @@
+package external;
+
+import java.util.List;
+
+/**
+ * Interface for a remote payment provider that can process several payments and refunds in a single round trip. It is
+ * used by {@link BatchingPaymentSystem}, which gathers the payments and refunds submitted by the application into
+ * batches.
+ */
+public interface BatchPaymentProvider {
+    /**
+     * {@link PaymentRequest} is one payment or refund of a batch
+     */
+    class PaymentRequest {
+        private final String buyerAccountEmail;
+        private final String sellerAccountEmail;
+        private final double transactionAmount;
+        private final List<Double> itemAmounts;
+        private final boolean refund;
+        private final String idempotencyKey;
+
+        /**
+         * @param buyerAccountEmail  email address of the buyer's account on the payment system
+         * @param sellerAccountEmail email address of the seller's account on the payment system
+         * @param transactionAmount  amount to be transferred in GBP pence
+         * @param refund             true if the amount is to be refunded from the seller to the buyer, false if it is
+         *                           to be paid from the buyer to the seller
+         */
+        public PaymentRequest(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount,
+                              boolean refund) {
+            this(buyerAccountEmail, sellerAccountEmail, List.of(transactionAmount), refund);
+        }
+
+        /**
+         * @param buyerAccountEmail  email address of the buyer's account on the payment system
+         * @param sellerAccountEmail email address of the seller's account on the payment system
+         * @param itemAmounts        amounts in GBP pence of the items transferred together, see
+         *                           {@link PaymentSystem#processPayment(String, String, List)}
+         * @param refund             true if the amount is to be refunded from the seller to the buyer, false if it is
+         *                           to be paid from the buyer to the seller
+         */
+        public PaymentRequest(String buyerAccountEmail, String sellerAccountEmail, List<Double> itemAmounts,
+                              boolean refund) {
+            this(buyerAccountEmail, sellerAccountEmail, itemAmounts, refund, null);
+        }
+
+        /**
+         * @param buyerAccountEmail  email address of the buyer's account on the payment system
+         * @param sellerAccountEmail email address of the seller's account on the payment system
+         * @param itemAmounts        amounts in GBP pence of the items transferred together, see
+         *                           {@link PaymentSystem#processPayment(String, String, List)}
+         * @param refund             true if the amount is to be refunded from the seller to the buyer, false if it is
+         *                           to be paid from the buyer to the seller
+         * @param idempotencyKey     key that identifies the refund, see
+         *                           {@link PaymentSystem#processRefund(String, String, double, String)}, or null if
+         *                           there is none
+         */
+        public PaymentRequest(String buyerAccountEmail, String sellerAccountEmail, List<Double> itemAmounts,
+                              boolean refund, String idempotencyKey) {
+            this.buyerAccountEmail = buyerAccountEmail;
+            this.sellerAccountEmail = sellerAccountEmail;
+            this.itemAmounts = List.copyOf(itemAmounts);
+            double totalAmount = 0;
+            for (double itemAmount : itemAmounts) {
+                totalAmount += itemAmount;
+            }
+            this.transactionAmount = totalAmount;
+            this.refund = refund;
+            this.idempotencyKey = idempotencyKey;
+        }
+
+        public String getBuyerAccountEmail() {
+            return buyerAccountEmail;
+        }
+
+        public String getSellerAccountEmail() {
+            return sellerAccountEmail;
+        }
+
+        public double getTransactionAmount() {
+            return transactionAmount;
+        }
+
+        /**
+         * @return Amounts of the items transferred together, which add up to the transaction amount
+         */
+        public List<Double> getItemAmounts() {
+            return itemAmounts;
+        }
+
+        public boolean isRefund() {
+            return refund;
+        }
+
+        /**
+         * @return Key that identifies the refund, or null if there is none
+         */
+        public String getIdempotencyKey() {
+            return idempotencyKey;
+        }
+    }
+
+    /**
+     * Process a batch of payments and refunds, in order
+     *
+     * @param requests payments and refunds to process
+     * @return Whether each request was successful, in the same order as the requests
+     */
+    List<Boolean> processBatch(List<PaymentRequest> requests);
+}
@@ -0,0 +1,185 @@
+package external;
+
+import external.BatchPaymentProvider.PaymentRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link PaymentSystem} that sends payments and refunds to a remote {@link BatchPaymentProvider} in micro-batches.
+ * Submitted payments and refunds are queued, and a single dispatcher thread takes everything queued so far, up to a
+ * maximum batch size, and sends it to the provider in one round trip. While a batch is on its way, the next one builds
+ * up in the queue, so the more sessions pay at once, the fewer round trips each payment costs.
+ * <p>
+ * The blocking {@link #processPayment} and {@link #processRefund} submit the request and wait for its batch, so
+ * commands that pay outside the command lock share round trips with each other without any change.
+ */
+public class BatchingPaymentSystem implements PaymentSystem {
+    /**
+     * Maximum number of payments and refunds sent in one round trip, unless configured otherwise
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    private static class PendingRequest {
+        private final PaymentRequest request;
+        private final CompletableFuture<Boolean> result;
+
+        private PendingRequest(PaymentRequest request) {
+            this.request = request;
+            this.result = new CompletableFuture<>();
+        }
+    }
+
+    // Queued by close to wake up the dispatcher thread
+    private static final PendingRequest WAKE_UP = new PendingRequest(null);
+
+    private final BatchPaymentProvider provider;
+    private final int maxBatchSize;
+    private final Duration maxBatchDelay;
+    private final BlockingQueue<PendingRequest> queue;
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    /**
+     * @param provider remote provider to send the payments and refunds to
+     */
+    public BatchingPaymentSystem(BatchPaymentProvider provider) {
+        this(provider, DEFAULT_MAX_BATCH_SIZE, Duration.ZERO);
+    }
+
+    /**
+     * @param provider      remote provider to send the payments and refunds to
+     * @param maxBatchSize  maximum number of payments and refunds sent in one round trip
+     * @param maxBatchDelay how long to wait for more requests before sending a batch that is not full. With no delay,
+     *                      a batch is sent as soon as the previous one is done, with whatever was queued meanwhile.
+     */
+    public BatchingPaymentSystem(BatchPaymentProvider provider, int maxBatchSize, Duration maxBatchDelay) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.provider = provider;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelay = maxBatchDelay;
+        this.queue = new LinkedBlockingQueue<>();
+        this.dispatcher = new Thread(this::dispatch, "payment-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public boolean processPayment(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount) {
+        return submitPayment(buyerAccountEmail, sellerAccountEmail, transactionAmount).join();
+    }
+
+    @Override
+    public boolean processPayment(String buyerAccountEmail, String sellerAccountEmail, List<Double> itemAmounts) {
+        return submit(new PaymentRequest(buyerAccountEmail, sellerAccountEmail, itemAmounts, false)).join();
+    }
+
+    @Override
+    public boolean processRefund(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount) {
+        return submitRefund(buyerAccountEmail, sellerAccountEmail, transactionAmount).join();
+    }
+
+    @Override
+    public boolean processRefund(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount,
+                                 String idempotencyKey) {
+        return submit(new PaymentRequest(buyerAccountEmail, sellerAccountEmail, List.of(transactionAmount), true,
+                idempotencyKey)).join();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> submitPayment(String buyerAccountEmail, String sellerAccountEmail,
+                                                    double transactionAmount) {
+        return submit(new PaymentRequest(buyerAccountEmail, sellerAccountEmail, transactionAmount, false));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> submitRefund(String buyerAccountEmail, String sellerAccountEmail,
+                                                   double transactionAmount) {
+        return submit(new PaymentRequest(buyerAccountEmail, sellerAccountEmail, transactionAmount, true));
+    }
+
+    private CompletableFuture<Boolean> submit(PaymentRequest request) {
+        if (closed) {
+            return CompletableFuture.completedFuture(false);
+        }
+        PendingRequest pending = new PendingRequest(request);
+        queue.add(pending);
+        // If the system was closed meanwhile, the dispatcher may already have sent its last batch, in which case the
+        // request is still queued and fails here
+        if (closed && queue.remove(pending)) {
+            pending.result.complete(false);
+        }
+        return pending.result;
+    }
+
+    private void dispatch() {
+        List<PendingRequest> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                takeBatch(batch);
+            } catch (InterruptedException e) {
+                break;
+            }
+            batch.removeIf(pending -> pending == WAKE_UP);
+            if (!batch.isEmpty()) {
+                send(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    // Waits for the first request, then adds whatever else is queued, waiting up to maxBatchDelay for more
+    private void takeBatch(List<PendingRequest> batch) throws InterruptedException {
+        batch.add(queue.take());
+        queue.drainTo(batch, maxBatchSize - batch.size());
+        long deadline = System.nanoTime() + maxBatchDelay.toNanos();
+        while (batch.size() < maxBatchSize && !closed) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return;
+            }
+            PendingRequest next = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void send(List<PendingRequest> batch) {
+        List<PaymentRequest> requests = new ArrayList<>(batch.size());
+        for (PendingRequest pending : batch) {
+            requests.add(pending.request);
+        }
+        List<Boolean> results;
+        try {
+            results = provider.processBatch(requests);
+        } catch (RuntimeException e) {
+            // The provider could not be reached, so none of the batch went through
+            results = null;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            boolean successful = results != null && i < results.size() && Boolean.TRUE.equals(results.get(i));
+            batch.get(i).result.complete(successful);
+        }
+    }
+
+    /**
+     * Stop accepting payments and refunds, and wait until the ones already submitted have been processed. Any
+     * submitted afterwards fail.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        queue.add(WAKE_UP);
+        dispatcher.join();
+    }
+}
@@ -0,0 +1,19 @@
+package external;
+
+import java.util.List;
+
+/**
+ * A {@link NotificationSink} that prints notifications to the console instead of sending them. Each batch is printed
+ * with a single write.
+ */
+public class ConsoleNotificationSink implements NotificationSink {
+    @Override
+    public void deliver(List<Notification> notifications) {
+        StringBuilder lines = new StringBuilder();
+        for (Notification notification : notifications) {
+            lines.append(notification).append(System.lineSeparator());
+        }
+        System.out.print(lines);
+        System.out.flush();
+    }
+}
@@ -1,8 +1,10 @@
 package external;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A mock implementation of {@link PaymentSystem} for testing purposes.
@@ -20,7 +22,10 @@ public class MockPaymentSystem implements PaymentSystem {
     private static final String ANSI_RESET = "\u001B[0m";
     private static final String ANSI_CYAN = "\u001B[36m";
 
-    private static void printMessage(String prompt, String... arguments) {
+    private void printMessage(String prompt, String... arguments) {
+        if (!printMessages) {
+            return;
+        }
         System.err.println(ANSI_CYAN + prompt + ": " + String.join(", ", arguments) + ANSI_RESET);
     }
 
@@ -50,21 +55,52 @@ public class MockPaymentSystem implements PaymentSystem {
     }
 
     // Key = Transaction, Value = Count of same transactions
+    // Payments are made outside the command lock, so transactions of several sessions can be processed at once
     private final Map<Transaction, Integer> transactions;
+    // Keys of the refunds that succeeded, see PaymentSystem#processRefund(String, String, double, String)
+    private final Set<String> refundKeys;
+    private final boolean printMessages;
 
     public MockPaymentSystem() {
-        transactions = new HashMap<>();
+        this(true);
+    }
+
+    /**
+     * @param printMessages whether every payment and refund is printed, which can be turned off e.g. when simulating
+     *                      a provider under load
+     */
+    public MockPaymentSystem(boolean printMessages) {
+        transactions = new ConcurrentHashMap<>();
+        refundKeys = ConcurrentHashMap.newKeySet();
+        this.printMessages = printMessages;
     }
 
     public MockPaymentSystem(MockPaymentSystem other) {
-        transactions = new HashMap<>(other.transactions);
+        transactions = new ConcurrentHashMap<>(other.transactions);
+        refundKeys = ConcurrentHashMap.newKeySet();
+        refundKeys.addAll(other.refundKeys);
+        printMessages = other.printMessages;
     }
 
     @Override
     public boolean processPayment(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount) {
         printMessage("Processing payment", buyerAccountEmail, sellerAccountEmail, String.valueOf(transactionAmount));
         Transaction transaction = new Transaction(buyerAccountEmail, sellerAccountEmail, transactionAmount);
-        transactions.put(transaction, transactions.getOrDefault(transaction, 0) + 1);
+        transactions.merge(transaction, 1, Integer::sum);
+        return true;
+    }
+
+    /**
+     * Make a single payment for several items like {@link PaymentSystem#processPayment(String, String, List)}, but
+     * record a transaction for each item, so that each of them can only be refunded with exactly its own amount
+     */
+    @Override
+    public boolean processPayment(String buyerAccountEmail, String sellerAccountEmail, List<Double> itemAmounts) {
+        printMessage("Processing payment", buyerAccountEmail, sellerAccountEmail, String.valueOf(itemAmounts));
+        for (double itemAmount : itemAmounts) {
+            Transaction transaction = new Transaction(buyerAccountEmail, sellerAccountEmail, itemAmount);
+            transactions.merge(transaction, 1, Integer::sum);
+        }
         return true;
     }
 
@@ -72,12 +108,32 @@ public class MockPaymentSystem implements PaymentSystem {
     public boolean processRefund(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount) {
         printMessage("Processing refund", buyerAccountEmail, sellerAccountEmail, String.valueOf(transactionAmount));
         Transaction transaction = new Transaction(buyerAccountEmail, sellerAccountEmail, transactionAmount);
-        int transactionCount = transactions.getOrDefault(transaction, 0);
-        if (transactionCount <= 0) {
-            return false;
+        return takeTransaction(transaction);
+    }
+
+    @Override
+    public boolean processRefund(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount,
+                                 String idempotencyKey) {
+        if (refundKeys.contains(idempotencyKey)) {
+            printMessage("Refund already processed", buyerAccountEmail, sellerAccountEmail,
+                    String.valueOf(transactionAmount), idempotencyKey);
+            return true;
         }
-        transactions.put(transaction, transactionCount - 1);
-        return true;
+        boolean refunded = processRefund(buyerAccountEmail, sellerAccountEmail, transactionAmount);
+        if (refunded) {
+            refundKeys.add(idempotencyKey);
+        }
+        return refunded;
+    }
+
+    // Atomically remove one of the given transactions, if there are any left
+    private boolean takeTransaction(Transaction transaction) {
+        boolean[] taken = {false};
+        transactions.computeIfPresent(transaction, (key, transactionCount) -> {
+            taken[0] = transactionCount > 0;
+            return taken[0] ? transactionCount - 1 : transactionCount;
+        });
+        return taken[0];
     }
 
     @Override
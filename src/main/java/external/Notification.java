@@ -0,0 +1,57 @@
+package external;
+
+import java.util.Objects;
+
+/**
+ * {@link Notification} is a message to be delivered to a {@link model.Consumer}, e.g. when an event they booked is
+ * cancelled, or to a {@link model.Staff} member, e.g. with the outcome of the refunds for an event they cancelled. Two notifications are equal if they carry the same message to the same recipient.
+ */
+public class Notification {
+    private final String recipientEmail;
+    private final String recipientPhoneNumber;
+    private final String message;
+
+    /**
+     * @param recipientEmail       email address of the recipient
+     * @param recipientPhoneNumber phone number of the recipient, or null if they have none, like staff members
+     * @param message              message to deliver
+     */
+    public Notification(String recipientEmail, String recipientPhoneNumber, String message) {
+        this.recipientEmail = recipientEmail;
+        this.recipientPhoneNumber = recipientPhoneNumber;
+        this.message = message;
+    }
+
+    public String getRecipientEmail() {
+        return recipientEmail;
+    }
+
+    public String getRecipientPhoneNumber() {
+        return recipientPhoneNumber;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Notification)) return false;
+        Notification that = (Notification) o;
+        return recipientEmail.equals(that.recipientEmail) && message.equals(that.message);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(recipientEmail, message);
+    }
+
+    @Override
+    public String toString() {
+        if (recipientPhoneNumber == null) {
+            return "Message to " + recipientEmail + ": " + message;
+        }
+        return "Message to " + recipientEmail + " and " + recipientPhoneNumber + ": " + message;
+    }
+}
@@ -0,0 +1,176 @@
+package external;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link NotificationDispatcher} delivers {@link Notification}s in the background, so that commands which notify many
+ * consumers, e.g. cancelling a sold-out event, do not wait for every delivery. Sent notifications are queued, and a
+ * dispatcher thread takes everything queued so far, up to a maximum batch size, drops the repeated ones, e.g. for a
+ * consumer with several bookings for the same event, and hands the rest to a {@link NotificationSink} at once.
+ * The dispatcher thread is only started once the first notification is sent.
+ */
+public class NotificationDispatcher implements AutoCloseable {
+    /**
+     * Maximum number of notifications handed to the sink at once, unless configured otherwise
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+
+    // A queued notification, or a marker that is counted down once everything queued before it has been delivered
+    private static class QueuedItem {
+        private final Notification notification;
+        private final CountDownLatch delivered;
+
+        private QueuedItem(Notification notification, CountDownLatch delivered) {
+            this.notification = notification;
+            this.delivered = delivered;
+        }
+    }
+
+    private final NotificationSink sink;
+    private final int maxBatchSize;
+    private final BlockingQueue<QueuedItem> queue;
+    private volatile Thread dispatcher;
+    private volatile boolean closed;
+    // Told about every batch the sink failed to deliver, if set
+    private volatile BiConsumer<List<Notification>, RuntimeException> failureHandler;
+
+    /**
+     * @param sink system that delivers the notifications
+     */
+    public NotificationDispatcher(NotificationSink sink) {
+        this(sink, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param sink         system that delivers the notifications
+     * @param maxBatchSize maximum number of notifications handed to the sink at once
+     */
+    public NotificationDispatcher(NotificationSink sink, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.sink = sink;
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new LinkedBlockingQueue<>();
+    }
+
+    public NotificationSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Set what to do with the notifications the sink fails to deliver in the background, e.g. report them to the
+     * user. Without a handler, they are dropped.
+     *
+     * @param failureHandler called on the dispatcher thread with every batch the sink failed to deliver, and the
+     *                       exception it failed with
+     */
+    public void setFailureHandler(BiConsumer<List<Notification>, RuntimeException> failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Queue a notification for delivery and return without waiting for it. Once the dispatcher is closed,
+     * notifications are delivered straight away instead.
+     *
+     * @param notification notification to deliver
+     */
+    public void send(Notification notification) {
+        if (closed) {
+            sink.deliver(List.of(notification));
+            return;
+        }
+        if (dispatcher == null) {
+            startDispatcher();
+        }
+        QueuedItem item = new QueuedItem(notification, null);
+        queue.add(item);
+        // If the dispatcher was closed meanwhile, it may already have stopped, in which case the notification is still
+        // queued and is delivered here
+        if (closed && queue.remove(item)) {
+            sink.deliver(List.of(notification));
+        }
+    }
+
+    /**
+     * Wait until every notification sent before this call has been handed to the sink
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        Thread dispatcher = this.dispatcher;
+        if (dispatcher == null) {
+            return;
+        }
+        CountDownLatch delivered = new CountDownLatch(1);
+        queue.add(new QueuedItem(null, delivered));
+        // A dispatcher that has stopped delivers nothing more, and everything queued before it stopped was delivered
+        while (!delivered.await(10, TimeUnit.MILLISECONDS)) {
+            if (!dispatcher.isAlive()) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void startDispatcher() {
+        if (dispatcher == null) {
+            dispatcher = new Thread(this::dispatch, "notification-dispatcher");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+    }
+
+    private void dispatch() {
+        List<QueuedItem> batch = new ArrayList<>(maxBatchSize);
+        Set<Notification> notifications = new LinkedHashSet<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, maxBatchSize - 1);
+            for (QueuedItem item : batch) {
+                if (item.notification != null) {
+                    notifications.add(item.notification);
+                }
+            }
+            if (!notifications.isEmpty()) {
+                List<Notification> delivery = new ArrayList<>(notifications);
+                try {
+                    sink.deliver(delivery);
+                } catch (RuntimeException e) {
+                    // A sink that fails on one batch must not stop the later ones from being delivered
+                    BiConsumer<List<Notification>, RuntimeException> failureHandler = this.failureHandler;
+                    if (failureHandler != null) {
+                        failureHandler.accept(delivery, e);
+                    }
+                }
+            }
+            for (QueuedItem item : batch) {
+                if (item.delivered != null) {
+                    item.delivered.countDown();
+                }
+            }
+            batch.clear();
+            notifications.clear();
+        }
+    }
+
+    /**
+     * Deliver the notifications still queued and stop the dispatcher thread
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        flush();
+    }
+}
@@ -0,0 +1,17 @@
+package external;
+
+import java.util.List;
+
+/**
+ * Interface for the external system that delivers {@link Notification}s to consumers, e.g. by email or text message.
+ * Notifications are handed over in batches by a {@link NotificationDispatcher}, so that a sink can deliver many of them
+ * at the cost of one.
+ */
+public interface NotificationSink {
+    /**
+     * Deliver a batch of notifications, which contains no duplicates
+     *
+     * @param notifications notifications to deliver, in the order they were sent
+     */
+    void deliver(List<Notification> notifications);
+}
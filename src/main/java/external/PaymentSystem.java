@@ -1,10 +1,17 @@
 package external;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface for the external {@link PaymentSystem} (e.g., PayPal, Transferwise, or similar). It allows requesting for
  * payments to be made from one party to another (both are assumed to be already registered on the payment system), or
  * for payments to be refunded. There is only one {@link PaymentSystem} and all users of this application use the same
  * system. Payments and refunds can succeed or fail, this is indicated by the return values.
+ * <p>
+ * Payments and refunds can also be submitted without waiting for them, see {@link #submitPayment} and
+ * {@link #submitRefund}. By default these just make the blocking call, but systems that talk to a remote provider,
+ * e.g. {@link BatchingPaymentSystem}, can queue them and send several at once.
  */
 public interface PaymentSystem extends AutoCloseable {
     /**
@@ -16,6 +23,23 @@ public interface PaymentSystem extends AutoCloseable {
      */
     boolean processPayment(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount);
 
+    /**
+     * Request a single payment to be made from the buyer to the seller for several items at once, e.g. a batch of
+     * bookings, each of which can later be refunded on its own through {@link #processRefund} with its item amount.
+     * By default this makes one payment of the items' total.
+     * @param buyerAccountEmail email address of the buyer's account on the payment system
+     * @param sellerAccountEmail email address of the seller's account on the payment system
+     * @param itemAmounts amounts of the items paid for, in GBP pence
+     * @return True if successful and false otherwise
+     */
+    default boolean processPayment(String buyerAccountEmail, String sellerAccountEmail, List<Double> itemAmounts) {
+        double totalAmount = 0;
+        for (double itemAmount : itemAmounts) {
+            totalAmount += itemAmount;
+        }
+        return processPayment(buyerAccountEmail, sellerAccountEmail, totalAmount);
+    }
+
     /**
      * Request a payment to be refunded from the seller to the buyer for a given transaction amount
      * @param buyerAccountEmail email address of the buyer's account on the payment system
@@ -24,4 +48,48 @@ public interface PaymentSystem extends AutoCloseable {
      * @return True if successful and false otherwise
      */
     boolean processRefund(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount);
+
+    /**
+     * Request a payment to be refunded like {@link #processRefund(String, String, double)}, under a key that
+     * identifies the refund, e.g. of one booking, so that it can safely be tried again: once a refund under the key
+     * succeeded, trying it again succeeds without refunding anything, e.g. when the previous try threw before its
+     * outcome was known, or the application stopped before recording it. Refunds under the same key are expected to
+     * be tried one at a time. By default the key is ignored, so systems that cannot tell refunds apart by their key
+     * may refund a repeated one again.
+     * @param buyerAccountEmail email address of the buyer's account on the payment system
+     * @param sellerAccountEmail email address of the seller's account on the payment system
+     * @param transactionAmount amount to be transferred in GBP pence
+     * @param idempotencyKey key that identifies the refund
+     * @return True if successful, or if a refund under the same key already was, and false otherwise
+     */
+    default boolean processRefund(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount,
+                                  String idempotencyKey) {
+        return processRefund(buyerAccountEmail, sellerAccountEmail, transactionAmount);
+    }
+
+    /**
+     * Submit a payment to be made from the buyer to the seller, without waiting for it to be processed
+     * @param buyerAccountEmail email address of the buyer's account on the payment system
+     * @param sellerAccountEmail email address of the seller's account on the payment system
+     * @param transactionAmount amount to be transferred in GBP pence
+     * @return A future completed with true if the payment was successful and false otherwise
+     */
+    default CompletableFuture<Boolean> submitPayment(String buyerAccountEmail, String sellerAccountEmail,
+                                                     double transactionAmount) {
+        return CompletableFuture.completedFuture(
+                processPayment(buyerAccountEmail, sellerAccountEmail, transactionAmount));
+    }
+
+    /**
+     * Submit a payment to be refunded from the seller to the buyer, without waiting for it to be processed
+     * @param buyerAccountEmail email address of the buyer's account on the payment system
+     * @param sellerAccountEmail email address of the seller's account on the payment system
+     * @param transactionAmount amount to be transferred in GBP pence
+     * @return A future completed with true if the refund was successful and false otherwise
+     */
+    default CompletableFuture<Boolean> submitRefund(String buyerAccountEmail, String sellerAccountEmail,
+                                                    double transactionAmount) {
+        return CompletableFuture.completedFuture(
+                processRefund(buyerAccountEmail, sellerAccountEmail, transactionAmount));
+    }
 }
\ No newline at end of file
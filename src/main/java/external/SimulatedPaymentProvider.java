@@ -0,0 +1,58 @@
+package external;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for a remote {@link BatchPaymentProvider}, for testing and measuring purposes. Every batch takes a
+ * fixed round-trip latency, as a network request to the provider would, after which its requests are processed one by
+ * one by a local {@link PaymentSystem}, e.g. a {@link MockPaymentSystem}, which decides whether they succeed.
+ */
+public class SimulatedPaymentProvider implements BatchPaymentProvider {
+    private final Duration roundTripLatency;
+    private final PaymentSystem ledger;
+    private final AtomicInteger numRoundTrips;
+
+    /**
+     * @param roundTripLatency how long every batch takes, regardless of its size
+     * @param ledger           payment system that processes the requests once the latency has passed
+     */
+    public SimulatedPaymentProvider(Duration roundTripLatency, PaymentSystem ledger) {
+        this.roundTripLatency = roundTripLatency;
+        this.ledger = ledger;
+        this.numRoundTrips = new AtomicInteger();
+    }
+
+    /**
+     * @return The number of batches processed so far
+     */
+    public int getNumRoundTrips() {
+        return numRoundTrips.get();
+    }
+
+    @Override
+    public List<Boolean> processBatch(List<PaymentRequest> requests) {
+        numRoundTrips.incrementAndGet();
+        try {
+            Thread.sleep(roundTripLatency.toMillis(), roundTripLatency.toNanosPart() % 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Boolean> results = new ArrayList<>(requests.size());
+        for (PaymentRequest request : requests) {
+            if (!request.isRefund()) {
+                results.add(ledger.processPayment(request.getBuyerAccountEmail(), request.getSellerAccountEmail(),
+                        request.getItemAmounts()));
+            } else if (request.getIdempotencyKey() != null) {
+                results.add(ledger.processRefund(request.getBuyerAccountEmail(), request.getSellerAccountEmail(),
+                        request.getTransactionAmount(), request.getIdempotencyKey()));
+            } else {
+                results.add(ledger.processRefund(request.getBuyerAccountEmail(), request.getSellerAccountEmail(),
+                        request.getTransactionAmount()));
+            }
+        }
+        return results;
+    }
+}
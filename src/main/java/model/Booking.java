@@ -13,6 +13,10 @@ public class Booking implements Serializable {
     private final int numTickets;
     private final LocalDateTime bookingDateTime;
     private BookingStatus status;
+    // Null unless the booking has to be refunded
+    private RefundStatus refundStatus;
+    // Tracker of the state this booking was added to, if any, which changes to the booking are reported to
+    private transient ChangeTracker changeTracker;
 
     /**
      * @param bookingNumber   unique identifier for this booking
@@ -63,6 +67,7 @@ public class Booking implements Serializable {
      */
     public void cancelByConsumer() {
         this.status = BookingStatus.CancelledByConsumer;
+        changed();
     }
 
     /**
@@ -70,6 +75,40 @@ public class Booking implements Serializable {
      */
     public void cancelByProvider() {
         this.status = BookingStatus.CancelledByProvider;
+        changed();
+    }
+
+    /**
+     * @return Progress of refunding this booking, or null if it does not have to be refunded
+     */
+    public RefundStatus getRefundStatus() {
+        return refundStatus;
+    }
+
+    /**
+     * Record the progress of refunding this booking, e.g. {@link RefundStatus#Pending} once it turns out that it has
+     * to be refunded, and the outcome once the refund has been processed
+     *
+     * @param refundStatus progress of refunding this booking
+     */
+    public void setRefundStatus(RefundStatus refundStatus) {
+        this.refundStatus = refundStatus;
+        if (changeTracker != null) {
+            changeTracker.recordChange(new ChangeTracker.RefundStatusChanged(this, refundStatus));
+        }
+    }
+
+    /**
+     * @param changeTracker tracker to report changes to this booking to, e.g. of the state it was added to
+     */
+    public void setChangeTracker(ChangeTracker changeTracker) {
+        this.changeTracker = changeTracker;
+    }
+
+    private void changed() {
+        if (changeTracker != null) {
+            changeTracker.entityChanged(this);
+        }
     }
 
     @Override
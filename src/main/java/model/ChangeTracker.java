@@ -0,0 +1,226 @@
+package model;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link ChangeTracker} collects the changes made to the entities of a state, so that they can be recorded, e.g. in
+ * a journal, without scanning the whole state. Entities report their own changes to the tracker of the state they
+ * were added to (see {@link Event#setChangeTracker}), and the state reports additions and removals.
+ * <p>
+ * Changes are only kept in the {@link ChangeLog}s started on the tracker, so that states nobody records changes of do
+ * not keep them. Changes are kept in the order they were first made. An entity changed several times is kept once,
+ * and is recorded as it is when the changes are taken, while other records, e.g. {@link Review}s, are kept as they
+ * come.
+ */
+public class ChangeTracker implements Serializable {
+    /**
+     * A {@link User}'s email address, which users are registered under, changed
+     */
+    public static class UserRenamed {
+        private final String oldEmail;
+        private final String newEmail;
+
+        public UserRenamed(String oldEmail, String newEmail) {
+            this.oldEmail = oldEmail;
+            this.newEmail = newEmail;
+        }
+
+        public String getOldEmail() {
+            return oldEmail;
+        }
+
+        public String getNewEmail() {
+            return newEmail;
+        }
+    }
+
+    /**
+     * The {@link User} registered under an email address was removed
+     */
+    public static class UserRemoved {
+        private final String email;
+
+        public UserRemoved(String email) {
+            this.email = email;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+    }
+
+    /**
+     * An {@link EventTag} was created or replaced
+     */
+    public static class TagCreated {
+        private final String tagName;
+        private final EventTag tag;
+
+        public TagCreated(String tagName, EventTag tag) {
+            this.tagName = tagName;
+            this.tag = tag;
+        }
+
+        public String getTagName() {
+            return tagName;
+        }
+
+        public EventTag getTag() {
+            return tag;
+        }
+    }
+
+    /**
+     * The progress of refunding a {@link Booking} changed. It is recorded as its own change rather than with the
+     * booking, so that records of bookings written before refunds were recorded stay the same.
+     */
+    public static class RefundStatusChanged {
+        private final Booking booking;
+        private final RefundStatus refundStatus;
+
+        public RefundStatusChanged(Booking booking, RefundStatus refundStatus) {
+            this.booking = booking;
+            this.refundStatus = refundStatus;
+        }
+
+        public Booking getBooking() {
+            return booking;
+        }
+
+        public RefundStatus getRefundStatus() {
+            return refundStatus;
+        }
+    }
+
+    /**
+     * The changes reported to a tracker since the log was started, or since they were last taken from it. Each party
+     * that records changes, e.g. a journal, keeps a log of its own, so that taking the changes from one log leaves
+     * them in the others.
+     */
+    public static class ChangeLog {
+        private final ChangeTracker tracker;
+        private List<Object> changes;
+        private final Set<Object> changedEntities;
+
+        private ChangeLog(ChangeTracker tracker) {
+            this.tracker = tracker;
+            this.changes = new ArrayList<>();
+            this.changedEntities = Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+
+        private void entityChanged(Object entity) {
+            if (changedEntities.add(entity)) {
+                changes.add(entity);
+            }
+        }
+
+        private void userRenamed(User user, String oldEmail) {
+            if (changedEntities.remove(user)) {
+                changes.removeIf(change -> change == user);
+            }
+            changes.add(new UserRenamed(oldEmail, user.getEmail()));
+            changedEntities.add(user);
+            changes.add(user);
+        }
+
+        /**
+         * Take the changes logged so far, leaving none behind
+         *
+         * @return The changes in the order they were first made, or an empty list if there are none
+         */
+        public List<Object> takeChanges() {
+            synchronized (tracker) {
+                if (changes.isEmpty()) {
+                    return List.of();
+                }
+                List<Object> taken = changes;
+                changes = new ArrayList<>();
+                changedEntities.clear();
+                return taken;
+            }
+        }
+    }
+
+    // Logs only live as long as the parties that take changes from them, so they are not saved with the state
+    private transient List<ChangeLog> logs;
+
+    public ChangeTracker() {
+        logs = new CopyOnWriteArrayList<>();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        logs = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Start logging the changes reported from now on
+     *
+     * @return The log the changes are kept in, until it is stopped with {@link #stopLog}
+     */
+    public ChangeLog startLog() {
+        ChangeLog log = new ChangeLog(this);
+        logs.add(log);
+        return log;
+    }
+
+    /**
+     * Stop logging changes in a log, dropping the changes it still holds
+     *
+     * @param log log started with {@link #startLog()}
+     */
+    public void stopLog(ChangeLog log) {
+        logs.remove(log);
+    }
+
+    /**
+     * Report that an entity, i.e. an {@link Event}, {@link Booking} or {@link User}, was added or changed
+     *
+     * @param entity entity that changed
+     */
+    public void entityChanged(Object entity) {
+        if (!logs.isEmpty()) {
+            synchronized (this) {
+                for (ChangeLog log : logs) {
+                    log.entityChanged(entity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Report a change that is recorded as it is, e.g. a {@link Review} that was added, or a {@link TagCreated}
+     *
+     * @param record record of the change
+     */
+    public void recordChange(Object record) {
+        if (!logs.isEmpty()) {
+            synchronized (this) {
+                for (ChangeLog log : logs) {
+                    log.changes.add(record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Report that a user's email address changed. The user is moved after the rename, so that it is recorded under
+     * its new email address once the rename has been recorded.
+     *
+     * @param user     user whose email address changed
+     * @param oldEmail previous email address of the user
+     */
+    public void userRenamed(User user, String oldEmail) {
+        if (!logs.isEmpty()) {
+            synchronized (this) {
+                for (ChangeLog log : logs) {
+                    log.userRenamed(user, oldEmail);
+                }
+            }
+        }
+    }
+}
@@ -1,18 +1,25 @@
 package model;
 
-import java.util.LinkedList;
+import state.PersistentVector;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.RandomAccess;
 
 /**
  * {@link Consumer} represents a user of the application, who can browse {@link Event}s and book {@link Event}s.
  */
 public class Consumer extends User {
-    private final List<Booking> bookings;
-    private String name;
-    private String phoneNumber;
-    private String address;
-    private EventTagCollection preferences;
+    // Listings read the consumer without the command lock while it may be changed, so every field is volatile, and
+    // bookings are kept in a persistent vector that is replaced rather than modified when a booking is added
+    private volatile PersistentVector<Booking> bookings;
+    private volatile String name;
+    private volatile String phoneNumber;
+    private volatile String address;
+    private volatile EventTagCollection preferences;
 
     /**
      * Create a new Consumer with an empty list of bookings and default Covid-19 preferences
@@ -30,11 +37,51 @@ public class Consumer extends User {
         this.phoneNumber = phoneNumber;
         this.address = address;
         this.preferences = new EventTagCollection();
-        this.bookings = new LinkedList<>();
+        this.bookings = PersistentVector.empty();
+    }
+
+    private Consumer(String name, String email, String phoneNumber, String address, EventTagCollection preferences) {
+        super(email);
+        this.name = name;
+        this.phoneNumber = phoneNumber;
+        this.address = address;
+        this.preferences = preferences;
+        this.bookings = PersistentVector.empty();
     }
 
-    public void addBooking(Booking booking) {
-        bookings.add(booking);
+    /**
+     * Restore a Consumer from a saved app state, with an empty list of bookings
+     *
+     * @param name         full name of the Consumer
+     * @param email        email address of the Consumer
+     * @param phoneNumber  phone number of the Consumer
+     * @param address      address of the Consumer (optional)
+     * @param passwordHash hash of the Consumer's password, see {@link #getPasswordHash()}
+     * @param preferences  the Consumer's preferences
+     * @return The restored Consumer
+     */
+    public static Consumer restore(String name, String email, String phoneNumber, String address,
+                                   String passwordHash, EventTagCollection preferences) {
+        Consumer consumer = new Consumer(name, email, phoneNumber, address, preferences);
+        consumer.restorePasswordHash(passwordHash);
+        return consumer;
+    }
+
+    public synchronized void addBooking(Booking booking) {
+        bookings = bookings.plus(booking);
+    }
+
+    /**
+     * Add several bookings at once, e.g. when restoring a saved app state, publishing them all together
+     *
+     * @param bookings bookings to add, in order
+     */
+    public synchronized void addBookings(Collection<Booking> bookings) {
+        PersistentVector<Booking> newBookings = this.bookings;
+        for (Booking booking : bookings) {
+            newBookings = newBookings.plus(booking);
+        }
+        this.bookings = newBookings;
     }
 
     public String getName() {
@@ -45,6 +92,7 @@ public class Consumer extends User {
 
     public void setName(String newName) {
         this.name = newName;
+        changed();
     }
 
     public EventTagCollection getPreferences() {
@@ -53,14 +101,38 @@ public class Consumer extends User {
 
     public void setPreferences(EventTagCollection preferences) {
         this.preferences = preferences;
+        changed();
     }
 
     public void setAddress(String address) {
         this.address = address;
+        changed();
     }
 
+    /**
+     * @return A read-only view of the bookings made by this consumer, in the order they were added, which includes
+     * bookings added later. Iterating over it visits the bookings there were when the iteration started.
+     */
     public List<Booking> getBookings() {
-        return bookings;
+        return new BookingsView();
+    }
+
+    // Bookings are only ever added at the end, so an index below a size read earlier stays valid
+    private class BookingsView extends AbstractList<Booking> implements RandomAccess {
+        @Override
+        public Booking get(int index) {
+            return bookings.get(index);
+        }
+
+        @Override
+        public int size() {
+            return bookings.size();
+        }
+
+        @Override
+        public Iterator<Booking> iterator() {
+            return bookings.iterator();
+        }
     }
 
     /**
@@ -75,6 +147,7 @@ public class Consumer extends User {
 
     public void setPhoneNumber(String newPhoneNumber) {
         this.phoneNumber = newPhoneNumber;
+        changed();
     }
 
     public String getPhoneNumber(){
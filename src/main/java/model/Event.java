@@ -1,10 +1,17 @@
 package model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Iterator;
 import java.util.List;
-import java.util.ArrayList;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * {@link Event} represents an event that can be booked by {@link Consumer}s. Tickets can be free, but they are
@@ -23,7 +30,13 @@ public class Event implements Serializable {
     private final EventTagCollection tags;
     private final List<Review> reviews;
     private EventStatus status;
-    private int numTicketsLeft;
+    // Number of tickets left in the high 32 bits and number of reserved tickets in the low 32 bits, so that both are
+    // updated by a single compare-and-set
+    private final AtomicLong ticketInventory;
+    // Holds on reserved tickets, oldest first. They only live as long as the bookings in progress, so they are not saved
+    private transient Queue<TicketHold> holds;
+    // Tracker of the state this event was added to, if any, which changes to the event are reported to
+    private transient ChangeTracker changeTracker;
 
     /**
      * Create a new Event with status = {@link EventStatus#ACTIVE}
@@ -60,9 +73,46 @@ public class Event implements Serializable {
         this.startDateTime = startDateTime;
         this.endDateTime = endDateTime;
         this.tags = tags;
-        this.reviews = new ArrayList<Review>();
+        // Listings read reviews without the command lock, while reviews may be added
+        this.reviews = new CopyOnWriteArrayList<>();
         this.status = EventStatus.ACTIVE;
-        this.numTicketsLeft = numTicketsCap;
+        this.ticketInventory = new AtomicLong(inventory(numTicketsCap, 0));
+        this.holds = new ConcurrentLinkedQueue<>();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        holds = new ConcurrentLinkedQueue<>();
+        // The holds on any reserved tickets were not saved, so nobody could ever confirm or release them
+        int numTicketsReserved = getNumTicketsReserved();
+        if (numTicketsReserved > 0) {
+            releaseTickets(numTicketsReserved);
+        }
+    }
+
+    /**
+     * @param changeTracker tracker to report changes to this event to, e.g. of the state it was added to
+     */
+    public void setChangeTracker(ChangeTracker changeTracker) {
+        this.changeTracker = changeTracker;
+    }
+
+    private void changed() {
+        if (changeTracker != null) {
+            changeTracker.entityChanged(this);
+        }
+    }
+
+    private static long inventory(int numTicketsLeft, int numTicketsReserved) {
+        return ((long) numTicketsLeft << 32) | (numTicketsReserved & 0xFFFFFFFFL);
+    }
+
+    private static int ticketsLeft(long inventory) {
+        return (int) (inventory >> 32);
+    }
+
+    private static int ticketsReserved(long inventory) {
+        return (int) inventory;
     }
 
     /**
@@ -73,11 +123,126 @@ public class Event implements Serializable {
     }
 
     public int getNumTicketsLeft() {
-        return numTicketsLeft;
+        return ticketsLeft(ticketInventory.get());
     }
 
     public void setNumTicketsLeft(int numTicketsLeft) {
-        this.numTicketsLeft = numTicketsLeft;
+        long current;
+        do {
+            current = ticketInventory.get();
+        } while (!ticketInventory.compareAndSet(current, inventory(numTicketsLeft, ticketsReserved(current))));
+        changed();
+    }
+
+    /**
+     * @return Number of tickets taken out of the available tickets by {@link #reserveTickets(int)} that have not been
+     * committed or released yet
+     */
+    public int getNumTicketsReserved() {
+        return ticketsReserved(ticketInventory.get());
+    }
+
+    /**
+     * Atomically take tickets out of the available tickets, if there are enough of them left. The reservation must
+     * then be either committed with {@link #commitTickets(int)} once the booking is made, or released with
+     * {@link #releaseTickets(int)} if it is not.
+     *
+     * @param numTickets number of tickets to reserve
+     * @return True if the tickets were reserved, false if fewer than numTickets tickets are left
+     */
+    public boolean reserveTickets(int numTickets) {
+        long current;
+        do {
+            current = ticketInventory.get();
+            if (ticketsLeft(current) < numTickets) {
+                return false;
+            }
+        } while (!ticketInventory.compareAndSet(current,
+                inventory(ticketsLeft(current) - numTickets, ticketsReserved(current) + numTickets)));
+        return true;
+    }
+
+    /**
+     * Turn previously reserved tickets into booked tickets
+     *
+     * @param numTickets number of reserved tickets that have been booked
+     */
+    public void commitTickets(int numTickets) {
+        ticketInventory.addAndGet(-numTickets);
+        changed();
+    }
+
+    /**
+     * Give previously reserved tickets back to the available tickets
+     *
+     * @param numTickets number of reserved tickets that will not be booked
+     */
+    public void releaseTickets(int numTickets) {
+        ticketInventory.addAndGet(((long) numTickets << 32) - numTickets);
+    }
+
+    /**
+     * Reserve tickets for a booking in progress, to be confirmed or released through the returned {@link TicketHold}
+     * before the timeout runs out. Expired holds on this event are released first, so tickets of abandoned bookings
+     * become available again without anyone having to clean up after them.
+     *
+     * @param numTickets number of tickets to hold
+     * @param timeout    how long the hold lasts
+     * @return The hold if the tickets were reserved, or null if fewer than numTickets tickets are left
+     */
+    public TicketHold holdTickets(int numTickets, Duration timeout) {
+        LocalDateTime now = LocalDateTime.now();
+        releaseSettledAndExpiredOldestHolds(now);
+        if (!reserveTickets(numTickets)) {
+            // Holds with a longer timeout may sit in front of expired ones, so look through all of them
+            if (reclaimExpiredHolds() == 0 || !reserveTickets(numTickets)) {
+                return null;
+            }
+        }
+        TicketHold hold = new TicketHold(this, numTickets, now.plus(timeout));
+        holds.add(hold);
+        return hold;
+    }
+
+    private void releaseSettledAndExpiredOldestHolds(LocalDateTime now) {
+        for (TicketHold hold = holds.peek();
+             hold != null && (hold.isSettled() || hold.isExpired(now));
+             hold = holds.peek()) {
+            holds.remove(hold);
+            hold.release();
+        }
+    }
+
+    /**
+     * Release all the holds on this event that have expired without being confirmed
+     *
+     * @return Number of tickets given back to the available tickets
+     */
+    public int reclaimExpiredHolds() {
+        LocalDateTime now = LocalDateTime.now();
+        int numTicketsReclaimed = 0;
+        for (Iterator<TicketHold> it = holds.iterator(); it.hasNext(); ) {
+            TicketHold hold = it.next();
+            if (hold.isSettled()) {
+                it.remove();
+            } else if (hold.isExpired(now)) {
+                it.remove();
+                if (hold.release()) {
+                    numTicketsReclaimed += hold.getNumTickets();
+                }
+            }
+        }
+        return numTicketsReclaimed;
+    }
+
+    /**
+     * Give the tickets of a cancelled booking back to the available tickets
+     *
+     * @param numTickets number of booked tickets that were cancelled
+     */
+    public void returnTickets(int numTickets) {
+        ticketInventory.addAndGet(inventory(numTickets, 0));
+        changed();
     }
 
     public int getTicketPriceInPence() {
@@ -121,6 +286,7 @@ public class Event implements Serializable {
      */
     public void cancel() {
         this.status = EventStatus.CANCELLED;
+        changed();
     }
 
     /**
@@ -129,6 +295,9 @@ public class Event implements Serializable {
      */
     public void addReview(Review review) {
         this.reviews.add(review);
+        if (changeTracker != null) {
+            changeTracker.recordChange(review);
+        }
     }
 
     @Override
@@ -146,7 +315,7 @@ public class Event implements Serializable {
                 ", tags=" + tags +
                 ", reviews=" + reviews +
                 ", status=" + status +
-                ", numTicketsLeft=" + numTicketsLeft +
+                ", numTicketsLeft=" + getNumTicketsLeft() +
                 '}';
     }
 
@@ -155,11 +324,11 @@ public class Event implements Serializable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Event event = (Event) o;
-        return eventNumber == event.eventNumber && numTicketsCap == event.numTicketsCap && ticketPriceInPence == event.ticketPriceInPence && numTicketsLeft == event.numTicketsLeft && Objects.equals(title, event.title) && type == event.type && Objects.equals(venueAddress, event.venueAddress) && Objects.equals(description, event.description) && Objects.equals(startDateTime, event.startDateTime) && Objects.equals(endDateTime, event.endDateTime) && Objects.equals(tags.toString(), event.tags.toString()) && Objects.equals(reviews, event.reviews) && status == event.status;
+        return eventNumber == event.eventNumber && numTicketsCap == event.numTicketsCap && ticketPriceInPence == event.ticketPriceInPence && getNumTicketsLeft() == event.getNumTicketsLeft() && Objects.equals(title, event.title) && type == event.type && Objects.equals(venueAddress, event.venueAddress) && Objects.equals(description, event.description) && Objects.equals(startDateTime, event.startDateTime) && Objects.equals(endDateTime, event.endDateTime) && Objects.equals(tags, event.tags) && Objects.equals(reviews, event.reviews) && status == event.status;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(eventNumber, title, type, numTicketsCap, ticketPriceInPence, venueAddress, description, startDateTime, endDateTime, tags, reviews, status, numTicketsLeft);
+        return Objects.hash(eventNumber, title, type, numTicketsCap, ticketPriceInPence, venueAddress, description, startDateTime, endDateTime, tags, reviews, status, getNumTicketsLeft());
     }
 }
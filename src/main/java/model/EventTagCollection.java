@@ -1,21 +1,30 @@
 package model;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * {@link EventTagCollection} represents an {@link Event}'s set of tags using hashmaps.
+ * Collections interned by an {@link EventTagDictionary} store their tags as an array of value codes instead, and are
+ * shared by all the events with the same tags.
  */
 public class EventTagCollection implements Serializable {
+    // Null for compact collections, which keep their tags in dictionary and valueCodes instead
     private final Map<String,String> tags;
+    private final EventTagDictionary dictionary;
+    private final int[] valueCodes;
+    private transient int hash;
 
     /**
      * Initializing an empty collection of event tags
      */
     public EventTagCollection(){
         tags = new HashMap<>();
+        dictionary = null;
+        valueCodes = null;
     }
 
     /**
@@ -30,16 +39,75 @@ public class EventTagCollection implements Serializable {
             String[] keyValue = pair.split("=");
             tags.put(keyValue[0], keyValue[1]);
         }
+        dictionary = null;
+        valueCodes = null;
     }
+
+    /**
+     * Create a new collection of event tags with the given values
+     *
+     * @param tags value of each tag, by tag name
+     */
+    public EventTagCollection(Map<String, String> tags) {
+        this.tags = new HashMap<>(tags);
+        dictionary = null;
+        valueCodes = null;
+    }
+
+    /**
+     * Create a compact collection of event tags, see {@link EventTagDictionary#intern(EventTagCollection)}
+     *
+     * @param dictionary dictionary the value codes refer to
+     * @param valueCodes code of the value of each tag in the dictionary, or 0 for tags that are not set
+     */
+    EventTagCollection(EventTagDictionary dictionary, int[] valueCodes) {
+        this.tags = null;
+        this.dictionary = dictionary;
+        this.valueCodes = valueCodes;
+    }
+
     public String getValueFor(String name) {
+        if (tags == null) {
+            return dictionary.valueFor(valueCodes, name);
+        }
         return tags.get(name);
 }
-    public Set<String> getTagNames() { return tags.keySet();}
+    public Set<String> getTagNames() { return tags == null ? dictionary.tagNamesFor(valueCodes) : tags.keySet();}
+
+    private Map<String, String> toMap() {
+        if (tags != null) {
+            return tags;
+        }
+        Map<String, String> decoded = new HashMap<>();
+        for (String name : getTagNames()) {
+            decoded.put(name, getValueFor(name));
+        }
+        return decoded;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof EventTagCollection)) return false;
+        EventTagCollection other = (EventTagCollection) o;
+        if (tags == null && other.tags == null && dictionary == other.dictionary) {
+            return Arrays.equals(valueCodes, other.valueCodes);
+        }
+        return toMap().equals(other.toMap());
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash == 0) {
+            hash = toMap().hashCode();
+        }
+        return hash;
+    }
 
     @Override
     public String toString() {
         return "EventTagCollection{" +
-                "tags=" + tags +
+                "tags=" + toMap() +
                 '}';
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+package model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link EventTagDictionary} dictionary-encodes {@link EventTagCollection}s. Every tag name and every value of a tag
+ * gets a small ordinal, so that a collection can be stored as an array with one code per tag, and identical
+ * collections are interned, so that all the {@link Event}s with the same tags share a single collection.
+ * <p>
+ * Ordinals are only ever added, never changed or removed, so a dictionary can be shared by several app states.
+ * Adding to it is synchronized, as the states sharing it may be changed by different threads, while looking up tags
+ * and values takes no lock, so that read snapshots of the states can be used from any thread. The lists and maps
+ * read by lookups are therefore concurrent ones, and every ordinal is added to its list before it is put in the map
+ * it is looked up in, so that a lookup finding an ordinal also finds what it stands for.
+ */
+public class EventTagDictionary implements Serializable {
+    private final List<String> tagNames;
+    private final Map<String, Integer> tagOrdinals;
+    private final List<List<String>> tagValues;
+    private final List<Map<String, Integer>> tagValueOrdinals;
+    private final List<EventTagCollection> collections;
+    // Rebuilt from the list of collections on first use after loading, since hashing a collection needs the rest of
+    // the dictionary, which may not have been read in yet while the map itself is read
+    private transient Map<EventTagCollection, EventTagCollection> internedCollections;
+
+    /**
+     * Create a new empty dictionary
+     */
+    public EventTagDictionary() {
+        tagNames = new CopyOnWriteArrayList<>();
+        tagOrdinals = new ConcurrentHashMap<>();
+        tagValues = new CopyOnWriteArrayList<>();
+        tagValueOrdinals = new CopyOnWriteArrayList<>();
+        collections = new ArrayList<>();
+    }
+
+    /**
+     * Assign ordinals to a tag and its possible values, unless they already have one
+     *
+     * @param tagName name of the tag
+     * @param values  possible values of the tag
+     */
+    public synchronized void addTag(String tagName, Collection<String> values) {
+        int tagOrdinal = tagOrdinal(tagName);
+        for (String value : values) {
+            valueCode(tagOrdinal, value);
+        }
+    }
+
+    private int tagOrdinal(String tagName) {
+        Integer tagOrdinal = tagOrdinals.get(tagName);
+        if (tagOrdinal == null) {
+            tagOrdinal = tagNames.size();
+            tagNames.add(tagName);
+            tagValues.add(new CopyOnWriteArrayList<>());
+            tagValueOrdinals.add(new ConcurrentHashMap<>());
+            tagOrdinals.put(tagName, tagOrdinal);
+        }
+        return tagOrdinal;
+    }
+
+    // Codes are value ordinals plus one, so that 0 can mean that the tag is not set
+    private int valueCode(int tagOrdinal, String value) {
+        Map<String, Integer> valueOrdinals = tagValueOrdinals.get(tagOrdinal);
+        Integer valueOrdinal = valueOrdinals.get(value);
+        if (valueOrdinal == null) {
+            List<String> values = tagValues.get(tagOrdinal);
+            valueOrdinal = values.size();
+            values.add(value);
+            valueOrdinals.put(value, valueOrdinal);
+        }
+        return valueOrdinal + 1;
+    }
+
+    /**
+     * @param tags collection of tags to encode
+     * @return A compact collection with the same tags, which is the same instance for all collections with equal tags
+     * interned by this dictionary
+     */
+    public synchronized EventTagCollection intern(EventTagCollection tags) {
+        if (internedCollections == null) {
+            internedCollections = new HashMap<>();
+            for (EventTagCollection collection : collections) {
+                internedCollections.put(collection, collection);
+            }
+        }
+
+        int[] valueCodes = new int[0];
+        for (String tagName : tags.getTagNames()) {
+            int tagOrdinal = tagOrdinal(tagName);
+            if (tagOrdinal >= valueCodes.length) {
+                valueCodes = Arrays.copyOf(valueCodes, tagOrdinal + 1);
+            }
+            valueCodes[tagOrdinal] = valueCode(tagOrdinal, tags.getValueFor(tagName));
+        }
+
+        EventTagCollection compact = new EventTagCollection(this, valueCodes);
+        EventTagCollection interned = internedCollections.putIfAbsent(compact, compact);
+        if (interned != null) {
+            return interned;
+        }
+        collections.add(compact);
+        return compact;
+    }
+
+    /**
+     * @param valueCodes codes of a compact collection
+     * @param tagName    name of the tag to look up
+     * @return The value of the tag in the collection if it is set, and null otherwise
+     */
+    String valueFor(int[] valueCodes, String tagName) {
+        Integer tagOrdinal = tagOrdinals.get(tagName);
+        if (tagOrdinal == null || tagOrdinal >= valueCodes.length || valueCodes[tagOrdinal] == 0) {
+            return null;
+        }
+        return tagValues.get(tagOrdinal).get(valueCodes[tagOrdinal] - 1);
+    }
+
+    /**
+     * @param valueCodes codes of a compact collection
+     * @return Names of the tags set in the collection
+     */
+    Set<String> tagNamesFor(int[] valueCodes) {
+        Set<String> names = new HashSet<>();
+        for (int tagOrdinal = 0; tagOrdinal < valueCodes.length; tagOrdinal++) {
+            if (valueCodes[tagOrdinal] != 0) {
+                names.add(tagNames.get(tagOrdinal));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return Number of distinct collections interned by this dictionary
+     */
+    public synchronized int size() {
+        return collections.size();
+    }
+}
@@ -0,0 +1,10 @@
+package model;
+
+/**
+ * Progress of refunding a {@link Booking} that was cancelled by the provider, see {@link Booking#getRefundStatus()}
+ */
+public enum RefundStatus {
+    Pending,
+    Refunded,
+    Failed,
+}
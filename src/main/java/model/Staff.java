@@ -16,6 +16,23 @@ public class Staff extends User {
         super(email, password);
     }
 
+    private Staff(String email) {
+        super(email);
+    }
+
+    /**
+     * Restore a Staff member from a saved app state
+     *
+     * @param email        email address of the staff member
+     * @param passwordHash hash of the account password, see {@link #getPasswordHash()}
+     * @return The restored Staff member
+     */
+    public static Staff restore(String email, String passwordHash) {
+        Staff staff = new Staff(email);
+        staff.restorePasswordHash(passwordHash);
+        return staff;
+    }
+
     @Override
     public String toString() {
         return "Staff";
@@ -0,0 +1,87 @@
+package model;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link TicketHold} represents tickets of an {@link Event} set aside for a booking that is not complete yet, e.g.
+ * while its payment is being processed. A hold is settled exactly once: either it is confirmed, making the tickets
+ * part of a booking, or it is released, giving the tickets back to the event. Holds that are not settled before they
+ * expire are released by the event the next time it hands out tickets, see {@link Event#holdTickets}.
+ */
+public class TicketHold {
+    private final Event event;
+    private final int numTickets;
+    private final LocalDateTime expiryDateTime;
+    private final AtomicBoolean settled;
+
+    /**
+     * @param event          event whose tickets are held, which must already have reserved them
+     * @param numTickets     number of tickets held
+     * @param expiryDateTime date and time after which the hold can no longer be confirmed
+     */
+    TicketHold(Event event, int numTickets, LocalDateTime expiryDateTime) {
+        this.event = event;
+        this.numTickets = numTickets;
+        this.expiryDateTime = expiryDateTime;
+        this.settled = new AtomicBoolean(false);
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public int getNumTickets() {
+        return numTickets;
+    }
+
+    public LocalDateTime getExpiryDateTime() {
+        return expiryDateTime;
+    }
+
+    /**
+     * @return True if the hold has been confirmed or released
+     */
+    public boolean isSettled() {
+        return settled.get();
+    }
+
+    /**
+     * @param now current date and time
+     * @return True if the hold was not settled in time
+     */
+    boolean isExpired(LocalDateTime now) {
+        return now.isAfter(expiryDateTime);
+    }
+
+    /**
+     * Turn the held tickets into booked tickets, if the hold has neither expired nor been released. An expired hold is
+     * released instead.
+     *
+     * @return True if the tickets are now booked, false if they went back to the event
+     */
+    public boolean confirm() {
+        if (isExpired(LocalDateTime.now())) {
+            release();
+            return false;
+        }
+        if (!settled.compareAndSet(false, true)) {
+            return false;
+        }
+        event.commitTickets(numTickets);
+        return true;
+    }
+
+    /**
+     * Give the held tickets back to the event, unless the hold has already been settled
+     *
+     * @return True if the tickets were given back by this call
+     */
+    public boolean release() {
+        if (!settled.compareAndSet(false, true)) {
+            return false;
+        }
+        event.releaseTickets(numTickets);
+        return true;
+    }
+}
@@ -11,6 +11,8 @@ import java.io.Serializable;
 public abstract class User implements Serializable {
     protected String email;
     private String passwordHash;
+    // Tracker of the state this user was added to, if any, which changes to the user are reported to
+    private transient ChangeTracker changeTracker;
 
     /**
      * Create a new User and save the user email and payment account email, but do not save the password in plaintext!
@@ -29,12 +31,26 @@ public abstract class User implements Serializable {
         this.passwordHash = BCrypt.withDefaults().hashToString(12, password.toCharArray());
     }
 
+    /**
+     * Create a User without a password hash, which must be set with {@link #restorePasswordHash(String)}. Used to
+     * restore users from a saved app state without hashing their passwords again, as hashing is deliberately slow.
+     *
+     * @param email user email address
+     */
+    User(String email) {
+        this.email = email;
+    }
+
     public String getEmail() {
         return email;
     }
 
     public void setEmail(String newEmail) {
+        String oldEmail = email;
         this.email = newEmail;
+        if (changeTracker != null) {
+            changeTracker.userRenamed(this, oldEmail);
+        }
     }
 
     /**
@@ -48,6 +64,21 @@ public abstract class User implements Serializable {
         return BCrypt.verifyer().verify(password.toCharArray(), passwordHash).verified;
     }
 
+    /**
+     * @return The BCrypt hash of the user password, which is all that is needed to save and restore the user
+     */
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    /**
+     * @param passwordHash hash of the user password, as returned by {@link #getPasswordHash()}
+     */
+    public void restorePasswordHash(String passwordHash) {
+        this.passwordHash = passwordHash;
+        changed();
+    }
+
     /**
      * Update the stored password hash to a new one, corresponding to the specified password.
      * You can use {@code passwordHash = BCrypt.withDefaults().hashToString(12, newPassword.toCharArray());}
@@ -56,6 +87,23 @@ public abstract class User implements Serializable {
      */
     public void updatePassword(String newPassword) {
         this.passwordHash = BCrypt.withDefaults().hashToString(12, newPassword.toCharArray());
+        changed();
+    }
+
+    /**
+     * @param changeTracker tracker to report changes to this user to, e.g. of the state it was added to
+     */
+    public void setChangeTracker(ChangeTracker changeTracker) {
+        this.changeTracker = changeTracker;
+    }
+
+    /**
+     * Report a change to this user to its change tracker, if it has one
+     */
+    protected void changed() {
+        if (changeTracker != null) {
+            changeTracker.entityChanged(this);
+        }
     }
 
     @Override
@@ -1,67 +1,97 @@
 package state;
 
 import model.Booking;
+import model.BookingStatus;
+import model.ChangeTracker;
 import model.Consumer;
 import model.Event;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * {@link BookingState} is a concrete implementation of {@link IBookingState}.
+ * All bookings and indexes are kept in persistent data structures, which are replaced rather than modified on every
+ * change, so a copy of a BookingState shares them with the original and takes constant time to make.
  */
 public class BookingState implements IBookingState, Serializable {
-    private final List<Booking> bookings;
-    private long nextBookingNumber;
+    private PersistentVector<Booking> bookings;
+    // Indexed by the bits of the booking number, so numbers handed out as 1, 2, 3... fill it like an array
+    private PersistentLongMap<Booking> bookingsByNumber;
+    // Posting lists: for each event number, the bookings made for that event in the order they were added
+    private PersistentLongMap<PersistentVector<Booking>> bookingsByEventNumber;
+    private final IdSequence bookingNumbers;
+    private final ChangeTracker changeTracker;
 
     /**
      * Create a new BookingState that keeps track of the next booking number it will generate (starting from 1 and
-     * incrementing by 1 each time a new booking number is needed), and an empty list of bookings
+     * incrementing by 1 each time a new booking number is needed), and an empty list of bookings. Bookings created
+     * from several threads at once get their numbers from per-thread blocks (see {@link IdSequence}), so their numbers
+     * are unique but may interleave and leave gaps.
      */
     public BookingState() {
-        nextBookingNumber = 1;
-        bookings = new LinkedList<>();
+        bookingNumbers = new IdSequence();
+        bookings = PersistentVector.empty();
+        bookingsByNumber = PersistentLongMap.empty();
+        bookingsByEventNumber = PersistentLongMap.empty();
+        changeTracker = new ChangeTracker();
     }
 
     /**
-     * Copy constructor to make a deep copy of another BookingState instance
+     * Copy constructor to make a copy of another BookingState instance. The copy shares its persistent data
+     * structures with the other instance, so it takes constant time, and the two instances can be changed
+     * independently afterwards.
      *
      * @param other instance to copy
      */
     public BookingState(IBookingState other) {
         BookingState otherImpl = (BookingState) other;
-        nextBookingNumber = otherImpl.nextBookingNumber;
-        bookings = new LinkedList<>(otherImpl.bookings);
+        bookingNumbers = new IdSequence(otherImpl.bookingNumbers);
+        bookings = otherImpl.bookings;
+        bookingsByNumber = otherImpl.bookingsByNumber;
+        bookingsByEventNumber = otherImpl.bookingsByEventNumber;
+        // Changes to the copy are not changes to the other instance, so they are tracked separately
+        changeTracker = new ChangeTracker();
+    }
+
+    private void indexBooking(Booking booking) {
+        bookings = bookings.plus(booking);
+
+        // Bookings merged in from another app state may reuse a booking number, in which case lookups keep
+        // returning the booking that was added first
+        if (!bookingsByNumber.containsKey(booking.getBookingNumber())) {
+            bookingsByNumber = bookingsByNumber.plus(booking.getBookingNumber(), booking);
+        }
+
+        long eventNumber = booking.getEvent().getEventNumber();
+        PersistentVector<Booking> eventBookings =
+                bookingsByEventNumber.getOrDefault(eventNumber, PersistentVector.empty());
+        bookingsByEventNumber = bookingsByEventNumber.plus(eventNumber, eventBookings.plus(booking));
+        booking.setChangeTracker(changeTracker);
+        changeTracker.entityChanged(booking);
     }
 
     @Override
     public Booking findBookingByNumber(long bookingNumber) {
-        return bookings.stream()
-                .filter(booking -> booking.getBookingNumber() == bookingNumber)
-                .findFirst()
-                .orElse(null);
+        return bookingsByNumber.get(bookingNumber);
     }
 
     @Override
     public List<Booking> findBookingsByEventNumber(long eventNumber) {
-        return bookings.stream()
-                .filter(booking -> booking.getEvent().getEventNumber() == eventNumber)
-                .collect(Collectors.toList());
+        return new ArrayList<>(bookingsByEventNumber.getOrDefault(eventNumber, PersistentVector.empty()));
     }
 
     @Override
     public Booking createBooking(Consumer booker, Event event, int numTickets) {
-        long bookingNumber = nextBookingNumber;
-        nextBookingNumber++;
+        long bookingNumber = bookingNumbers.next();
         Booking booking = new Booking(bookingNumber,
                 booker,
                 event,
                 numTickets,
                 LocalDateTime.now());
-        bookings.add(booking);
+        indexBooking(booking);
         return booking;
     }
 
@@ -72,6 +102,42 @@ public class BookingState implements IBookingState, Serializable {
 
     @Override
     public void addBooking(Booking booking) {
-        this.bookings.add(booking);
+        indexBooking(booking);
+    }
+
+    @Override
+    public Booking importBooking(Booking booking, Consumer booker, Event event) {
+        Booking copy = new Booking(bookingNumbers.next(),
+                booker,
+                event,
+                booking.getNumTickets(),
+                booking.getBookingDateTime());
+        if (booking.getStatus() == BookingStatus.CancelledByConsumer) {
+            copy.cancelByConsumer();
+        } else if (booking.getStatus() == BookingStatus.CancelledByProvider) {
+            copy.cancelByProvider();
+        }
+        indexBooking(copy);
+        // Set once the copy is tracked, so that the refund status is recorded after the booking itself
+        if (booking.getRefundStatus() != null) {
+            copy.setRefundStatus(booking.getRefundStatus());
+        }
+        return copy;
+    }
+
+    /**
+     * Add a booking restored from a saved app state. Unlike {@link #addBooking(Booking)}, bookings created afterwards
+     * get greater numbers than the restored one.
+     *
+     * @param booking booking to restore
+     */
+    public void restoreBooking(Booking booking) {
+        bookingNumbers.advancePast(booking.getBookingNumber());
+        indexBooking(booking);
+    }
+
+    @Override
+    public ChangeTracker getChangeTracker() {
+        return changeTracker;
     }
 }
@@ -0,0 +1,110 @@
+package state;
+
+import model.Event;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * {@link EventDateIndex} is a calendar-bucket index over {@link Event} dates, used by {@link EventState} to answer
+ * date-filtered listings without looking at every event. Events are referred to by their ordinal, i.e. their
+ * position in the list of all events.
+ * <p>
+ * Each event is put in the bucket of its first day (the earlier of its start and end dates), and the index keeps
+ * the number of days spanned by its longest event. An event matches a search date if it starts on that date, or if
+ * it starts or ends after it. The events whose first day is after the search date all match, so their buckets are
+ * taken as a whole. Of the events whose first day is on or before the search date, only those in the buckets at most
+ * the longest span before it can still be going on, so only those buckets are looked at one event at a time, and
+ * the buckets of events that are over by the search date are never visited.
+ * <p>
+ * The index is immutable: adding an event returns a new index sharing all other buckets with this one.
+ */
+class EventDateIndex implements Serializable {
+    private final PersistentSortedMap<LocalDate, Bucket> bucketsByFirstDay;
+    // Greatest number of days between the first and last day of an indexed event
+    private final long maxSpanDays;
+
+    /**
+     * Create a new empty index
+     */
+    EventDateIndex() {
+        this(PersistentSortedMap.empty(), 0);
+    }
+
+    private EventDateIndex(PersistentSortedMap<LocalDate, Bucket> bucketsByFirstDay, long maxSpanDays) {
+        this.bucketsByFirstDay = bucketsByFirstDay;
+        this.maxSpanDays = maxSpanDays;
+    }
+
+    // Events of a bucket as parallel arrays, which are copied rather than changed when an event is added, as only a
+    // few events share a first day
+    private static class Bucket implements Serializable {
+        private static final Bucket EMPTY = new Bucket(new int[0], new long[0], new long[0]);
+
+        private final int[] ordinals;
+        private final long[] startDays;
+        private final long[] lastDays;
+
+        private Bucket(int[] ordinals, long[] startDays, long[] lastDays) {
+            this.ordinals = ordinals;
+            this.startDays = startDays;
+            this.lastDays = lastDays;
+        }
+
+        private Bucket plus(int ordinal, long startDay, long lastDay) {
+            int size = ordinals.length;
+            int[] newOrdinals = Arrays.copyOf(ordinals, size + 1);
+            long[] newStartDays = Arrays.copyOf(startDays, size + 1);
+            long[] newLastDays = Arrays.copyOf(lastDays, size + 1);
+            newOrdinals[size] = ordinal;
+            newStartDays[size] = startDay;
+            newLastDays[size] = lastDay;
+            return new Bucket(newOrdinals, newStartDays, newLastDays);
+        }
+    }
+
+    /**
+     * @param ordinal position of the event in the list of all events
+     * @param event   event to add
+     * @return A new index with the events of this one and the given event
+     */
+    EventDateIndex plus(int ordinal, Event event) {
+        LocalDate startDate = event.getStartDateTime().toLocalDate();
+        LocalDate endDate = event.getEndDateTime().toLocalDate();
+        LocalDate firstDay = startDate.isAfter(endDate) ? endDate : startDate;
+        LocalDate lastDay = startDate.isAfter(endDate) ? startDate : endDate;
+        Bucket bucket = bucketsByFirstDay.get(firstDay);
+        if (bucket == null) {
+            bucket = Bucket.EMPTY;
+        }
+        long spanDays = lastDay.toEpochDay() - firstDay.toEpochDay();
+        return new EventDateIndex(
+                bucketsByFirstDay.plus(firstDay, bucket.plus(ordinal, startDate.toEpochDay(), lastDay.toEpochDay())),
+                Math.max(maxSpanDays, spanDays));
+    }
+
+    /**
+     * @param searchDate date to look up events for
+     * @return Ordinals of the events that start on searchDate, or start or end after it
+     */
+    BitSet findOrdinals(LocalDate searchDate) {
+        BitSet result = new BitSet();
+        long searchDay = searchDate.toEpochDay();
+        LocalDate earliestFirstDay = LocalDate.ofEpochDay(Math.max(searchDay - maxSpanDays, LocalDate.MIN.toEpochDay()));
+        bucketsByFirstDay.forEachValueBetween(earliestFirstDay, searchDate, bucket -> {
+            for (int i = 0; i < bucket.ordinals.length; i++) {
+                if (bucket.startDays[i] == searchDay || bucket.lastDays[i] > searchDay) {
+                    result.set(bucket.ordinals[i]);
+                }
+            }
+        });
+        bucketsByFirstDay.forEachValueAfter(searchDate, bucket -> {
+            for (int ordinal : bucket.ordinals) {
+                result.set(ordinal);
+            }
+        });
+        return result;
+    }
+}
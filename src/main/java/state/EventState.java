@@ -1,31 +1,58 @@
 package state;
 
+import model.ChangeTracker;
 import model.Event;
 import model.EventTag;
+import model.EventStatus;
 import model.EventTagCollection;
+import model.EventTagDictionary;
 import model.EventType;
+import model.Review;
 
 import java.io.Serializable;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
 
 
 /**
  * {@link EventState} is a concrete implementation of {@link IEventState}.
+ * All events and indexes are kept in persistent data structures, which are replaced rather than modified on every
+ * change, so a copy of an EventState shares them with the original and takes constant time to make.
  */
 public class EventState implements IEventState, Serializable {
-    private final List<Event> events;
-    private long nextEventNumber;
-    private final Map<String, EventTag> possibleTags ;
+    private PersistentVector<Event> events;
+    private PersistentHashMap<EventStatus, PersistentBitSet> ordinalsByStatus;
+    private EventDateIndex eventsByDate;
+    private EventTagIndex eventsByTag;
+    private PersistentHashMap<TitleAndTime, PersistentVector<Event>> eventsByTitleAndTime;
+    private PersistentHashMap<String, PersistentVector<Event>> eventsByTitle;
+    // Ordinals of the events whose number is not their ordinal plus one, see indexEvent
+    private PersistentLongMap<Integer> misplacedOrdinals;
+    private final IdSequence eventNumbers;
+    private final ChangeTracker changeTracker;
+    private PersistentHashMap<String, EventTag> possibleTags;
+    // Append-only, so it is shared rather than copied by the copy constructor
+    private final EventTagDictionary tagDictionary;
 
     /**
      * Create a new EventState with an empty list of events, which keeps track of the next event and performance numbers
-     * it will generate, starting from 1 and incrementing by 1 each time when requested
+     * it will generate, starting from 1 and incrementing by 1 each time when requested. Events created from several
+     * threads at once get their numbers from per-thread blocks (see {@link IdSequence}), so their numbers are unique
+     * but may interleave and leave gaps.
      */
     public EventState() {
-        events = new LinkedList<>();
-        nextEventNumber = 1;
-        possibleTags = new HashMap<String, EventTag>();
+        events = PersistentVector.empty();
+        ordinalsByStatus = PersistentHashMap.empty();
+        eventsByDate = new EventDateIndex();
+        eventsByTag = new EventTagIndex();
+        eventsByTitleAndTime = PersistentHashMap.empty();
+        eventsByTitle = PersistentHashMap.empty();
+        misplacedOrdinals = PersistentLongMap.empty();
+        eventNumbers = new IdSequence();
+        changeTracker = new ChangeTracker();
+        possibleTags = PersistentHashMap.empty();
+        tagDictionary = new EventTagDictionary();
         Set<String> trueFalseSet = new HashSet<String>() ;
         trueFalseSet.add("true");
         trueFalseSet.add("false");
@@ -42,16 +69,85 @@ public class EventState implements IEventState, Serializable {
     }
 
     /**
-     * Copy constructor to make a deep copy of another EventState instance
+     * Copy constructor to make a copy of another EventState instance. The copy shares its persistent data structures
+     * with the other instance, so it takes constant time, and the two instances can be changed independently
+     * afterwards.
      *
      * @param other instance to copy
      */
     public EventState(IEventState other) {
         EventState otherImpl = (EventState) other;
-        events = new LinkedList<>(otherImpl.events);
-        nextEventNumber = otherImpl.nextEventNumber;
-        possibleTags = new HashMap<String, EventTag>(otherImpl.possibleTags);
+        events = otherImpl.events;
+        ordinalsByStatus = otherImpl.ordinalsByStatus;
+        eventsByDate = otherImpl.eventsByDate;
+        eventsByTag = otherImpl.eventsByTag;
+        eventsByTitleAndTime = otherImpl.eventsByTitleAndTime;
+        eventsByTitle = otherImpl.eventsByTitle;
+        misplacedOrdinals = otherImpl.misplacedOrdinals;
+        eventNumbers = new IdSequence(otherImpl.eventNumbers);
+        // Changes to the copy are not changes to the other instance, so they are tracked separately
+        changeTracker = new ChangeTracker();
+        possibleTags = otherImpl.possibleTags;
+        tagDictionary = otherImpl.tagDictionary;
+    }
+
+    /**
+     * Key of the composite index used to detect events clashing by title, start and end.
+     */
+    private static class TitleAndTime implements Serializable {
+        private final String title;
+        private final LocalDateTime startDateTime;
+        private final LocalDateTime endDateTime;
+
+        private TitleAndTime(String title, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+            this.title = title;
+            this.startDateTime = startDateTime;
+            this.endDateTime = endDateTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TitleAndTime)) return false;
+            TitleAndTime other = (TitleAndTime) o;
+            return Objects.equals(title, other.title) && Objects.equals(startDateTime, other.startDateTime)
+                    && Objects.equals(endDateTime, other.endDateTime);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(title, startDateTime, endDateTime);
+        }
+    }
+
+    // Events are never removed, so an event's ordinal is its position in the list of all events. Events created by a
+    // single thread are numbered 1, 2, 3..., so an event's ordinal is usually its number minus one. The few events
+    // for which this does not hold, because they got their numbers from several threads' blocks, are looked up in
+    // misplacedOrdinals instead
+    private void indexEvent(Event event) {
+        int ordinal = events.size();
+        events = events.plus(event);
+        if (event.getEventNumber() != ordinal + 1) {
+            misplacedOrdinals = misplacedOrdinals.plus(event.getEventNumber(), ordinal);
+        }
+        setStatusOrdinal(event.getStatus(), ordinal);
+        eventsByDate = eventsByDate.plus(ordinal, event);
+        eventsByTag = eventsByTag.plus(ordinal, event.getTags());
+        eventsByTitleAndTime = withEvent(eventsByTitleAndTime,
+                new TitleAndTime(event.getTitle(), event.getStartDateTime(), event.getEndDateTime()), event);
+        eventsByTitle = withEvent(eventsByTitle, event.getTitle(), event);
+        event.setChangeTracker(changeTracker);
+        changeTracker.entityChanged(event);
+    }
+
+    private static <K> PersistentHashMap<K, PersistentVector<Event>> withEvent(
+            PersistentHashMap<K, PersistentVector<Event>> eventLists, K key, Event event) {
+        return eventLists.plus(key, eventLists.getOrDefault(key, PersistentVector.empty()).plus(event));
+    }
 
+    private void setStatusOrdinal(EventStatus status, int ordinal) {
+        PersistentBitSet ordinals = ordinalsByStatus.getOrDefault(status, PersistentBitSet.empty());
+        ordinalsByStatus = ordinalsByStatus.plus(status, ordinals.set(ordinal));
     }
 
     @Override
@@ -61,10 +157,98 @@ public class EventState implements IEventState, Serializable {
 
     @Override
     public Event findEventByNumber(long eventNumber) {
-        return events.stream()
-                .filter(event -> event.getEventNumber() == eventNumber)
-                .findFirst()
-                .orElse(null);
+        int ordinal = ordinalOf(eventNumber);
+        return ordinal < 0 ? null : events.get(ordinal);
+    }
+
+    private int ordinalOf(long eventNumber) {
+        if (eventNumber >= 1 && eventNumber <= events.size()
+                && events.get((int) (eventNumber - 1)).getEventNumber() == eventNumber) {
+            return (int) (eventNumber - 1);
+        }
+        return misplacedOrdinals.getOrDefault(eventNumber, -1);
+    }
+
+    @Override
+    public List<Event> findEventsByDate(LocalDate searchDate) {
+        return findEvents(searchDate, null, null);
+    }
+
+    @Override
+    public List<Event> findEvents(LocalDate searchDate, EventTagCollection preferences, EventStatus status) {
+        BitSet ordinals;
+        if (status != null) {
+            // Start from the status partition, so that e.g. active-only listings never visit cancelled events
+            ordinals = ordinalsByStatus.getOrDefault(status, PersistentBitSet.empty()).toBitSet();
+            if (status == EventStatus.CANCELLED) {
+                // Events are shared with copies of this state, which may have cancelled an event that this state's
+                // partitions still have as active, so those are candidates too, see eventsForOrdinals
+                ordinals.or(ordinalsByStatus.getOrDefault(EventStatus.ACTIVE, PersistentBitSet.empty()).toBitSet());
+            }
+            if (searchDate != null && !ordinals.isEmpty()) {
+                ordinals.and(eventsByDate.findOrdinals(searchDate));
+            }
+        } else if (searchDate != null) {
+            ordinals = eventsByDate.findOrdinals(searchDate);
+        } else {
+            ordinals = new BitSet(events.size());
+            ordinals.set(0, events.size());
+        }
+        if (preferences != null && !ordinals.isEmpty()) {
+            ordinals.and(eventsByTag.findOrdinals(preferences, possibleTags, events.size()));
+        }
+        return eventsForOrdinals(ordinals, status);
+    }
+
+    @Override
+    public List<Event> findEventsByTitleAndTime(String title, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        return new ArrayList<>(eventsByTitleAndTime.getOrDefault(
+                new TitleAndTime(title, startDateTime, endDateTime), PersistentVector.empty()));
+    }
+
+    @Override
+    public List<Event> findEventsByTitle(String title) {
+        return new ArrayList<>(eventsByTitle.getOrDefault(title, PersistentVector.empty()));
+    }
+
+    @Override
+    public List<Review> findReviewsByEventTitle(String title) {
+        return new TitleReviewsView(this, title);
+    }
+
+    /**
+     * @param title title of the events to look up
+     * @return Events with exactly this title, as currently indexed
+     */
+    List<Event> eventsWithTitle(String title) {
+        return eventsByTitle.getOrDefault(title, PersistentVector.empty());
+    }
+
+    @Override
+    public void cancelEvent(Event event) {
+        if (findEventByNumber(event.getEventNumber()) != event) {
+            throw new IllegalArgumentException("Event " + event.getEventNumber() + " is not part of this event state");
+        }
+        int ordinal = ordinalOf(event.getEventNumber());
+        // The event is still in this state's active partition if it was cancelled through a copy of this state
+        PersistentBitSet activeOrdinals = ordinalsByStatus.getOrDefault(EventStatus.ACTIVE, PersistentBitSet.empty());
+        ordinalsByStatus = ordinalsByStatus.plus(EventStatus.ACTIVE, activeOrdinals.clear(ordinal));
+        event.cancel();
+        setStatusOrdinal(EventStatus.CANCELLED, ordinal);
+    }
+
+    // The status partitions only narrow down the candidates: the events are shared with copies of this state, e.g. the
+    // published read snapshot, and cancelling an event through one of them changes its status without moving it
+    // between the partitions of the others, so the event's own status decides
+    private List<Event> eventsForOrdinals(BitSet ordinals, EventStatus status) {
+        List<Event> result = new ArrayList<>(ordinals.cardinality());
+        for (int ordinal = ordinals.nextSetBit(0); ordinal >= 0; ordinal = ordinals.nextSetBit(ordinal + 1)) {
+            Event event = events.get(ordinal);
+            if (status == null || event.getStatus() == status) {
+                result.add(event);
+            }
+        }
+        return result;
     }
 
     @Override
@@ -77,18 +261,53 @@ public class EventState implements IEventState, Serializable {
                              LocalDateTime startDateTime,
                              LocalDateTime endDateTime,
                              EventTagCollection tags) {
-        long eventNumber = nextEventNumber;
-        nextEventNumber++;
+        long eventNumber = eventNumbers.next();
 
+        // Most events share one of a few tag combinations, so they share a single compact collection as well
         Event event = new Event(eventNumber, title, type, numTickets,
                 ticketPriceInPence, venueAddress, description, startDateTime,
-                endDateTime, tags);
-        events.add(event);
+                endDateTime, tagDictionary.intern(tags));
+        indexEvent(event);
+        return event;
+    }
+
+    /**
+     * Add an event restored from a saved app state, keeping its number, status and number of tickets left. Events
+     * created afterwards get greater numbers.
+     *
+     * @return The restored event
+     */
+    public Event restoreEvent(long eventNumber,
+                              String title,
+                              EventType type,
+                              int numTicketsCap,
+                              int ticketPriceInPence,
+                              String venueAddress,
+                              String description,
+                              LocalDateTime startDateTime,
+                              LocalDateTime endDateTime,
+                              EventTagCollection tags,
+                              EventStatus status,
+                              int numTicketsLeft) {
+        eventNumbers.advancePast(eventNumber);
+        Event event = new Event(eventNumber, title, type, numTicketsCap,
+                ticketPriceInPence, venueAddress, description, startDateTime,
+                endDateTime, tagDictionary.intern(tags));
+        event.setNumTicketsLeft(numTicketsLeft);
+        if (status == EventStatus.CANCELLED) {
+            event.cancel();
+        }
+        indexEvent(event);
         return event;
     }
 
     public Map<String, EventTag> getPossibleTags() { return possibleTags; }
 
+    @Override
+    public ChangeTracker getChangeTracker() {
+        return changeTracker;
+    }
+
     /**
      *
      * @param tagName is the name of the tag
@@ -99,7 +318,9 @@ public class EventState implements IEventState, Serializable {
     public EventTag createEventTag(String tagName, Set<String> tagValues, String defaultTagValue){
         EventTag newEventTag = new EventTag(tagValues, defaultTagValue);
         //added an if condition into event state?
-        possibleTags.put(tagName, newEventTag);
+        possibleTags = possibleTags.plus(tagName, newEventTag);
+        tagDictionary.addTag(tagName, tagValues);
+        changeTracker.recordChange(new ChangeTracker.TagCreated(tagName, newEventTag));
         return newEventTag;
     }
 
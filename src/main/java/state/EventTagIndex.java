@@ -0,0 +1,98 @@
+package state;
+
+import model.Event;
+import model.EventTag;
+import model.EventTagCollection;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * {@link EventTagIndex} is a bitmap index over the tags of {@link Event}s, used by {@link EventState} to find the
+ * events matching a set of preferences without checking the tags of every event. Events are referred to by their
+ * ordinal, i.e. their position in the list of all events, and for every tag name and value there is one bitmap of
+ * the events that have that value set explicitly.
+ * <p>
+ * Events without a value for a tag are treated as having the tag's default value. Since tags can be created after
+ * events, defaults are resolved at query time from the bitmap of events that have the tag set at all.
+ * <p>
+ * The index is immutable: adding an event returns a new index sharing all other bitmaps with this one.
+ */
+class EventTagIndex implements Serializable {
+    private final PersistentHashMap<String, PersistentHashMap<String, PersistentBitSet>> eventsByTagValue;
+    private final PersistentHashMap<String, PersistentBitSet> eventsWithTag;
+
+    /**
+     * Create a new empty index
+     */
+    EventTagIndex() {
+        this(PersistentHashMap.empty(), PersistentHashMap.empty());
+    }
+
+    private EventTagIndex(PersistentHashMap<String, PersistentHashMap<String, PersistentBitSet>> eventsByTagValue,
+                          PersistentHashMap<String, PersistentBitSet> eventsWithTag) {
+        this.eventsByTagValue = eventsByTagValue;
+        this.eventsWithTag = eventsWithTag;
+    }
+
+    private static <K> PersistentHashMap<K, PersistentBitSet> withBitSet(PersistentHashMap<K, PersistentBitSet> bitSets,
+                                                                         K key, int ordinal) {
+        PersistentBitSet bitSet = bitSets.getOrDefault(key, PersistentBitSet.empty());
+        return bitSets.plus(key, bitSet.set(ordinal));
+    }
+
+    /**
+     * @param ordinal position of the event in the list of all events
+     * @param tags    tags of the event
+     * @return A new index with the events of this one and the given event's tags
+     */
+    EventTagIndex plus(int ordinal, EventTagCollection tags) {
+        PersistentHashMap<String, PersistentHashMap<String, PersistentBitSet>> newEventsByTagValue = eventsByTagValue;
+        PersistentHashMap<String, PersistentBitSet> newEventsWithTag = eventsWithTag;
+        for (String tagName : tags.getTagNames()) {
+            PersistentHashMap<String, PersistentBitSet> eventsByValue =
+                    newEventsByTagValue.getOrDefault(tagName, PersistentHashMap.empty());
+            newEventsByTagValue = newEventsByTagValue.plus(tagName,
+                    withBitSet(eventsByValue, tags.getValueFor(tagName), ordinal));
+            newEventsWithTag = withBitSet(newEventsWithTag, tagName, ordinal);
+        }
+        return new EventTagIndex(newEventsByTagValue, newEventsWithTag);
+    }
+
+    /**
+     * @param preferences  tag values that matching events must have
+     * @param possibleTags all known tags, used to look up default values
+     * @param numEvents    number of events in the index, i.e. one past the largest ordinal
+     * @return Ordinals of the events that have every preferred tag value, either set explicitly or by default
+     */
+    BitSet findOrdinals(EventTagCollection preferences, Map<String, EventTag> possibleTags, int numEvents) {
+        BitSet result = new BitSet(numEvents);
+        result.set(0, numEvents);
+        for (String tagName : preferences.getTagNames()) {
+            String preferredValue = preferences.getValueFor(tagName);
+            BitSet matching = new BitSet(numEvents);
+
+            EventTag tag = possibleTags.get(tagName);
+            if (tag != null && preferredValue.equals(tag.defaultValue)) {
+                matching.set(0, numEvents);
+                PersistentBitSet withTag = eventsWithTag.get(tagName);
+                if (withTag != null) {
+                    matching.andNot(withTag.toBitSet());
+                }
+            }
+
+            PersistentHashMap<String, PersistentBitSet> eventsByValue = eventsByTagValue.get(tagName);
+            PersistentBitSet withValue = eventsByValue == null ? null : eventsByValue.get(preferredValue);
+            if (withValue != null) {
+                matching.or(withValue.toBitSet());
+            }
+
+            result.and(matching);
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+}
@@ -1,6 +1,7 @@
 package state;
 
 import model.Booking;
+import model.ChangeTracker;
 import model.Consumer;
 import model.Event;
 
@@ -46,4 +47,20 @@ public interface IBookingState {
      * Add a {@link Booking}
      */
     void addBooking(Booking booking);
+
+    /**
+     * Add a copy of a {@link Booking} from another app state under a new unique booking number, so that it cannot be
+     * mistaken for a booking of this state that has the same number
+     *
+     * @param booking {@link Booking} to copy, whose number of tickets, date and time, status and refund status are kept
+     * @param booker  {@link Consumer} of this state who made the booking
+     * @param event   {@link Event} of this state that the booking is for
+     * @return The newly added copy
+     */
+    Booking importBooking(Booking booking, Consumer booker, Event event);
+
+    /**
+     * @return Tracker that changes to this state and its bookings are reported to
+     */
+    ChangeTracker getChangeTracker();
 }
@@ -2,6 +2,7 @@ package state;
 
 import model.*;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +24,57 @@ public interface IEventState {
      */
     Event findEventByNumber(long eventNumber);
 
+    /**
+     * @param searchDate date to look up events for
+     * @return List of {@link Event}s that start on searchDate, or start or end after it, in the same order as
+     * {@link #getAllEvents()}
+     */
+    List<Event> findEventsByDate(LocalDate searchDate);
+
+    /**
+     * @param searchDate  date to look up events for, as in {@link #findEventsByDate(LocalDate)}. Can be null, in which
+     *                    case events are not filtered by date
+     * @param preferences tag values that the events must have. An event without a value for a tag matches the tag's
+     *                    default value. Can be null, in which case events are not filtered by tags
+     * @param status      status that the events must have. Can be null, in which case events are not filtered by
+     *                    status
+     * @return List of {@link Event}s matching all filters, in the same order as {@link #getAllEvents()}
+     */
+    List<Event> findEvents(LocalDate searchDate, EventTagCollection preferences, EventStatus status);
+
+    /**
+     * @param title         title of the events to look up
+     * @param startDateTime date and time when the events begin
+     * @param endDateTime   date and time when the events end
+     * @return List of {@link Event}s with exactly this title, start and end, in the same order as
+     * {@link #getAllEvents()}
+     */
+    List<Event> findEventsByTitleAndTime(String title, LocalDateTime startDateTime, LocalDateTime endDateTime);
+
+    /**
+     * @param title title of the events to look up
+     * @return List of {@link Event}s with exactly this title, in the same order as {@link #getAllEvents()}
+     */
+    List<Event> findEventsByTitle(String title);
+
+    /**
+     * @param title title of the events to get the reviews of
+     * @return Read-only view of the {@link Review}s of all {@link Event}s with exactly this title, which stays up to
+     * date as reviews are added and as more events with this title are created
+     */
+    List<Review> findReviewsByEventTitle(String title);
+
+    /**
+     * Cancel an {@link Event} of this event state (see {@link Event#cancel()}), moving it from the partition of
+     * {@link EventStatus#ACTIVE} events to that of {@link EventStatus#CANCELLED} ones. Events must be cancelled through
+     * this method rather than {@link Event#cancel()} directly, so that status-filtered lookups stay fast. Copies of
+     * this event state share its events, so an event cancelled through one of them is no longer listed as active by
+     * the others either, and can still be cancelled through them.
+     *
+     * @param event event to cancel, which must have been created in this event state
+     */
+    void cancelEvent(Event event);
+
     /**
      * Create a new {@link Event} (includes generating a new unique event number) and add it to the event state
      *
@@ -34,7 +86,8 @@ public interface IEventState {
      * @param description         additional details about the event
      * @param startDateTime       date and time when the new performance will begin
      * @param endDateTime         date and time when the new performance will end
-     * @param tags                collection of event tags
+     * @param tags                collection of event tags, which the event keeps as a compact collection shared with
+     *                            all other events with the same tags (see {@link EventTagDictionary})
      * @return The newly created {@link Event}
      */
     Event createEvent(String title,
@@ -52,4 +105,9 @@ public interface IEventState {
     EventTag createEventTag(String tagName, Set<String> tagValues, String defaultTagValue);
 
     //Boolean areTagsValid(EventTagCollection tags);
+
+    /**
+     * @return Tracker that changes to this state and its events are reported to
+     */
+    ChangeTracker getChangeTracker();
 }
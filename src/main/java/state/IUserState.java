@@ -1,5 +1,6 @@
 package state;
 
+import model.ChangeTracker;
 import model.User;
 
 import java.util.Map;
@@ -17,19 +18,19 @@ public interface IUserState {
     void addUser(User user);
 
     /**
-     * @return A collection of all registered users
+     * Remove the {@link User} registered under an email address from the user state, if there is one
+     *
+     * @param email email address the user is registered under
      */
-    Map<String, User> getAllUsers();
+    void removeUser(String email);
 
     /**
-     * @return The currently logged-in user if there is one, or null otherwise
+     * @return A read-only collection of all registered users, keyed by email address
      */
-    User getCurrentUser();
+    Map<String, User> getAllUsers();
 
     /**
-     * Set the currently logged-in user to the specified user
-     *
-     * @param user user
+     * @return Tracker that changes to this state and its users are reported to
      */
-    void setCurrentUser(User user);
+    ChangeTracker getChangeTracker();
 }
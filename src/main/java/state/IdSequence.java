@@ -0,0 +1,105 @@
+package state;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link IdSequence} hands out unique numbers, e.g. for events and bookings, from several threads at once without a
+ * shared lock. Each thread claims a block of consecutive numbers from a shared counter with a single atomic add, and
+ * then hands them out from its block on its own. Numbers handed out by one thread are increasing, and with a single
+ * thread they are consecutive, but numbers from different threads interleave and may leave gaps where a block was not
+ * used up.
+ */
+public class IdSequence implements Serializable {
+    /**
+     * Number of consecutive numbers each thread claims at a time, unless configured otherwise
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+
+    private static class Block {
+        private long next;
+        private long end;
+    }
+
+    private final int blockSize;
+    // Start of the next block to be claimed, so every number below it may have been handed out
+    private transient AtomicLong nextBlockStart;
+    private transient ThreadLocal<Block> blocks;
+
+    /**
+     * Create a sequence starting from 1
+     */
+    public IdSequence() {
+        this(1, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param first     first number to hand out
+     * @param blockSize number of consecutive numbers each thread claims at a time
+     */
+    public IdSequence(long first, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be at least 1");
+        }
+        this.blockSize = blockSize;
+        this.nextBlockStart = new AtomicLong(first);
+        this.blocks = ThreadLocal.withInitial(Block::new);
+    }
+
+    /**
+     * Copy constructor, creates a sequence that continues independently from where another sequence is, as seen from
+     * the calling thread (see {@link #firstUnusedNumber()})
+     *
+     * @param other sequence to copy
+     */
+    public IdSequence(IdSequence other) {
+        this(other.firstUnusedNumber(), other.blockSize);
+    }
+
+    /**
+     * @return The next number of the sequence, greater than all the numbers this thread got before
+     */
+    public long next() {
+        Block block = blocks.get();
+        if (block.next == block.end) {
+            block.next = nextBlockStart.getAndAdd(blockSize);
+            block.end = block.next + blockSize;
+        }
+        return block.next++;
+    }
+
+    /**
+     * Make sure the numbers handed out from now on are greater than the given one, e.g. a number restored from a saved
+     * state. Numbers left in blocks that threads have already claimed are not affected, so this is meant for
+     * sequences that have not handed out any numbers yet.
+     *
+     * @param number number that must not be handed out
+     */
+    public void advancePast(long number) {
+        nextBlockStart.accumulateAndGet(number + 1, Math::max);
+    }
+
+    /**
+     * @return A number greater than every number handed out so far. If the calling thread claimed the latest block,
+     * this is the next number of that block, so that a sequence used by a single thread continues without a gap.
+     */
+    public long firstUnusedNumber() {
+        Block block = blocks.get();
+        long unclaimed = nextBlockStart.get();
+        return block.end == unclaimed ? block.next : unclaimed;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeLong(firstUnusedNumber());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        nextBlockStart = new AtomicLong(in.readLong());
+        blocks = ThreadLocal.withInitial(Block::new);
+    }
+}
@@ -0,0 +1,72 @@
+package state;
+
+import java.io.Serializable;
+import java.util.BitSet;
+
+/**
+ * {@link PersistentBitSet} is an immutable set of non-negative integers, stored as a {@link PersistentVector} of
+ * 64-bit words. Setting or clearing a bit returns a new set that shares all other words with this one, and the old set
+ * stays valid and unchanged. Sets are turned into a {@link BitSet} to be combined with each other.
+ */
+final class PersistentBitSet implements Serializable {
+    private static final PersistentBitSet EMPTY = new PersistentBitSet(PersistentVector.empty());
+
+    private final PersistentVector<Long> words;
+
+    private PersistentBitSet(PersistentVector<Long> words) {
+        this.words = words;
+    }
+
+    /**
+     * @return The empty set
+     */
+    static PersistentBitSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param index bit to set
+     * @return A new set with the bits of this one, and the bit at index set as well
+     */
+    PersistentBitSet set(int index) {
+        int wordIndex = index >>> 6;
+        long bit = 1L << index;
+        PersistentVector<Long> newWords = words;
+        while (newWords.size() < wordIndex) {
+            newWords = newWords.plus(0L);
+        }
+        if (newWords.size() == wordIndex) {
+            return new PersistentBitSet(newWords.plus(bit));
+        }
+        long word = newWords.get(wordIndex);
+        if ((word & bit) != 0) {
+            return this;
+        }
+        return new PersistentBitSet(newWords.with(wordIndex, word | bit));
+    }
+
+    /**
+     * @param index bit to clear
+     * @return A new set with the bits of this one, except for the bit at index
+     */
+    PersistentBitSet clear(int index) {
+        int wordIndex = index >>> 6;
+        long bit = 1L << index;
+        if (wordIndex >= words.size() || (words.get(wordIndex) & bit) == 0) {
+            return this;
+        }
+        return new PersistentBitSet(words.with(wordIndex, words.get(wordIndex) & ~bit));
+    }
+
+    /**
+     * @return A new mutable {@link BitSet} with the same bits set as this one
+     */
+    BitSet toBitSet() {
+        long[] array = new long[words.size()];
+        int i = 0;
+        for (long word : words) {
+            array[i++] = word;
+        }
+        return BitSet.valueOf(array);
+    }
+}
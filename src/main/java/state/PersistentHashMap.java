@@ -0,0 +1,350 @@
+package state;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * {@link PersistentHashMap} is an immutable hash array mapped trie. Adding or removing a key returns a new map that
+ * shares all untouched nodes with this one, so both only cost copying the path to the changed entry, and the old map
+ * stays valid and unchanged. The map can be read through the {@link Map} interface, but not modified through it.
+ * Null keys are not supported.
+ *
+ * @param <K> type of the keys stored in the map
+ * @param <V> type of the values stored in the map
+ */
+final class PersistentHashMap<K, V> extends AbstractMap<K, V> implements Serializable {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final Object NOT_FOUND = new Object();
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param <K> type of the keys stored in the map
+     * @param <V> type of the values stored in the map
+     * @return The empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && root.get(0, hash(key), key) != NOT_FOUND;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        Object value = root.get(0, hash(key), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    /**
+     * @param key   key to store the value under, must not be null
+     * @param value value to store
+     * @return A new map with the entries of this one, except that key maps to value
+     */
+    PersistentHashMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key, "PersistentHashMap does not support null keys");
+        boolean[] added = new boolean[1];
+        Node newRoot = root.put(0, hash(key), key, value, added);
+        return newRoot == root ? this : new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @param key key to remove
+     * @return A new map with the entries of this one, except for the one for key
+     */
+    PersistentHashMap<K, V> minus(K key) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        Node newRoot = root.remove(0, hash(key), key);
+        return new PersistentHashMap<>(newRoot != null ? newRoot : BitmapNode.EMPTY, size - 1);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                List<Entry<K, V>> entries = new ArrayList<>(size);
+                root.collect(entries);
+                return entries.iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    // The layout of the trie depends on hash codes, which are not guaranteed to be the same in another JVM (e.g. for
+    // enum keys), so the map is serialized as a flat list of entries and rebuilt when it is read back
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    private static class SerializedForm implements Serializable {
+        private final Object[] keys;
+        private final Object[] values;
+
+        private SerializedForm(PersistentHashMap<?, ?> map) {
+            keys = new Object[map.size];
+            values = new Object[map.size];
+            int i = 0;
+            for (Entry<?, ?> entry : map.entrySet()) {
+                keys[i] = entry.getKey();
+                values[i] = entry.getValue();
+                i++;
+            }
+        }
+
+        private Object readResolve() {
+            PersistentHashMap<Object, Object> map = empty();
+            for (int i = 0; i < keys.length; i++) {
+                map = map.plus(keys[i], values[i]);
+            }
+            return map;
+        }
+    }
+
+    private interface Node {
+        Object get(int shift, int hash, Object key);
+
+        Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        // Returns null if the node becomes empty
+        Node remove(int shift, int hash, Object key);
+
+        <K, V> void collect(List<Entry<K, V>> entries);
+    }
+
+    /**
+     * Inner node holding up to 32 slots, one for each value of the next 5 bits of the hash, of which only the used
+     * ones are stored. A slot holds either a key and its value, or a null key and a child node.
+     */
+    private static final class BitmapNode implements Node {
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] slots;
+
+        private BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private int indexOf(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        public Object get(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int index = indexOf(bit);
+            Object slotKey = slots[2 * index];
+            Object slotValue = slots[2 * index + 1];
+            if (slotKey == null) {
+                return ((Node) slotValue).get(shift + BITS, hash, key);
+            }
+            return key.equals(slotKey) ? slotValue : NOT_FOUND;
+        }
+
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = indexOf(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 2];
+                System.arraycopy(slots, 0, newSlots, 0, 2 * index);
+                newSlots[2 * index] = key;
+                newSlots[2 * index + 1] = value;
+                System.arraycopy(slots, 2 * index, newSlots, 2 * index + 2, slots.length - 2 * index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+
+            Object slotKey = slots[2 * index];
+            Object slotValue = slots[2 * index + 1];
+            Object[] newSlots = slots.clone();
+            if (slotKey == null) {
+                Node child = ((Node) slotValue).put(shift + BITS, hash, key, value, added);
+                if (child == slotValue) {
+                    return this;
+                }
+                newSlots[2 * index + 1] = child;
+            } else if (key.equals(slotKey)) {
+                if (value == slotValue) {
+                    return this;
+                }
+                newSlots[2 * index + 1] = value;
+            } else {
+                added[0] = true;
+                newSlots[2 * index] = null;
+                newSlots[2 * index + 1] = createNode(shift + BITS, slotKey, slotValue, hash, key, value);
+            }
+            return new BitmapNode(bitmap, newSlots);
+        }
+
+        private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.put(shift, hash1, key1, value1, added).put(shift, hash2, key2, value2, added);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = indexOf(bit);
+            Object slotKey = slots[2 * index];
+            Object slotValue = slots[2 * index + 1];
+            if (slotKey == null) {
+                Node child = ((Node) slotValue).remove(shift + BITS, hash, key);
+                if (child == slotValue) {
+                    return this;
+                }
+                if (child != null) {
+                    Object[] newSlots = slots.clone();
+                    newSlots[2 * index + 1] = child;
+                    return new BitmapNode(bitmap, newSlots);
+                }
+            } else if (!key.equals(slotKey)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] newSlots = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, newSlots, 0, 2 * index);
+            System.arraycopy(slots, 2 * index + 2, newSlots, 2 * index, slots.length - 2 * index - 2);
+            return new BitmapNode(bitmap & ~bit, newSlots);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <K, V> void collect(List<Entry<K, V>> entries) {
+            for (int i = 0; i < slots.length; i += 2) {
+                if (slots[i] == null) {
+                    ((Node) slots[i + 1]).collect(entries);
+                } else {
+                    entries.add(new SimpleImmutableEntry<>((K) slots[i], (V) slots[i + 1]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Leaf node holding the keys and values of keys whose hashes are all the same.
+     */
+    private static final class CollisionNode implements Node {
+        private final int hash;
+        private final Object[] slots;
+
+        private CollisionNode(int hash, Object[] slots) {
+            this.hash = hash;
+            this.slots = slots;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < slots.length; i += 2) {
+                if (key.equals(slots[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public Object get(int shift, int hash, Object key) {
+            int index = hash == this.hash ? indexOf(key) : -1;
+            return index < 0 ? NOT_FOUND : slots[index + 1];
+        }
+
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Nest this node under an inner node, which can then tell the two hashes apart
+                BitmapNode parent = new BitmapNode(1 << ((this.hash >>> shift) & MASK), new Object[]{null, this});
+                return parent.put(shift, hash, key, value, added);
+            }
+            int index = indexOf(key);
+            if (index >= 0) {
+                if (slots[index + 1] == value) {
+                    return this;
+                }
+                Object[] newSlots = slots.clone();
+                newSlots[index + 1] = value;
+                return new CollisionNode(hash, newSlots);
+            }
+            Object[] newSlots = new Object[slots.length + 2];
+            System.arraycopy(slots, 0, newSlots, 0, slots.length);
+            newSlots[slots.length] = key;
+            newSlots[slots.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, newSlots);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            int index = hash == this.hash ? indexOf(key) : -1;
+            if (index < 0) {
+                return this;
+            }
+            if (slots.length == 2) {
+                return null;
+            }
+            Object[] newSlots = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 2, newSlots, index, slots.length - index - 2);
+            return new CollisionNode(hash, newSlots);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <K, V> void collect(List<Entry<K, V>> entries) {
+            for (int i = 0; i < slots.length; i += 2) {
+                entries.add(new SimpleImmutableEntry<>((K) slots[i], (V) slots[i + 1]));
+            }
+        }
+    }
+}
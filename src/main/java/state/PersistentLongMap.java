@@ -0,0 +1,124 @@
+package state;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * {@link PersistentLongMap} is an immutable map from primitive long keys, stored as a 32-way trie indexed by the bits
+ * of the key itself, so keys are never boxed or hashed. Numbers handed out as 1, 2, 3... fill the leaves of the trie
+ * one after another, which makes it a persistent array indexed by number, while sparse or large numbers only cost the
+ * nodes on their own path. Adding a key returns a new map that shares all untouched nodes with this one, so it only
+ * costs copying the path to the new entry, and the old map stays valid and unchanged. Null values are not supported.
+ *
+ * @param <V> type of the values stored in the map
+ */
+final class PersistentLongMap<V> implements Serializable {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final PersistentLongMap<?> EMPTY = new PersistentLongMap<>(null, 0, 0);
+
+    // Inner nodes hold child nodes and leaves hold values, all of them as Object[WIDTH], or null if there are none
+    private final Object[] root;
+    // Number of key bits below the root's children, so the root covers the keys up to 1 << (shift + BITS), unsigned
+    private final int shift;
+    private final int size;
+
+    private PersistentLongMap(Object[] root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    /**
+     * @param <V> type of the values stored in the map
+     * @return The empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <V> PersistentLongMap<V> empty() {
+        return (PersistentLongMap<V>) EMPTY;
+    }
+
+    private static boolean covers(int shift, long key) {
+        return shift + BITS >= Long.SIZE || (key >>> (shift + BITS)) == 0;
+    }
+
+    /**
+     * @return Number of keys in the map
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param key key to look up
+     * @return The value stored for key if there is one, and null otherwise
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        if (root == null || !covers(shift, key)) {
+            return null;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(int) (key >>> level) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        return (V) node[(int) key & MASK];
+    }
+
+    /**
+     * @param key          key to look up
+     * @param defaultValue value to return if there is none for key
+     * @return The value stored for key if there is one, and defaultValue otherwise
+     */
+    V getOrDefault(long key, V defaultValue) {
+        V value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @param key key to look up
+     * @return Whether the map has a value for key
+     */
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key   key to store the value under
+     * @param value value to store, must not be null
+     * @return A new map with the entries of this one, except that key maps to value
+     */
+    PersistentLongMap<V> plus(long key, V value) {
+        Objects.requireNonNull(value, "PersistentLongMap does not support null values");
+        Object[] newRoot = root;
+        int newShift = root == null ? 0 : shift;
+        // Add levels on top until the root covers the key, keeping the existing trie as the first child
+        while (!covers(newShift, key)) {
+            if (newRoot != null) {
+                Object[] parent = new Object[WIDTH];
+                parent[0] = newRoot;
+                newRoot = parent;
+            }
+            newShift += BITS;
+        }
+        boolean[] added = new boolean[1];
+        newRoot = plus(newShift, newRoot, key, value, added);
+        return new PersistentLongMap<>(newRoot, newShift, added[0] ? size + 1 : size);
+    }
+
+    private static Object[] plus(int level, Object[] node, long key, Object value, boolean[] added) {
+        Object[] result = node == null ? new Object[WIDTH] : node.clone();
+        int index = (int) (key >>> level) & MASK;
+        if (level == 0) {
+            added[0] = result[index] == null;
+            result[index] = value;
+        } else {
+            result[index] = plus(level - BITS, (Object[]) result[index], key, value, added);
+        }
+        return result;
+    }
+}
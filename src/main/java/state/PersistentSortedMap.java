@@ -0,0 +1,178 @@
+package state;
+
+import java.io.Serializable;
+import java.util.function.Consumer;
+
+/**
+ * {@link PersistentSortedMap} is an immutable map sorted by key, stored as an AVL tree. Adding a key returns a new map
+ * that shares all untouched nodes with this one, so it only costs copying the path to the new entry, and the old map
+ * stays valid and unchanged. Null keys are not supported.
+ *
+ * @param <K> type of the keys stored in the map
+ * @param <V> type of the values stored in the map
+ */
+final class PersistentSortedMap<K extends Comparable<? super K>, V> implements Serializable {
+    private static final PersistentSortedMap<?, ?> EMPTY = new PersistentSortedMap<>(null);
+
+    private final Node<K, V> root;
+
+    private PersistentSortedMap(Node<K, V> root) {
+        this.root = root;
+    }
+
+    private static final class Node<K, V> implements Serializable {
+        private final K key;
+        private final V value;
+        private final Node<K, V> left;
+        private final Node<K, V> right;
+        private final int height;
+
+        private Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+
+    /**
+     * @param <K> type of the keys stored in the map
+     * @param <V> type of the values stored in the map
+     * @return The empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> empty() {
+        return (PersistentSortedMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @param key key to look up
+     * @return The value stored for key if there is one, and null otherwise
+     */
+    V get(K key) {
+        Node<K, V> node = root;
+        while (node != null) {
+            int comparison = key.compareTo(node.key);
+            if (comparison == 0) {
+                return node.value;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * @param key   key to store the value under, must not be null
+     * @param value value to store
+     * @return A new map with the entries of this one, except that key maps to value
+     */
+    PersistentSortedMap<K, V> plus(K key, V value) {
+        return new PersistentSortedMap<>(plus(root, key, value));
+    }
+
+    /**
+     * Pass the values of all keys strictly greater than a given key to an action, in key order
+     *
+     * @param key    key to start after
+     * @param action action to perform for every value
+     */
+    void forEachValueAfter(K key, Consumer<? super V> action) {
+        forEachValueAfter(root, key, action);
+    }
+
+    private static <K extends Comparable<? super K>, V> void forEachValueAfter(Node<K, V> node, K key,
+                                                                               Consumer<? super V> action) {
+        if (node == null) {
+            return;
+        }
+        if (node.key.compareTo(key) > 0) {
+            forEachValueAfter(node.left, key, action);
+            action.accept(node.value);
+            forEachValue(node.right, action);
+        } else {
+            forEachValueAfter(node.right, key, action);
+        }
+    }
+
+    /**
+     * Pass the values of all keys between two given keys, both included, to an action, in key order
+     *
+     * @param from   least key to pass the value of
+     * @param to     greatest key to pass the value of
+     * @param action action to perform for every value
+     */
+    void forEachValueBetween(K from, K to, Consumer<? super V> action) {
+        forEachValueBetween(root, from, to, action);
+    }
+
+    private static <K extends Comparable<? super K>, V> void forEachValueBetween(Node<K, V> node, K from, K to,
+                                                                                 Consumer<? super V> action) {
+        if (node == null) {
+            return;
+        }
+        boolean afterFrom = node.key.compareTo(from) >= 0;
+        boolean beforeTo = node.key.compareTo(to) <= 0;
+        if (afterFrom) {
+            forEachValueBetween(node.left, from, to, action);
+        }
+        if (afterFrom && beforeTo) {
+            action.accept(node.value);
+        }
+        if (beforeTo) {
+            forEachValueBetween(node.right, from, to, action);
+        }
+    }
+
+    private static <K, V> void forEachValue(Node<K, V> node, Consumer<? super V> action) {
+        if (node == null) {
+            return;
+        }
+        forEachValue(node.left, action);
+        action.accept(node.value);
+        forEachValue(node.right, action);
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static <K extends Comparable<? super K>, V> Node<K, V> plus(Node<K, V> node, K key, V value) {
+        if (node == null) {
+            return new Node<>(key, value, null, null);
+        }
+        int comparison = key.compareTo(node.key);
+        if (comparison < 0) {
+            return balance(node.key, node.value, plus(node.left, key, value), node.right);
+        }
+        if (comparison > 0) {
+            return balance(node.key, node.value, node.left, plus(node.right, key, value));
+        }
+        return new Node<>(key, value, node.left, node.right);
+    }
+
+    // Builds a node from a key, value and subtrees whose heights differ by at most 2, rotating to restore the AVL
+    // invariant if they differ by exactly 2
+    private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+        int difference = height(left) - height(right);
+        if (difference > 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<>(left.key, left.value, left.left, new Node<>(key, value, left.right, right));
+            }
+            Node<K, V> pivot = left.right;
+            return new Node<>(pivot.key, pivot.value,
+                    new Node<>(left.key, left.value, left.left, pivot.left),
+                    new Node<>(key, value, pivot.right, right));
+        }
+        if (difference < -1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<>(right.key, right.value, new Node<>(key, value, left, right.left), right.right);
+            }
+            Node<K, V> pivot = right.left;
+            return new Node<>(pivot.key, pivot.value,
+                    new Node<>(key, value, left, pivot.left),
+                    new Node<>(right.key, right.value, pivot.right, right.right));
+        }
+        return new Node<>(key, value, left, right);
+    }
+}
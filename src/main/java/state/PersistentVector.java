@@ -0,0 +1,176 @@
+package state;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * {@link PersistentVector} is an immutable list that can only grow at the end, stored as a 32-way trie with a separate
+ * tail node. Adding or replacing an element returns a new vector that shares all untouched nodes with this one, so
+ * both only cost copying the path to the changed element, and the old vector stays valid and unchanged. It is public
+ * so that entities can keep lists that are read without locks the same way, e.g. {@link model.Consumer}'s bookings.
+ *
+ * @param <T> type of the elements stored in the vector
+ */
+public final class PersistentVector<T> extends AbstractList<T> implements RandomAccess, Serializable {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final PersistentVector<?> EMPTY =
+            new PersistentVector<>(0, BITS, new Object[WIDTH], new Object[0]);
+
+    private final int size;
+    private final int shift;
+    // Inner nodes hold child nodes and leaves hold elements, all of them as Object[WIDTH]
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * @param <T> type of the elements stored in the vector
+     * @return The empty vector
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> empty() {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    private int tailOffset() {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] leafFor(int index) {
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return (T) leafFor(index)[index & MASK];
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int index = 0;
+            private Object[] leaf = null;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                if (leaf == null || (index & MASK) == 0) {
+                    leaf = leafFor(index);
+                }
+                return (T) leaf[index++ & MASK];
+            }
+        };
+    }
+
+    /**
+     * @param value element to add
+     * @return A new vector with the elements of this one followed by value
+     */
+    public PersistentVector<T> plus(T value) {
+        if (size - tailOffset() < WIDTH) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = value;
+            return new PersistentVector<>(size + 1, shift, root, newTail);
+        }
+
+        // The tail is full, so push it into the trie, adding a level on top if the trie is full as well
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<>(size + 1, newShift, newRoot, new Object[]{value});
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        int childIndex = ((size - 1) >>> level) & MASK;
+        Object[] result = parent.clone();
+        if (level == BITS) {
+            result[childIndex] = tailNode;
+        } else {
+            Object[] child = (Object[]) parent[childIndex];
+            result[childIndex] = child != null
+                    ? pushTail(level - BITS, child, tailNode)
+                    : newPath(level - BITS, tailNode);
+        }
+        return result;
+    }
+
+    private static Object[] newPath(int level, Object[] node) {
+        if (level == 0) {
+            return node;
+        }
+        Object[] result = new Object[WIDTH];
+        result[0] = newPath(level - BITS, node);
+        return result;
+    }
+
+    /**
+     * @param index position of the element to replace
+     * @param value element to put at index instead
+     * @return A new vector with the elements of this one, except for value at index
+     */
+    PersistentVector<T> with(int index, T value) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = value;
+            return new PersistentVector<>(size, shift, root, newTail);
+        }
+        return new PersistentVector<>(size, shift, with(shift, root, index, value), tail);
+    }
+
+    private static Object[] with(int level, Object[] node, int index, Object value) {
+        Object[] result = node.clone();
+        if (level == 0) {
+            result[index & MASK] = value;
+        } else {
+            int childIndex = (index >>> level) & MASK;
+            result[childIndex] = with(level - BITS, (Object[]) node[childIndex], index, value);
+        }
+        return result;
+    }
+}
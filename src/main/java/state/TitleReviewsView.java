@@ -0,0 +1,83 @@
+package state;
+
+import model.Event;
+import model.Review;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link TitleReviewsView} is a read-only view of the {@link Review}s of all {@link Event}s sharing a title. It reads
+ * straight from the events' own review lists, so it grows by itself whenever {@link Event#addReview(Review)} is
+ * called or another event with the same title is created, and never copies or re-aggregates the reviews.
+ */
+class TitleReviewsView extends AbstractList<Review> {
+    private final EventState eventState;
+    private final String title;
+
+    /**
+     * @param eventState event state whose title index to read the events from
+     * @param title      title of the events to view the reviews of
+     */
+    TitleReviewsView(EventState eventState, String title) {
+        this.eventState = eventState;
+        this.title = title;
+    }
+
+    // Looked up on every access, so that the view also covers events created after it
+    private List<Event> events() {
+        return eventState.eventsWithTitle(title);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Event event : events()) {
+            size += event.getReviews().size();
+        }
+        return size;
+    }
+
+    @Override
+    public Review get(int index) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        int remaining = index;
+        for (Event event : events()) {
+            List<Review> reviews = event.getReviews();
+            if (remaining < reviews.size()) {
+                return reviews.get(remaining);
+            }
+            remaining -= reviews.size();
+        }
+        throw new IndexOutOfBoundsException("Index: " + index);
+    }
+
+    @Override
+    public Iterator<Review> iterator() {
+        return new Iterator<>() {
+            private final Iterator<Event> eventIterator = events().iterator();
+            private Iterator<Review> reviewIterator = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!reviewIterator.hasNext() && eventIterator.hasNext()) {
+                    reviewIterator = eventIterator.next().getReviews().iterator();
+                }
+                return reviewIterator.hasNext();
+            }
+
+            @Override
+            public Review next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return reviewIterator.next();
+            }
+        };
+    }
+}
@@ -1,54 +1,61 @@
 package state;
 
+import model.ChangeTracker;
 import model.User;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * {@link UserState} is a concrete implementation of {@link IUserState}.
+ * Users are kept in a persistent map, which is replaced rather than modified on every change, so a copy of a
+ * UserState shares it with the original and takes constant time to make.
  */
 public class UserState implements IUserState, Serializable {
-    private final HashMap<String, User> users;
-    private User currentUser;
+    private PersistentHashMap<String, User> users;
+    private final ChangeTracker changeTracker;
 
     /**
-     * Create a new UserState with an empty collection of users and the currently logged-in user set to null.
+     * Create a new UserState with an empty collection of users.
      */
     public UserState() {
-        users = new HashMap<>();
-        currentUser = null;
+        users = PersistentHashMap.empty();
+        changeTracker = new ChangeTracker();
     }
 
     /**
-     * Copy constructor to create a deep copy of another UserState instance
+     * Copy constructor to create a copy of another UserState instance. The copy shares its user map with the other
+     * instance, so it takes constant time, and the two instances can be changed independently afterwards.
      *
      * @param other instance to copy
      */
     public UserState(IUserState other) {
         UserState otherImpl = (UserState) other;
-        users = new HashMap<>(otherImpl.users);
-        currentUser = otherImpl.currentUser;
+        users = otherImpl.users;
+        // Changes to the copy are not changes to the other instance, so they are tracked separately
+        changeTracker = new ChangeTracker();
     }
 
     @Override
     public void addUser(User user) {
-        users.put(user.getEmail(), user);
+        users = users.plus(user.getEmail(), user);
+        user.setChangeTracker(changeTracker);
+        changeTracker.entityChanged(user);
     }
 
     @Override
-    public Map<String, User> getAllUsers() {
-        return users;
+    public void removeUser(String email) {
+        users = users.minus(email);
+        changeTracker.recordChange(new ChangeTracker.UserRemoved(email));
     }
 
     @Override
-    public User getCurrentUser() {
-        return currentUser;
+    public Map<String, User> getAllUsers() {
+        return users;
     }
 
     @Override
-    public void setCurrentUser(User user) {
-        this.currentUser = user;
+    public ChangeTracker getChangeTracker() {
+        return changeTracker;
     }
 }
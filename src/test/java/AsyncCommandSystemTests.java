@@ -0,0 +1,111 @@
+import command.*;
+import controller.Context;
+import controller.Controller;
+import controller.Session;
+import model.*;
+import org.junit.jupiter.api.Test;
+import view.IView;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncCommandSystemTests extends ConsoleTest {
+    // Runs until released, keeping the command lock all the while
+    private static class BlockingCommand implements ICommand<Boolean> {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private Boolean result;
+
+        @Override
+        public void execute(Context context, IView view) {
+            started.countDown();
+            try {
+                result = released.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                result = false;
+            }
+        }
+
+        @Override
+        public Boolean getResult() {
+            return result;
+        }
+    }
+
+    @Test
+    void asyncCommandsCompleteWithTheirResults() throws Exception {
+        Controller controller = createController();
+        Session session = controller.openSession();
+        CompletableFuture<Staff> registered = controller.runCommandAsync(session,
+                new RegisterStaffCommand(STAFF_EMAIL, STAFF_PASSWORD, "Nec temere nec timide"));
+        assertNotNull(registered.get(10, TimeUnit.SECONDS));
+
+        CompletableFuture<Event> created = controller.runCommandAsync(session, new CreateEventCommand(
+                "Puppies against depression", EventType.Theatre, 10, 0, "", "",
+                LocalDateTime.now().plusHours(8), LocalDateTime.now().plusHours(9), new EventTagCollection()));
+        CompletableFuture<List<Event>> listed = created.thenCompose(event ->
+                controller.runCommandAsync(session, new ListEventsCommand(false, false, null)));
+        Event event = created.get(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(List.of(event), listed.get(10, TimeUnit.SECONDS));
+        controller.shutdown();
+    }
+
+    @Test
+    void commandsOverTheConcurrencyLimitAreRejected() throws Exception {
+        Controller controller = new Controller(new Context("The University of Edinburgh", "", "epay@ed.ac.uk",
+                "Nec temere nec timide"), new TestView(), 1);
+        Session session = controller.openSession();
+        BlockingCommand blockingCommand = new BlockingCommand();
+        CompletableFuture<Boolean> blocking = controller.runCommandAsync(session, blockingCommand);
+        assertTrue(blockingCommand.started.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<Void> rejected = controller.runCommandAsync(session, new LogoutCommand());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+
+        blockingCommand.released.countDown();
+        assertTrue(blocking.get(10, TimeUnit.SECONDS));
+        // The permit is given back just after the future completes
+        CompletableFuture<Void> accepted;
+        do {
+            accepted = controller.runCommandAsync(session, new LogoutCommand());
+        } while (accepted.isCompletedExceptionally());
+        assertNull(accepted.get(10, TimeUnit.SECONDS));
+        controller.shutdown();
+    }
+
+    @Test
+    void commandsThatTimeOutBeforeRunningAreSkipped() throws Exception {
+        Controller controller = createController();
+        Session session = controller.openSession();
+        BlockingCommand blockingCommand = new BlockingCommand();
+        CompletableFuture<Boolean> blocking = controller.runCommandAsync(session, blockingCommand);
+        assertTrue(blockingCommand.started.await(10, TimeUnit.SECONDS));
+
+        AtomicBoolean executed = new AtomicBoolean(false);
+        CompletableFuture<Boolean> timedOut = controller.runCommandAsync(session, new ICommand<Boolean>() {
+            @Override
+            public void execute(Context context, IView view) {
+                executed.set(true);
+            }
+
+            @Override
+            public Boolean getResult() {
+                return true;
+            }
+        }, Duration.ofMillis(50));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> timedOut.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof TimeoutException);
+
+        blockingCommand.released.countDown();
+        assertTrue(blocking.get(10, TimeUnit.SECONDS));
+        controller.shutdown();
+        assertFalse(executed.get());
+    }
+}
@@ -0,0 +1,172 @@
+import command.BookEventCommand;
+import controller.CommandJournal;
+import controller.Context;
+import controller.Controller;
+import controller.Session;
+import controller.SnapshotChain;
+import model.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import view.IView;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmark for how long commands are held up by an autosave, comparing a checkpoint that writes the whole app state
+ * while commands wait with one that only captures a delta while they wait, and compacts the chain in the background,
+ * as the number of bookings grows.
+ * Run with {@code gradle benchmark}; it is excluded from the normal test run.
+ */
+@Tag("benchmark")
+public class AutosavePauseBenchmark {
+    private static final int BOOKINGS_PER_CONSUMER = 10;
+    private static final int BOOKINGS_PER_EVENT = 100;
+    // Tickets of the event booked while the autosave runs
+    private static final int MEASURED_EVENT_CAPACITY = 10_000_000;
+    // Hashing a password takes tens of milliseconds, so every consumer is restored with the same hash instead
+    private static final String PASSWORD_HASH = new Staff("hash@ed.ac.uk", "password").getPasswordHash();
+
+    private static final IView SILENT_VIEW = new IView() {
+        @Override
+        public void displayMainMenu() {
+        }
+
+        @Override
+        public void displayConsumerMenu() {
+        }
+
+        @Override
+        public void displayStaffMenu() {
+        }
+
+        @Override
+        public void displaySuccess(String callerName, Object result) {
+        }
+
+        @Override
+        public void displaySuccess(String callerName, Object result, Map<String, Object> additionalInfo) {
+        }
+
+        @Override
+        public void displayFailure(String callerName, Object result) {
+        }
+
+        @Override
+        public void displayFailure(String callerName, Object result, Map<String, Object> additionalInfo) {
+        }
+    };
+
+    private interface Autosave {
+        void run() throws IOException;
+    }
+
+    private static Context createContext(int numBookings) {
+        Context context = new Context("The University of Edinburgh", "55.94747223411703 -3.187300017491497",
+                "epay@ed.ac.uk", "Nec temere nec timide");
+        LocalDateTime start = LocalDateTime.now().plusDays(2);
+        Event[] events = new Event[numBookings / BOOKINGS_PER_EVENT];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = context.getEventState().createEvent("Event " + i, EventType.Music, BOOKINGS_PER_EVENT,
+                    1500, "", "Description of event " + i, start.plusHours(i), start.plusHours(i + 2),
+                    new EventTagCollection());
+        }
+        for (int i = 0; i < numBookings; i += BOOKINGS_PER_CONSUMER) {
+            Consumer consumer = Consumer.restore("Consumer " + i, "consumer" + i + "@dog.xd", "01324456897", "",
+                    PASSWORD_HASH, new EventTagCollection());
+            context.getUserState().addUser(consumer);
+            for (int j = i; j < i + BOOKINGS_PER_CONSUMER; j++) {
+                consumer.addBooking(context.getBookingState().createBooking(consumer, events[j / BOOKINGS_PER_EVENT],
+                        1));
+            }
+        }
+        context.getUserState().addUser(Consumer.restore("Consumer", "consumer@dog.xd", "01324456897", "",
+                PASSWORD_HASH, new EventTagCollection()));
+        context.getEventState().createEvent("Measured Event", EventType.Music, MEASURED_EVENT_CAPACITY, 1500, "",
+                "Booked while the autosave runs", start, start.plusHours(2), new EventTagCollection());
+        return context;
+    }
+
+    /**
+     * Book tickets one at a time while the autosave runs in the background
+     *
+     * @return The longest any booking took, in milliseconds
+     */
+    private static double maxBookingMillisDuring(Context context, Autosave autosave) throws InterruptedException {
+        Controller controller = new Controller(context, SILENT_VIEW);
+        Session session = controller.openSession();
+        session.setCurrentUser(context.getUserState().getAllUsers().get("consumer@dog.xd"));
+        List<Event> events = context.getEventState().getAllEvents();
+        long eventNumber = events.get(events.size() - 1).getEventNumber();
+        Thread autosaveThread = new Thread(() -> {
+            try {
+                autosave.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        long maxNanos = 0;
+        autosaveThread.start();
+        while (autosaveThread.isAlive()) {
+            long startNanos = System.nanoTime();
+            controller.runCommand(session, new BookEventCommand(eventNumber, 1));
+            maxNanos = Math.max(maxNanos, System.nanoTime() - startNanos);
+        }
+        autosaveThread.join();
+        return maxNanos / 1e6;
+    }
+
+    private static void deleteFiles(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static double maxBookingMillisDuringChainCheckpoint(int numBookings, Path directory, int maxDeltas)
+            throws IOException, InterruptedException {
+        Context context = createContext(numBookings);
+        SnapshotChain chain = new SnapshotChain(directory.resolve("Chain" + maxDeltas + ".ser"), maxDeltas, 1);
+        chain.track(context);
+        try (CommandJournal journal = CommandJournal.open(directory.resolve("Chain" + maxDeltas + ".journal"), context,
+                false)) {
+            journal.checkpoint(context, chain);
+            return maxBookingMillisDuring(context, () -> journal.checkpoint(context, chain));
+        }
+    }
+
+    @Test
+    void commandsOnlyWaitForTheCapture() throws Exception {
+        System.out.println("bookings, max booking ms during full checkpoint, during delta checkpoint, "
+                + "during compacting checkpoint");
+        for (int numBookings : new int[]{10_000, 100_000, 1_000_000}) {
+            Path directory = Files.createTempDirectory("autosave");
+            try {
+                Context full = createContext(numBookings);
+                // A chain that does not track the context writes the whole app state while commands wait
+                SnapshotChain fullChain = new SnapshotChain(directory.resolve("Full.ser"), 0, 0);
+                double fullMillis;
+                try (CommandJournal journal = CommandJournal.open(directory.resolve("Full.journal"), full, false)) {
+                    journal.checkpoint(full, fullChain);
+                    fullMillis = maxBookingMillisDuring(full, () -> journal.checkpoint(full, fullChain));
+                }
+                double deltaMillis = maxBookingMillisDuringChainCheckpoint(numBookings, directory,
+                        SnapshotChain.DEFAULT_MAX_DELTAS);
+                // Every delta is folded into a new base right away, which is the longest a checkpoint takes
+                double compactingMillis = maxBookingMillisDuringChainCheckpoint(numBookings, directory, 0);
+
+                System.out.printf("%d, %.1f, %.1f, %.1f%n", numBookings, fullMillis, deltaMillis, compactingMillis);
+            } finally {
+                deleteFiles(directory);
+            }
+        }
+    }
+}
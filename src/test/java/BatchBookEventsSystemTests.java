@@ -0,0 +1,188 @@
+import command.*;
+import command.BatchBookEventsCommand.BookingRequest;
+import controller.Context;
+import controller.Controller;
+import external.MockPaymentSystem;
+import model.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchBookEventsSystemTests extends ConsoleTest {
+    private final AtomicInteger numPayments = new AtomicInteger();
+    private MockPaymentSystem paymentSystem;
+
+    private Controller createControllerCountingPayments() {
+        paymentSystem = new MockPaymentSystem() {
+            @Override
+            public boolean processPayment(String buyerAccountEmail, String sellerAccountEmail,
+                                          double transactionAmount) {
+                numPayments.incrementAndGet();
+                return super.processPayment(buyerAccountEmail, sellerAccountEmail, transactionAmount);
+            }
+
+            @Override
+            public boolean processPayment(String buyerAccountEmail, String sellerAccountEmail,
+                                          List<Double> itemAmounts) {
+                numPayments.incrementAndGet();
+                return super.processPayment(buyerAccountEmail, sellerAccountEmail, itemAmounts);
+            }
+        };
+        return new Controller(new Context(
+                "The University of Edinburgh",
+                "55.94747223411703 -3.187300017491497", // Old College, South Bridge, Edinburgh
+                "epay@ed.ac.uk",
+                "Nec temere nec timide",
+                paymentSystem
+        ), new TestView());
+    }
+
+    private static Event createPaidEvent(Controller controller, int numTickets, int ticketPriceInPence) {
+        CreateEventCommand eventCmd = new CreateEventCommand(
+                "Puppies against depression",
+                EventType.Theatre,
+                numTickets,
+                ticketPriceInPence,
+                "",
+                "",
+                LocalDateTime.now().plusDays(2),
+                LocalDateTime.now().plusDays(2).plusHours(1),
+                new EventTagCollection()
+        );
+        controller.runCommand(eventCmd);
+        return eventCmd.getResult();
+    }
+
+    //Test for booking several events in one batch, with a single payment
+    @Test
+    void batchBookSeveralEvents() {
+        Controller controller = createControllerCountingPayments();
+        createStaff(controller);
+        Event first = createPaidEvent(controller, 10, 500);
+        Event second = createPaidEvent(controller, 10, 0);
+        Event third = createPaidEvent(controller, 10, 250);
+        controller.runCommand(new LogoutCommand());
+        createConsumer(controller);
+        startOutputCapture();
+        BatchBookEventsCommand batchCmd = new BatchBookEventsCommand(List.of(
+                new BookingRequest(first.getEventNumber(), 2),
+                new BookingRequest(second.getEventNumber(), 3),
+                new BookingRequest(third.getEventNumber(), 4)
+        ));
+        controller.runCommand(batchCmd);
+        stopOutputCaptureAndCompare(
+                "BATCH_BOOK_EVENTS_SUCCESS"
+        );
+
+        List<Booking> bookings = batchCmd.getResult();
+        assertEquals(3, bookings.size());
+        assertEquals(first, bookings.get(0).getEvent());
+        assertEquals(4, bookings.get(2).getNumTickets());
+        assertEquals(8, first.getNumTicketsLeft());
+        assertEquals(7, second.getNumTicketsLeft());
+        assertEquals(6, third.getNumTicketsLeft());
+        assertEquals(1, numPayments.get());
+    }
+
+    //Test for booking a batch where one of the events does not have enough tickets left
+    @Test
+    void batchBookIsAllOrNothing() {
+        Controller controller = createControllerCountingPayments();
+        createStaff(controller);
+        Event first = createPaidEvent(controller, 10, 500);
+        Event second = createPaidEvent(controller, 2, 500);
+        controller.runCommand(new LogoutCommand());
+        createConsumer(controller);
+        startOutputCapture();
+        BatchBookEventsCommand batchCmd = new BatchBookEventsCommand(List.of(
+                new BookingRequest(first.getEventNumber(), 2),
+                new BookingRequest(second.getEventNumber(), 3)
+        ));
+        controller.runCommand(batchCmd);
+        stopOutputCaptureAndCompare(
+                "BATCH_BOOK_EVENTS_NOT_ENOUGH_TICKETS_LEFT"
+        );
+
+        assertNull(batchCmd.getResult());
+        assertEquals(10, first.getNumTicketsLeft());
+        assertEquals(0, first.getNumTicketsReserved());
+        assertEquals(2, second.getNumTicketsLeft());
+        assertEquals(0, numPayments.get());
+    }
+
+    //Test for booking a batch with an invalid line, which is rejected before any tickets are taken
+    @Test
+    void batchBookNonExistingEvent() {
+        Controller controller = createControllerCountingPayments();
+        createStaff(controller);
+        Event first = createPaidEvent(controller, 10, 500);
+        controller.runCommand(new LogoutCommand());
+        createConsumer(controller);
+        startOutputCapture();
+        BatchBookEventsCommand batchCmd = new BatchBookEventsCommand(List.of(
+                new BookingRequest(first.getEventNumber(), 2),
+                new BookingRequest(1324, 1)
+        ));
+        controller.runCommand(batchCmd);
+        stopOutputCaptureAndCompare(
+                "BATCH_BOOK_EVENTS_EVENT_NOT_FOUND"
+        );
+
+        assertNull(batchCmd.getResult());
+        assertEquals(10, first.getNumTicketsLeft());
+        assertEquals(0, numPayments.get());
+    }
+
+    //Test for booking a batch when User is Staff
+    @Test
+    void batchBookUserNotConsumer() {
+        Controller controller = createControllerCountingPayments();
+        createStaff(controller);
+        Event first = createPaidEvent(controller, 10, 500);
+        startOutputCapture();
+        BatchBookEventsCommand batchCmd = new BatchBookEventsCommand(List.of(
+                new BookingRequest(first.getEventNumber(), 2)
+        ));
+        controller.runCommand(batchCmd);
+        stopOutputCaptureAndCompare(
+                "BATCH_BOOK_EVENTS_USER_NOT_CONSUMER"
+        );
+        assertNull(batchCmd.getResult());
+    }
+
+    //Test for cancelling one booking of a batch, which refunds its part of the combined payment
+    @Test
+    void cancelOneBookingOfBatch() {
+        Controller controller = createControllerCountingPayments();
+        createStaff(controller);
+        Event first = createPaidEvent(controller, 10, 500);
+        Event second = createPaidEvent(controller, 10, 250);
+        controller.runCommand(new LogoutCommand());
+        createConsumer(controller);
+        BatchBookEventsCommand batchCmd = new BatchBookEventsCommand(List.of(
+                new BookingRequest(first.getEventNumber(), 2),
+                new BookingRequest(second.getEventNumber(), 2)
+        ));
+        controller.runCommand(batchCmd);
+        List<Booking> bookings = batchCmd.getResult();
+        // The payment is recorded per booking, so neither its total nor any other amount can be refunded
+        assertFalse(paymentSystem.processRefund(CONSUMER_EMAIL, "epay@ed.ac.uk", 1500));
+        assertFalse(paymentSystem.processRefund(CONSUMER_EMAIL, "epay@ed.ac.uk", 200));
+        startOutputCapture();
+        controller.runCommand(new CancelBookingCommand(bookings.get(0).getBookingNumber()));
+        controller.runCommand(new CancelBookingCommand(bookings.get(1).getBookingNumber()));
+        stopOutputCaptureAndCompare(
+                "CANCEL_BOOKING_SUCCESS",
+                "CANCEL_BOOKING_SUCCESS"
+        );
+        assertEquals(10, first.getNumTicketsLeft());
+        assertEquals(10, second.getNumTicketsLeft());
+        // Both bookings were refunded, so there is nothing left to refund
+        assertFalse(paymentSystem.processRefund(CONSUMER_EMAIL, "epay@ed.ac.uk", 1000));
+        assertFalse(paymentSystem.processRefund(CONSUMER_EMAIL, "epay@ed.ac.uk", 500));
+    }
+}
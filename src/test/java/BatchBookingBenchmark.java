@@ -0,0 +1,142 @@
+import command.BatchBookEventsCommand;
+import command.BatchBookEventsCommand.BookingRequest;
+import command.BookEventCommand;
+import command.CreateEventCommand;
+import command.RegisterStaffCommand;
+import controller.Context;
+import controller.Controller;
+import controller.Session;
+import external.PaymentSystem;
+import model.Consumer;
+import model.EventTagCollection;
+import model.EventType;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import view.IView;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark for bulk orders of tickets for many events, comparing one {@link BookEventCommand} per event with a single
+ * {@link BatchBookEventsCommand}, when every payment takes a round trip to a slow payment provider.
+ * Run with {@code gradle benchmark}; it is excluded from the normal test run.
+ */
+@Tag("benchmark")
+public class BatchBookingBenchmark {
+    private static final long PAYMENT_LATENCY_MILLIS = 5;
+    private static final int NUM_ORDERS = 50;
+
+    private static final IView SILENT_VIEW = new IView() {
+        @Override
+        public void displayMainMenu() {
+        }
+
+        @Override
+        public void displayConsumerMenu() {
+        }
+
+        @Override
+        public void displayStaffMenu() {
+        }
+
+        @Override
+        public void displaySuccess(String callerName, Object result) {
+        }
+
+        @Override
+        public void displaySuccess(String callerName, Object result, Map<String, Object> additionalInfo) {
+        }
+
+        @Override
+        public void displayFailure(String callerName, Object result) {
+        }
+
+        @Override
+        public void displayFailure(String callerName, Object result, Map<String, Object> additionalInfo) {
+        }
+    };
+
+    private static class SlowPaymentSystem implements PaymentSystem {
+        private final AtomicInteger numPayments = new AtomicInteger();
+
+        @Override
+        public boolean processPayment(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount) {
+            numPayments.incrementAndGet();
+            try {
+                Thread.sleep(PAYMENT_LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean processRefund(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount) {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    void bulkOrders() {
+        System.out.println("events per order, separate bookings per second, batch bookings per second, "
+                + "separate payments, batch payments");
+        for (int numEvents : new int[]{1, 5, 20}) {
+            SlowPaymentSystem separatePayments = new SlowPaymentSystem();
+            double separateRate = bookingsPerSecond(separatePayments, numEvents, false);
+            SlowPaymentSystem batchPayments = new SlowPaymentSystem();
+            double batchRate = bookingsPerSecond(batchPayments, numEvents, true);
+            System.out.printf("%d, %.0f, %.0f, %d, %d%n", numEvents, separateRate, batchRate,
+                    separatePayments.numPayments.get(), batchPayments.numPayments.get());
+            assertEquals(NUM_ORDERS, batchPayments.numPayments.get());
+        }
+    }
+
+    private static double bookingsPerSecond(PaymentSystem paymentSystem, int numEvents, boolean batch) {
+        Context context = new Context("The University of Edinburgh", "", "epay@ed.ac.uk", "Nec temere nec timide",
+                paymentSystem);
+        Controller controller = new Controller(context, SILENT_VIEW);
+        Session staffSession = controller.openSession();
+        controller.runCommand(staffSession, new RegisterStaffCommand("staff@ed.ac.uk", "password",
+                "Nec temere nec timide"));
+        List<Long> eventNumbers = new ArrayList<>(numEvents);
+        for (int i = 0; i < numEvents; i++) {
+            CreateEventCommand createEventCmd = new CreateEventCommand("Event " + i, EventType.Music, NUM_ORDERS,
+                    1000, "", "", LocalDateTime.now().plusDays(2), LocalDateTime.now().plusDays(2).plusHours(1),
+                    new EventTagCollection());
+            controller.runCommand(staffSession, createEventCmd);
+            eventNumbers.add(createEventCmd.getResult().getEventNumber());
+        }
+        Consumer consumer = new Consumer("Organiser", "organiser@mail.com", "000", "", "password");
+        context.getUserState().addUser(consumer);
+        Session session = controller.openSession();
+        session.setCurrentUser(consumer);
+
+        long startNanos = System.nanoTime();
+        for (int order = 0; order < NUM_ORDERS; order++) {
+            if (batch) {
+                List<BookingRequest> requests = new ArrayList<>(numEvents);
+                for (long eventNumber : eventNumbers) {
+                    requests.add(new BookingRequest(eventNumber, 1));
+                }
+                controller.runCommand(session, new BatchBookEventsCommand(requests));
+            } else {
+                for (long eventNumber : eventNumbers) {
+                    controller.runCommand(session, new BookEventCommand(eventNumber, 1));
+                }
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        assertEquals(NUM_ORDERS * numEvents, consumer.getBookings().size());
+        return (double) NUM_ORDERS * numEvents * 1_000_000_000 / elapsedNanos;
+    }
+}
@@ -1,6 +1,7 @@
 import command.*;
 import controller.Context;
 import controller.Controller;
+import external.MockPaymentSystem;
 import model.Booking;
 import model.Event;
 import model.EventTagCollection;
@@ -8,11 +9,11 @@ import model.EventType;
 import org.junit.jupiter.api.Test;
 import view.IView;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class BookEventSystemTests extends ConsoleTest {
 
@@ -185,6 +186,46 @@ public class BookEventSystemTests extends ConsoleTest {
         );
     }
 
+    //Test for booking an event when the tickets are no longer held once the payment went through
+    @Test
+    void bookEventHoldExpiresDuringPayment() {
+        MockPaymentSystem paymentSystem = new MockPaymentSystem() {
+            @Override
+            public boolean processPayment(String buyerAccountEmail, String sellerAccountEmail,
+                                          double transactionAmount) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+                return super.processPayment(buyerAccountEmail, sellerAccountEmail, transactionAmount);
+            }
+        };
+        Context context = new Context(
+                "The University of Edinburgh",
+                "55.94747223411703 -3.187300017491497", // Old College, South Bridge, Edinburgh
+                "epay@ed.ac.uk",
+                "Nec temere nec timide",
+                paymentSystem
+        );
+        Event event = context.getEventState().createEvent("HueHueHue", EventType.Theatre, 5, 100, "", "Bleh",
+                LocalDateTime.now().plusDays(2), LocalDateTime.now().plusDays(2).plusHours(1),
+                new EventTagCollection("hasSocialDistancing=true,venueCapacity=200"));
+        Controller controller = new Controller(context, new TestView());
+        createConsumer(controller);
+        startOutputCapture();
+        BookEventCommand bookCmd = new BookEventCommand(event.getEventNumber(), 2, Duration.ofMillis(10));
+        controller.runCommand(bookCmd);
+        assertNull(bookCmd.getResult());
+        stopOutputCaptureAndCompare(
+                "BOOK_EVENT_HOLD_EXPIRED"
+        );
+        assertEquals(5, event.getNumTicketsLeft());
+        assertEquals(0, event.getNumTicketsReserved());
+        // The payment was refunded, so there is nothing left to refund
+        assertFalse(paymentSystem.processRefund(CONSUMER_EMAIL, "epay@ed.ac.uk", 200));
+    }
+
     //Success Cases:
 
     //Test for booking an event successfully
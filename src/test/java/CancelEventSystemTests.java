@@ -1,14 +1,32 @@
 import command.*;
+import controller.CommandJournal;
 import controller.Context;
 import controller.Controller;
+import external.MockPaymentSystem;
+import external.Notification;
+import external.NotificationSink;
+import external.PaymentSystem;
+import model.Booking;
 import model.Event;
 import model.EventTagCollection;
 import model.EventType;
+import model.RefundStatus;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -148,8 +166,8 @@ public class CancelEventSystemTests extends ConsoleTest {
         stopOutputCaptureAndCompare(
                 "USER_LOGIN_SUCCESS",
                 "LIST_EVENTS_SUCCESS",
-                "CANCEL_EVENT_REFUND_BOOKING_SUCCESS",
-                "CANCEL_EVENT_SUCCESS"
+                "CANCEL_EVENT_SUCCESS",
+                "CANCEL_EVENT_REFUND_BOOKING_SUCCESS"
         );
     }
 
@@ -195,9 +213,9 @@ public class CancelEventSystemTests extends ConsoleTest {
                 "BOOK_EVENT_SUCCESS",
                 "USER_LOGOUT_SUCCESS",
                 "USER_LOGIN_SUCCESS",
+                "CANCEL_EVENT_SUCCESS",
                 "CANCEL_EVENT_REFUND_BOOKING_SUCCESS",
-                "CANCEL_EVENT_REFUND_BOOKING_SUCCESS",
-                "CANCEL_EVENT_SUCCESS"
+                "CANCEL_EVENT_REFUND_BOOKING_SUCCESS"
         );
     }
 
@@ -231,4 +249,244 @@ public class CancelEventSystemTests extends ConsoleTest {
                 "CANCEL_EVENT_SUCCESS"
         );
     }
+
+    //Test for cancelling an event with a slow notification sink, which notifies each consumer once in the background
+    @Test
+    void cancelEventDoesNotWaitForNotifications() throws InterruptedException {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        List<Notification> delivered = new ArrayList<>();
+        NotificationSink slowSink = notifications -> {
+            try {
+                cancelled.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (delivered) {
+                delivered.addAll(notifications);
+            }
+        };
+        Context context = new Context("The University of Edinburgh", "", "epay@ed.ac.uk", "Nec temere nec timide",
+                new MockPaymentSystem(), slowSink);
+        Controller controller = new Controller(context, new TestView());
+        createStaff(controller);
+        long eventNumber = createEvent(controller, 100, 48, new EventTagCollection()).getEventNumber();
+        controller.runCommand(new LogoutCommand());
+        createConsumer(controller);
+        controller.runCommand(new BookEventCommand(eventNumber, 1));
+        controller.runCommand(new BookEventCommand(eventNumber, 2));
+        controller.runCommand(new LogoutCommand());
+        controller.runCommand(new LoginCommand(STAFF_EMAIL, STAFF_PASSWORD));
+
+        CancelEventCommand cancelCmd = new CancelEventCommand(eventNumber, "Sorry!");
+        controller.runCommand(cancelCmd);
+        assertTrue(cancelCmd.getResult());
+        synchronized (delivered) {
+            assertTrue(delivered.isEmpty());
+        }
+        cancelled.countDown();
+        context.getNotificationDispatcher().flush();
+        assertEquals(List.of(new Notification(CONSUMER_EMAIL, "01324456897", "Sorry!")), delivered);
+    }
+
+    private static Context createContextWithRefunds(PaymentSystem paymentSystem) {
+        return new Context("The University of Edinburgh", "", "epay@ed.ac.uk", "Nec temere nec timide",
+                paymentSystem);
+    }
+
+    private static Event createPaidEventWithBookings(Context context, Controller controller, int numBookings) {
+        createStaff(controller);
+        CreateEventCommand eventCmd = new CreateEventCommand("Puppies against depression", EventType.Theatre,
+                1000, 500, "", "", LocalDateTime.now().plusHours(48), LocalDateTime.now().plusHours(49),
+                new EventTagCollection());
+        controller.runCommand(eventCmd);
+        Event event = eventCmd.getResult();
+        controller.runCommand(new LogoutCommand());
+        for (int i = 0; i < numBookings; i++) {
+            createConsumerAndBookEvent(context, controller, "Fan " + i, "fan" + i + "@fan.org", event);
+            controller.runCommand(new LogoutCommand());
+        }
+        controller.runCommand(new LoginCommand(STAFF_EMAIL, STAFF_PASSWORD));
+        return event;
+    }
+
+    //Test for cancelling an event with many paid bookings, whose refunds are processed a few at a time
+    @Test
+    void cancelEventRefundsBookingsInParallel() throws Exception {
+        AtomicInteger numRefundsInProgress = new AtomicInteger();
+        AtomicInteger maxRefundsInProgress = new AtomicInteger();
+        Context context = createContextWithRefunds(new MockPaymentSystem(false) {
+            @Override
+            public boolean processRefund(String buyerAccountEmail, String sellerAccountEmail,
+                                         double transactionAmount) {
+                maxRefundsInProgress.accumulateAndGet(numRefundsInProgress.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return false;
+                } finally {
+                    numRefundsInProgress.decrementAndGet();
+                }
+                return true;
+            }
+        });
+        Controller controller = new Controller(context, new TestView());
+        Event event = createPaidEventWithBookings(context, controller, 40);
+
+        CancelEventCommand cancelCmd = new CancelEventCommand(event.getEventNumber(), "Sorry!", 4);
+        controller.runCommand(cancelCmd);
+        assertTrue(cancelCmd.getResult());
+        CancelEventCommand.RefundSummary summary = cancelCmd.getRefundSummary().get(10, TimeUnit.SECONDS);
+        assertEquals(40, summary.getNumRefunded());
+        assertEquals(0, summary.getNumFailed());
+        assertTrue(maxRefundsInProgress.get() > 1);
+        assertTrue(maxRefundsInProgress.get() <= 4);
+    }
+
+    //Test for cancelling an event whose refunds fail at first, which are retried until they succeed or run out of tries
+    @Test
+    void cancelEventRetriesFailedRefunds() throws Exception {
+        Map<String, AtomicInteger> attemptsByBuyer = new ConcurrentHashMap<>();
+        Context context = createContextWithRefunds(new MockPaymentSystem(false) {
+            @Override
+            public boolean processRefund(String buyerAccountEmail, String sellerAccountEmail,
+                                         double transactionAmount) {
+                int attempt = attemptsByBuyer.computeIfAbsent(buyerAccountEmail, buyer -> new AtomicInteger())
+                        .incrementAndGet();
+                // The first buyer's refunds always fail, the others' succeed on the second try
+                return !buyerAccountEmail.equals("fan0@fan.org") && attempt >= 2;
+            }
+        });
+        Controller controller = new Controller(context, new TestView());
+        Event event = createPaidEventWithBookings(context, controller, 3);
+
+        CancelEventCommand cancelCmd = new CancelEventCommand(event.getEventNumber(), "Sorry!");
+        controller.runCommand(cancelCmd);
+        assertTrue(cancelCmd.getResult());
+        CancelEventCommand.RefundSummary summary = cancelCmd.getRefundSummary().get(10, TimeUnit.SECONDS);
+        assertEquals(2, summary.getNumRefunded());
+        assertEquals(1, summary.getNumFailed());
+        assertEquals(CancelEventCommand.MAX_REFUND_ATTEMPTS, attemptsByBuyer.get("fan0@fan.org").get());
+        assertEquals(2, attemptsByBuyer.get("fan1@fan.org").get());
+        assertEquals(List.of(false, true, true), List.copyOf(summary.getRefundedByBooking().values()));
+        List<Booking> bookings = List.copyOf(summary.getRefundedByBooking().keySet());
+        assertEquals(RefundStatus.Failed, bookings.get(0).getRefundStatus());
+        assertEquals(RefundStatus.Refunded, bookings.get(1).getRefundStatus());
+        assertEquals(RefundStatus.Refunded, bookings.get(2).getRefundStatus());
+    }
+
+    //Test for resuming refunds after a restart, which does not refund the bookings whose refunds already went through
+    @Test
+    void resumedRefundsAreNotProcessedTwice() throws Exception {
+        Context context = createContextWithRefunds(new MockPaymentSystem(false));
+        Controller controller = new Controller(context, new TestView());
+        Event event = createPaidEventWithBookings(context, controller, 2);
+        // The bookings are made directly, so their payments are made here
+        for (int i = 0; i < 2; i++) {
+            context.getPaymentSystem().processPayment("fan" + i + "@fan.org", context.getOrgEmail(),
+                    2 * event.getTicketPriceInPence());
+        }
+
+        CancelEventCommand cancelCmd = new CancelEventCommand(event.getEventNumber(), "Sorry!");
+        controller.runCommand(cancelCmd);
+        CancelEventCommand.RefundSummary summary = cancelCmd.getRefundSummary().get(10, TimeUnit.SECONDS);
+        assertEquals(2, summary.getNumRefunded());
+        // As if the application stopped after the first refund went through, but before its outcome was recorded
+        Booking booking = List.copyOf(summary.getRefundedByBooking().keySet()).get(0);
+        booking.setRefundStatus(RefundStatus.Pending);
+
+        CancelEventCommand.RefundSummary resumed = CancelEventCommand.resumePendingRefunds(context)
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(Map.of(booking, true), resumed.getRefundedByBooking());
+        assertEquals(RefundStatus.Refunded, booking.getRefundStatus());
+    }
+
+    //Test for resuming refunds after a crash that left them pending, which is only recorded in the command journal
+    @Test
+    void pendingRefundsReplayedFromTheJournalAreResumed(@TempDir Path directory) throws Exception {
+        CountDownLatch crashed = new CountDownLatch(1);
+        Context context = createContextWithRefunds(new MockPaymentSystem(false) {
+            @Override
+            public boolean processRefund(String buyerAccountEmail, String sellerAccountEmail,
+                                         double transactionAmount) {
+                // The refunds do not get anywhere before the application stops
+                try {
+                    crashed.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            }
+        });
+        Path journalFile = directory.resolve("AutoSave.journal");
+        Path crashedJournalFile = directory.resolve("Crashed.journal");
+        try (CommandJournal journal = CommandJournal.open(journalFile, context, false)) {
+            Controller controller = new Controller(context, new TestView());
+            Event event = createPaidEventWithBookings(context, controller, 2);
+            controller.runCommand(new CancelEventCommand(event.getEventNumber(), "Sorry!"));
+            // As if the application stopped while the refunds were processed
+            Files.copy(journalFile, crashedJournalFile);
+        } finally {
+            crashed.countDown();
+        }
+
+        Context recovered = createContextWithRefunds(new MockPaymentSystem(false));
+        try (CommandJournal journal = CommandJournal.open(crashedJournalFile, recovered, false)) {
+            for (int i = 0; i < 2; i++) {
+                recovered.getPaymentSystem().processPayment("fan" + i + "@fan.org", recovered.getOrgEmail(), 1000);
+            }
+            CancelEventCommand.RefundSummary resumed = CancelEventCommand.resumePendingRefunds(recovered)
+                    .get(10, TimeUnit.SECONDS);
+            assertEquals(2, resumed.getNumRefunded());
+        }
+        for (Booking booking : recovered.getBookingState().getAllBookings()) {
+            assertEquals(RefundStatus.Refunded, booking.getRefundStatus());
+        }
+    }
+
+    //Test for cancelling an event with paid bookings, after which the staff member is sent a summary of the refunds
+    @Test
+    void cancelEventSendsRefundSummaryToStaff() throws Exception {
+        List<Notification> delivered = new ArrayList<>();
+        Context context = new Context("The University of Edinburgh", "", "epay@ed.ac.uk", "Nec temere nec timide",
+                new MockPaymentSystem(false), notifications -> {
+                    synchronized (delivered) {
+                        delivered.addAll(notifications);
+                    }
+                });
+        Controller controller = new Controller(context, new TestView());
+        Event event = createPaidEventWithBookings(context, controller, 2);
+        // Only the first booking is paid for, so refunding the second one fails
+        context.getPaymentSystem().processPayment("fan0@fan.org", context.getOrgEmail(),
+                2 * event.getTicketPriceInPence());
+
+        CancelEventCommand cancelCmd = new CancelEventCommand(event.getEventNumber(), "Sorry!");
+        controller.runCommand(cancelCmd);
+        cancelCmd.getRefundSummary().get(10, TimeUnit.SECONDS);
+        context.getNotificationDispatcher().flush();
+        List<Notification> toStaff;
+        synchronized (delivered) {
+            toStaff = delivered.stream()
+                    .filter(notification -> notification.getRecipientEmail().equals(STAFF_EMAIL))
+                    .collect(Collectors.toList());
+        }
+        assertEquals(1, toStaff.size());
+        assertTrue(toStaff.get(0).getMessage().startsWith("Refunds for cancelled event " + event.getEventNumber()
+                + ": 1 refunded, 1 failed, in "));
+    }
+
+    //Test for cancelling an event by executing the command directly, outside the command lock, which still refunds
+    @Test
+    void cancelEventExecutedDirectlyStillRefunds() throws Exception {
+        Context context = createContextWithRefunds(new MockPaymentSystem(false));
+        Controller controller = new Controller(context, new TestView());
+        Event event = createPaidEventWithBookings(context, controller, 1);
+        context.getPaymentSystem().processPayment("fan0@fan.org", context.getOrgEmail(),
+                2 * event.getTicketPriceInPence());
+
+        CancelEventCommand cancelCmd = new CancelEventCommand(event.getEventNumber(), "Sorry!");
+        cancelCmd.execute(context, new TestView());
+        assertTrue(cancelCmd.getResult());
+        assertEquals(1, cancelCmd.getRefundSummary().get(10, TimeUnit.SECONDS).getNumRefunded());
+    }
 }
+
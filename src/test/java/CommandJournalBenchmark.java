@@ -0,0 +1,156 @@
+import command.BookEventCommand;
+import controller.BinarySnapshot;
+import controller.CommandJournal;
+import controller.Context;
+import controller.Controller;
+import controller.Session;
+import model.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import view.IView;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark for making every booking durable, comparing a {@link CommandJournal} entry per booking with a full
+ * snapshot per booking, as the app state grows, and the time it takes to recover from a snapshot and a journal.
+ * Run with {@code gradle benchmark}; it is excluded from the normal test run.
+ */
+@Tag("benchmark")
+public class CommandJournalBenchmark {
+    private static final int NUM_MEASURED_BOOKINGS = 200;
+    private static final int BOOKINGS_PER_EVENT = 100;
+    // Hashing a password takes tens of milliseconds, so every consumer is restored with the same hash instead
+    private static final String PASSWORD_HASH = new Staff("hash@ed.ac.uk", "password").getPasswordHash();
+
+    private static final IView SILENT_VIEW = new IView() {
+        @Override
+        public void displayMainMenu() {
+        }
+
+        @Override
+        public void displayConsumerMenu() {
+        }
+
+        @Override
+        public void displayStaffMenu() {
+        }
+
+        @Override
+        public void displaySuccess(String callerName, Object result) {
+        }
+
+        @Override
+        public void displaySuccess(String callerName, Object result, Map<String, Object> additionalInfo) {
+        }
+
+        @Override
+        public void displayFailure(String callerName, Object result) {
+        }
+
+        @Override
+        public void displayFailure(String callerName, Object result, Map<String, Object> additionalInfo) {
+        }
+    };
+
+    private static Context createContext(int numBookings) {
+        Context context = new Context("The University of Edinburgh", "55.94747223411703 -3.187300017491497",
+                "epay@ed.ac.uk", "Nec temere nec timide");
+        LocalDateTime start = LocalDateTime.now().plusDays(2);
+        Consumer consumer = Consumer.restore("Consumer", "consumer@dog.xd", "01324456897", "", PASSWORD_HASH,
+                new EventTagCollection());
+        context.getUserState().addUser(consumer);
+        // One more event, which the measured bookings are made for
+        for (int i = 0; i <= numBookings / BOOKINGS_PER_EVENT; i++) {
+            Event event = context.getEventState().createEvent("Event " + i, EventType.Music,
+                    Math.max(BOOKINGS_PER_EVENT, NUM_MEASURED_BOOKINGS), 1500, "", "Description of event " + i,
+                    start.plusHours(i), start.plusHours(i + 2), new EventTagCollection());
+            for (int j = 0; j < BOOKINGS_PER_EVENT && i * BOOKINGS_PER_EVENT + j < numBookings; j++) {
+                consumer.addBooking(context.getBookingState().createBooking(consumer, event, 1));
+            }
+        }
+        return context;
+    }
+
+    private static void writeSnapshot(Context context, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            BinarySnapshot.write(context, out);
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @return Milliseconds per booking
+     */
+    private static double bookAll(Context context, Runnable afterEachBooking) {
+        Controller controller = new Controller(context, SILENT_VIEW);
+        Session session = controller.openSession();
+        session.setCurrentUser(context.getUserState().getAllUsers().get("consumer@dog.xd"));
+        List<Event> events = context.getEventState().getAllEvents();
+        long eventNumber = events.get(events.size() - 1).getEventNumber();
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < NUM_MEASURED_BOOKINGS; i++) {
+            controller.runCommand(session, new BookEventCommand(eventNumber, 1));
+            afterEachBooking.run();
+        }
+        return (System.nanoTime() - startNanos) / 1e6 / NUM_MEASURED_BOOKINGS;
+    }
+
+    @Test
+    void journalEntriesCostWhatTheCommandChanged() throws Exception {
+        System.out.println("bookings, journal ms per booking, snapshot ms per booking, recovery ms");
+        for (int numBookings : new int[]{1_000, 10_000, 100_000}) {
+            Path journalFile = Files.createTempFile("journal", ".journal");
+            Path snapshotFile = Files.createTempFile("snapshot", ".ser");
+            try {
+                Context journaled = createContext(numBookings);
+                writeSnapshot(journaled, snapshotFile);
+                double journalMillis;
+                try (CommandJournal journal = CommandJournal.open(journalFile, journaled, true)) {
+                    journalMillis = bookAll(journaled, () -> {
+                    });
+                }
+
+                long startNanos = System.nanoTime();
+                Context recovered;
+                try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+                    recovered = BinarySnapshot.read(channel);
+                }
+                CommandJournal.open(journalFile, recovered, true).close();
+                double recoveryMillis = (System.nanoTime() - startNanos) / 1e6;
+                assertEquals(numBookings + NUM_MEASURED_BOOKINGS,
+                        recovered.getBookingState().getAllBookings().size());
+
+                Context snapshotted = createContext(numBookings);
+                double snapshotMillis = bookAll(snapshotted, () -> {
+                    try {
+                        writeSnapshot(snapshotted, snapshotFile);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+
+                System.out.printf("%d, %.2f, %.2f, %.1f%n", numBookings, journalMillis, snapshotMillis,
+                        recoveryMillis);
+            } finally {
+                Files.delete(journalFile);
+                Files.delete(snapshotFile);
+            }
+        }
+    }
+}
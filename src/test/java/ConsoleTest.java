@@ -10,6 +10,7 @@ import org.junit.jupiter.api.TestInfo;
 import java.io.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -22,6 +23,8 @@ public class ConsoleTest {
     private static PrintStream downstream;
     private final Pattern commandPattern = Pattern.compile("(?<callerName>[A-Za-z]+)(?<additionalInfo>.*?) => (?<result>[A-Z0-9_]+)");
     private ByteArrayOutputStream out;
+    // Contexts of the controllers created by this test, whose notifications are delivered in the background
+    private static final List<Context> contexts = new ArrayList<>();
 
     @BeforeAll
     static void saveDownstream() {
@@ -40,6 +43,7 @@ public class ConsoleTest {
     }
 
     protected void stopOutputCaptureAndCompare(String... expected) {
+        flushNotifications();
         ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
         BufferedReader br = new BufferedReader(new InputStreamReader(in));
 
@@ -66,22 +70,33 @@ public class ConsoleTest {
         }
     }
 
+    private static void flushNotifications() {
+        try {
+            for (Context context : contexts) {
+                context.getNotificationDispatcher().flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @AfterEach
     void restoreDownstream() {
+        flushNotifications();
+        contexts.clear();
         System.setOut(downstream);
         System.out.println("---");
     }
 
     protected static Controller createController() {
-        return new Controller(
-                new Context(
-                        "The University of Edinburgh",
-                        "55.94747223411703 -3.187300017491497", // Old College, South Bridge, Edinburgh
-                        "epay@ed.ac.uk",
-                        "Nec temere nec timide"
-                ),
-                new TestView()
+        Context context = new Context(
+                "The University of Edinburgh",
+                "55.94747223411703 -3.187300017491497", // Old College, South Bridge, Edinburgh
+                "epay@ed.ac.uk",
+                "Nec temere nec timide"
         );
+        contexts.add(context);
+        return new Controller(context, new TestView());
     }
 
     protected static final String STAFF_EMAIL = "bring-in-the-cash@pawsforawwws.org";
@@ -0,0 +1,125 @@
+import command.*;
+import controller.Context;
+import controller.Controller;
+import controller.Session;
+import model.Booking;
+import model.Consumer;
+import model.EventTagCollection;
+import model.EventType;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import view.IView;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Benchmark for the command throughput of a {@link Controller} serving many concurrent sessions, each with its own
+ * logged-in consumer browsing and booking events.
+ * Run with {@code gradle benchmark}; it is excluded from the normal test run.
+ */
+@Tag("benchmark")
+public class ControllerSessionBenchmark {
+    private static final int NUM_SESSIONS = 2_000;
+    private static final int NUM_CONSUMERS = 100;
+    private static final int NUM_EVENTS = 200;
+    private static final int COMMANDS_PER_THREAD = 20_000;
+
+    private static final IView SILENT_VIEW = new IView() {
+        @Override
+        public void displayMainMenu() {
+        }
+
+        @Override
+        public void displayConsumerMenu() {
+        }
+
+        @Override
+        public void displayStaffMenu() {
+        }
+
+        @Override
+        public void displaySuccess(String callerName, Object result) {
+        }
+
+        @Override
+        public void displaySuccess(String callerName, Object result, Map<String, Object> additionalInfo) {
+        }
+
+        @Override
+        public void displayFailure(String callerName, Object result) {
+        }
+
+        @Override
+        public void displayFailure(String callerName, Object result, Map<String, Object> additionalInfo) {
+        }
+    };
+
+    @Test
+    void manyConcurrentSessions() throws InterruptedException {
+        Context context = new Context("The University of Edinburgh", "", "epay@ed.ac.uk", "Nec temere nec timide");
+        Controller controller = new Controller(context, SILENT_VIEW);
+        Session staffSession = controller.openSession();
+        controller.runCommand(staffSession, new RegisterStaffCommand("staff@ed.ac.uk", "password",
+                "Nec temere nec timide"));
+        LocalDateTime start = LocalDateTime.now().plusDays(2);
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            controller.runCommand(staffSession, new CreateEventCommand("Event " + i, EventType.Music,
+                    1_000_000, 0, "", "", start.plusHours(i), start.plusHours(i + 1), new EventTagCollection()));
+        }
+
+        // Hashing passwords dominates registering, so the consumers are created up front, in parallel, and every one
+        // of them is logged in through several sessions, as if from several devices
+        List<Consumer> consumers = IntStream.range(0, NUM_CONSUMERS).parallel()
+                .mapToObj(i -> new Consumer("Consumer " + i, "consumer" + i + "@mail.com", "000", "", "password"))
+                .collect(Collectors.toList());
+        consumers.forEach(context.getUserState()::addUser);
+        List<Session> sessions = new ArrayList<>(NUM_SESSIONS);
+        for (int i = 0; i < NUM_SESSIONS; i++) {
+            Session session = controller.openSession();
+            session.setCurrentUser(consumers.get(i % NUM_CONSUMERS));
+            sessions.add(session);
+        }
+
+        System.out.println("threads, sessions, commands per second");
+        for (int numThreads : new int[]{1, 4, 16, 64}) {
+            List<Thread> threads = new ArrayList<>(numThreads);
+            for (int t = 0; t < numThreads; t++) {
+                Random random = new Random(t);
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < COMMANDS_PER_THREAD; i++) {
+                        Session session = sessions.get(random.nextInt(NUM_SESSIONS));
+                        if (i % 10 == 0) {
+                            controller.runCommand(session, new BookEventCommand(1 + random.nextInt(NUM_EVENTS), 1));
+                        } else {
+                            controller.runCommand(session, new ListEventsCommand(true, true, null));
+                        }
+                    }
+                }));
+            }
+            long startNanos = System.nanoTime();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+            System.out.printf("%d, %d, %.0f%n", numThreads, NUM_SESSIONS,
+                    (double) numThreads * COMMANDS_PER_THREAD * 1_000_000_000 / elapsedNanos);
+        }
+
+        for (Consumer consumer : consumers) {
+            for (Booking booking : consumer.getBookings()) {
+                assertSame(consumer, booking.getBooker());
+            }
+        }
+    }
+}
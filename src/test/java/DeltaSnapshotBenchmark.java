@@ -0,0 +1,120 @@
+import controller.Context;
+import controller.SnapshotChain;
+import model.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark for autosaves that change a small fraction of the app state, comparing a full snapshot per autosave with
+ * a delta of a {@link SnapshotChain}, as the number of bookings grows.
+ * Run with {@code gradle benchmark}; it is excluded from the normal test run.
+ */
+@Tag("benchmark")
+public class DeltaSnapshotBenchmark {
+    private static final int BOOKINGS_PER_CONSUMER = 10;
+    private static final int BOOKINGS_PER_EVENT = 100;
+    private static final int NUM_AUTOSAVES = 8;
+    // Share of the bookings made between two autosaves
+    private static final double CHANGED_FRACTION = 0.001;
+    // Hashing a password takes tens of milliseconds, so every consumer is restored with the same hash instead
+    private static final String PASSWORD_HASH = new Staff("hash@ed.ac.uk", "password").getPasswordHash();
+
+    private static Context createContext(int numBookings) {
+        Context context = new Context("The University of Edinburgh", "55.94747223411703 -3.187300017491497",
+                "epay@ed.ac.uk", "Nec temere nec timide");
+        LocalDateTime start = LocalDateTime.now().plusDays(2);
+        Event[] events = new Event[numBookings / BOOKINGS_PER_EVENT];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = context.getEventState().createEvent("Event " + i, EventType.Music, 2 * BOOKINGS_PER_EVENT,
+                    1500, "55.94368888764689 -3.1888246174917114", "Description of event " + i,
+                    start.plusHours(i), start.plusHours(i + 2), new EventTagCollection());
+        }
+        for (int i = 0; i < numBookings; i += BOOKINGS_PER_CONSUMER) {
+            Consumer consumer = Consumer.restore("Consumer " + i, "consumer" + i + "@dog.xd", "01324456897",
+                    "55.94872684464941 -3.199892044473183", PASSWORD_HASH, new EventTagCollection());
+            context.getUserState().addUser(consumer);
+            for (int j = i; j < i + BOOKINGS_PER_CONSUMER; j++) {
+                book(context, consumer, events[(int) ((j * 7919L) % events.length)]);
+            }
+        }
+        return context;
+    }
+
+    private static void book(Context context, Consumer consumer, Event event) {
+        consumer.addBooking(context.getBookingState().createBooking(consumer, event, 1));
+        event.setNumTicketsLeft(event.getNumTicketsLeft() - 1);
+    }
+
+    private static void makeBookings(Context context, int round) {
+        List<Event> events = context.getEventState().getAllEvents();
+        Consumer consumer = (Consumer) context.getUserState().getAllUsers().get("consumer0@dog.xd");
+        int numChanges = (int) (context.getBookingState().getAllBookings().size() * CHANGED_FRACTION);
+        for (int i = 0; i < numChanges; i++) {
+            book(context, consumer, events.get((int) (((round * 31L + i) * 104729L) % events.size())));
+        }
+    }
+
+    private static void deleteFiles(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void deltasCostWhatChanged() throws Exception {
+        System.out.println("bookings, full save ms, delta save ms, delta bytes, base + deltas load ms");
+        for (int numBookings : new int[]{10_000, 100_000, 1_000_000}) {
+            Path directory = Files.createTempDirectory("snapshots");
+            try {
+                Context full = createContext(numBookings);
+                // No deltas, so every save writes the whole app state
+                SnapshotChain fullChain = new SnapshotChain(directory.resolve("full.ser"), 0);
+                fullChain.track(full);
+                fullChain.save(full);
+                Context delta = createContext(numBookings);
+                SnapshotChain deltaChain = new SnapshotChain(directory.resolve("delta.ser"), NUM_AUTOSAVES);
+                deltaChain.track(delta);
+                deltaChain.save(delta);
+
+                long fullNanos = 0;
+                long deltaNanos = 0;
+                for (int round = 0; round < NUM_AUTOSAVES; round++) {
+                    makeBookings(full, round);
+                    long startNanos = System.nanoTime();
+                    fullChain.save(full);
+                    fullNanos += System.nanoTime() - startNanos;
+
+                    makeBookings(delta, round);
+                    startNanos = System.nanoTime();
+                    deltaChain.save(delta);
+                    deltaNanos += System.nanoTime() - startNanos;
+                }
+                assertEquals(NUM_AUTOSAVES, deltaChain.getNumDeltas());
+
+                long startNanos = System.nanoTime();
+                Context loaded = new SnapshotChain(directory.resolve("delta.ser")).load();
+                long loadNanos = System.nanoTime() - startNanos;
+                assertEquals(delta.getBookingState().getAllBookings().size(),
+                        loaded.getBookingState().getAllBookings().size());
+
+                System.out.printf("%d, %.1f, %.1f, %d, %.1f%n", numBookings, fullNanos / 1e6 / NUM_AUTOSAVES,
+                        deltaNanos / 1e6 / NUM_AUTOSAVES, Files.size(deltaChain.getDeltaFile(NUM_AUTOSAVES)),
+                        loadNanos / 1e6);
+            } finally {
+                deleteFiles(directory);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import model.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import state.EventState;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark for looking up events by number as the catalogue grows.
+ * Run with {@code gradle benchmark}; it is excluded from the normal test run.
+ */
+@Tag("benchmark")
+public class EventStateBenchmark {
+    private static final int LOOKUPS = 1_000_000;
+
+    @Test
+    void findEventByNumberIsConstantTime() {
+        EventTagCollection tags = new EventTagCollection("hasSocialDistancing=true,venueCapacity=200");
+        LocalDateTime start = LocalDateTime.now().plusDays(2);
+        System.out.println("events, ns per findEventByNumber");
+
+        for (int numEvents : new int[]{1_000, 10_000, 100_000, 200_000}) {
+            EventState eventState = new EventState();
+            for (int i = 0; i < numEvents; i++) {
+                eventState.createEvent("Event " + i, EventType.Music, 100, 0, "", "",
+                        start, start.plusHours(1), tags);
+            }
+
+            Random random = new Random(numEvents);
+            long checksum = 0;
+            long expected = 0;
+            // warm up, then measure
+            for (int round = 0; round < 2; round++) {
+                checksum = 0;
+                expected = 0;
+                long startNanos = System.nanoTime();
+                for (int i = 0; i < LOOKUPS; i++) {
+                    long eventNumber = 1 + random.nextInt(numEvents);
+                    checksum += eventState.findEventByNumber(eventNumber).getEventNumber();
+                    expected += eventNumber;
+                }
+                long elapsedNanos = System.nanoTime() - startNanos;
+                if (round == 1) {
+                    System.out.printf("%d, %.1f%n", numEvents, (double) elapsedNanos / LOOKUPS);
+                }
+            }
+            assertEquals(expected, checksum);
+        }
+    }
+}
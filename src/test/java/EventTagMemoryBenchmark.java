@@ -0,0 +1,82 @@
+import model.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import state.EventState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmark for the memory taken by event tags, comparing events that each own a parsed tag collection with events
+ * created through an event state, which share dictionary-encoded collections.
+ * Run with {@code gradle benchmark}; it is excluded from the normal test run.
+ */
+@Tag("benchmark")
+public class EventTagMemoryBenchmark {
+    private static final int NUM_EVENTS = 100_000;
+    private static final String[] TAG_STRINGS = new String[12];
+
+    static {
+        String[] capacities = {"<20", "20-100", "100-200", "200"};
+        for (int i = 0; i < TAG_STRINGS.length; i++) {
+            TAG_STRINGS[i] = "hasSocialDistancing=" + (i % 2 == 0) + ",hasAirFiltration=" + (i % 3 == 0)
+                    + ",venueCapacity=" + capacities[i % capacities.length];
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long serializedSize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.size();
+    }
+
+    @Test
+    void sharedTagCollectionsSaveMemory() throws IOException {
+        LocalDateTime start = LocalDateTime.now().plusDays(2);
+
+        long heapBefore = usedHeap();
+        List<Event> ownTags = new ArrayList<>(NUM_EVENTS);
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            ownTags.add(new Event(i + 1, "Event", EventType.Music, 100, 0, "", "", start, start.plusHours(1),
+                    new EventTagCollection(TAG_STRINGS[i % TAG_STRINGS.length])));
+        }
+        long ownTagsHeap = usedHeap() - heapBefore;
+        long ownTagsSerialized = serializedSize(ownTags);
+        ownTags = null;
+
+        heapBefore = usedHeap();
+        EventState eventState = new EventState();
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            eventState.createEvent("Event", EventType.Music, 100, 0, "", "", start, start.plusHours(1),
+                    new EventTagCollection(TAG_STRINGS[i % TAG_STRINGS.length]));
+        }
+        long sharedTagsHeap = usedHeap() - heapBefore;
+        long sharedTagsSerialized = serializedSize(new ArrayList<>(eventState.getAllEvents()));
+
+        System.out.println("bytes per event, own tag collections, shared tag collections, saving");
+        System.out.printf("heap, %d, %d, %d%n", ownTagsHeap / NUM_EVENTS, sharedTagsHeap / NUM_EVENTS,
+                (ownTagsHeap - sharedTagsHeap) / NUM_EVENTS);
+        System.out.printf("serialized, %d, %d, %d%n", ownTagsSerialized / NUM_EVENTS,
+                sharedTagsSerialized / NUM_EVENTS, (ownTagsSerialized - sharedTagsSerialized) / NUM_EVENTS);
+
+        assertEquals(NUM_EVENTS, eventState.getAllEvents().size());
+        assertTrue(sharedTagsSerialized < ownTagsSerialized);
+    }
+}
@@ -0,0 +1,127 @@
+import command.BookEventCommand;
+import command.CreateEventCommand;
+import command.RegisterStaffCommand;
+import controller.Context;
+import controller.Controller;
+import controller.Session;
+import external.PaymentSystem;
+import model.Consumer;
+import model.Event;
+import model.EventTagCollection;
+import model.EventType;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import view.IView;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark for the booking throughput of a single event when every payment takes a round trip to a slow payment
+ * provider, with bookings made from a growing number of concurrent sessions.
+ * Run with {@code gradle benchmark}; it is excluded from the normal test run.
+ */
+@Tag("benchmark")
+public class HotEventBookingBenchmark {
+    private static final long PAYMENT_LATENCY_MILLIS = 5;
+    private static final int BOOKINGS_PER_THREAD = 200;
+
+    private static final IView SILENT_VIEW = new IView() {
+        @Override
+        public void displayMainMenu() {
+        }
+
+        @Override
+        public void displayConsumerMenu() {
+        }
+
+        @Override
+        public void displayStaffMenu() {
+        }
+
+        @Override
+        public void displaySuccess(String callerName, Object result) {
+        }
+
+        @Override
+        public void displaySuccess(String callerName, Object result, Map<String, Object> additionalInfo) {
+        }
+
+        @Override
+        public void displayFailure(String callerName, Object result) {
+        }
+
+        @Override
+        public void displayFailure(String callerName, Object result, Map<String, Object> additionalInfo) {
+        }
+    };
+
+    private static final PaymentSystem SLOW_PAYMENT_SYSTEM = new PaymentSystem() {
+        @Override
+        public boolean processPayment(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount) {
+            try {
+                Thread.sleep(PAYMENT_LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean processRefund(String buyerAccountEmail, String sellerAccountEmail, double transactionAmount) {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Test
+    void bookOneEventWithSlowPayments() throws InterruptedException {
+        System.out.println("threads, bookings per second");
+        for (int numThreads : new int[]{1, 4, 16, 64}) {
+            Context context = new Context("The University of Edinburgh", "", "epay@ed.ac.uk",
+                    "Nec temere nec timide", SLOW_PAYMENT_SYSTEM);
+            Controller controller = new Controller(context, SILENT_VIEW);
+            Session staffSession = controller.openSession();
+            controller.runCommand(staffSession, new RegisterStaffCommand("staff@ed.ac.uk", "password",
+                    "Nec temere nec timide"));
+            CreateEventCommand createEventCmd = new CreateEventCommand("Hot event", EventType.Music,
+                    numThreads * BOOKINGS_PER_THREAD, 1000, "", "", LocalDateTime.now().plusDays(2),
+                    LocalDateTime.now().plusDays(2).plusHours(1), new EventTagCollection());
+            controller.runCommand(staffSession, createEventCmd);
+            Event event = createEventCmd.getResult();
+
+            Consumer consumer = new Consumer("Consumer", "consumer@mail.com", "000", "", "password");
+            context.getUserState().addUser(consumer);
+            List<Thread> threads = new ArrayList<>(numThreads);
+            for (int t = 0; t < numThreads; t++) {
+                Session session = controller.openSession();
+                session.setCurrentUser(consumer);
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < BOOKINGS_PER_THREAD; i++) {
+                        controller.runCommand(session, new BookEventCommand(event.getEventNumber(), 1));
+                    }
+                }));
+            }
+            long startNanos = System.nanoTime();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+            System.out.printf("%d, %.0f%n", numThreads,
+                    (double) numThreads * BOOKINGS_PER_THREAD * 1_000_000_000 / elapsedNanos);
+
+            assertEquals(0, event.getNumTicketsLeft());
+            assertEquals(numThreads * BOOKINGS_PER_THREAD, consumer.getBookings().size());
+        }
+    }
+}
@@ -3,7 +3,12 @@ import controller.Context;
 import controller.Controller;
 import model.*;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.Month;
 import java.util.Set;
@@ -122,4 +127,28 @@ public class LoadAppStateSystemTests extends ConsoleTest {
         controller.runCommand(new LoadAppStateCommand("LoadTest.ser"));
         stopOutputCaptureAndCompare("LOAD_APP_STATE_SUCCESS");
     }
+
+    //Test to load a state saved by Java serialization, as older versions did
+    @Test
+    void loadJavaSerializedSaveSuccess(@TempDir Path directory) throws IOException {
+        Context context = new Context(
+                "The University of Edinburgh",
+                "55.94747223411703 -3.187300017491497", // Old College, South Bridge, Edinburgh
+                "epay@ed.ac.uk",
+                "Nec temere nec timide"
+        );
+        Event event = context.getEventState().createEvent("HueHueHue", EventType.Theatre, 1,0,"55.94368888764689 -3.1888246174917114", "Bleh", LocalDateTime.now().plusHours(1), LocalDateTime.now().plusHours(2),new EventTagCollection("hasSocialDistancing=true,venueCapacity=200"));
+        Consumer consumer = new Consumer("Chihuahua Fan", CONSUMER_EMAIL, "01324456897", "55.94872684464941 -3.199892044473183", CONSUMER_PASSWORD);
+        context.getUserState().addUser(consumer);
+        consumer.addBooking(context.getBookingState().createBooking(consumer,event,1));
+        Path file = directory.resolve("JavaSerialized.ser");
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file.toFile()))) {
+            out.writeObject(context);
+        }
+        Controller controller = createController();
+        createStaff(controller);
+        startOutputCapture();
+        controller.runCommand(new LoadAppStateCommand(file.toString()));
+        stopOutputCaptureAndCompare("LOAD_APP_STATE_SUCCESS");
+    }
 }
@@ -0,0 +1,122 @@
+import command.BookEventCommand;
+import command.CreateEventCommand;
+import command.RegisterStaffCommand;
+import controller.Context;
+import controller.Controller;
+import controller.Session;
+import external.BatchingPaymentSystem;
+import external.MockPaymentSystem;
+import external.SimulatedPaymentProvider;
+import model.Consumer;
+import model.Event;
+import model.EventTagCollection;
+import model.EventType;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import view.IView;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark for the booking throughput of a single event when payments go through one connection to a payment provider
+ * with a fixed round-trip latency, comparing sending the payments one at a time with sending them in micro-batches.
+ * Run with {@code gradle benchmark}; it is excluded from the normal test run.
+ */
+@Tag("benchmark")
+public class PaymentPipelineBenchmark {
+    private static final Duration ROUND_TRIP_LATENCY = Duration.ofMillis(5);
+    private static final int BOOKINGS_PER_THREAD = 50;
+
+    private static final IView SILENT_VIEW = new IView() {
+        @Override
+        public void displayMainMenu() {
+        }
+
+        @Override
+        public void displayConsumerMenu() {
+        }
+
+        @Override
+        public void displayStaffMenu() {
+        }
+
+        @Override
+        public void displaySuccess(String callerName, Object result) {
+        }
+
+        @Override
+        public void displaySuccess(String callerName, Object result, Map<String, Object> additionalInfo) {
+        }
+
+        @Override
+        public void displayFailure(String callerName, Object result) {
+        }
+
+        @Override
+        public void displayFailure(String callerName, Object result, Map<String, Object> additionalInfo) {
+        }
+    };
+
+    @Test
+    void bookOneEventThroughPaymentPipeline() throws Exception {
+        System.out.println("threads, one-at-a-time bookings per second, batched bookings per second, "
+                + "one-at-a-time round trips, batched round trips");
+        for (int numThreads : new int[]{1, 4, 16, 64}) {
+            SimulatedPaymentProvider singleProvider = new SimulatedPaymentProvider(ROUND_TRIP_LATENCY,
+                    new MockPaymentSystem(false));
+            double singleRate = bookingsPerSecond(new BatchingPaymentSystem(singleProvider, 1, Duration.ZERO),
+                    numThreads);
+            SimulatedPaymentProvider batchProvider = new SimulatedPaymentProvider(ROUND_TRIP_LATENCY,
+                    new MockPaymentSystem(false));
+            double batchRate = bookingsPerSecond(new BatchingPaymentSystem(batchProvider), numThreads);
+            System.out.printf("%d, %.0f, %.0f, %d, %d%n", numThreads, singleRate, batchRate,
+                    singleProvider.getNumRoundTrips(), batchProvider.getNumRoundTrips());
+        }
+    }
+
+    private static double bookingsPerSecond(BatchingPaymentSystem paymentSystem, int numThreads) throws Exception {
+        Context context = new Context("The University of Edinburgh", "", "epay@ed.ac.uk", "Nec temere nec timide",
+                paymentSystem);
+        Controller controller = new Controller(context, SILENT_VIEW);
+        Session staffSession = controller.openSession();
+        controller.runCommand(staffSession, new RegisterStaffCommand("staff@ed.ac.uk", "password",
+                "Nec temere nec timide"));
+        CreateEventCommand createEventCmd = new CreateEventCommand("Hot event", EventType.Music,
+                numThreads * BOOKINGS_PER_THREAD, 1000, "", "", LocalDateTime.now().plusDays(2),
+                LocalDateTime.now().plusDays(2).plusHours(1), new EventTagCollection());
+        controller.runCommand(staffSession, createEventCmd);
+        Event event = createEventCmd.getResult();
+
+        Consumer consumer = new Consumer("Consumer", "consumer@mail.com", "000", "", "password");
+        context.getUserState().addUser(consumer);
+        List<Thread> threads = new ArrayList<>(numThreads);
+        for (int t = 0; t < numThreads; t++) {
+            Session session = controller.openSession();
+            session.setCurrentUser(consumer);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < BOOKINGS_PER_THREAD; i++) {
+                    controller.runCommand(session, new BookEventCommand(event.getEventNumber(), 1));
+                }
+            }));
+        }
+        long startNanos = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        context.close();
+
+        assertEquals(0, event.getNumTicketsLeft());
+        assertEquals(numThreads * BOOKINGS_PER_THREAD, consumer.getBookings().size());
+        return (double) numThreads * BOOKINGS_PER_THREAD * 1_000_000_000 / elapsedNanos;
+    }
+}
@@ -0,0 +1,245 @@
+import command.*;
+import controller.Context;
+import controller.Controller;
+import controller.Session;
+import external.PaymentSystem;
+import model.*;
+import org.junit.jupiter.api.Test;
+import view.IView;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionSystemTests extends ConsoleTest {
+    @Test
+    void sessionsHaveTheirOwnLoggedInUsers() {
+        Controller controller = createController();
+        Session staffSession = controller.openSession();
+        Session consumerSession = controller.openSession();
+
+        controller.runCommand(staffSession, new RegisterStaffCommand(STAFF_EMAIL, STAFF_PASSWORD,
+                "Nec temere nec timide"));
+        controller.runCommand(consumerSession, new RegisterConsumerCommand("Chihuahua Fan", "chihuahua@fan.org",
+                "01324456897", "", "I like dogs"));
+        assertTrue(staffSession.getCurrentUser() instanceof Staff);
+        assertTrue(consumerSession.getCurrentUser() instanceof Consumer);
+
+        CreateEventCommand createEventCmd = new CreateEventCommand("Puppies against depression", EventType.Theatre,
+                10, 0, "", "", LocalDateTime.now().plusHours(8), LocalDateTime.now().plusHours(9),
+                new EventTagCollection());
+        controller.runCommand(consumerSession, createEventCmd);
+        assertNull(createEventCmd.getResult());
+        controller.runCommand(staffSession, createEventCmd);
+        Event event = createEventCmd.getResult();
+        assertNotNull(event);
+
+        controller.runCommand(staffSession, new LogoutCommand());
+        assertNull(staffSession.getCurrentUser());
+
+        BookEventCommand bookEventCmd = new BookEventCommand(event.getEventNumber(), 2);
+        controller.runCommand(consumerSession, bookEventCmd);
+        assertNotNull(bookEventCmd.getResult());
+        assertEquals(consumerSession.getCurrentUser(), bookEventCmd.getResult().getBooker());
+    }
+
+    @Test
+    void sessionsCanRunCommandsConcurrently() throws InterruptedException {
+        Controller controller = createController();
+        Session staffSession = controller.openSession();
+        controller.runCommand(staffSession, new RegisterStaffCommand(STAFF_EMAIL, STAFF_PASSWORD,
+                "Nec temere nec timide"));
+        CreateEventCommand createEventCmd = new CreateEventCommand("Puppies against depression", EventType.Theatre,
+                1000, 0, "", "", LocalDateTime.now().plusHours(8), LocalDateTime.now().plusHours(9),
+                new EventTagCollection());
+        controller.runCommand(staffSession, createEventCmd);
+        long eventNumber = createEventCmd.getResult().getEventNumber();
+
+        List<Thread> threads = new ArrayList<>();
+        List<Session> sessions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Session session = controller.openSession();
+            sessions.add(session);
+            String email = "consumer" + i + "@fan.org";
+            threads.add(new Thread(() -> {
+                controller.runCommand(session, new RegisterConsumerCommand("Fan", email, "000", "", "password"));
+                for (int j = 0; j < 10; j++) {
+                    controller.runCommand(session, new BookEventCommand(eventNumber, 1));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < sessions.size(); i++) {
+            Consumer consumer = (Consumer) sessions.get(i).getCurrentUser();
+            assertEquals("consumer" + i + "@fan.org", consumer.getEmail());
+            assertEquals(10, consumer.getBookings().size());
+        }
+        assertEquals(800, createEventCmd.getResult().getNumTicketsLeft());
+    }
+
+    @Test
+    void paymentsDoNotHoldUpOtherSessions() throws InterruptedException {
+        CountDownLatch firstPaymentStarted = new CountDownLatch(1);
+        CountDownLatch otherBookingsDone = new CountDownLatch(1);
+        PaymentSystem paymentSystem = new PaymentSystem() {
+            private final AtomicBoolean first = new AtomicBoolean(true);
+
+            @Override
+            public boolean processPayment(String buyerAccountEmail, String sellerAccountEmail,
+                                          double transactionAmount) {
+                if (first.getAndSet(false)) {
+                    firstPaymentStarted.countDown();
+                    try {
+                        return otherBookingsDone.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public boolean processRefund(String buyerAccountEmail, String sellerAccountEmail,
+                                         double transactionAmount) {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Controller controller = new Controller(new Context("The University of Edinburgh", "", "epay@ed.ac.uk",
+                "Nec temere nec timide", paymentSystem), new TestView());
+        Session staffSession = controller.openSession();
+        controller.runCommand(staffSession, new RegisterStaffCommand(STAFF_EMAIL, STAFF_PASSWORD,
+                "Nec temere nec timide"));
+        CreateEventCommand createEventCmd = new CreateEventCommand("Puppies against depression", EventType.Theatre,
+                2, 250, "", "", LocalDateTime.now().plusHours(8), LocalDateTime.now().plusHours(9),
+                new EventTagCollection());
+        controller.runCommand(staffSession, createEventCmd);
+        Event event = createEventCmd.getResult();
+
+        Session slowSession = controller.openSession();
+        controller.runCommand(slowSession, new RegisterConsumerCommand("Slow Fan", "slow@fan.org", "000", "",
+                "password"));
+        BookEventCommand slowBookCmd = new BookEventCommand(event.getEventNumber(), 1);
+        Thread slowBooking = new Thread(() -> controller.runCommand(slowSession, slowBookCmd));
+        slowBooking.start();
+        assertTrue(firstPaymentStarted.await(10, TimeUnit.SECONDS));
+
+        // The slow payment is still in progress, but other sessions can book, just not the ticket it holds
+        Session fastSession = controller.openSession();
+        controller.runCommand(fastSession, new RegisterConsumerCommand("Fast Fan", "fast@fan.org", "000", "",
+                "password"));
+        BookEventCommand fastBookCmd = new BookEventCommand(event.getEventNumber(), 1);
+        controller.runCommand(fastSession, fastBookCmd);
+        BookEventCommand overBookCmd = new BookEventCommand(event.getEventNumber(), 1);
+        controller.runCommand(fastSession, overBookCmd);
+        assertNotNull(fastBookCmd.getResult());
+        assertNull(overBookCmd.getResult());
+        assertEquals(1, event.getNumTicketsReserved());
+        otherBookingsDone.countDown();
+
+        slowBooking.join();
+        assertNotNull(slowBookCmd.getResult());
+        assertEquals(0, event.getNumTicketsLeft());
+        assertEquals(0, event.getNumTicketsReserved());
+    }
+
+    @Test
+    void listingsDoNotWaitForOtherCommands() throws InterruptedException {
+        Controller controller = createController();
+        Session staffSession = controller.openSession();
+        controller.runCommand(staffSession, new RegisterStaffCommand(STAFF_EMAIL, STAFF_PASSWORD,
+                "Nec temere nec timide"));
+        CreateEventCommand createEventCmd = new CreateEventCommand("Puppies against depression", EventType.Theatre,
+                1000, 0, "", "", LocalDateTime.now().plusHours(8), LocalDateTime.now().plusHours(9),
+                new EventTagCollection());
+        controller.runCommand(staffSession, createEventCmd);
+        Event event = createEventCmd.getResult();
+
+        // Keep the command lock taken, as a long-running command would
+        CountDownLatch lockTaken = new CountDownLatch(1);
+        CountDownLatch listingsDone = new CountDownLatch(1);
+        Thread blocking = new Thread(() -> controller.runCommand(controller.openSession(), new ICommand<Void>() {
+            @Override
+            public void execute(Context context, IView view) {
+                lockTaken.countDown();
+                try {
+                    listingsDone.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public Void getResult() {
+                return null;
+            }
+        }));
+        blocking.start();
+        assertTrue(lockTaken.await(10, TimeUnit.SECONDS));
+
+        ListEventsCommand listEventsCmd = new ListEventsCommand(false, false, null);
+        controller.runCommand(staffSession, listEventsCmd);
+        ListEventBookingsCommand listBookingsCmd = new ListEventBookingsCommand(event.getEventNumber());
+        controller.runCommand(staffSession, listBookingsCmd);
+        listingsDone.countDown();
+        blocking.join();
+        assertEquals(List.of(event), listEventsCmd.getResult());
+        assertEquals(List.of(), listBookingsCmd.getResult());
+    }
+
+    @Test
+    void listingsSeeConsistentStateWhileBookingsGoOn() throws InterruptedException {
+        Controller controller = createController();
+        Session staffSession = controller.openSession();
+        controller.runCommand(staffSession, new RegisterStaffCommand(STAFF_EMAIL, STAFF_PASSWORD,
+                "Nec temere nec timide"));
+        CreateEventCommand createEventCmd = new CreateEventCommand("Puppies against depression", EventType.Theatre,
+                1000, 0, "", "", LocalDateTime.now().plusHours(8), LocalDateTime.now().plusHours(9),
+                new EventTagCollection());
+        controller.runCommand(staffSession, createEventCmd);
+        long eventNumber = createEventCmd.getResult().getEventNumber();
+
+        Session consumerSession = controller.openSession();
+        controller.runCommand(consumerSession, new RegisterConsumerCommand("Fan", "fan@fan.org", "000", "",
+                "password"));
+        Thread booking = new Thread(() -> {
+            for (int i = 0; i < 200; i++) {
+                controller.runCommand(consumerSession, new BookEventCommand(eventNumber, 1));
+            }
+        });
+        booking.start();
+
+        // Every listing reads a snapshot that no booking changes while it is iterated
+        Session readerSession = controller.openSession();
+        int previousNumBookings = 0;
+        while (booking.isAlive()) {
+            ListEventBookingsCommand listBookingsCmd = new ListEventBookingsCommand(eventNumber);
+            controller.runCommand(staffSession, listBookingsCmd);
+            int numBookings = listBookingsCmd.getResult().size();
+            assertTrue(numBookings >= previousNumBookings);
+            previousNumBookings = numBookings;
+            ListEventsCommand listEventsCmd = new ListEventsCommand(false, false, null);
+            controller.runCommand(readerSession, listEventsCmd);
+            assertEquals(1, listEventsCmd.getResult().size());
+        }
+        booking.join();
+
+        ListConsumerBookingsCommand listConsumerBookingsCmd = new ListConsumerBookingsCommand();
+        controller.runCommand(consumerSession, listConsumerBookingsCmd);
+        assertEquals(200, listConsumerBookingsCmd.getResult().size());
+    }
+}
@@ -0,0 +1,141 @@
+import controller.BinarySnapshot;
+import controller.Context;
+import model.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark for saving and loading the app state in the binary snapshot format, compared with Java serialization,
+ * as the number of bookings grows.
+ * Run with {@code gradle benchmark}; it is excluded from the normal test run.
+ */
+@Tag("benchmark")
+public class SnapshotFormatBenchmark {
+    private static final int BOOKINGS_PER_CONSUMER = 10;
+    private static final int BOOKINGS_PER_EVENT = 100;
+    // Hashing a password takes tens of milliseconds, so every consumer is restored with the same hash instead
+    private static final String PASSWORD_HASH = new Staff("hash@ed.ac.uk", "password").getPasswordHash();
+
+    private static Context createContext(int numBookings) {
+        Context context = new Context("The University of Edinburgh", "55.94747223411703 -3.187300017491497",
+                "epay@ed.ac.uk", "Nec temere nec timide");
+        EventTagCollection tags = new EventTagCollection("hasSocialDistancing=true,venueCapacity=200");
+        LocalDateTime start = LocalDateTime.now().plusDays(2);
+        Event[] events = new Event[numBookings / BOOKINGS_PER_EVENT];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = context.getEventState().createEvent("Event " + i, EventType.Music, BOOKINGS_PER_EVENT, 1500,
+                    "55.94368888764689 -3.1888246174917114", "Description of event " + i,
+                    start.plusHours(i), start.plusHours(i + 2), tags);
+        }
+        Consumer consumer = null;
+        for (int i = 0; i < numBookings; i++) {
+            if (i % BOOKINGS_PER_CONSUMER == 0) {
+                consumer = Consumer.restore("Consumer " + i, "consumer" + i + "@dog.xd", "01324456897",
+                        "55.94872684464941 -3.199892044473183", PASSWORD_HASH, new EventTagCollection());
+                context.getUserState().addUser(consumer);
+            }
+            // Spread each consumer's bookings over different events
+            Event event = events[(int) ((i * 7919L) % events.length)];
+            Booking booking = context.getBookingState().createBooking(consumer, event, 1);
+            consumer.addBooking(booking);
+        }
+        return context;
+    }
+
+    private static byte[] saveBinary(Context context) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new BufferedOutputStream(bytes)) {
+            BinarySnapshot.write(context, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] saveSerialized(Context context) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(bytes))) {
+            out.writeObject(context);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Context loadSerialized(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Context) in.readObject();
+        }
+    }
+
+    @Test
+    void binarySnapshotsAreSmallerAndFaster() throws Exception {
+        System.out.println("bookings, format, save ms, load ms, bytes");
+        for (int numBookings : new int[]{10_000, 100_000, 1_000_000}) {
+            Context context = createContext(numBookings);
+            // warm up, then measure
+            for (int round = 0; round < 2; round++) {
+                long startNanos = System.nanoTime();
+                byte[] binary = saveBinary(context);
+                long binarySaveNanos = System.nanoTime() - startNanos;
+                startNanos = System.nanoTime();
+                Context fromBinary = BinarySnapshot.read(ByteBuffer.wrap(binary));
+                long binaryLoadNanos = System.nanoTime() - startNanos;
+                assertEquals(numBookings, fromBinary.getBookingState().getAllBookings().size());
+
+                startNanos = System.nanoTime();
+                byte[] serialized = saveSerialized(context);
+                long serializedSaveNanos = System.nanoTime() - startNanos;
+                startNanos = System.nanoTime();
+                Context fromSerialized = loadSerialized(serialized);
+                long serializedLoadNanos = System.nanoTime() - startNanos;
+                assertEquals(numBookings, fromSerialized.getBookingState().getAllBookings().size());
+
+                if (round == 1) {
+                    System.out.printf("%d, binary, %.1f, %.1f, %d%n", numBookings, binarySaveNanos / 1e6,
+                            binaryLoadNanos / 1e6, binary.length);
+                    System.out.printf("%d, java, %.1f, %.1f, %d%n", numBookings, serializedSaveNanos / 1e6,
+                            serializedLoadNanos / 1e6, serialized.length);
+                }
+            }
+        }
+    }
+
+    @Test
+    void mappedSnapshotsLoadWithoutCopyingTheFile() throws Exception {
+        System.out.println("bookings, read into heap ms, mapped ms");
+        for (int numBookings : new int[]{10_000, 100_000, 1_000_000}) {
+            Path file = Files.createTempFile("snapshot", ".ser");
+            try {
+                Files.write(file, saveBinary(createContext(numBookings)));
+                // warm up, then measure
+                for (int round = 0; round < 2; round++) {
+                    long startNanos = System.nanoTime();
+                    Context fromHeap = BinarySnapshot.read(ByteBuffer.wrap(Files.readAllBytes(file)));
+                    long heapNanos = System.nanoTime() - startNanos;
+                    assertEquals(numBookings, fromHeap.getBookingState().getAllBookings().size());
+
+                    startNanos = System.nanoTime();
+                    Context mapped;
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        mapped = BinarySnapshot.read(channel);
+                    }
+                    long mappedNanos = System.nanoTime() - startNanos;
+                    assertEquals(numBookings, mapped.getBookingState().getAllBookings().size());
+
+                    if (round == 1) {
+                        System.out.printf("%d, %.1f, %.1f%n", numBookings, heapNanos / 1e6, mappedNanos / 1e6);
+                    }
+                }
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+}
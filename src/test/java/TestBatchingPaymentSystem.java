@@ -0,0 +1,113 @@
+import external.BatchPaymentProvider;
+import external.BatchingPaymentSystem;
+import external.MockPaymentSystem;
+import external.SimulatedPaymentProvider;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the BatchingPaymentSystem class
+ */
+public class TestBatchingPaymentSystem {
+    @Test
+    void paymentsQueuedDuringARoundTripShareTheNext() throws Exception {
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch firstBatchReleased = new CountDownLatch(1);
+        List<Integer> batchSizes = new ArrayList<>();
+        BatchPaymentProvider provider = requests -> {
+            synchronized (batchSizes) {
+                batchSizes.add(requests.size());
+            }
+            firstBatchStarted.countDown();
+            try {
+                firstBatchReleased.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<Boolean> results = new ArrayList<>();
+            requests.forEach(request -> results.add(true));
+            return results;
+        };
+        BatchingPaymentSystem paymentSystem = new BatchingPaymentSystem(provider);
+
+        CompletableFuture<Boolean> first = paymentSystem.submitPayment("fan@fan.org", "epay@ed.ac.uk", 500);
+        assertTrue(firstBatchStarted.await(10, TimeUnit.SECONDS));
+        List<CompletableFuture<Boolean>> others = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            others.add(paymentSystem.submitPayment("fan" + i + "@fan.org", "epay@ed.ac.uk", 500));
+        }
+        firstBatchReleased.countDown();
+
+        assertTrue(first.get(10, TimeUnit.SECONDS));
+        for (CompletableFuture<Boolean> other : others) {
+            assertTrue(other.get(10, TimeUnit.SECONDS));
+        }
+        paymentSystem.close();
+        assertEquals(List.of(1, 10), batchSizes);
+    }
+
+    @Test
+    void resultsAreMatchedToTheirRequests() throws Exception {
+        SimulatedPaymentProvider provider = new SimulatedPaymentProvider(Duration.ZERO, new MockPaymentSystem(false));
+        BatchingPaymentSystem paymentSystem = new BatchingPaymentSystem(provider);
+
+        assertTrue(paymentSystem.processPayment("fan@fan.org", "epay@ed.ac.uk", 500));
+        CompletableFuture<Boolean> refunded = paymentSystem.submitRefund("fan@fan.org", "epay@ed.ac.uk", 500);
+        CompletableFuture<Boolean> notPaid = paymentSystem.submitRefund("fan@fan.org", "epay@ed.ac.uk", 700);
+        assertTrue(refunded.get(10, TimeUnit.SECONDS));
+        assertFalse(notPaid.get(10, TimeUnit.SECONDS));
+        paymentSystem.close();
+    }
+
+    @Test
+    void combinedPaymentIsRefundedItemByItem() throws Exception {
+        SimulatedPaymentProvider provider = new SimulatedPaymentProvider(Duration.ZERO, new MockPaymentSystem(false));
+        BatchingPaymentSystem paymentSystem = new BatchingPaymentSystem(provider);
+
+        assertTrue(paymentSystem.processPayment("fan@fan.org", "epay@ed.ac.uk", List.of(500.0, 250.0)));
+        assertFalse(paymentSystem.processRefund("fan@fan.org", "epay@ed.ac.uk", 750));
+        assertFalse(paymentSystem.processRefund("fan@fan.org", "epay@ed.ac.uk", 100));
+        assertTrue(paymentSystem.processRefund("fan@fan.org", "epay@ed.ac.uk", 250));
+        assertTrue(paymentSystem.processRefund("fan@fan.org", "epay@ed.ac.uk", 500));
+        assertFalse(paymentSystem.processRefund("fan@fan.org", "epay@ed.ac.uk", 500));
+        paymentSystem.close();
+    }
+
+    @Test
+    void unreachableProviderFailsTheWholeBatch() throws Exception {
+        BatchingPaymentSystem paymentSystem = new BatchingPaymentSystem(requests -> {
+            throw new IllegalStateException("Provider unreachable");
+        });
+
+        assertFalse(paymentSystem.processPayment("fan@fan.org", "epay@ed.ac.uk", 500));
+        assertFalse(paymentSystem.processRefund("fan@fan.org", "epay@ed.ac.uk", 500));
+        paymentSystem.close();
+    }
+
+    @Test
+    void closeWaitsForSubmittedRequestsAndFailsLaterOnes() throws Exception {
+        SimulatedPaymentProvider provider = new SimulatedPaymentProvider(Duration.ofMillis(20),
+                new MockPaymentSystem(false));
+        BatchingPaymentSystem paymentSystem = new BatchingPaymentSystem(provider, 2, Duration.ZERO);
+        List<CompletableFuture<Boolean>> submitted = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            submitted.add(paymentSystem.submitPayment("fan@fan.org", "epay@ed.ac.uk", 500));
+        }
+        paymentSystem.close();
+
+        for (CompletableFuture<Boolean> payment : submitted) {
+            assertTrue(payment.isDone());
+            assertTrue(payment.get());
+        }
+        assertTrue(provider.getNumRoundTrips() >= 3);
+        assertFalse(paymentSystem.processPayment("fan@fan.org", "epay@ed.ac.uk", 500));
+    }
+}
@@ -0,0 +1,191 @@
+import controller.BinarySnapshot;
+import controller.Context;
+import model.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the BinarySnapshot class
+ */
+public class TestBinarySnapshot {
+    private static Context createContext() {
+        Context context = new Context("The University of Edinburgh", "55.94747223411703 -3.187300017491497",
+                "epay@ed.ac.uk", "Nec temere nec timide");
+        context.getEventState().createEventTag("hasGreg", Set.of("yes", "no"), "no");
+        context.getUserState().addUser(new Staff("staff@ed.ac.uk", "staff password"));
+        Consumer fan = new Consumer("Chihuahua Fan", "fan@dog.xd", "01324456897",
+                "55.94872684464941 -3.199892044473183", "fan password");
+        fan.setPreferences(new EventTagCollection("hasSocialDistancing=true,hasGreg=yes"));
+        context.getUserState().addUser(fan);
+
+        Event past = context.getEventState().createEvent("Puppy Show", EventType.Theatre, 10, 1500,
+                "55.94368888764689 -3.1888246174917114", "Puppies on stage", LocalDateTime.now().minusDays(2),
+                LocalDateTime.now().minusDays(1), new EventTagCollection("hasGreg=yes"));
+        Event cancelled = context.getEventState().createEvent("Dog Walk", EventType.Sports, 50, 0,
+                "", "A long walk", LocalDateTime.now().plusDays(1), LocalDateTime.now().plusDays(2),
+                new EventTagCollection());
+        Booking attended = context.getBookingState().createBooking(fan, past, 2);
+        fan.addBooking(attended);
+        past.setNumTicketsLeft(8);
+        past.addReview(new Review(fan, past, LocalDateTime.now(), "Wonderful puppies"));
+        Booking refunded = context.getBookingState().createBooking(fan, cancelled, 1);
+        fan.addBooking(refunded);
+        context.getEventState().cancelEvent(cancelled);
+        refunded.cancelByProvider();
+        refunded.setRefundStatus(RefundStatus.Refunded);
+        return context;
+    }
+
+    private static byte[] write(Context context) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinarySnapshot.write(context, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void roundTripRestoresTheAppState() throws IOException {
+        Context original = createContext();
+        Context restored = BinarySnapshot.read(ByteBuffer.wrap(write(original)));
+
+        assertEquals(original.getOrgName(), restored.getOrgName());
+        assertEquals(original.getOrgAddress(), restored.getOrgAddress());
+        assertEquals(original.getOrgEmail(), restored.getOrgEmail());
+        assertEquals(original.getOrgSecret(), restored.getOrgSecret());
+        assertEquals(original.getEventState().getPossibleTags().keySet(),
+                restored.getEventState().getPossibleTags().keySet());
+        assertEquals(Set.of("yes", "no"), restored.getEventState().getPossibleTags().get("hasGreg").values);
+
+        assertTrue(restored.getUserState().getAllUsers().get("staff@ed.ac.uk").checkPasswordMatch("staff password"));
+        Consumer fan = (Consumer) restored.getUserState().getAllUsers().get("fan@dog.xd");
+        assertEquals(original.getUserState().getAllUsers().get("fan@dog.xd"), fan);
+        assertTrue(fan.checkPasswordMatch("fan password"));
+        assertEquals("yes", fan.getPreferences().getValueFor("hasGreg"));
+
+        List<Event> originalEvents = original.getEventState().getAllEvents();
+        List<Event> restoredEvents = restored.getEventState().getAllEvents();
+        assertEquals(originalEvents.size(), restoredEvents.size());
+        for (int i = 0; i < originalEvents.size(); i++) {
+            Event expected = originalEvents.get(i);
+            Event actual = restoredEvents.get(i);
+            assertEquals(expected.getEventNumber(), actual.getEventNumber());
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getType(), actual.getType());
+            assertEquals(expected.getNumTicketsCap(), actual.getNumTicketsCap());
+            assertEquals(expected.getNumTicketsLeft(), actual.getNumTicketsLeft());
+            assertEquals(expected.getTicketPriceInPence(), actual.getTicketPriceInPence());
+            assertEquals(expected.getVenueAddress(), actual.getVenueAddress());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getStartDateTime(), actual.getStartDateTime());
+            assertEquals(expected.getEndDateTime(), actual.getEndDateTime());
+            assertEquals(expected.getTags(), actual.getTags());
+            assertEquals(expected.getStatus(), actual.getStatus());
+            assertEquals(expected.getReviews().size(), actual.getReviews().size());
+        }
+        Review review = restoredEvents.get(0).getReviews().get(0);
+        assertSame(fan, review.getAuthor());
+        assertSame(restoredEvents.get(0), review.getEvent());
+        assertEquals(originalEvents.get(0).getReviews().get(0).getCreationDateTime(), review.getCreationDateTime());
+        assertEquals(EventStatus.CANCELLED, restoredEvents.get(1).getStatus());
+
+        List<Booking> originalBookings = original.getBookingState().getAllBookings();
+        List<Booking> restoredBookings = restored.getBookingState().getAllBookings();
+        assertEquals(originalBookings.size(), restoredBookings.size());
+        for (int i = 0; i < originalBookings.size(); i++) {
+            Booking expected = originalBookings.get(i);
+            Booking actual = restoredBookings.get(i);
+            assertEquals(expected.getBookingNumber(), actual.getBookingNumber());
+            assertEquals(expected.getNumTickets(), actual.getNumTickets());
+            assertEquals(expected.getBookingDateTime(), actual.getBookingDateTime());
+            assertEquals(expected.getStatus(), actual.getStatus());
+        }
+        assertEquals(restoredBookings, fan.getBookings());
+        assertSame(restoredEvents.get(0), restoredBookings.get(0).getEvent());
+        assertSame(fan, restoredBookings.get(0).getBooker());
+        assertEquals(BookingStatus.CancelledByProvider, restoredBookings.get(1).getStatus());
+        assertNull(restoredBookings.get(0).getRefundStatus());
+        assertEquals(RefundStatus.Refunded, restoredBookings.get(1).getRefundStatus());
+        // A restored context has no external systems of its own to close
+        assertDoesNotThrow(restored::close);
+    }
+
+    @Test
+    void restoredStatesCarryOnNumbering() throws IOException {
+        Context original = createContext();
+        Context restored = BinarySnapshot.read(ByteBuffer.wrap(write(original)));
+
+        Event event = restored.getEventState().createEvent("Cat Show", EventType.Theatre, 5, 0, "", "",
+                LocalDateTime.now().plusDays(3), LocalDateTime.now().plusDays(4), new EventTagCollection());
+        Consumer fan = (Consumer) restored.getUserState().getAllUsers().get("fan@dog.xd");
+        Booking booking = restored.getBookingState().createBooking(fan, event, 1);
+
+        assertEquals(original.getEventState().getAllEvents().size() + 1, event.getEventNumber());
+        assertEquals(original.getBookingState().getAllBookings().size() + 1, booking.getBookingNumber());
+        assertSame(event, restored.getEventState().findEventByNumber(event.getEventNumber()));
+    }
+
+    @Test
+    void mappedFileIsReadAcrossWindows() throws IOException {
+        Context original = createContext();
+        Path file = Files.createTempFile("snapshot", ".ser");
+        try {
+            Files.write(file, write(original));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                assertTrue(BinarySnapshot.isBinarySnapshot(channel));
+                assertEquals(0, channel.position());
+                // Windows of a few bytes split numbers and strings between them
+                for (int mapWindowSize : new int[]{1, 7, BinarySnapshot.DEFAULT_MAP_WINDOW_SIZE}) {
+                    Context restored = BinarySnapshot.read(channel, mapWindowSize);
+                    assertEquals(original.getOrgName(), restored.getOrgName());
+                    assertEquals(original.getUserState().getAllUsers().keySet(),
+                            restored.getUserState().getAllUsers().keySet());
+                    assertEquals(original.getEventState().getAllEvents().get(0).getReviews().get(0).getContent(),
+                            restored.getEventState().getAllEvents().get(0).getReviews().get(0).getContent());
+                    assertEquals(original.getBookingState().getAllBookings().size(),
+                            restored.getBookingState().getAllBookings().size());
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void repeatedStringsAreWrittenOnce() throws IOException {
+        Context context = createContext();
+        int sizeBefore = write(context).length;
+        Consumer fan = (Consumer) context.getUserState().getAllUsers().get("fan@dog.xd");
+        Event past = context.getEventState().getAllEvents().get(0);
+        for (int i = 0; i < 100; i++) {
+            past.addReview(new Review(fan, past, LocalDateTime.now(), "Wonderful puppies"));
+        }
+        // Each review is a reference to its author and content, and a date-time close to the previous one
+        assertTrue(write(context).length - sizeBefore < 100 * 10);
+    }
+
+    @Test
+    void corruptSnapshotsAreRejected() throws IOException {
+        byte[] bytes = write(createContext());
+        assertTrue(BinarySnapshot.isBinarySnapshot(bytes));
+
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+        assertThrows(IOException.class, () -> BinarySnapshot.read(ByteBuffer.wrap(truncated)));
+
+        byte[] wrongMagic = bytes.clone();
+        wrongMagic[0] = 'X';
+        assertFalse(BinarySnapshot.isBinarySnapshot(wrongMagic));
+        assertThrows(IOException.class, () -> BinarySnapshot.read(ByteBuffer.wrap(wrongMagic)));
+    }
+}
@@ -0,0 +1,136 @@
+import model.*;
+import org.junit.jupiter.api.Test;
+import state.BookingState;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the BookingState class
+ */
+public class TestBookingState {
+    private static Event createTestEvent(long eventNumber) {
+        return new Event(
+                eventNumber,
+                "Test Event",
+                EventType.Music,
+                100,
+                0,
+                "",
+                "jjjsjs",
+                LocalDateTime.now().plusDays(2),
+                LocalDateTime.now().plusDays(3),
+                new EventTagCollection("hasSocialDistancing=true,venueCapacity=200")
+        );
+    }
+
+    private static Consumer createTestConsumer() {
+        return new Consumer(
+                "Ghost Spook",
+                "test@mail.com",
+                "004499",
+                "Shenzen, China",
+                "123456"
+        );
+    }
+
+    @Test
+    void findBookingsByEventNumber() {
+        BookingState bookingState = new BookingState();
+        Consumer consumer = createTestConsumer();
+        Event event1 = createTestEvent(1);
+        Event event2 = createTestEvent(2);
+
+        Booking booking1 = bookingState.createBooking(consumer, event1, 1);
+        Booking booking2 = bookingState.createBooking(consumer, event2, 2);
+        Booking booking3 = bookingState.createBooking(consumer, event1, 3);
+        Booking imported = new Booking(42, consumer, event2, 4, LocalDateTime.now());
+        bookingState.addBooking(imported);
+
+        assertEquals(List.of(booking1, booking3), bookingState.findBookingsByEventNumber(1));
+        assertEquals(List.of(booking2, imported), bookingState.findBookingsByEventNumber(2));
+        assertTrue(bookingState.findBookingsByEventNumber(3).isEmpty());
+    }
+
+    @Test
+    void findBookingByNumber() {
+        BookingState bookingState = new BookingState();
+        Consumer consumer = createTestConsumer();
+        Event event = createTestEvent(1);
+        for (int i = 0; i < 5000; i++) {
+            bookingState.createBooking(consumer, event, 1);
+        }
+
+        for (Booking booking : bookingState.getAllBookings()) {
+            assertSame(booking, bookingState.findBookingByNumber(booking.getBookingNumber()));
+        }
+        assertNull(bookingState.findBookingByNumber(0));
+        assertNull(bookingState.findBookingByNumber(5001));
+        assertNull(bookingState.findBookingByNumber(-1));
+    }
+
+    @Test
+    void findImportedBookingByNumber() {
+        BookingState bookingState = new BookingState();
+        Consumer consumer = createTestConsumer();
+        Event event = createTestEvent(1);
+        Booking created = bookingState.createBooking(consumer, event, 1);
+        Booking sameNumber = new Booking(created.getBookingNumber(), consumer, event, 2, LocalDateTime.now());
+        Booking sparse = new Booking(1_000_000, consumer, event, 3, LocalDateTime.now());
+        Booking huge = new Booking(Long.MAX_VALUE, consumer, event, 4, LocalDateTime.now());
+        bookingState.addBooking(sameNumber);
+        bookingState.addBooking(sparse);
+        bookingState.addBooking(huge);
+
+        assertSame(created, bookingState.findBookingByNumber(created.getBookingNumber()));
+        assertSame(sparse, bookingState.findBookingByNumber(1_000_000));
+        assertSame(huge, bookingState.findBookingByNumber(Long.MAX_VALUE));
+        assertEquals(List.of(created, sameNumber, sparse, huge), bookingState.getAllBookings());
+    }
+
+    @Test
+    void findBookingsByEventNumberReturnsCopy() {
+        BookingState bookingState = new BookingState();
+        Event event = createTestEvent(1);
+        bookingState.createBooking(createTestConsumer(), event, 1);
+
+        bookingState.findBookingsByEventNumber(1).clear();
+        assertEquals(1, bookingState.findBookingsByEventNumber(1).size());
+    }
+
+    @Test
+    void copyKeepsIndexIndependent() {
+        BookingState bookingState = new BookingState();
+        Consumer consumer = createTestConsumer();
+        Event event = createTestEvent(1);
+        Booking original = bookingState.createBooking(consumer, event, 1);
+        BookingState copy = new BookingState(bookingState);
+        Booking copied = copy.createBooking(consumer, event, 2);
+
+        assertEquals(List.of(original, copied), copy.findBookingsByEventNumber(1));
+        assertEquals(List.of(original), bookingState.findBookingsByEventNumber(1));
+    }
+
+    @Test
+    void copiesAreSnapshots() {
+        BookingState bookingState = new BookingState();
+        Consumer consumer = createTestConsumer();
+        Event event = createTestEvent(1);
+        for (int i = 0; i < 2000; i++) {
+            bookingState.createBooking(consumer, event, 1);
+        }
+        BookingState copy = new BookingState(bookingState);
+        Booking inOriginal = bookingState.createBooking(consumer, event, 2);
+        Booking inCopy = copy.createBooking(consumer, event, 3);
+
+        assertEquals(2001, inOriginal.getBookingNumber());
+        assertEquals(2001, inCopy.getBookingNumber());
+        assertSame(inOriginal, bookingState.findBookingByNumber(2001));
+        assertSame(inCopy, copy.findBookingByNumber(2001));
+        assertEquals(bookingState.getAllBookings().subList(0, 2000), copy.getAllBookings().subList(0, 2000));
+        assertEquals(inCopy, copy.findBookingsByEventNumber(1).get(2000));
+        assertEquals(2001, bookingState.findBookingsByEventNumber(1).size());
+    }
+}
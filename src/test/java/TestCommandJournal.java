@@ -0,0 +1,301 @@
+import command.*;
+import controller.BinarySnapshot;
+import controller.CommandJournal;
+import controller.Context;
+import controller.Controller;
+import controller.SnapshotChain;
+import model.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the CommandJournal class
+ */
+public class TestCommandJournal {
+    private static final String STAFF_EMAIL = "staff@ed.ac.uk";
+    private static final String CONSUMER_EMAIL = "fan@dog.xd";
+    private static final String NEW_CONSUMER_EMAIL = "chihuahua-fan@dog.xd";
+
+    private static Context createContext() {
+        return new Context("The University of Edinburgh", "55.94747223411703 -3.187300017491497",
+                "epay@ed.ac.uk", "Nec temere nec timide");
+    }
+
+    private static Event createEvent(Controller controller, String title, int numTickets) {
+        CreateEventCommand createEvent = new CreateEventCommand(title, EventType.Theatre, numTickets, 0, "",
+                "Puppies on stage", LocalDateTime.now().plusDays(2), LocalDateTime.now().plusDays(2).plusHours(2),
+                new EventTagCollection());
+        controller.runCommand(createEvent);
+        return createEvent.getResult();
+    }
+
+    /**
+     * Run commands that change every kind of state the journal records: users, tags, events, bookings and reviews
+     */
+    private static void runCommands(Context context, Controller controller) {
+        controller.runCommand(new RegisterStaffCommand(STAFF_EMAIL, "staff password", "Nec temere nec timide"));
+        controller.runCommand(new AddEventTagCommand("hasGreg", Set.of("yes", "no"), "no"));
+        Event show = createEvent(controller, "Puppy Show", 10);
+        Event walk = createEvent(controller, "Dog Walk", 20);
+        controller.runCommand(new LogoutCommand());
+
+        controller.runCommand(new RegisterConsumerCommand("Chihuahua Fan", CONSUMER_EMAIL, "01324456897",
+                "55.94872684464941 -3.199892044473183", "fan password"));
+        BookEventCommand bookShow = new BookEventCommand(show.getEventNumber(), 2);
+        controller.runCommand(bookShow);
+        BookEventCommand bookWalk = new BookEventCommand(walk.getEventNumber(), 3);
+        controller.runCommand(bookWalk);
+        controller.runCommand(new CancelBookingCommand(bookWalk.getResult().getBookingNumber()));
+
+        // Changes made outside of commands are recorded with the next command
+        Consumer fan = (Consumer) context.getUserState().getAllUsers().get(CONSUMER_EMAIL);
+        Event past = context.getEventState().createEvent("Past Show", EventType.Music, 5, 0, "", "Over already",
+                LocalDateTime.now().minusDays(2), LocalDateTime.now().minusDays(1), new EventTagCollection());
+        Booking pastBooking = context.getBookingState().createBooking(fan, past, 1);
+        fan.addBooking(pastBooking);
+        pastBooking.setRefundStatus(RefundStatus.Failed);
+        controller.runCommand(new ReviewEventCommand(past.getEventNumber(), "Wonderful puppies"));
+        controller.runCommand(new UpdateConsumerProfileCommand("fan password", "Chihuahua Fan", NEW_CONSUMER_EMAIL,
+                "01324456897", "55.94872684464941 -3.199892044473183", "new password",
+                new EventTagCollection("hasGreg=yes")));
+    }
+
+    private static void assertSameState(Context expected, Context actual) {
+        assertEquals(expected.getUserState().getAllUsers().keySet(), actual.getUserState().getAllUsers().keySet());
+        Consumer fan = (Consumer) actual.getUserState().getAllUsers().get(NEW_CONSUMER_EMAIL);
+        assertTrue(fan.checkPasswordMatch("new password"));
+        assertEquals("yes", fan.getPreferences().getValueFor("hasGreg"));
+        assertTrue(actual.getUserState().getAllUsers().get(STAFF_EMAIL).checkPasswordMatch("staff password"));
+        assertEquals(Set.of("yes", "no"), actual.getEventState().getPossibleTags().get("hasGreg").values);
+
+        assertEquals(expected.getEventState().getAllEvents().size(), actual.getEventState().getAllEvents().size());
+        for (Event expectedEvent : expected.getEventState().getAllEvents()) {
+            Event actualEvent = actual.getEventState().findEventByNumber(expectedEvent.getEventNumber());
+            assertEquals(expectedEvent.getTitle(), actualEvent.getTitle());
+            assertEquals(expectedEvent.getNumTicketsLeft(), actualEvent.getNumTicketsLeft());
+            assertEquals(expectedEvent.getStatus(), actualEvent.getStatus());
+            assertEquals(expectedEvent.getReviews().size(), actualEvent.getReviews().size());
+        }
+        Event past = actual.getEventState().getAllEvents().get(2);
+        assertSame(fan, past.getReviews().get(0).getAuthor());
+        assertEquals("Wonderful puppies", past.getReviews().get(0).getContent());
+
+        assertEquals(expected.getBookingState().getAllBookings().size(),
+                actual.getBookingState().getAllBookings().size());
+        for (Booking expectedBooking : expected.getBookingState().getAllBookings()) {
+            Booking actualBooking = actual.getBookingState().findBookingByNumber(expectedBooking.getBookingNumber());
+            assertEquals(expectedBooking.getStatus(), actualBooking.getStatus());
+            assertEquals(expectedBooking.getRefundStatus(), actualBooking.getRefundStatus());
+            assertEquals(expectedBooking.getNumTickets(), actualBooking.getNumTickets());
+            assertEquals(expectedBooking.getEvent().getEventNumber(), actualBooking.getEvent().getEventNumber());
+            assertSame(fan, actualBooking.getBooker());
+        }
+        assertEquals(expected.getBookingState().getAllBookings().size(), fan.getBookings().size());
+    }
+
+    @Test
+    void replayRestoresTheEffectsOfCommands() throws IOException {
+        Path file = Files.createTempFile("journal", ".journal");
+        try {
+            Context original = createContext();
+            try (CommandJournal journal = CommandJournal.open(file, original, false)) {
+                assertEquals(0, journal.getNumEntriesReplayed());
+                runCommands(original, new Controller(original, new TestView()));
+                assertEquals(Files.size(file), journal.size());
+            }
+
+            Context recovered = createContext();
+            try (CommandJournal journal = CommandJournal.open(file, recovered, false)) {
+                assertTrue(journal.getNumEntriesReplayed() > 0);
+            }
+            assertSameState(original, recovered);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void replayRestoresMergedBookingsOnTheirMergedEvents() throws IOException {
+        Path file = Files.createTempFile("journal", ".journal");
+        Path importFile = Files.createTempFile("import", ".ser");
+        try {
+            // The imported state numbers its event and bookings from 1, like the state it is merged into
+            Context imported = createContext();
+            Event importedWalk = imported.getEventState().createEvent("Dog Walk", EventType.Sports, 20, 0, "",
+                    "Walkies", LocalDateTime.now().plusDays(3), LocalDateTime.now().plusDays(3).plusHours(1),
+                    new EventTagCollection());
+            Consumer walker = new Consumer("Dog Walker", "walker@dog.xd", "01324456898", "", "walker password");
+            imported.getUserState().addUser(walker);
+            Booking refused = imported.getBookingState().createBooking(walker, importedWalk, 1);
+            refused.cancelByProvider();
+            refused.setRefundStatus(RefundStatus.Failed);
+            walker.addBooking(refused);
+            walker.addBooking(imported.getBookingState().createBooking(walker, importedWalk, 2));
+            try (OutputStream out = Files.newOutputStream(importFile)) {
+                BinarySnapshot.write(imported, out);
+            }
+
+            Context original = createContext();
+            Controller controller = new Controller(original, new TestView());
+            try (CommandJournal journal = CommandJournal.open(file, original, false)) {
+                controller.runCommand(new RegisterStaffCommand(STAFF_EMAIL, "staff password",
+                        "Nec temere nec timide"));
+                Event show = createEvent(controller, "Puppy Show", 10);
+                controller.runCommand(new LogoutCommand());
+                controller.runCommand(new RegisterConsumerCommand("Chihuahua Fan", CONSUMER_EMAIL, "01324456897",
+                        "55.94872684464941 -3.199892044473183", "fan password"));
+                controller.runCommand(new BookEventCommand(show.getEventNumber(), 2));
+                controller.runCommand(new LogoutCommand());
+                controller.runCommand(new LoginCommand(STAFF_EMAIL, "staff password"));
+                controller.runCommand(new LoadAppStateCommand(importFile.toString()));
+                controller.runCommand(new LogoutCommand());
+                controller.runCommand(new LoginCommand("walker@dog.xd", "walker password"));
+                Consumer mergedWalker = (Consumer) original.getUserState().getAllUsers().get("walker@dog.xd");
+                controller.runCommand(new CancelBookingCommand(
+                        mergedWalker.getBookings().get(1).getBookingNumber()));
+            }
+
+            // As if the application stopped without a checkpoint, so the merge is only in the journal
+            Context recovered = createContext();
+            try (CommandJournal journal = CommandJournal.open(file, recovered, false)) {
+                assertTrue(journal.getNumEntriesReplayed() > 0);
+            }
+            assertEquals(3, recovered.getBookingState().getAllBookings().size());
+            for (Booking expectedBooking : original.getBookingState().getAllBookings()) {
+                Booking actualBooking = recovered.getBookingState()
+                        .findBookingByNumber(expectedBooking.getBookingNumber());
+                assertEquals(expectedBooking.getBooker().getEmail(), actualBooking.getBooker().getEmail());
+                assertEquals(expectedBooking.getEvent().getTitle(), actualBooking.getEvent().getTitle());
+                assertEquals(expectedBooking.getNumTickets(), actualBooking.getNumTickets());
+                assertEquals(expectedBooking.getStatus(), actualBooking.getStatus());
+                assertEquals(expectedBooking.getRefundStatus(), actualBooking.getRefundStatus());
+            }
+            Consumer recoveredWalker = (Consumer) recovered.getUserState().getAllUsers().get("walker@dog.xd");
+            assertEquals(2, recoveredWalker.getBookings().size());
+            assertSame(recovered.getEventState().findEventByNumber(2), recoveredWalker.getBookings().get(0).getEvent());
+            assertEquals(BookingStatus.CancelledByProvider, recoveredWalker.getBookings().get(0).getStatus());
+            assertEquals(RefundStatus.Failed, recoveredWalker.getBookings().get(0).getRefundStatus());
+            assertEquals(BookingStatus.CancelledByConsumer, recoveredWalker.getBookings().get(1).getStatus());
+            assertEquals(BookingStatus.Active, recovered.getBookingState().findBookingByNumber(1).getStatus());
+        } finally {
+            Files.delete(file);
+            Files.delete(importFile);
+        }
+    }
+
+    @Test
+    void entryCutShortByACrashIsDropped() throws IOException {
+        Path file = Files.createTempFile("journal", ".journal");
+        try {
+            Context original = createContext();
+            Controller controller = new Controller(original, new TestView());
+            long sizeBeforeEvent;
+            try (CommandJournal journal = CommandJournal.open(file, original, false)) {
+                controller.runCommand(new RegisterStaffCommand(STAFF_EMAIL, "staff password",
+                        "Nec temere nec timide"));
+                sizeBeforeEvent = journal.size();
+                createEvent(controller, "Puppy Show", 10);
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(Files.size(file) - 1);
+            }
+
+            Context recovered = createContext();
+            try (CommandJournal journal = CommandJournal.open(file, recovered, false)) {
+                assertEquals(1, journal.getNumEntriesReplayed());
+                assertEquals(sizeBeforeEvent, Files.size(file));
+                assertTrue(recovered.getEventState().getAllEvents().isEmpty());
+                // New entries take the place of the dropped one
+                Controller recoveredController = new Controller(recovered, new TestView());
+                recoveredController.runCommand(new LoginCommand(STAFF_EMAIL, "staff password"));
+                createEvent(recoveredController, "Dog Walk", 20);
+            }
+
+            Context recoveredAgain = createContext();
+            try (CommandJournal journal = CommandJournal.open(file, recoveredAgain, false)) {
+                assertEquals(2, journal.getNumEntriesReplayed());
+            }
+            assertEquals("Dog Walk", recoveredAgain.getEventState().getAllEvents().get(0).getTitle());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void checkpointEmptiesTheJournal() throws IOException {
+        Path file = Files.createTempFile("journal", ".journal");
+        Path snapshotFile = Files.createTempFile("snapshot", ".ser");
+        try {
+            Context original = createContext();
+            Controller controller = new Controller(original, new TestView());
+            try (CommandJournal journal = CommandJournal.open(file, original, false)) {
+                controller.runCommand(new RegisterStaffCommand(STAFF_EMAIL, "staff password",
+                        "Nec temere nec timide"));
+                createEvent(controller, "Puppy Show", 10);
+                journal.checkpoint(original, new SnapshotChain(snapshotFile, 0, 0));
+                assertTrue(journal.isEmpty());
+                assertEquals(1, journal.getCheckpointNumber());
+                createEvent(controller, "Dog Walk", 20);
+                assertFalse(journal.isEmpty());
+            }
+
+            Context restored;
+            try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+                restored = BinarySnapshot.read(channel);
+            }
+            assertEquals(1, restored.getEventState().getAllEvents().size());
+            try (CommandJournal journal = CommandJournal.open(file, restored, false)) {
+                assertEquals(1, journal.getNumEntriesReplayed());
+            }
+            assertEquals(2, restored.getEventState().getAllEvents().size());
+            assertEquals("Dog Walk", restored.getEventState().findEventByNumber(2).getTitle());
+
+            // The entries follow the checkpoint, so they cannot be replayed without it
+            assertThrows(IOException.class, () -> CommandJournal.open(file, createContext(), false));
+        } finally {
+            Files.delete(file);
+            Files.delete(snapshotFile);
+        }
+    }
+
+    @Test
+    void entriesLeftBehindByACheckpointAreNotReplayed() throws IOException {
+        Path file = Files.createTempFile("journal", ".journal");
+        Path snapshotFile = Files.createTempFile("snapshot", ".ser");
+        try {
+            Context original = createContext();
+            byte[] entries;
+            try (CommandJournal journal = CommandJournal.open(file, original, false)) {
+                runCommands(original, new Controller(original, new TestView()));
+                entries = Files.readAllBytes(file);
+                journal.checkpoint(original, new SnapshotChain(snapshotFile, 0, 0));
+            }
+            // As if the application stopped after writing the checkpoint, but before emptying the journal
+            Files.write(file, entries);
+
+            Context restored;
+            try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+                restored = BinarySnapshot.read(channel);
+            }
+            try (CommandJournal journal = CommandJournal.open(file, restored, false)) {
+                assertEquals(0, journal.getNumEntriesReplayed());
+                assertTrue(journal.isEmpty());
+                assertEquals(1, journal.getCheckpointNumber());
+            }
+            assertSameState(original, restored);
+        } finally {
+            Files.delete(file);
+            Files.delete(snapshotFile);
+        }
+    }
+}
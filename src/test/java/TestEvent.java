@@ -1,6 +1,10 @@
 import model.*;
 import org.junit.jupiter.api.Test;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -112,5 +116,87 @@ public class TestEvent {
 
     }
 
+    @Test
+    void reserveCommitAndReleaseTickets() {
+        Event newEvent = new Event(1, "Test Event", EventType.Music, 10, 0, "", "",
+                LocalDateTime.now().plusDays(2), LocalDateTime.now().plusDays(3), new EventTagCollection());
+
+        assertTrue(newEvent.reserveTickets(4));
+        assertTrue(newEvent.reserveTickets(6));
+        assertFalse(newEvent.reserveTickets(1));
+        assertEquals(0, newEvent.getNumTicketsLeft());
+        assertEquals(10, newEvent.getNumTicketsReserved());
+
+        newEvent.commitTickets(4);
+        newEvent.releaseTickets(6);
+        assertEquals(6, newEvent.getNumTicketsLeft());
+        assertEquals(0, newEvent.getNumTicketsReserved());
+
+        newEvent.returnTickets(4);
+        assertEquals(10, newEvent.getNumTicketsLeft());
+        assertFalse(newEvent.reserveTickets(11));
+        assertEquals(10, newEvent.getNumTicketsLeft());
+    }
+
+    @Test
+    void heldTicketsAreConfirmedOrReclaimed() throws InterruptedException {
+        Event newEvent = new Event(1, "Test Event", EventType.Music, 10, 0, "", "",
+                LocalDateTime.now().plusDays(2), LocalDateTime.now().plusDays(3), new EventTagCollection());
+
+        TicketHold confirmedHold = newEvent.holdTickets(3, Duration.ofMinutes(5));
+        TicketHold releasedHold = newEvent.holdTickets(2, Duration.ofMinutes(5));
+        TicketHold abandonedHold = newEvent.holdTickets(5, Duration.ofMillis(10));
+        assertNull(newEvent.holdTickets(1, Duration.ofMinutes(5)));
+        assertTrue(confirmedHold.confirm());
+        assertTrue(releasedHold.release());
+        assertFalse(releasedHold.confirm());
+        assertEquals(2, newEvent.getNumTicketsLeft());
+        assertEquals(5, newEvent.getNumTicketsReserved());
+
+        Thread.sleep(20);
+        // The abandoned hold has expired, so its tickets go to whoever asks for them next
+        assertNotNull(newEvent.holdTickets(7, Duration.ofMinutes(5)));
+        assertFalse(abandonedHold.confirm());
+        assertEquals(0, newEvent.getNumTicketsLeft());
+        assertEquals(7, newEvent.getNumTicketsReserved());
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() throws InterruptedException {
+        int numTicketsCap = 10_000;
+        Event newEvent = new Event(1, "Test Event", EventType.Music, numTicketsCap, 0, "", "",
+                LocalDateTime.now().plusDays(2), LocalDateTime.now().plusDays(3), new EventTagCollection());
+
+        AtomicInteger numTicketsBooked = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 32; t++) {
+            int numTickets = 1 + t % 3;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    if (!newEvent.reserveTickets(numTickets)) {
+                        continue;
+                    }
+                    // Every third reservation falls through, like a failed payment
+                    if (i % 3 == 0) {
+                        newEvent.releaseTickets(numTickets);
+                    } else {
+                        newEvent.commitTickets(numTickets);
+                        numTicketsBooked.addAndGet(numTickets);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, newEvent.getNumTicketsReserved());
+        assertTrue(newEvent.getNumTicketsLeft() >= 0);
+        assertEquals(numTicketsCap, newEvent.getNumTicketsLeft() + numTicketsBooked.get());
+    }
+
 
 }
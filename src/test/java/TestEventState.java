@@ -0,0 +1,341 @@
+import model.*;
+import org.junit.jupiter.api.Test;
+import state.EventState;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the EventState class
+ */
+public class TestEventState {
+    private static Event createTestEvent(EventState eventState, String title) {
+        return eventState.createEvent(
+                title,
+                EventType.Music,
+                100,
+                0,
+                "",
+                "jjjsjs",
+                LocalDateTime.now().plusDays(2),
+                LocalDateTime.now().plusDays(3),
+                new EventTagCollection("hasSocialDistancing=true,venueCapacity=200")
+        );
+    }
+
+    @Test
+    void findEventByNumber() {
+        EventState eventState = new EventState();
+        for (int i = 0; i < 1000; i++) {
+            createTestEvent(eventState, "Test Event " + i);
+        }
+
+        for (Event event : eventState.getAllEvents()) {
+            assertSame(event, eventState.findEventByNumber(event.getEventNumber()));
+        }
+        assertNull(eventState.findEventByNumber(0));
+        assertNull(eventState.findEventByNumber(1001));
+        assertNull(eventState.findEventByNumber(-1));
+    }
+
+    @Test
+    void getAllEventsKeepsCreationOrder() {
+        EventState eventState = new EventState();
+        Event first = createTestEvent(eventState, "First");
+        Event second = createTestEvent(eventState, "Second");
+        Event third = createTestEvent(eventState, "Third");
+
+        assertEquals(List.of(first, second, third), eventState.getAllEvents());
+    }
+
+    @Test
+    void copyKeepsIndexIndependent() {
+        EventState eventState = new EventState();
+        Event original = createTestEvent(eventState, "Original");
+        EventState copy = new EventState(eventState);
+        Event copied = createTestEvent(copy, "Only in copy");
+
+        assertSame(original, copy.findEventByNumber(original.getEventNumber()));
+        assertSame(copied, copy.findEventByNumber(copied.getEventNumber()));
+        assertNull(eventState.findEventByNumber(copied.getEventNumber()));
+    }
+
+    @Test
+    void copiesAreSnapshots() {
+        EventState eventState = new EventState();
+        List<EventState> snapshots = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            if (i % 700 == 0) {
+                snapshots.add(new EventState(eventState));
+            }
+            createTestEvent(eventState, "Event " + i);
+        }
+        List<Event> allEvents = eventState.getAllEvents();
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            EventState snapshot = snapshots.get(i);
+            int numEvents = i * 700;
+            assertEquals(allEvents.subList(0, numEvents), snapshot.getAllEvents());
+            assertEquals(allEvents.subList(0, numEvents), snapshot.findEvents(null, null, EventStatus.ACTIVE));
+            assertNull(snapshot.findEventByNumber(numEvents + 1));
+
+            Event created = createTestEvent(snapshot, "Event " + numEvents);
+            assertEquals(numEvents + 1, created.getEventNumber());
+            assertSame(created, snapshot.findEventByNumber(numEvents + 1));
+            assertNotSame(created, eventState.findEventByNumber(numEvents + 1));
+        }
+        assertEquals(3000, eventState.getAllEvents().size());
+        assertThrows(UnsupportedOperationException.class, () -> eventState.getAllEvents().clear());
+    }
+
+    @Test
+    void serializationKeepsIndexes() throws IOException, ClassNotFoundException {
+        EventState eventState = new EventState();
+        for (int i = 0; i < 100; i++) {
+            createTestEvent(eventState, "Event " + i % 10);
+        }
+        eventState.cancelEvent(eventState.findEventByNumber(5));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(eventState);
+        }
+        EventState read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (EventState) in.readObject();
+        }
+
+        assertEquals(100, read.getAllEvents().size());
+        assertEquals(42, read.findEventByNumber(42).getEventNumber());
+        assertEquals(List.of(read.findEventByNumber(5)), read.findEvents(null, null, EventStatus.CANCELLED));
+        assertEquals(99, read.findEvents(null, null, EventStatus.ACTIVE).size());
+        assertEquals(10, read.findEventsByTitle("Event 3").size());
+        assertTrue(read.getPossibleTags().containsKey("venueCapacity"));
+    }
+
+    @Test
+    void eventsNumberedFromSeveralThreadsCanBeFound() throws InterruptedException {
+        EventState eventState = new EventState();
+        List<Event> created = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    // The state itself is only changed by one thread at a time, but numbers come from each thread's block
+                    synchronized (eventState) {
+                        created.add(createTestEvent(eventState, "Event"));
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(400, created.stream().map(Event::getEventNumber).distinct().count());
+        for (Event event : created) {
+            assertSame(event, eventState.findEventByNumber(event.getEventNumber()));
+        }
+        Event cancelled = created.get(250);
+        eventState.cancelEvent(cancelled);
+        assertEquals(List.of(cancelled), eventState.findEvents(null, null, EventStatus.CANCELLED));
+    }
+
+    @Test
+    void serializationKeepsNumbering() throws IOException, ClassNotFoundException {
+        EventState eventState = new EventState();
+        for (int i = 0; i < 100; i++) {
+            createTestEvent(eventState, "Event " + i);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(eventState);
+        }
+        EventState read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (EventState) in.readObject();
+        }
+
+        Event created = createTestEvent(read, "Event 100");
+        assertEquals(101, created.getEventNumber());
+        assertSame(created, read.findEventByNumber(101));
+    }
+
+    @Test
+    void eventsWithEqualTagsShareCollection() {
+        EventState eventState = new EventState();
+        Event first = createTestEvent(eventState, "First");
+        Event second = createTestEvent(eventState, "Second");
+        Event other = eventState.createEvent("Other", EventType.Music, 100, 0, "", "",
+                LocalDateTime.now().plusDays(2), LocalDateTime.now().plusDays(3),
+                new EventTagCollection("venueCapacity=<20"));
+
+        assertSame(first.getTags(), second.getTags());
+        assertNotSame(first.getTags(), other.getTags());
+        assertEquals("200", second.getTags().getValueFor("venueCapacity"));
+        assertSame(first.getTags(), createTestEvent(new EventState(eventState), "Copy").getTags());
+    }
+
+    @Test
+    void findEventsByDateMatchesDateFilter() {
+        EventState eventState = new EventState();
+        EventTagCollection tags = new EventTagCollection("hasSocialDistancing=true,venueCapacity=200");
+        LocalDateTime base = LocalDateTime.of(2030, 1, 1, 0, 0);
+        Random random = new Random(4);
+        for (int i = 0; i < 500; i++) {
+            LocalDateTime start = base.plusHours(random.nextInt(24 * 60));
+            LocalDateTime end = start.plusHours(random.nextInt(24 * 5));
+            eventState.createEvent("Event " + i, EventType.Music, 100, 0, "", "", start, end, tags);
+        }
+
+        for (int day = -1; day < 70; day++) {
+            LocalDate searchDate = base.toLocalDate().plusDays(day);
+            List<Event> expected = eventState.getAllEvents().stream()
+                    .filter(event -> event.getStartDateTime().toLocalDate().equals(searchDate)
+                            || event.getEndDateTime().toLocalDate().isAfter(searchDate)
+                            || searchDate.isBefore(event.getStartDateTime().toLocalDate()))
+                    .collect(Collectors.toList());
+            assertEquals(expected, eventState.findEventsByDate(searchDate));
+        }
+    }
+
+    @Test
+    void findEventsByDateIncludesLongEvents() {
+        EventState eventState = new EventState();
+        EventTagCollection tags = new EventTagCollection("hasSocialDistancing=true,venueCapacity=200");
+        LocalDateTime base = LocalDateTime.of(2030, 1, 1, 12, 0);
+        Event festival = eventState.createEvent("Festival", EventType.Music, 100, 0, "", "", base,
+                base.plusDays(90), tags);
+        Event gig = eventState.createEvent("Gig", EventType.Music, 100, 0, "", "", base.plusDays(1),
+                base.plusDays(1).plusHours(2), tags);
+        Event later = eventState.createEvent("Later", EventType.Music, 100, 0, "", "", base.plusDays(120),
+                base.plusDays(121), tags);
+
+        assertEquals(List.of(festival, gig, later), eventState.findEventsByDate(base.toLocalDate().plusDays(1)));
+        // the festival is still going on long after its first day, the gig is over
+        assertEquals(List.of(festival, later), eventState.findEventsByDate(base.toLocalDate().plusDays(60)));
+        assertEquals(List.of(later), eventState.findEventsByDate(base.toLocalDate().plusDays(90)));
+    }
+
+    @Test
+    void findEventsByPreferences() {
+        EventState eventState = new EventState();
+        LocalDateTime start = LocalDateTime.now().plusDays(2);
+        Event distanced = eventState.createEvent("Distanced", EventType.Music, 100, 0, "", "", start,
+                start.plusHours(1), new EventTagCollection("hasSocialDistancing=true,venueCapacity=200"));
+        Event untagged = eventState.createEvent("Untagged", EventType.Music, 100, 0, "", "", start,
+                start.plusHours(1), new EventTagCollection());
+        Event crowded = eventState.createEvent("Crowded", EventType.Music, 100, 0, "", "", start,
+                start.plusHours(1), new EventTagCollection("hasSocialDistancing=false,venueCapacity=<20"));
+
+        assertEquals(List.of(distanced),
+                eventState.findEvents(null, new EventTagCollection("hasSocialDistancing=true"), null));
+        // an event without a tag has the tag's default value
+        assertEquals(List.of(untagged, crowded),
+                eventState.findEvents(null, new EventTagCollection("hasSocialDistancing=false"), null));
+        assertEquals(List.of(untagged, crowded),
+                eventState.findEvents(null, new EventTagCollection("hasSocialDistancing=false,venueCapacity=<20"),
+                        null));
+        assertEquals(List.of(distanced, untagged, crowded), eventState.findEvents(null, new EventTagCollection(), null));
+        assertTrue(eventState.findEvents(null,
+                new EventTagCollection("hasSocialDistancing=true,venueCapacity=<20"), null).isEmpty());
+
+        // tags created after the events apply their default to all of them
+        eventState.createEventTag("hasGreg", Set.of("yes", "no"), "no");
+        assertEquals(List.of(distanced, untagged, crowded),
+                eventState.findEvents(null, new EventTagCollection("hasGreg=no"), null));
+        assertTrue(eventState.findEvents(null, new EventTagCollection("hasGreg=yes"), null).isEmpty());
+    }
+
+    @Test
+    void findEventsByTitleAndTime() {
+        EventState eventState = new EventState();
+        EventTagCollection tags = new EventTagCollection();
+        LocalDateTime start = LocalDateTime.now().plusDays(2);
+        Event first = eventState.createEvent("Show", EventType.Theatre, 100, 0, "", "", start, start.plusHours(2), tags);
+        eventState.createEvent("Show", EventType.Theatre, 100, 0, "", "", start, start.plusHours(3), tags);
+        eventState.createEvent("Other show", EventType.Theatre, 100, 0, "", "", start, start.plusHours(2), tags);
+        Event second = eventState.createEvent("Show", EventType.Dance, 50, 0, "", "", start, start.plusHours(2), tags);
+
+        assertEquals(List.of(first, second), eventState.findEventsByTitleAndTime("Show", start, start.plusHours(2)));
+        assertTrue(eventState.findEventsByTitleAndTime("Show", start.plusHours(1), start.plusHours(2)).isEmpty());
+        assertEquals(List.of(first, second),
+                new EventState(eventState).findEventsByTitleAndTime("Show", start, start.plusHours(2)));
+    }
+
+    @Test
+    void findReviewsByEventTitleGrowsWithReviewsAndEvents() {
+        EventState eventState = new EventState();
+        Event first = createTestEvent(eventState, "Show");
+        createTestEvent(eventState, "Other show");
+        List<Review> reviews = eventState.findReviewsByEventTitle("Show");
+        assertTrue(reviews.isEmpty());
+        assertTrue(eventState.findReviewsByEventTitle("Unknown show").isEmpty());
+
+        Review firstReview = new Review(null, first, LocalDateTime.now(), "Great");
+        first.addReview(firstReview);
+        Event second = createTestEvent(eventState, "Show");
+        Review secondReview = new Review(null, second, LocalDateTime.now(), "Okay");
+        second.addReview(secondReview);
+
+        assertEquals(List.of(firstReview, secondReview), reviews);
+        assertEquals(List.of(first, second), eventState.findEventsByTitle("Show"));
+        assertThrows(UnsupportedOperationException.class, () -> reviews.add(firstReview));
+    }
+
+    @Test
+    void cancelEventMovesEventBetweenStatusPartitions() {
+        EventState eventState = new EventState();
+        Event first = createTestEvent(eventState, "First");
+        Event second = createTestEvent(eventState, "Second");
+        Event third = createTestEvent(eventState, "Third");
+
+        eventState.cancelEvent(second);
+
+        assertEquals(EventStatus.CANCELLED, second.getStatus());
+        assertEquals(List.of(first, third), eventState.findEvents(null, null, EventStatus.ACTIVE));
+        assertEquals(List.of(second), eventState.findEvents(null, null, EventStatus.CANCELLED));
+        assertEquals(List.of(first, second, third), eventState.findEvents(null, null, null));
+        assertEquals(List.of(first, third),
+                eventState.findEvents(LocalDate.now(), new EventTagCollection("hasSocialDistancing=true"),
+                        EventStatus.ACTIVE));
+        assertEquals(List.of(second), new EventState(eventState).findEvents(null, null, EventStatus.CANCELLED));
+
+        Event other = new EventState().createEvent("First", EventType.Music, 100, 0, "", "",
+                LocalDateTime.now().plusDays(2), LocalDateTime.now().plusDays(3), new EventTagCollection());
+        assertThrows(IllegalArgumentException.class, () -> eventState.cancelEvent(other));
+    }
+
+    @Test
+    void eventCancelledThroughACopyIsNotListedAsActive() {
+        EventState eventState = new EventState();
+        Event first = createTestEvent(eventState, "First");
+        Event second = createTestEvent(eventState, "Second");
+        EventState copy = new EventState(eventState);
+
+        copy.cancelEvent(second);
+
+        // The copy shares the event, but not its status partitions, with the original
+        assertEquals(List.of(first), eventState.findEvents(null, null, EventStatus.ACTIVE));
+        assertEquals(List.of(second), eventState.findEvents(null, null, EventStatus.CANCELLED));
+        assertEquals(List.of(first), copy.findEvents(null, null, EventStatus.ACTIVE));
+        assertEquals(List.of(second), copy.findEvents(null, null, EventStatus.CANCELLED));
+
+        // Cancelling it through the original as well, e.g. when replaying, moves it between the original's partitions
+        eventState.cancelEvent(second);
+        assertEquals(List.of(first), eventState.findEvents(null, null, EventStatus.ACTIVE));
+        assertEquals(List.of(second), eventState.findEvents(null, null, EventStatus.CANCELLED));
+    }
+}
@@ -22,4 +22,35 @@ public class TestEventTagCollection {
         assertTrue(tagSet.contains("venueCapacity"));
     }
 
+    @Test
+    void internedCollectionKeepsTags(){
+        EventTagDictionary dictionary = new EventTagDictionary();
+        dictionary.addTag("venueCapacity", Set.of("<20", "200"));
+        EventTagCollection testTagColl = dictionary.intern(
+                new EventTagCollection("hasSocialDistancing=true,venueCapacity=200"));
+
+        assertEquals("true", testTagColl.getValueFor("hasSocialDistancing"));
+        assertEquals("200", testTagColl.getValueFor("venueCapacity"));
+        assertNull(testTagColl.getValueFor("hasAirFiltration"));
+        assertEquals(Set.of("hasSocialDistancing", "venueCapacity"), testTagColl.getTagNames());
+        assertEquals(new EventTagCollection("venueCapacity=200,hasSocialDistancing=true"), testTagColl);
+        assertEquals(new EventTagCollection("venueCapacity=200,hasSocialDistancing=true").hashCode(),
+                testTagColl.hashCode());
+    }
+
+    @Test
+    void equalCollectionsAreInternedOnce(){
+        EventTagDictionary dictionary = new EventTagDictionary();
+        EventTagCollection first = dictionary.intern(new EventTagCollection("hasSocialDistancing=true,venueCapacity=200"));
+        EventTagCollection second = dictionary.intern(new EventTagCollection("venueCapacity=200,hasSocialDistancing=true"));
+        EventTagCollection other = dictionary.intern(new EventTagCollection("venueCapacity=200"));
+        EventTagCollection empty = dictionary.intern(new EventTagCollection());
+
+        assertSame(first, second);
+        assertSame(first, dictionary.intern(first));
+        assertNotEquals(first, other);
+        assertTrue(empty.getTagNames().isEmpty());
+        assertEquals(3, dictionary.size());
+    }
+
 }
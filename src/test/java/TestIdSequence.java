@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.Test;
+import state.IdSequence;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the IdSequence class
+ */
+public class TestIdSequence {
+    @Test
+    void singleThreadGetsConsecutiveNumbers() {
+        IdSequence sequence = new IdSequence(1, 4);
+        for (long expected = 1; expected <= 10; expected++) {
+            assertEquals(expected, sequence.next());
+        }
+        assertEquals(11, sequence.firstUnusedNumber());
+    }
+
+    @Test
+    void concurrentNumbersAreUniqueAndIncreasingPerThread() throws InterruptedException {
+        IdSequence sequence = new IdSequence();
+        Set<Long> numbers = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            threads.add(new Thread(() -> {
+                long previous = 0;
+                for (int i = 0; i < 10_000; i++) {
+                    long number = sequence.next();
+                    if (number <= previous || !numbers.add(number)) {
+                        synchronized (failures) {
+                            failures.add(new AssertionError("Number " + number + " after " + previous));
+                        }
+                    }
+                    previous = number;
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(List.of(), failures);
+        assertEquals(160_000, numbers.size());
+        long firstUnused = sequence.firstUnusedNumber();
+        assertTrue(numbers.stream().allMatch(number -> number < firstUnused));
+    }
+
+    @Test
+    void copyContinuesIndependently() {
+        IdSequence sequence = new IdSequence();
+        for (int i = 0; i < 100; i++) {
+            sequence.next();
+        }
+        IdSequence copy = new IdSequence(sequence);
+        assertEquals(101, copy.next());
+        assertEquals(101, sequence.next());
+        assertEquals(102, copy.next());
+    }
+
+    @Test
+    void serializationContinuesWithoutGap() throws IOException, ClassNotFoundException {
+        IdSequence sequence = new IdSequence();
+        for (int i = 0; i < 100; i++) {
+            sequence.next();
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(sequence);
+        }
+        IdSequence read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (IdSequence) in.readObject();
+        }
+        assertEquals(101, read.next());
+    }
+}
@@ -0,0 +1,148 @@
+import controller.Context;
+import external.MockPaymentSystem;
+import external.Notification;
+import external.NotificationDispatcher;
+import external.NotificationSink;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the NotificationDispatcher class
+ */
+public class TestNotificationDispatcher {
+    private static class RecordingSink implements NotificationSink {
+        private final List<List<Notification>> batches = new ArrayList<>();
+
+        @Override
+        public synchronized void deliver(List<Notification> notifications) {
+            batches.add(notifications);
+        }
+
+        synchronized List<List<Notification>> getBatches() {
+            return new ArrayList<>(batches);
+        }
+    }
+
+    @Test
+    void notificationsSentDuringADeliveryAreBatchedWithoutDuplicates() throws InterruptedException {
+        CountDownLatch firstDeliveryStarted = new CountDownLatch(1);
+        CountDownLatch firstDeliveryReleased = new CountDownLatch(1);
+        RecordingSink recordingSink = new RecordingSink();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(notifications -> {
+            firstDeliveryStarted.countDown();
+            try {
+                firstDeliveryReleased.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            recordingSink.deliver(notifications);
+        });
+
+        Notification first = new Notification("first@fan.org", "000", "Sorry!");
+        dispatcher.send(first);
+        assertTrue(firstDeliveryStarted.await(10, TimeUnit.SECONDS));
+        List<Notification> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Notification notification = new Notification("fan" + i + "@fan.org", "000", "Sorry!");
+            dispatcher.send(notification);
+            dispatcher.send(new Notification("fan" + i + "@fan.org", "000", "Sorry!"));
+            expected.add(notification);
+        }
+        firstDeliveryReleased.countDown();
+        dispatcher.flush();
+
+        assertEquals(List.of(List.of(first), expected), recordingSink.getBatches());
+        dispatcher.close();
+    }
+
+    @Test
+    void differentMessagesToTheSameConsumerAreAllDelivered() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(sink);
+        dispatcher.send(new Notification("fan@fan.org", "000", "First event cancelled"));
+        dispatcher.send(new Notification("fan@fan.org", "000", "Second event cancelled"));
+        dispatcher.flush();
+
+        assertEquals(2, sink.getBatches().stream().mapToInt(List::size).sum());
+        dispatcher.close();
+    }
+
+    @Test
+    void batchesAreLimitedInSize() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(sink, 10);
+        for (int i = 0; i < 95; i++) {
+            dispatcher.send(new Notification("fan" + i + "@fan.org", "000", "Sorry!"));
+        }
+        dispatcher.flush();
+
+        List<List<Notification>> batches = sink.getBatches();
+        assertTrue(batches.stream().allMatch(batch -> batch.size() <= 10));
+        assertEquals(95, batches.stream().mapToInt(List::size).sum());
+        dispatcher.close();
+    }
+
+    @Test
+    void closeDeliversQueuedNotificationsAndLaterOnesDirectly() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(sink);
+        for (int i = 0; i < 10; i++) {
+            dispatcher.send(new Notification("fan" + i + "@fan.org", "000", "Sorry!"));
+        }
+        dispatcher.close();
+        assertEquals(10, sink.getBatches().stream().mapToInt(List::size).sum());
+
+        dispatcher.send(new Notification("late@fan.org", "000", "Sorry!"));
+        assertEquals(11, sink.getBatches().stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    void failedDeliveriesAreHandedToTheFailureHandler() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(notifications -> {
+            if (notifications.get(0).getRecipientEmail().equals("first@fan.org")) {
+                throw new IllegalStateException("Sink unreachable");
+            }
+            sink.deliver(notifications);
+        });
+        List<List<Notification>> failed = new ArrayList<>();
+        dispatcher.setFailureHandler((notifications, e) -> failed.add(notifications));
+
+        Notification first = new Notification("first@fan.org", "000", "Sorry!");
+        dispatcher.send(first);
+        dispatcher.flush();
+        Notification second = new Notification("second@fan.org", "000", "Sorry!");
+        dispatcher.send(second);
+        dispatcher.flush();
+
+        assertEquals(List.of(List.of(first)), failed);
+        assertEquals(List.of(List.of(second)), sink.getBatches());
+        dispatcher.close();
+    }
+
+    @Test
+    void closingAContextCopyLeavesTheSharedDispatcherRunning() throws Exception {
+        List<Thread> deliveringThreads = new ArrayList<>();
+        Context context = new Context("The University of Edinburgh", "", "epay@ed.ac.uk", "Nec temere nec timide",
+                new MockPaymentSystem(), notifications -> {
+            synchronized (deliveringThreads) {
+                deliveringThreads.add(Thread.currentThread());
+            }
+        });
+        new Context(context).close();
+
+        context.getNotificationDispatcher().send(new Notification("fan@fan.org", "000", "Sorry!"));
+        context.getNotificationDispatcher().flush();
+        synchronized (deliveringThreads) {
+            assertEquals(1, deliveringThreads.size());
+            assertNotSame(Thread.currentThread(), deliveringThreads.get(0));
+        }
+        context.close();
+    }
+}
@@ -0,0 +1,335 @@
+import command.*;
+import controller.CommandJournal;
+import controller.Context;
+import controller.Controller;
+import controller.BinarySnapshot;
+import controller.SnapshotChain;
+import model.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the SnapshotChain class
+ */
+public class TestSnapshotChain {
+    private static final int NUM_EVENTS = 50;
+
+    private Path directory;
+    private Path baseFile;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("snapshots");
+        baseFile = directory.resolve("AutoSave.ser");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        deleteDirectory(directory);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static Context createContext() {
+        Context context = new Context("The University of Edinburgh", "55.94747223411703 -3.187300017491497",
+                "epay@ed.ac.uk", "Nec temere nec timide");
+        context.getUserState().addUser(new Consumer("Chihuahua Fan", "fan@dog.xd", "01324456897",
+                "55.94872684464941 -3.199892044473183", "fan password"));
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            context.getEventState().createEvent("Event " + i, EventType.Music, 100, 1500, "",
+                    "Description of event " + i, LocalDateTime.now().plusDays(2).plusHours(i),
+                    LocalDateTime.now().plusDays(2).plusHours(i + 2), new EventTagCollection());
+        }
+        return context;
+    }
+
+    private static Booking book(Context context, long eventNumber, int numTickets) {
+        return book(context, "fan@dog.xd", eventNumber, numTickets);
+    }
+
+    private static Booking book(Context context, String consumerEmail, long eventNumber, int numTickets) {
+        Consumer fan = (Consumer) context.getUserState().getAllUsers().get(consumerEmail);
+        Event event = context.getEventState().findEventByNumber(eventNumber);
+        Booking booking = context.getBookingState().createBooking(fan, event, numTickets);
+        fan.addBooking(booking);
+        event.setNumTicketsLeft(event.getNumTicketsLeft() - numTickets);
+        return booking;
+    }
+
+    private static void assertSameState(Context expected, Context actual) {
+        assertEquals(expected.getUserState().getAllUsers().keySet(), actual.getUserState().getAllUsers().keySet());
+        List<Event> expectedEvents = expected.getEventState().getAllEvents();
+        List<Event> actualEvents = actual.getEventState().getAllEvents();
+        assertEquals(expectedEvents.size(), actualEvents.size());
+        for (int i = 0; i < expectedEvents.size(); i++) {
+            assertEquals(expectedEvents.get(i).getEventNumber(), actualEvents.get(i).getEventNumber());
+            assertEquals(expectedEvents.get(i).getNumTicketsLeft(), actualEvents.get(i).getNumTicketsLeft());
+            assertEquals(expectedEvents.get(i).getStatus(), actualEvents.get(i).getStatus());
+            assertEquals(expectedEvents.get(i).getReviews().size(), actualEvents.get(i).getReviews().size());
+        }
+        List<Booking> expectedBookings = expected.getBookingState().getAllBookings();
+        List<Booking> actualBookings = actual.getBookingState().getAllBookings();
+        assertEquals(expectedBookings.size(), actualBookings.size());
+        for (int i = 0; i < expectedBookings.size(); i++) {
+            assertEquals(expectedBookings.get(i).getBookingNumber(), actualBookings.get(i).getBookingNumber());
+            assertEquals(expectedBookings.get(i).getStatus(), actualBookings.get(i).getStatus());
+            assertSame(actual.getUserState().getAllUsers().get(expectedBookings.get(i).getBooker().getEmail()),
+                    actualBookings.get(i).getBooker());
+        }
+    }
+
+    @Test
+    void deltasOnlyHoldWhatChanged() throws IOException {
+        Context context = createContext();
+        SnapshotChain chain = new SnapshotChain(baseFile);
+        chain.track(context);
+        assertEquals(1, chain.save(context));
+        assertEquals(0, chain.getNumDeltas());
+
+        book(context, 7, 2);
+        assertEquals(2, chain.save(context));
+        assertEquals(1, chain.getNumDeltas());
+        // One event, one booking and the consumer, rather than all events
+        assertTrue(Files.size(chain.getDeltaFile(1)) * 10 < Files.size(baseFile));
+
+        // Nothing changed, so the delta is empty
+        assertEquals(3, chain.save(context));
+        assertEquals(2, chain.getNumDeltas());
+
+        SnapshotChain loadedChain = new SnapshotChain(baseFile);
+        Context loaded = loadedChain.load();
+        assertSameState(context, loaded);
+        assertEquals(98, loaded.getEventState().findEventByNumber(7).getNumTicketsLeft());
+        assertEquals(3, loadedChain.getCheckpointNumber());
+        assertEquals(2, loadedChain.getNumDeltas());
+    }
+
+    @Test
+    void loadFoldsTheDeltasIntoTheBase() throws IOException {
+        Context context = createContext();
+        SnapshotChain chain = new SnapshotChain(baseFile);
+        chain.track(context);
+        chain.save(context);
+
+        Booking booking = book(context, 1, 3);
+        chain.save(context);
+
+        Consumer fan = (Consumer) context.getUserState().getAllUsers().get("fan@dog.xd");
+        context.getUserState().removeUser(fan.getEmail());
+        fan.setEmail("chihuahua-fan@dog.xd");
+        context.getUserState().addUser(fan);
+        booking.cancelByConsumer();
+        context.getEventState().findEventByNumber(1).setNumTicketsLeft(100);
+        chain.save(context);
+
+        Event past = context.getEventState().createEvent("Past Show", EventType.Music, 5, 0, "", "Over already",
+                LocalDateTime.now().minusDays(2), LocalDateTime.now().minusDays(1), new EventTagCollection());
+        book(context, fan.getEmail(), past.getEventNumber(), 1);
+        past.addReview(new Review(fan, past, LocalDateTime.now(), "Wonderful puppies"));
+        context.getEventState().cancelEvent(context.getEventState().findEventByNumber(2));
+        chain.save(context);
+
+        Context loaded = new SnapshotChain(baseFile).load();
+        assertSameState(context, loaded);
+        Consumer loadedFan = (Consumer) loaded.getUserState().getAllUsers().get("chihuahua-fan@dog.xd");
+        assertTrue(loadedFan.checkPasswordMatch("fan password"));
+        assertEquals(2, loadedFan.getBookings().size());
+        assertEquals(BookingStatus.CancelledByConsumer, loadedFan.getBookings().get(0).getStatus());
+        assertSame(loadedFan, loaded.getEventState().findEventByNumber(past.getEventNumber()).getReviews().get(0)
+                .getAuthor());
+        assertEquals(EventStatus.CANCELLED, loaded.getEventState().findEventByNumber(2).getStatus());
+    }
+
+    @Test
+    void longChainsAreCompacted() throws IOException {
+        Context context = createContext();
+        SnapshotChain chain = new SnapshotChain(baseFile, 2);
+        chain.track(context);
+        chain.save(context);
+        for (int i = 1; i <= 2; i++) {
+            book(context, i, 1);
+            chain.save(context);
+        }
+        assertEquals(2, chain.getNumDeltas());
+
+        book(context, 3, 1);
+        assertEquals(4, chain.save(context));
+        assertEquals(0, chain.getNumDeltas());
+        assertFalse(Files.exists(chain.getDeltaFile(1)));
+        assertFalse(Files.exists(chain.getDeltaFile(2)));
+        assertSameState(context, new SnapshotChain(baseFile).load());
+    }
+
+    @Test
+    void compactFoldsTheDeltasIntoANewBase() throws IOException {
+        Context context = createContext();
+        SnapshotChain chain = new SnapshotChain(baseFile);
+        chain.track(context);
+        chain.save(context);
+        for (int i = 1; i <= 3; i++) {
+            book(context, i, 1);
+            chain.save(context);
+        }
+        byte[] firstDelta = Files.readAllBytes(chain.getDeltaFile(1));
+
+        SnapshotChain.compact(baseFile);
+        assertFalse(Files.exists(chain.getDeltaFile(1)));
+        // As if compaction stopped before deleting the first delta, which is part of the new base
+        Files.write(chain.getDeltaFile(1), firstDelta);
+
+        SnapshotChain loadedChain = new SnapshotChain(baseFile);
+        Context loaded = loadedChain.load();
+        assertSameState(context, loaded);
+        assertEquals(0, loadedChain.getNumDeltas());
+        // The new base holds the same app state as the last delta, so it keeps its checkpoint number
+        assertEquals(4, loadedChain.getCheckpointNumber());
+        assertFalse(Files.exists(chain.getDeltaFile(1)));
+    }
+
+    @Test
+    void journalCheckpointsAreDeltas() throws IOException {
+        Path journalFile = directory.resolve("AutoSave.journal");
+        Context original = createContext();
+        SnapshotChain chain = new SnapshotChain(baseFile);
+        chain.track(original);
+        Controller controller = new Controller(original, new TestView());
+        try (CommandJournal journal = CommandJournal.open(journalFile, original, false)) {
+            controller.runCommand(new RegisterStaffCommand("staff@ed.ac.uk", "staff password",
+                    "Nec temere nec timide"));
+            journal.checkpoint(original, chain);
+            controller.runCommand(new CancelEventCommand(5, "Sorry"));
+            journal.checkpoint(original, chain);
+            assertEquals(1, chain.getNumDeltas());
+            assertEquals(2, journal.getCheckpointNumber());
+            assertTrue(journal.isEmpty());
+            controller.runCommand(new CancelEventCommand(6, "Sorry"));
+        }
+
+        SnapshotChain loadedChain = new SnapshotChain(baseFile);
+        Context restored = loadedChain.load();
+        loadedChain.track(restored);
+        try (CommandJournal journal = CommandJournal.open(journalFile, restored, false)) {
+            assertEquals(1, journal.getNumEntriesReplayed());
+        }
+        assertSameState(original, restored);
+        assertEquals(EventStatus.CANCELLED, restored.getEventState().findEventByNumber(5).getStatus());
+        assertEquals(EventStatus.CANCELLED, restored.getEventState().findEventByNumber(6).getStatus());
+    }
+
+    @Test
+    void commandsRunWhileTheCheckpointIsWritten() throws Exception {
+        Path journalFile = directory.resolve("AutoSave.journal");
+        Path crashDirectory = Files.createTempDirectory("crash");
+        Context original = createContext();
+        SnapshotChain chain = new SnapshotChain(baseFile);
+        chain.track(original);
+        Controller controller = new Controller(original, new TestView());
+        try (CommandJournal journal = CommandJournal.open(journalFile, original, false)) {
+            journal.checkpoint(original, chain);
+            controller.runCommand(new RegisterStaffCommand("staff@ed.ac.uk", "staff password",
+                    "Nec temere nec timide"));
+            controller.runCommand(new CancelEventCommand(5, "Sorry"));
+
+            Thread checkpointThread = new Thread(() -> {
+                try {
+                    journal.checkpoint(original, chain);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            // The chain writes one snapshot at a time, so this holds up the write, but not the capture before it
+            synchronized (chain) {
+                checkpointThread.start();
+                while (journal.getCheckpointNumber() != 2) {
+                    Thread.sleep(1);
+                }
+                controller.runCommand(new CancelEventCommand(6, "Sorry"));
+                assertEquals(0, chain.getNumDeltas());
+                assertFalse(journal.isEmpty());
+                // As if the application crashed before the delta was written
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                    for (Path file : files) {
+                        Files.copy(file, crashDirectory.resolve(file.getFileName()));
+                    }
+                }
+            }
+            checkpointThread.join();
+            assertEquals(1, chain.getNumDeltas());
+        }
+
+        try {
+            // The entries moved aside for the delta are replayed before the ones appended while it was written
+            SnapshotChain crashedChain = new SnapshotChain(crashDirectory.resolve("AutoSave.ser"));
+            Context recovered = crashedChain.load();
+            assertEquals(1, crashedChain.getCheckpointNumber());
+            crashedChain.track(recovered);
+            try (CommandJournal journal = CommandJournal.open(crashDirectory.resolve("AutoSave.journal"), recovered,
+                    false)) {
+                assertEquals(3, journal.getNumEntriesReplayed());
+                assertEquals(2, journal.getCheckpointNumber());
+                journal.checkpoint(recovered, crashedChain);
+            }
+            assertSameState(original, recovered);
+            assertFalse(Files.exists(crashDirectory.resolve("AutoSave.journal.1")));
+            assertSameState(original, new SnapshotChain(crashDirectory.resolve("AutoSave.ser")).load());
+        } finally {
+            deleteDirectory(crashDirectory);
+        }
+
+        SnapshotChain loadedChain = new SnapshotChain(baseFile);
+        Context restored = loadedChain.load();
+        try (CommandJournal journal = CommandJournal.open(journalFile, restored, false)) {
+            assertEquals(1, journal.getNumEntriesReplayed());
+        }
+        assertSameState(original, restored);
+    }
+
+    @Test
+    void basesAreKeptAsGenerations() throws IOException {
+        Context context = createContext();
+        SnapshotChain chain = new SnapshotChain(baseFile, 1, 2);
+        chain.track(context);
+        Controller controller = new Controller(context, new TestView());
+        try (CommandJournal journal = CommandJournal.open(directory.resolve("AutoSave.journal"), context, false)) {
+            controller.runCommand(new RegisterStaffCommand("staff@ed.ac.uk", "staff password",
+                    "Nec temere nec timide"));
+            for (int i = 1; i <= 5; i++) {
+                controller.runCommand(new CancelEventCommand(i, "Sorry"));
+                journal.checkpoint(context, chain);
+            }
+        }
+        // Every delta is folded into a new base right away, so every checkpoint is a generation
+        List<Path> generationFiles = chain.getGenerationFiles();
+        assertEquals(2, generationFiles.size());
+        assertTrue(generationFiles.get(0).getFileName().toString().endsWith("-4"));
+        assertTrue(generationFiles.get(1).getFileName().toString().endsWith("-5"));
+        assertEquals(0, chain.getNumDeltas());
+        assertArrayEquals(Files.readAllBytes(baseFile), Files.readAllBytes(generationFiles.get(1)));
+        try (FileChannel channel = FileChannel.open(generationFiles.get(0), StandardOpenOption.READ)) {
+            Context generation = BinarySnapshot.read(channel);
+            assertEquals(EventStatus.CANCELLED, generation.getEventState().findEventByNumber(4).getStatus());
+            assertEquals(EventStatus.ACTIVE, generation.getEventState().findEventByNumber(5).getStatus());
+        }
+        assertSameState(context, new SnapshotChain(baseFile).load());
+    }
+}